@@ -0,0 +1,46 @@
+package com.steto.jaurbench;
+
+import com.steto.jaurlib.modbus.MB_CRC;
+import com.steto.jaurlib.modbus.MB_address;
+import com.steto.jaurlib.request.AuroraDspRequestEnum;
+import com.steto.jaurlib.request.AuroraRequest;
+import com.steto.jaurlib.request.AuroraRequestFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CRC of a request frame, from raw bytes and from the javolution structs as the packets do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CrcBenchmark {
+
+    private byte[] frame;
+    private MB_address address;
+    private AuroraRequest request;
+
+    @Setup
+    public void setup() {
+        request = new AuroraRequestFactory().createAReq_DspData(AuroraDspRequestEnum.GRID_POWER_ALL);
+        address = new MB_address(2);
+        byte[] pdu = request.toByteArray();
+        frame = new byte[pdu.length + 1];
+        frame[0] = 2;
+        System.arraycopy(pdu, 0, frame, 1, pdu.length);
+    }
+
+    @Benchmark
+    public int fromBytes() {
+        return new MB_CRC(frame).getValue();
+    }
+
+    @Benchmark
+    public int fromStructs() {
+        return new MB_CRC(address, request).getValue();
+    }
+}
@@ -0,0 +1,54 @@
+package com.steto.jaurbench;
+
+import com.steto.jaurlib.modbus.MB_address;
+import com.steto.jaurlib.request.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request side of a transaction: creation through the factory and encoding of the packet sent on the bus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestBenchmark {
+
+    private AuroraRequestFactory factory;
+    private AuroraRequest request;
+    private MB_address address;
+
+    @Setup
+    public void setup() {
+        factory = new AuroraRequestFactory();
+        request = factory.createAReq_DspData(AuroraDspRequestEnum.GRID_POWER_ALL);
+        address = new MB_address(2);
+    }
+
+    @Benchmark
+    public Object factoryCreate() {
+        return factory.create(AReq_DspData.class);
+    }
+
+    @Benchmark
+    public AuroraRequest factoryCreateDspData() {
+        return factory.createAReq_DspData(AuroraDspRequestEnum.GRID_POWER_ALL);
+    }
+
+    @Benchmark
+    public byte[] encodePacket() {
+        return new AuroraRequestPacket(address, request).toByteArray();
+    }
+
+    /**
+     * What AuroraDriver does for every transaction.
+     */
+    @Benchmark
+    public byte[] createAndEncode() {
+        AuroraRequest dspRequest = factory.createAReq_DspData(AuroraDspRequestEnum.GRID_POWER_ALL);
+        return new AuroraRequestPacket(new MB_address(2), dspRequest).toByteArray();
+    }
+}
@@ -0,0 +1,132 @@
+package com.steto.jaurbench;
+
+import com.steto.jaurlib.modbus.MB_CRC;
+import com.steto.jaurlib.request.AuroraCumEnergyEnum;
+import com.steto.jaurlib.request.AuroraDspRequestEnum;
+import com.steto.jaurlib.request.AuroraRequest;
+import com.steto.jaurlib.request.AuroraRequestFactory;
+import com.steto.jaurlib.response.AuroraResponse;
+import com.steto.jaurlib.response.AuroraResponseFactory;
+import com.steto.jaurlib.response.AuroraResponsePacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response side of a transaction for every request type: creation of the response, decoding of the
+ * 8 bytes read from the bus with the CRC check, and the accessors of the measures.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseBenchmark {
+
+    @Param({"VersionId", "DspData", "CumulatedEnergy", "State", "FwVersion", "MFGdate", "SerialNumber",
+            "SystemConfig", "ProductNumber", "TimeCounter", "ActualTime", "LastAlarms"})
+    public String type;
+
+    private AuroraResponseFactory responseFactory;
+    private AuroraRequest request;
+    private byte[] frame;
+    private AuroraResponse decoded;
+
+    @Setup
+    public void setup() throws IOException {
+        responseFactory = new AuroraResponseFactory();
+        request = request(new AuroraRequestFactory(), type);
+        frame = frame(payload(type));
+        decoded = decode();
+    }
+
+    static AuroraRequest request(AuroraRequestFactory factory, String type) {
+        switch (type) {
+            case "VersionId":
+                return factory.createAReq_VersionId();
+            case "DspData":
+                return factory.createAReq_DspData(AuroraDspRequestEnum.GRID_POWER_ALL);
+            case "CumulatedEnergy":
+                return factory.createAReq_CumulatedEnergy(AuroraCumEnergyEnum.DAILY);
+            case "State":
+                return factory.createAReq_State();
+            case "FwVersion":
+                return factory.createAReq_FwVersion();
+            case "MFGdate":
+                return factory.createAReq_MFGdate();
+            case "SerialNumber":
+                return factory.createAReq_SerialNumber();
+            case "SystemConfig":
+                return factory.createAReq_SystemConfig();
+            case "ProductNumber":
+                return factory.createAReq_ProductNumber();
+            case "TimeCounter":
+                return factory.createAReq_TimeCounter();
+            case "ActualTime":
+                return factory.createAReq_ActualTime();
+            case "LastAlarms":
+                return factory.createAReq_AlarmsList();
+            default:
+                throw new IllegalArgumentException("Unknown request type: " + type);
+        }
+    }
+
+    /**
+     * @return transmission state, global state and four data bytes: 230.5 as a float, ascii digits
+     * for the responses carrying text, alarm codes for the alarm list
+     */
+    static byte[] payload(String type) {
+        switch (type) {
+            case "FwVersion":
+            case "MFGdate":
+            case "SerialNumber":
+            case "ProductNumber":
+                return new byte[]{0x00, 0x06, '1', '5', '2', '3'};
+            case "LastAlarms":
+                return new byte[]{0x00, 0x06, 0x00, 0x01, 0x02, 0x03};
+            default:
+                return new byte[]{0x00, 0x06, 0x43, 0x66, (byte) 0x80, 0x00};
+        }
+    }
+
+    /**
+     * @return the payload followed by its CRC, low byte first
+     */
+    static byte[] frame(byte[] payload) {
+        int crc = new MB_CRC(payload).getValue();
+        byte[] result = new byte[payload.length + 2];
+        System.arraycopy(payload, 0, result, 0, payload.length);
+        result[payload.length] = (byte) crc;
+        result[payload.length + 1] = (byte) (crc >>> 8);
+        return result;
+    }
+
+    /**
+     * What AuroraDriver does with the bytes read from the bus.
+     */
+    @Benchmark
+    public AuroraResponse decode() throws IOException {
+        AuroraResponse response = request.create(responseFactory);
+        AuroraResponsePacket packet = new AuroraResponsePacket(response);
+        packet.read(new ByteArrayInputStream(frame));
+        return (AuroraResponse) packet.getPdu();
+    }
+
+    @Benchmark
+    public String getValue() {
+        return decoded.getValue();
+    }
+
+    @Benchmark
+    public float getFloatParam() {
+        return decoded.getFloatParam();
+    }
+
+    @Benchmark
+    public long getLongParam() throws IOException {
+        return decoded.getLongParam();
+    }
+}
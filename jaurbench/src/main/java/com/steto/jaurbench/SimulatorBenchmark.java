@@ -0,0 +1,66 @@
+package com.steto.jaurbench;
+
+import com.steto.jaurinv.AuroraBusSimulator;
+import com.steto.jaurinv.AuroraInverter;
+import com.steto.jaurinv.AuroraVersionData;
+import com.steto.jaurlib.modbus.MB_address;
+import com.steto.jaurlib.request.*;
+import com.steto.jaurlib.response.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The jaurinv simulator answering DSP and cumulated energy requests spread over a bus of inverters:
+ * frames encoded directly, against building the request and response messages.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulatorBenchmark {
+
+    @Param({"1", "32"})
+    public int inverters;
+
+    private AuroraBusSimulator simulator;
+    private byte[][] requests;
+    private final byte[] response = new byte[AuroraBusSimulator.RESPONSE_SIZE];
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        AuroraVersionData versionData = new AuroraVersionData(AI_ModelsEnum.PVI_2000, AI_NationEnum.Italy_ENEL_DK_5950, AI_TransformerType.Transformer_Version, AI_Type.Photovoltaic_Version);
+        AuroraRequestFactory requestFactory = new AuroraRequestFactory();
+        simulator = new AuroraBusSimulator();
+        requests = new byte[inverters * 2][];
+        for (int i = 0; i < inverters; i++) {
+            simulator.add(new AuroraInverter(i + 1, "bench", new AuroraResponseFactory(), requestFactory, versionData));
+            requests[2 * i] = new AuroraRequestPacket(new MB_address(i + 1), requestFactory.createAReq_DspData(AuroraDspRequestEnum.GRID_POWER_ALL)).toByteArray();
+            requests[2 * i + 1] = new AuroraRequestPacket(new MB_address(i + 1), requestFactory.createAReq_CumulatedEnergy(AuroraCumEnergyEnum.DAILY)).toByteArray();
+        }
+    }
+
+    private byte[] nextRequest() {
+        byte[] result = requests[next];
+        next = (next + 1) % requests.length;
+        return result;
+    }
+
+    @Benchmark
+    public int respond() {
+        return simulator.respond(nextRequest(), 0, response);
+    }
+
+    @Benchmark
+    public byte[] respondWithMessages() throws Exception {
+        byte[] request = nextRequest();
+        AuroraRequestPacket pkt = new AuroraRequestPacket();
+        pkt.read(new ByteArrayInputStream(request));
+        AuroraResponse auroraResponse = ((AuroraRequest) pkt.getPdu()).create(simulator.get(request[0]));
+        return new AuroraResponsePacket(auroraResponse).toByteArray();
+    }
+}
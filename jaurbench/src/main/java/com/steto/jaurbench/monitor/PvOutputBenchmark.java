@@ -0,0 +1,98 @@
+package com.steto.jaurbench.monitor;
+
+import com.steto.jaurmon.monitor.pvoutput.PvOutputEncoder;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputNew;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputRecord;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PVOutput encoding of records batches, as done by PvOutputNew.pvOutputRecordList2String and sendBatch,
+ * and parsing of the csv backup files drained by the backlog upload.
+ * Records are sampleRateSec seconds apart; batches go up to the 10k records of a long outage.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PvOutputBenchmark {
+
+    @State(Scope.Thread)
+    public static class Batch {
+
+        @Param({"1", "30", "1000", "10000"})
+        public int batchSize;
+
+        @Param({"10", "300"})
+        public int sampleRateSec;
+
+        PvOutputEncoder encoder;
+        List<PvOutputRecord> records;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            encoder = new PvOutputEncoder();
+            records = records(batchSize, sampleRateSec);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Backlog {
+
+        @Param({"1000", "100000"})
+        public int backlogRecords;
+
+        @Param({"10", "300"})
+        public int sampleRateSec;
+
+        File backlogFile;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            backlogFile = File.createTempFile("pvoutput-backlog", ".csv");
+            PvOutputNew.writePvOutputRecordSet(backlogFile.getAbsolutePath(), records(backlogRecords, sampleRateSec), false);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            backlogFile.delete();
+        }
+    }
+
+    static List<PvOutputRecord> records(int count, int sampleRateSec) {
+        List<PvOutputRecord> result = new ArrayList<>(count);
+        long timestamp = 1450000000000L;
+        for (int i = 0; i < count; i++) {
+            PvOutputRecord record = new PvOutputRecord();
+            record.timestamp = timestamp;
+            record.dailyCumulatedEnergy = i * 1.5f;
+            record.totalPowerGenerated = 1500 + i % 500;
+            record.temperature = 40.5f;
+            record.totalGridVoltage = 231.2f;
+            result.add(record);
+            timestamp += sampleRateSec * 1000L;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String batchData(Batch state) {
+        return state.encoder.batchData(state.records);
+    }
+
+    @Benchmark
+    public String batchUpdateUrl(Batch state) {
+        return state.encoder.batchUpdateUrl("http://pvoutput.org/service/r2", "0123456789abcdef0123456789abcdef01234567", 12345, state.records);
+    }
+
+    @Benchmark
+    public List<PvOutputRecord> readPvOutputRecordSet(Backlog state) throws IOException {
+        return PvOutputNew.readPvOutputRecordSet(state.backlogFile.getAbsolutePath());
+    }
+}
@@ -0,0 +1,51 @@
+package com.steto.jaurbench.monitor;
+
+import com.steto.jaurlib.eventbus.EBResponse;
+import com.steto.jaurlib.eventbus.EBResponseNOK;
+import com.steto.jaurlib.eventbus.EBResponseOK;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EBResponse.toJson, run for every command answered by the web server.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseJsonBenchmark {
+
+    @Param({"value", "telemetries", "error"})
+    public String payload;
+
+    private EBResponse response;
+
+    @Setup
+    public void setup() {
+        switch (payload) {
+            case "value":
+                response = new EBResponseOK("230.5");
+                break;
+            case "telemetries":
+                PeriodicInverterTelemetries telemetries = new PeriodicInverterTelemetries();
+                telemetries.gridPowerAll = 1532.4f;
+                telemetries.gridVoltageAll = 231.2f;
+                telemetries.inverterTemp = 41.3f;
+                telemetries.cumulatedEnergy = 8210f;
+                telemetries.extraMeasures.put("frequency", 50.01f);
+                response = new EBResponseOK(telemetries);
+                break;
+            default:
+                response = new EBResponseNOK(-1, "Inverter not responding");
+        }
+    }
+
+    @Benchmark
+    public String toJson() {
+        return response.toJson();
+    }
+}
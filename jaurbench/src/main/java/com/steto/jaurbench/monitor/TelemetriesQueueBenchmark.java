@@ -0,0 +1,91 @@
+package com.steto.jaurbench.monitor;
+
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import com.steto.jaurmon.monitor.TelemetriesQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TelemetriesQueue filled with size telemetries, one every sampleRateSec seconds.
+ * average and removeOlderThan work on the last windowSec seconds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TelemetriesQueueBenchmark {
+
+    @Param({"2", "1000", "100000"})
+    public int size;
+
+    @Param({"1", "10", "60"})
+    public int sampleRateSec;
+
+    @Param({"300", "3600"})
+    public int windowSec;
+
+    private TelemetriesQueue queue;
+    private long nextTimestamp;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        queue = new TelemetriesQueue(size);
+        List<PeriodicInverterTelemetries> telemetries = new ArrayList<>(size);
+        nextTimestamp = 1450000000000L;
+        for (int i = 0; i < size; i++) {
+            telemetries.add(next());
+        }
+        queue.addAll(telemetries);
+    }
+
+    private PeriodicInverterTelemetries next() {
+        PeriodicInverterTelemetries result = new PeriodicInverterTelemetries();
+        result.timestamp = nextTimestamp;
+        result.gridPowerAll = 1500 + (nextTimestamp / 1000) % 500;
+        result.gridVoltageAll = 230;
+        result.inverterTemp = 40;
+        result.cumulatedEnergy = (nextTimestamp / 1000) % 10000;
+        nextTimestamp += sampleRateSec * 1000L;
+        return result;
+    }
+
+    /**
+     * The queue is full: every add drops the oldest telemetry.
+     */
+    @Benchmark
+    public int add() {
+        queue.add(next());
+        return queue.length();
+    }
+
+    @Benchmark
+    public PeriodicInverterTelemetries averageAll() {
+        return queue.average();
+    }
+
+    @Benchmark
+    public PeriodicInverterTelemetries averageWindow() {
+        return queue.average(nextTimestamp - windowSec * 1000L);
+    }
+
+    @Benchmark
+    public PeriodicInverterTelemetries fixedAverage() {
+        return queue.fixedAverage();
+    }
+
+    /**
+     * Steady state of a sliding window: one telemetry in, the expired ones out.
+     * After the first call the queue holds min(size, windowSec / sampleRateSec) telemetries.
+     */
+    @Benchmark
+    public int slideWindow() {
+        queue.add(next());
+        queue.removeOlderThan(nextTimestamp - windowSec * 1000L);
+        return queue.length();
+    }
+}
@@ -0,0 +1,222 @@
+package com.steto.jaurinv;
+
+import com.steto.jaurlib.modbus.MB_CRC;
+import jssc.SerialPort;
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Simulated inverters sharing one bus: each request is answered by the inverter at its address, if any.
+ * Received bytes go through a sliding window of one request, so after noise, a truncated frame or the
+ * traffic of other devices the simulator resynchronizes on the next valid request.
+ * Inverters are meant to be added before serving.
+ */
+public class AuroraBusSimulator implements Runnable {
+
+    public static final int REQUEST_SIZE = 10;
+    public static final int RESPONSE_SIZE = 8;
+
+    Logger log = Logger.getLogger(getClass().getSimpleName());
+    private final AuroraInverter[] inverters = new AuroraInverter[256];
+    private final SerialPort serialPort;
+    private final int baudRate;
+    private final byte[] window = new byte[REQUEST_SIZE];
+    private final byte[] response = new byte[RESPONSE_SIZE];
+    private int windowSize = 0;
+    private volatile boolean running = false;
+    private FaultInjector faults;
+    private long requests = 0;
+    private long responses = 0;
+    private long crcErrors = 0;
+    private long discardedBytes = 0;
+
+    /**
+     * A simulator fed through {@link #respond} or {@link #receive}.
+     */
+    public AuroraBusSimulator() {
+        this(null, 0);
+    }
+
+    public AuroraBusSimulator(SerialPort serialPort, int baudRate) {
+        this.serialPort = serialPort;
+        this.baudRate = baudRate;
+    }
+
+    public void add(AuroraInverter inverter) {
+        inverters[inverter.getAddress() & 0xFF] = inverter;
+    }
+
+    public AuroraInverter get(int address) {
+        return inverters[address & 0xFF];
+    }
+
+    public int size() {
+        int result = 0;
+        for (AuroraInverter inverter : inverters) {
+            result += inverter != null ? 1 : 0;
+        }
+        return result;
+    }
+
+    /**
+     * Answers one request frame.
+     *
+     * @return the length of the response written to response, 0 if the request is not answered
+     */
+    public synchronized int respond(byte[] request, int offset, byte[] response) {
+        if (!isValid(request, offset)) {
+            crcErrors++;
+            return 0;
+        }
+        return answer(request, offset, response);
+    }
+
+    /**
+     * Feeds bytes received from the bus, the responses are written to out.
+     */
+    public synchronized void receive(byte[] bytes, int length, OutputStream out) throws IOException {
+        for (int i = 0; i < length; i++) {
+            if (windowSize == REQUEST_SIZE) {
+                System.arraycopy(window, 1, window, 0, REQUEST_SIZE - 1);
+                windowSize--;
+                discardedBytes++;
+            }
+            window[windowSize++] = bytes[i];
+            if (windowSize == REQUEST_SIZE && isValid(window, 0)) {
+                windowSize = 0;
+                int responseLength = answer(window, 0, response);
+                if (responseLength > 0) {
+                    delay(responseDelayMs());
+                    out.write(response, 0, responseLength);
+                }
+            }
+        }
+    }
+
+    private static boolean isValid(byte[] request, int offset) {
+        int crc = MB_CRC.compute(request, offset, REQUEST_SIZE - 2);
+        return (request[offset + REQUEST_SIZE - 2] & 0xFF) == (crc & 0xFF) && (request[offset + REQUEST_SIZE - 1] & 0xFF) == crc >>> 8;
+    }
+
+    private int answer(byte[] request, int offset, byte[] response) {
+        requests++;
+        AuroraInverter inverter = inverters[request[offset] & 0xFF];
+        int result = inverter != null && inverter.online ? inverter.respond(request, offset, response) : 0;
+        if (result > 0 && faults != null) {
+            if (faults.drop()) {
+                result = 0;
+            } else if (faults.corrupt()) {
+                response[result - 1] ^= 0xFF;
+            }
+        }
+        if (result > 0) {
+            responses++;
+        }
+        return result;
+    }
+
+    /**
+     * @return the time the next response takes to start, 0 without faults
+     */
+    public int responseDelayMs() {
+        FaultInjector current = faults;
+        return current != null ? current.delay() : 0;
+    }
+
+    private static void delay(int millis) {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public FaultInjector getFaults() {
+        return faults;
+    }
+
+    /**
+     * @param faults the faults to inject in the responses, null for none
+     */
+    public void setFaults(FaultInjector faults) {
+        this.faults = faults;
+    }
+
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    public synchronized long getResponses() {
+        return responses;
+    }
+
+    public synchronized long getCrcErrors() {
+        return crcErrors;
+    }
+
+    public synchronized long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    /**
+     * Serves the serial port until stopped.
+     */
+    @Override
+    public void run() {
+        try {
+            running = true;
+            serialPort.openPort();
+            serialPort.setParams(baudRate, 8, 1, 0);
+            serialPort.purgePort(SerialPort.PURGE_RXCLEAR | SerialPort.PURGE_TXCLEAR);
+            log.info("Serial Port: " + serialPort.getPortName() + " opened successfully, serving " + size() + " inverters");
+            OutputStream out = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    try {
+                        serialPort.writeBytes(Arrays.copyOfRange(bytes, offset, offset + length));
+                    } catch (SerialPortException e) {
+                        throw new IOException(e.getMessage());
+                    }
+                }
+            };
+            while (running) {
+                try {
+                    int available = serialPort.getInputBufferBytesCount();
+                    byte[] bytes = available > 0 ? serialPort.readBytes(available) : serialPort.readBytes(1, 200);
+                    receive(bytes, bytes.length, out);
+                } catch (SerialPortTimeoutException e) {
+                    // idle bus
+                } catch (IOException e) {
+                    log.severe("Error writing response: " + e.getMessage());
+                }
+            }
+        } catch (SerialPortException e) {
+            if (running) {
+                log.severe("Fatal Error: " + e.getMessage());
+            }
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Served requests: " + getRequests() + ", responses: " + getResponses() + ", discarded bytes: " + getDiscardedBytes());
+        }
+    }
+
+    public void stop() throws SerialPortException {
+        running = false;
+        if (serialPort != null && serialPort.isOpened()) {
+            serialPort.closePort();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.steto.jaurinv;
 
 import com.steto.jaurlib.request.*;
 import com.steto.jaurlib.response.*;
+import com.steto.jaurlib.modbus.MB_CRC;
 import jssc.SerialPort;
 import jssc.SerialPortException;
 
@@ -9,8 +10,6 @@ import java.io.ByteArrayInputStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Logger;
 
 import static com.steto.jaurlib.request.AuroraDspRequestEnum.*;
@@ -62,7 +61,45 @@ public class AuroraInverter implements Runnable, AuroraResponseBuilder {
     public int time = -1;
 
     public int[] lastAlarms= new int[]{0,1,2,3};
-    private boolean running = false;
+    /**
+     * An inverter off, e.g. at night, does not answer on the bus.
+     */
+    public volatile boolean online = true;
+    private AuroraBusSimulator simulator;
+
+    private static final byte DSP_UNSUPPORTED = 0;
+    private static final byte DSP_DUMMY = 1;
+    private static final byte DSP_FREQUENCY_ALL = 2;
+    private static final byte DSP_GRID_VOLTAGE_ALL = 3;
+    private static final byte DSP_GRID_CURRENT_ALL = 4;
+    private static final byte DSP_GRID_POWER_ALL = 5;
+    private static final byte DSP_INPUT_1_VOLTAGE = 6;
+    private static final byte DSP_INPUT_1_CURRENT = 7;
+    private static final byte DSP_INPUT_2_VOLTAGE = 8;
+    private static final byte DSP_INPUT_2_CURRENT = 9;
+    private static final byte DSP_INVERTER_TEMPERATURE = 10;
+    private static final byte DSP_BOOSTER_TEMPERATURE = 11;
+
+    /**
+     * Source of the value of each DSP code: one of the measure fields, dspDummyValue or none.
+     */
+    private static final byte[] DSP_SOURCE = new byte[256];
+
+    static {
+        for (AuroraDspRequestEnum measure : AuroraDspRequestEnum.values()) {
+            DSP_SOURCE[measure.get()] = DSP_DUMMY;
+        }
+        DSP_SOURCE[FREQUENCY_ALL.get()] = DSP_FREQUENCY_ALL;
+        DSP_SOURCE[GRID_VOLTAGE_ALL.get()] = DSP_GRID_VOLTAGE_ALL;
+        DSP_SOURCE[GRID_CURRENT_ALL.get()] = DSP_GRID_CURRENT_ALL;
+        DSP_SOURCE[GRID_POWER_ALL.get()] = DSP_GRID_POWER_ALL;
+        DSP_SOURCE[INPUT_1_VOLTAGE.get()] = DSP_INPUT_1_VOLTAGE;
+        DSP_SOURCE[INPUT_1_CURRENT.get()] = DSP_INPUT_1_CURRENT;
+        DSP_SOURCE[INPUT_2_VOLTAGE.get()] = DSP_INPUT_2_VOLTAGE;
+        DSP_SOURCE[INPUT_2_CURRENT.get()] = DSP_INPUT_2_CURRENT;
+        DSP_SOURCE[INVERTER_TEMPERATURE_GRID_TIED.get()] = DSP_INVERTER_TEMPERATURE;
+        DSP_SOURCE[BOOSTER_TEMPERATURE_GRID_TIED.get()] = DSP_BOOSTER_TEMPERATURE;
+    }
 
 
     public AuroraInverter(int address, String com, AuroraResponseFactory auroraResponseFactory, AuroraRequestFactory auroraRequestFactory, AuroraVersionData auroraVersionData) throws ParseException {
@@ -120,77 +157,112 @@ public class AuroraInverter implements Runnable, AuroraResponseBuilder {
         this.modelId = serialNumber;
     }
 
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * Serves this inverter alone on its serial port.
+     */
     @Override
     public void run() {
+        simulator = new AuroraBusSimulator(serialPort, 19200);
+        simulator.add(this);
+        simulator.run();
+    }
 
+    /**
+     * Encodes the response to the request frame at offset into response: DSP and cumulated energy requests
+     * directly from the fields, the others through the response messages.
+     *
+     * @return the length of the response, 0 if there is none
+     */
+    public int respond(byte[] request, int offset, byte[] response) {
+        int code = request[offset + 1] & 0xFF;
+        int param = request[offset + 2] & 0xFF;
+        if (code == AuroraRequestCodeEnum.GETDSP.value) {
+            return DSP_SOURCE[param] == DSP_UNSUPPORTED ? 0 : encode(response, Float.floatToRawIntBits(dspValue(param)));
+        }
+        if (code == AuroraRequestCodeEnum.GETACCUMULATEDENERGY.value) {
+            AuroraCumEnergyEnum period = AuroraCumEnergyEnum.fromCode(param);
+            return period == null ? 0 : encode(response, (int) cumulatedEnergy(period));
+        }
         try {
-            running = true;
-            serialPort.openPort();//Open serial port
-            serialPort.setParams(19200, 8, 1, 0);//Set params.
-            serialPort.purgePort(SerialPort.PURGE_RXCLEAR | SerialPort.PURGE_TXCLEAR);
-            log.info("Serial Port: "+serialPort.getPortName()+" opened successfully");
-            log.info("Running and waiting for a request");
-            while (running) {
-
-                AuroraRequest request = null;
-                try {
-                    request = getRequest();
-                    if (request != null) {
-                        log.info("Received request: " + request);
-                        sendResponse(request);
-                    } else {
-                        log.severe("Error: received invalid request ");
-                    }
-                } catch (Exception e) {
-                    log.severe("Error: " + e.getMessage() + " trying to reply to: " + request);
-                    serialPort.purgePort(SerialPort.PURGE_RXCLEAR | SerialPort.PURGE_TXCLEAR);
-                }
+            AuroraRequestPacket pkt = new AuroraRequestPacket();
+            pkt.read(new ByteArrayInputStream(request, offset, AuroraBusSimulator.REQUEST_SIZE));
+            AuroraResponse auroraResponse = ((AuroraRequest) pkt.getPdu()).create(this);
+            if (auroraResponse == null) {
+                return 0;
             }
-        } catch (SerialPortException e) {
-            log.severe("Fatal Error: " + e.getMessage());
+            byte[] bytes = new AuroraResponsePacket(auroraResponse).toByteArray();
+            System.arraycopy(bytes, 0, response, 0, bytes.length);
+            return bytes.length;
+        } catch (Exception e) {
+            log.fine("No response to request: " + e.getMessage());
+            return 0;
         }
-
-
     }
 
-    private void sendResponse(AuroraRequest auroraRequest) throws SerialPortException, IllegalAccessException, InstantiationException {
-        AuroraResponse auroraResponse = null;
-
-
-        auroraResponse = auroraRequest.create(this);
-
-        if (auroraResponse != null) {
-            sendMsgOnBus(auroraResponse);
-            log.info("Sent msg: " + auroraResponse + " as response to msg: " + auroraRequest);
-        } else {
-            log.info("No msg sent: as response to msg: " + auroraRequest);
-        }
-
+    /**
+     * A response with transmission and global state 0, the value big endian and the CRC little endian.
+     */
+    private static int encode(byte[] response, int value) {
+        response[0] = 0;
+        response[1] = 0;
+        response[2] = (byte) (value >>> 24);
+        response[3] = (byte) (value >>> 16);
+        response[4] = (byte) (value >>> 8);
+        response[5] = (byte) value;
+        int crc = MB_CRC.compute(response, 0, 6);
+        response[6] = (byte) crc;
+        response[7] = (byte) (crc >>> 8);
+        return AuroraBusSimulator.RESPONSE_SIZE;
     }
 
-
-    private void sendMsgOnBus(AuroraResponse inverterMsg) throws SerialPortException {
-        AuroraResponsePacket pkt = new AuroraResponsePacket(inverterMsg);
-        serialPort.writeBytes(pkt.toByteArray());
-    }
-
-
-    private AuroraRequest getRequest() throws Exception {
-        byte[] bytes = serialPort.readBytes(10);
-        log.info("Received bytes: " + printByteArray(bytes));
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-        AuroraRequestPacket pkt = new AuroraRequestPacket();
-        pkt.read(byteArrayInputStream);
-        return (AuroraRequest) pkt.getPdu();
+    private float dspValue(int code) {
+        switch (DSP_SOURCE[code]) {
+            case DSP_FREQUENCY_ALL:
+                return dspFrequencyAll;
+            case DSP_GRID_VOLTAGE_ALL:
+                return dspGridVoltageAll;
+            case DSP_GRID_CURRENT_ALL:
+                return dspGridCurrentAll;
+            case DSP_GRID_POWER_ALL:
+                return dspGridPowerAll;
+            case DSP_INPUT_1_VOLTAGE:
+                return dspInput1Voltage;
+            case DSP_INPUT_1_CURRENT:
+                return dspInput1Current;
+            case DSP_INPUT_2_VOLTAGE:
+                return dspInput2Voltage;
+            case DSP_INPUT_2_CURRENT:
+                return dspInput2Current;
+            case DSP_INVERTER_TEMPERATURE:
+                return dspInverterTempGridTied;
+            case DSP_BOOSTER_TEMPERATURE:
+                return dspBoosterTempGridTied;
+            default:
+                return dspDummyValue;
+        }
     }
 
-    private String printByteArray(byte[] bytes) {
-        String result = "";
-        for (byte b : bytes) {
-            result += String.format("%02X ", b);
-
+    private long cumulatedEnergy(AuroraCumEnergyEnum period) {
+        switch (period) {
+            case DAILY:
+                return cumulatedEnergyDaily;
+            case WEEKLY:
+            case LAST7DAYS:
+                return cumulatedEnergyWeekly;
+            case MONTHLY:
+                return cumulatedEnergyMonthly;
+            case YEARLY:
+                return cumulatedEnergyYearly;
+            case PARTIAL:
+                return cumulatedEnergyPartial;
+            case TOTAL:
+            default:
+                return cumulatedEnergyTotal;
         }
-        return result;
     }
 
 
@@ -293,107 +365,23 @@ public class AuroraInverter implements Runnable, AuroraResponseBuilder {
 
     @Override
     public AuroraResponse createResponse(AReq_CumulatedEnergy request) {
-        AuroraResponse result = new AResp_CumulatedEnergy();
-        Map<Integer, Long> mapCERequest2Value = new HashMap<Integer, Long>();
-        mapCERequest2Value.put(AuroraCumEnergyEnum.DAILY.get(), cumulatedEnergyDaily);
-        mapCERequest2Value.put(AuroraCumEnergyEnum.WEEKLY.get(), cumulatedEnergyWeekly);
-        mapCERequest2Value.put(AuroraCumEnergyEnum.LAST7DAYS.get(), cumulatedEnergyWeekly);
-        mapCERequest2Value.put(AuroraCumEnergyEnum.MONTHLY.get(), cumulatedEnergyMonthly);
-        mapCERequest2Value.put(AuroraCumEnergyEnum.YEARLY.get(), cumulatedEnergyYearly);
-        mapCERequest2Value.put(AuroraCumEnergyEnum.PARTIAL.get(), cumulatedEnergyPartial);
-        mapCERequest2Value.put(AuroraCumEnergyEnum.TOTAL.get(), cumulatedEnergyTotal);
-
-
-        Long val = mapCERequest2Value.get((int) request.getParam1());
-
-
-        if (val == null) {
-            result = null;
-        } else {
-            result.setLongParam(val);
+        AuroraCumEnergyEnum period = AuroraCumEnergyEnum.fromCode(request.getParam1());
+        if (period == null) {
+            return null;
         }
-
-
+        AuroraResponse result = new AResp_CumulatedEnergy();
+        result.setLongParam(cumulatedEnergy(period));
         return result;
     }
 
     @Override
     public AuroraResponse createResponse(AReq_DspData auroraRequest) {
-
-        AuroraResponse result = new AResp_DspData();
-        Map<Integer, Float> mapDspRequest2Value = new HashMap<Integer, Float>();
-        mapDspRequest2Value.put(FREQUENCY_ALL.get(), dspFrequencyAll);
-        mapDspRequest2Value.put(GRID_VOLTAGE_ALL.get(), dspGridVoltageAll);
-        mapDspRequest2Value.put(GRID_CURRENT_ALL.get(), dspGridCurrentAll);
-        mapDspRequest2Value.put(GRID_POWER_ALL.get(), dspGridPowerAll);
-
-        mapDspRequest2Value.put(INPUT_1_VOLTAGE.get(), dspInput1Voltage);
-        mapDspRequest2Value.put(INPUT_1_CURRENT.get(), dspInput1Current);
-        mapDspRequest2Value.put(INPUT_2_VOLTAGE.get(), dspInput2Voltage);
-        mapDspRequest2Value.put(INPUT_2_CURRENT.get(), dspInput2Current);
-        mapDspRequest2Value.put(INVERTER_TEMPERATURE_GRID_TIED.get(), dspInverterTempGridTied);
-        mapDspRequest2Value.put(BOOSTER_TEMPERATURE_GRID_TIED.get(), dspBoosterTempGridTied);
-
-        mapDspRequest2Value.put(VBULK_ILEAK_DCDC.get(), dspDummyValue);
-        mapDspRequest2Value.put(ILEAK_DCDC.get(), dspDummyValue);
-        mapDspRequest2Value.put(ILEAK_INVERTER.get(), dspDummyValue);
-        mapDspRequest2Value.put(PIN_1.get(), dspDummyValue);
-        mapDspRequest2Value.put(PIN_2.get(), dspDummyValue);
-        mapDspRequest2Value.put(GRID_VOLTAGE.get(), dspDummyValue);
-        mapDspRequest2Value.put(GRID_FREQUENCY.get(), dspDummyValue);
-        mapDspRequest2Value.put(ISOLATION_RESISTANCE_ALL.get(), dspDummyValue);
-        mapDspRequest2Value.put(VBULK_GRID.get(), dspDummyValue);
-        mapDspRequest2Value.put(AVERAGE_GRID_VOLTAGE.get(), dspDummyValue);
-        mapDspRequest2Value.put(VBULK_MID_GRID_TIED.get(), dspDummyValue);
-        mapDspRequest2Value.put(POWER_PEAK_ALL.get(), dspDummyValue);
-        mapDspRequest2Value.put(POWER_PEAK_TODAY_AL.get(), dspDummyValue);
-        mapDspRequest2Value.put(GRID_VOLTAGE_NEUTRAL_GRID_TIED.get(), dspDummyValue);
-        mapDspRequest2Value.put(WIND_GENERATOR_FREQUENCY.get(), dspDummyValue);
-        mapDspRequest2Value.put(GRID_VOLTAGE_NEUTRAL_PHASE_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(GRID_CURRENT_PHASE_R_CENTRAL_AND_3_PHASE.get(), dspDummyValue);
-        mapDspRequest2Value.put(GRID_CURRENT_PHASE_S_CENTRAL_AND_3_PHASE.get(), dspDummyValue);
-        mapDspRequest2Value.put(GRID_CURRENT_PHASE_T_CENTRAL_AND_3_PHASE.get(), dspDummyValue);
-        mapDspRequest2Value.put(FREQUENCY_PHASE_R_CENTRAL_AND_3_PHASE.get(), dspDummyValue);
-        mapDspRequest2Value.put(FREQUENCY_PHASE_S_CENTRAL_AND_3_PHASE.get(), dspDummyValue);
-        mapDspRequest2Value.put(FREQUENCY_PHASE_T_CENTRAL_AND_3_PHASE.get(), dspDummyValue);
-        mapDspRequest2Value.put(VBULK_PLUS_CENTRAL_AND_3_PHASE.get(), dspDummyValue);
-        mapDspRequest2Value.put(VBULK_MINUS_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(SUPERVISOR_TEMPERATURE_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(ALIM_TEMPERATURE_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(HEAK_SINK_TEMPERATURE_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(TEMPERATURE_1_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(TEMPERATURE_2_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(TEMPERATURE_3_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_1_SPEED_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_2_SPEED_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_3_SPEED_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_4_SPEED_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_5_SPEED_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(POWER_SATURATION_LIMIT_DER_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(REFERENCE_RING_BULK_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(VPANEL_MICRO_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(GRID_VOLTAGE_PHASE_R_CENTRAL_AND_3_PHASE.get(), dspDummyValue);
-        mapDspRequest2Value.put(GRID_VOLTAGE_PHASE_S_CENTRAL_AND_3_PHASE.get(), dspDummyValue);
-        mapDspRequest2Value.put(GRID_VOLTAGE_PHASE_T_CENTRAL_AND_3_PHASE.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_1_SPEED_RPM_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_2_SPEED_RPM_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_3_SPEED_RPM_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_4_SPEED_RPM_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_5_SPEED_RPM_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_6_SPEED_RPM_CENTRAL.get(), dspDummyValue);
-        mapDspRequest2Value.put(FAN_7_SPEED_RPM_CENTRAL.get(), dspDummyValue);
-
-
-        Float val = mapDspRequest2Value.get((int) auroraRequest.getParam1());
-
-
-        if (val == null) {
-            result = null;
-        } else {
-            result.setFloatParam(val);
+        int code = auroraRequest.getParam1();
+        if (DSP_SOURCE[code] == DSP_UNSUPPORTED) {
+            return null;
         }
-
-
+        AuroraResponse result = new AResp_DspData();
+        result.setFloatParam(dspValue(code));
         return result;
     }
 
@@ -411,6 +399,9 @@ public class AuroraInverter implements Runnable, AuroraResponseBuilder {
     }
 
 
+    /**
+     * Usage: AuroraInverter [serialPort] [inverters], the inverters answering at addresses 1, 2, ...
+     */
     public static void main(String[] args) throws InterruptedException, ParseException {
 
         String serialPort = "COM14";
@@ -418,21 +409,25 @@ public class AuroraInverter implements Runnable, AuroraResponseBuilder {
         if (args.length > 0) {
             serialPort = args[0];
         }
+        int inverters = args.length > 1 ? Integer.parseInt(args[1]) : 1;
         AuroraVersionData auroraVersionData = new AuroraVersionData(AI_ModelsEnum.PVI_2000, AI_NationEnum.Italy_ENEL_DK_5950, AI_TransformerType.Transformer_Version, AI_Type.Photovoltaic_Version);
-        AuroraInverter auroraInverter = new AuroraInverter(1, serialPort, new AuroraResponseFactory(), new AuroraRequestFactory(), auroraVersionData);
-
-
-        String serial = "PVI2000";
-        byte b = '1';
-        auroraInverter.setModelId('1');
-        new Thread(auroraInverter).start();
+        AuroraBusSimulator simulator = new AuroraBusSimulator(new SerialPort(serialPort), 19200);
+        for (int address = 1; address <= inverters; address++) {
+            AuroraInverter auroraInverter = new AuroraInverter(address, serialPort, new AuroraResponseFactory(), new AuroraRequestFactory(), auroraVersionData);
+            auroraInverter.setModelId('1');
+            simulator.add(auroraInverter);
+        }
+        new Thread(simulator).start();
         Thread.sleep(10000);
     }
 
 
     public void stop() throws SerialPortException {
-        running = false;
-        serialPort.closePort();
+        if (simulator != null) {
+            simulator.stop();
+        } else if (serialPort.isOpened()) {
+            serialPort.closePort();
+        }
     }
 }
 
@@ -0,0 +1,53 @@
+package com.steto.jaurinv;
+
+/**
+ * Clear sky production between sunrise and sunset, a squared sine peaking at noon, dimmed by clouds.
+ * The clouds are smooth noise over slots of cloudPeriodMs, a function of the seed and the time only:
+ * the same seed gives the same day whatever the sampling rate.
+ */
+public class ClearSkyCurve implements ProductionCurve {
+
+    public float peakPower = 2000;
+    public float sunriseHour = 6.5f;
+    public float sunsetHour = 19.5f;
+    /**
+     * 0 for a clear day, 1 for clouds able to cover the sun completely.
+     */
+    public float cloudiness = 0;
+    public long cloudPeriodMs = 10 * 60 * 1000;
+    private final long seed;
+
+    public ClearSkyCurve(float peakPower, float cloudiness, long seed) {
+        this.peakPower = peakPower;
+        this.cloudiness = cloudiness;
+        this.seed = seed;
+    }
+
+    @Override
+    public float power(long timeOfDayMs) {
+        double hour = timeOfDayMs / 3600000.0;
+        if (hour <= sunriseHour || hour >= sunsetHour) {
+            return 0;
+        }
+        double sine = Math.sin(Math.PI * (hour - sunriseHour) / (sunsetHour - sunriseHour));
+        return (float) (peakPower * sine * sine * (1 - cloudiness * clouds(timeOfDayMs)));
+    }
+
+    /**
+     * @return the sky covered, from 0 to 1, interpolated between the random values of two slots
+     */
+    private double clouds(long timeOfDayMs) {
+        long slot = timeOfDayMs / cloudPeriodMs;
+        double fraction = (timeOfDayMs % cloudPeriodMs) / (double) cloudPeriodMs;
+        double weight = (1 - Math.cos(Math.PI * fraction)) / 2;
+        return random(slot) * (1 - weight) + random(slot + 1) * weight;
+    }
+
+    private double random(long slot) {
+        long z = seed + slot * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) / (double) (1L << 53);
+    }
+}
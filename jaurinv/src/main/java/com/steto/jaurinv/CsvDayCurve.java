@@ -0,0 +1,80 @@
+package com.steto.jaurinv;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Production of a recorded day, e.g. a telemetries_yyyy-MM-dd.csv of the jaurmon file sink:
+ * timestamp in milliseconds, cumulated energy, grid power, ... one sample per line.
+ * The power between two samples is interpolated, before the first and after the last one it is 0.
+ */
+public class CsvDayCurve implements ProductionCurve {
+
+    private final long[] times;
+    private final float[] powers;
+
+    public CsvDayCurve(String fileName) throws IOException {
+        this(fileName, 2);
+    }
+
+    /**
+     * @param powerColumn index of the grid power column, 0 being the timestamp
+     */
+    public CsvDayCurve(String fileName, int powerColumn) throws IOException {
+        TreeMap<Long, Float> samples = new TreeMap<>();
+        Calendar calendar = Calendar.getInstance();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length <= powerColumn) {
+                    continue;
+                }
+                try {
+                    calendar.setTimeInMillis(Long.parseLong(fields[0].trim()));
+                    float power = Float.parseFloat(fields[powerColumn].trim());
+                    long timeOfDay = ((calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE)) * 60
+                            + calendar.get(Calendar.SECOND)) * 1000L + calendar.get(Calendar.MILLISECOND);
+                    samples.put(timeOfDay, power);
+                } catch (NumberFormatException e) {
+                    // header or malformed line
+                }
+            }
+        }
+        if (samples.isEmpty()) {
+            throw new IOException("No samples in file: " + fileName);
+        }
+        times = new long[samples.size()];
+        powers = new float[samples.size()];
+        int i = 0;
+        for (Map.Entry<Long, Float> sample : samples.entrySet()) {
+            times[i] = sample.getKey();
+            powers[i] = sample.getValue();
+            i++;
+        }
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    @Override
+    public float power(long timeOfDayMs) {
+        if (timeOfDayMs < times[0] || timeOfDayMs > times[times.length - 1]) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(times, timeOfDayMs);
+        if (index >= 0) {
+            return powers[index];
+        }
+        int next = -index - 1;
+        int previous = next - 1;
+        double fraction = (timeOfDayMs - times[previous]) / (double) (times[next] - times[previous]);
+        return (float) (powers[previous] + (powers[next] - powers[previous]) * fraction);
+    }
+}
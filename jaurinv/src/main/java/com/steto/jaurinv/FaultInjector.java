@@ -0,0 +1,94 @@
+package com.steto.jaurinv;
+
+import java.util.Random;
+
+/**
+ * Faults of the simulated bus and inverters, drawn independently for each response:
+ * dropped responses, responses with a corrupted CRC, response delays and measures stuck at their last value.
+ * A fixed seed makes a run repeatable.
+ */
+public class FaultInjector {
+
+    public double dropRate = 0;
+    public double crcErrorRate = 0;
+    public int delayMs = 0;
+    public int delayJitterMs = 0;
+    /**
+     * Probability, at each playback update, that an inverter's measures stop changing for stuckDurationMs
+     * of simulated time.
+     */
+    public double stuckRate = 0;
+    public long stuckDurationMs = 60000;
+
+    private final Random random;
+    private long dropped = 0;
+    private long corrupted = 0;
+    private long delayed = 0;
+    private long stuck = 0;
+
+    public FaultInjector() {
+        this(System.nanoTime());
+    }
+
+    public FaultInjector(long seed) {
+        random = new Random(seed);
+    }
+
+    public synchronized boolean drop() {
+        boolean result = dropRate > 0 && random.nextDouble() < dropRate;
+        if (result) {
+            dropped++;
+        }
+        return result;
+    }
+
+    public synchronized boolean corrupt() {
+        boolean result = crcErrorRate > 0 && random.nextDouble() < crcErrorRate;
+        if (result) {
+            corrupted++;
+        }
+        return result;
+    }
+
+    public synchronized int delay() {
+        int result = delayMs + (delayJitterMs > 0 ? random.nextInt(delayJitterMs + 1) : 0);
+        if (result > 0) {
+            delayed++;
+        }
+        return result;
+    }
+
+    public synchronized boolean stick() {
+        boolean result = stuckRate > 0 && random.nextDouble() < stuckRate;
+        if (result) {
+            stuck++;
+        }
+        return result;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getCorrupted() {
+        return corrupted;
+    }
+
+    public synchronized long getDelayed() {
+        return delayed;
+    }
+
+    public synchronized long getStuck() {
+        return stuck;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FaultInjector{" +
+                "dropped=" + dropped +
+                ", corrupted=" + corrupted +
+                ", delayed=" + delayed +
+                ", stuck=" + stuck +
+                '}';
+    }
+}
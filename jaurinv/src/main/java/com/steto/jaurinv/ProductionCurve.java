@@ -0,0 +1,15 @@
+package com.steto.jaurinv;
+
+/**
+ * Power produced by a simulated inverter along the day.
+ */
+public interface ProductionCurve {
+
+    long DAY_MS = 24 * 3600 * 1000L;
+
+    /**
+     * @param timeOfDayMs milliseconds since midnight, local time
+     * @return the AC power in W, 0 at night
+     */
+    float power(long timeOfDayMs);
+}
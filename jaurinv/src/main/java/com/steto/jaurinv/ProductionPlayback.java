@@ -0,0 +1,151 @@
+package com.steto.jaurinv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TimeZone;
+
+/**
+ * Drives the measures of simulated inverters from a production curve, on a clock running speed times
+ * faster than the real one: grid and input power, voltages, currents and temperatures follow the power,
+ * the cumulated energies integrate it and the daily one restarts at midnight.
+ * With nightOffline an inverter stops answering while its curve gives no power, as a real one after sunset.
+ */
+public class ProductionPlayback {
+
+    public boolean nightOffline = true;
+    /**
+     * Power at which voltages and temperatures reach their maximum.
+     */
+    public float nominalPower = 3000;
+
+    private final ProductionCurve curve;
+    private final long simulatedStart;
+    private final double speed;
+    private final long realStart = System.nanoTime();
+    private final List<SimulatedInverter> inverters = new ArrayList<>();
+    private FaultInjector faults;
+    private Timer timer;
+
+    private static class SimulatedInverter {
+        final AuroraInverter inverter;
+        final float scale;
+        long lastUpdate = -1;
+        float lastPower = 0;
+        double pendingEnergy = 0;
+        long stuckUntil = -1;
+
+        SimulatedInverter(AuroraInverter inverter, float scale) {
+            this.inverter = inverter;
+            this.scale = scale;
+        }
+    }
+
+    /**
+     * @param simulatedStart the simulated time at the creation, in milliseconds since the epoch
+     * @param speed          simulated milliseconds per real millisecond
+     */
+    public ProductionPlayback(ProductionCurve curve, long simulatedStart, double speed) {
+        this.curve = curve;
+        this.simulatedStart = simulatedStart;
+        this.speed = speed;
+    }
+
+    /**
+     * @param scale the inverter power relative to the curve, so that inverters on one plant differ
+     */
+    public synchronized void add(AuroraInverter inverter, float scale) {
+        inverters.add(new SimulatedInverter(inverter, scale));
+    }
+
+    public synchronized void setFaults(FaultInjector faults) {
+        this.faults = faults;
+    }
+
+    public long now() {
+        return simulatedStart + (long) ((System.nanoTime() - realStart) / 1e6 * speed);
+    }
+
+    public synchronized void update() {
+        update(now());
+    }
+
+    public synchronized void update(long simulatedTime) {
+        long localTime = simulatedTime + TimeZone.getDefault().getOffset(simulatedTime);
+        long timeOfDay = Math.floorMod(localTime, ProductionCurve.DAY_MS);
+        long day = Math.floorDiv(localTime, ProductionCurve.DAY_MS);
+        float curvePower = curve.power(timeOfDay);
+        for (SimulatedInverter simulated : inverters) {
+            update(simulated, simulatedTime, day, curvePower);
+        }
+    }
+
+    private void update(SimulatedInverter simulated, long simulatedTime, long day, float curvePower) {
+        AuroraInverter inverter = simulated.inverter;
+        float power = curvePower * simulated.scale;
+        if (simulated.lastUpdate >= 0 && simulatedTime > simulated.lastUpdate) {
+            long lastLocalTime = simulated.lastUpdate + TimeZone.getDefault().getOffset(simulated.lastUpdate);
+            if (Math.floorDiv(lastLocalTime, ProductionCurve.DAY_MS) != day) {
+                inverter.cumulatedEnergyDaily = 0;
+            }
+            simulated.pendingEnergy += (simulated.lastPower + power) / 2 * (simulatedTime - simulated.lastUpdate) / 3600000.0;
+            long energy = (long) simulated.pendingEnergy;
+            simulated.pendingEnergy -= energy;
+            inverter.cumulatedEnergyDaily += energy;
+            inverter.cumulatedEnergyWeekly += energy;
+            inverter.cumulatedLast7Days += energy;
+            inverter.cumulatedEnergyMonthly += energy;
+            inverter.cumulatedEnergyYearly += energy;
+            inverter.cumulatedEnergyPartial += energy;
+            inverter.cumulatedEnergyTotal += energy;
+        }
+        simulated.lastUpdate = simulatedTime;
+        simulated.lastPower = power;
+        if (nightOffline) {
+            inverter.online = curvePower > 0;
+        }
+
+        if (simulatedTime < simulated.stuckUntil) {
+            return;
+        }
+        if (faults != null && faults.stick()) {
+            simulated.stuckUntil = simulatedTime + faults.stuckDurationMs;
+            return;
+        }
+        float load = Math.min(1, power / nominalPower);
+        inverter.dspGridPowerAll = power;
+        inverter.dspGridVoltageAll = 228 + 6 * load;
+        inverter.dspGridCurrentAll = power / inverter.dspGridVoltageAll;
+        inverter.dspFrequencyAll = 50;
+        float inputPower = power / 0.96f / 2;
+        inverter.dspInput1Voltage = power > 0 ? 280 + 70 * load : 0;
+        inverter.dspInput2Voltage = power > 0 ? 270 + 70 * load : 0;
+        inverter.dspInput1Current = power > 0 ? inputPower / inverter.dspInput1Voltage : 0;
+        inverter.dspInput2Current = power > 0 ? inputPower / inverter.dspInput2Voltage : 0;
+        inverter.dspInverterTempGridTied = 25 + 30 * load;
+        inverter.dspBoosterTempGridTied = 22 + 25 * load;
+    }
+
+    /**
+     * Updates the measures every periodMs of real time, on a daemon thread.
+     */
+    public synchronized void start(long periodMs) {
+        if (timer == null) {
+            timer = new Timer("production-playback", true);
+            timer.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    update();
+                }
+            }, 0, periodMs);
+        }
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+}
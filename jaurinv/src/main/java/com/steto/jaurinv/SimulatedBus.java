@@ -0,0 +1,115 @@
+package com.steto.jaurinv;
+
+import com.steto.jaurlib.transport.BusTimeoutException;
+import com.steto.jaurlib.transport.BusTransport;
+
+/**
+ * In-process RS485 bus shared by simulated inverters: a request written by the driver is answered by
+ * the {@link AuroraBusSimulator}, as if it came from the serial port.
+ * Requests to an address with no inverter, or with no response, time out, as do responses delayed by the
+ * simulator faults beyond the read timeout.
+ * With a baud rate the caller also waits the time both frames take on the wire.
+ */
+public class SimulatedBus implements BusTransport {
+
+    private final AuroraBusSimulator simulator = new AuroraBusSimulator();
+    private final int baudRate;
+    private final byte[] request = new byte[AuroraBusSimulator.REQUEST_SIZE];
+    private boolean requestPending = false;
+    private long transactions = 0;
+    private long timeouts = 0;
+
+    public SimulatedBus() {
+        this(0);
+    }
+
+    public SimulatedBus(int baudRate) {
+        this.baudRate = baudRate;
+    }
+
+    public void add(AuroraInverter inverter) {
+        simulator.add(inverter);
+    }
+
+    public AuroraInverter get(int address) {
+        return simulator.get(address);
+    }
+
+    public int size() {
+        return simulator.size();
+    }
+
+    public AuroraBusSimulator getSimulator() {
+        return simulator;
+    }
+
+    public synchronized long getTransactions() {
+        return transactions;
+    }
+
+    public synchronized long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * The response to the last request is produced on read, so it is never cleared as still on the wire.
+     */
+    @Override
+    public void clearInput() {
+    }
+
+    @Override
+    public void clearOutput() {
+    }
+
+    @Override
+    public void write(byte[] frame) throws Exception {
+        synchronized (this) {
+            requestPending = frame.length == request.length;
+            if (requestPending) {
+                System.arraycopy(frame, 0, request, 0, request.length);
+            }
+        }
+        wireTime(frame.length);
+    }
+
+    @Override
+    public byte[] read(int length, int timeoutMs) throws Exception {
+        byte[] result = new byte[AuroraBusSimulator.RESPONSE_SIZE];
+        int resultLength = 0;
+        int delay = 0;
+        synchronized (this) {
+            if (requestPending) {
+                resultLength = simulator.respond(request, 0, result);
+                requestPending = false;
+            }
+            if (resultLength > 0) {
+                delay = simulator.responseDelayMs();
+            }
+            transactions++;
+            if (resultLength < length || delay >= timeoutMs) {
+                timeouts++;
+            }
+        }
+        if (resultLength < length || delay >= timeoutMs) {
+            Thread.sleep(timeoutMs);
+            throw new BusTimeoutException("No response within " + timeoutMs + " ms");
+        }
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+        wireTime(resultLength);
+        return result;
+    }
+
+    private void wireTime(int bytes) throws InterruptedException {
+        if (baudRate > 0) {
+            long micros = bytes * 10 * 1000000L / baudRate;
+            Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
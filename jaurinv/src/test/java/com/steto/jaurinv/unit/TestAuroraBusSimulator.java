@@ -0,0 +1,139 @@
+package com.steto.jaurinv.unit;
+
+import com.steto.jaurinv.AuroraBusSimulator;
+import com.steto.jaurinv.AuroraInverter;
+import com.steto.jaurinv.AuroraVersionData;
+import com.steto.jaurinv.SimulatedBus;
+import com.steto.jaurlib.AuroraDriver;
+import com.steto.jaurlib.modbus.MB_address;
+import com.steto.jaurlib.request.*;
+import com.steto.jaurlib.response.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestAuroraBusSimulator {
+
+    private AuroraVersionData auroraVersionData;
+    private AuroraRequestFactory requestFactory = new AuroraRequestFactory();
+    private AuroraBusSimulator simulator;
+
+    @Before
+    public void before() throws Exception {
+        auroraVersionData = new AuroraVersionData(AI_ModelsEnum.PVI_2000, AI_NationEnum.Italy_ENEL_DK_5950, AI_TransformerType.Transformer_Version, AI_Type.Photovoltaic_Version);
+        simulator = new AuroraBusSimulator();
+    }
+
+    private AuroraInverter inverter(int address) throws Exception {
+        AuroraInverter result = new AuroraInverter(address, "sim" + address, new AuroraResponseFactory(), requestFactory, auroraVersionData);
+        simulator.add(result);
+        return result;
+    }
+
+    private byte[] frame(int address, AuroraRequest request) {
+        return new AuroraRequestPacket(new MB_address(address), request).toByteArray();
+    }
+
+    private byte[] respond(byte[] request) {
+        byte[] response = new byte[AuroraBusSimulator.RESPONSE_SIZE];
+        int length = simulator.respond(request, 0, response);
+        return Arrays.copyOf(response, length);
+    }
+
+    @Test
+    public void shouldEncodeAsTheResponseMessages() throws Exception {
+        AuroraInverter inverter = inverter(2);
+        inverter.dspGridPowerAll = 1234.5f;
+        inverter.cumulatedEnergyDaily = 4321;
+        List<AuroraRequest> requests = new ArrayList<>();
+        for (AuroraDspRequestEnum measure : AuroraDspRequestEnum.values()) {
+            requests.add(requestFactory.createAReq_DspData(measure));
+        }
+        for (AuroraCumEnergyEnum period : AuroraCumEnergyEnum.values()) {
+            requests.add(requestFactory.createAReq_CumulatedEnergy(period));
+        }
+        requests.add(requestFactory.createAReq_State());
+        requests.add(requestFactory.createAReq_SerialNumber());
+        requests.add(requestFactory.createAReq_VersionId());
+
+        for (AuroraRequest request : requests) {
+            byte[] expected = new AuroraResponsePacket(request.create(inverter)).toByteArray();
+            assertArrayEquals(request.toString(), expected, respond(frame(2, request)));
+        }
+    }
+
+    @Test
+    public void shouldServeManyAddressesOnOneBus() throws Exception {
+        for (int address = 1; address <= 63; address++) {
+            inverter(address).dspGridPowerAll = address * 10;
+        }
+        assertEquals(63, simulator.size());
+
+        AuroraRequest request = requestFactory.createAReq_DspData(AuroraDspRequestEnum.GRID_POWER_ALL);
+        for (int address = 1; address <= 63; address++) {
+            AResp_DspData expected = new AResp_DspData();
+            expected.setFloatParam(address * 10);
+            assertArrayEquals(new AuroraResponsePacket(expected).toByteArray(), respond(frame(address, request)));
+        }
+        assertEquals(0, respond(frame(64, request)).length);
+    }
+
+    @Test
+    public void shouldIgnoreRequestsWithWrongCrc() throws Exception {
+        inverter(2);
+        byte[] request = frame(2, requestFactory.createAReq_State());
+        request[9]++;
+
+        assertEquals(0, respond(request).length);
+        assertEquals(1, simulator.getCrcErrors());
+    }
+
+    @Test
+    public void shouldResynchronizeOnTheNextValidRequest() throws Exception {
+        inverter(2);
+        inverter(3);
+        byte[] first = frame(2, requestFactory.createAReq_DspData(AuroraDspRequestEnum.GRID_POWER_ALL));
+        byte[] second = frame(3, requestFactory.createAReq_CumulatedEnergy(AuroraCumEnergyEnum.TOTAL));
+        byte[] otherDevice = frame(9, requestFactory.createAReq_State());
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(new byte[]{0x55, 0x00, 0x12});
+        stream.write(first, 0, 6);
+        stream.write(first);
+        stream.write(otherDevice);
+        stream.write(respond(first));
+        stream.write(second);
+        byte[] bytes = stream.toByteArray();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        simulator.receive(bytes, bytes.length, out);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(respond(first));
+        expected.write(respond(second));
+        assertArrayEquals(expected.toByteArray(), out.toByteArray());
+    }
+
+    @Test
+    public void shouldAnswerTheDriverOnASimulatedBus() throws Exception {
+        SimulatedBus bus = new SimulatedBus();
+        AuroraInverter inverter = new AuroraInverter(5, "sim5", new AuroraResponseFactory(), requestFactory, auroraVersionData);
+        inverter.dspGridVoltageAll = 231.5f;
+        bus.add(inverter);
+        AuroraDriver driver = new AuroraDriver(null, requestFactory, new AuroraResponseFactory());
+        driver.setTransport(bus);
+
+        AuroraResponse response = driver.acquireDspValue(5, AuroraDspRequestEnum.GRID_VOLTAGE_ALL);
+
+        assertEquals(ResponseErrorEnum.NONE, response.getErrorCode());
+        assertEquals(231.5f, response.getFloatParam(), 0);
+        assertEquals(1, bus.getTransactions());
+        assertEquals(0, bus.getTimeouts());
+    }
+}
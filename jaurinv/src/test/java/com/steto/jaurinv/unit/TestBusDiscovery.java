@@ -0,0 +1,87 @@
+package com.steto.jaurinv.unit;
+
+import com.steto.jaurinv.AuroraInverter;
+import com.steto.jaurinv.AuroraVersionData;
+import com.steto.jaurinv.SimulatedBus;
+import com.steto.jaurlib.AuroraDriver;
+import com.steto.jaurlib.discovery.BusDiscovery;
+import com.steto.jaurlib.discovery.InverterFingerprint;
+import com.steto.jaurlib.request.AuroraRequestFactory;
+import com.steto.jaurlib.response.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestBusDiscovery {
+
+    private AuroraVersionData auroraVersionData;
+    private SimulatedBus bus;
+    private AuroraDriver driver;
+    private BusDiscovery discovery;
+
+    @Before
+    public void before() throws Exception {
+        auroraVersionData = new AuroraVersionData(AI_ModelsEnum.PVI_3600, AI_NationEnum.Italy_ENEL_DK_5950, AI_TransformerType.Transformer_Version, AI_Type.Photovoltaic_Version);
+        bus = new SimulatedBus();
+        driver = new AuroraDriver(null, new AuroraRequestFactory(), new AuroraResponseFactory());
+        driver.setTransport(bus);
+        discovery = new BusDiscovery(driver);
+        discovery.lastAddress = 10;
+    }
+
+    private AuroraInverter inverter(int address, String serialNumber) throws Exception {
+        AuroraInverter result = new AuroraInverter(address, "sim" + address, new AuroraResponseFactory(), new AuroraRequestFactory(), auroraVersionData);
+        result.serialNumber = serialNumber;
+        bus.add(result);
+        return result;
+    }
+
+    @Test
+    public void shouldFingerprintTheInvertersOnTheBus() throws Exception {
+        inverter(3, "111111");
+        inverter(7, "222222");
+
+        long start = System.currentTimeMillis();
+        List<InverterFingerprint> topology = discovery.sweep();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(2, topology.size());
+        assertEquals(3, topology.get(0).address);
+        assertEquals("111111", topology.get(0).serialNumber);
+        assertEquals(AI_ModelsEnum.PVI_3600.toString(), topology.get(0).model);
+        assertEquals("1.9.2.7", topology.get(0).firmware);
+        assertTrue(topology.get(0).online);
+        assertEquals(7, topology.get(1).address);
+        assertEquals("222222", topology.get(1).serialNumber);
+        assertEquals(3, discovery.firstOnlineAddress());
+        assertEquals(8, bus.getTimeouts());
+        assertTrue("Sweep took " + elapsed + " ms", elapsed < 8 * 2000 / 4);
+    }
+
+    @Test
+    public void shouldRefreshTheTopologyIncrementally() throws Exception {
+        AuroraInverter first = inverter(3, "111111");
+        discovery.sweep();
+
+        first.online = false;
+        inverter(5, "333333");
+        discovery.refresh(10);
+        List<InverterFingerprint> topology = discovery.getTopology();
+
+        assertEquals(2, topology.size());
+        assertFalse(topology.get(0).online);
+        assertEquals(1, topology.get(0).misses);
+        assertEquals("333333", topology.get(1).serialNumber);
+        assertEquals(5, discovery.firstOnlineAddress());
+
+        inverter(3, "444444");
+        discovery.refresh(0);
+
+        assertEquals("444444", discovery.getTopology().get(0).serialNumber);
+        assertTrue(discovery.getTopology().get(0).online);
+        assertEquals(3, discovery.firstOnlineAddress());
+    }
+}
@@ -0,0 +1,150 @@
+package com.steto.jaurinv.unit;
+
+import com.steto.jaurinv.*;
+import com.steto.jaurlib.modbus.MB_CRC;
+import com.steto.jaurlib.modbus.MB_address;
+import com.steto.jaurlib.request.AuroraDspRequestEnum;
+import com.steto.jaurlib.request.AuroraRequestFactory;
+import com.steto.jaurlib.request.AuroraRequestPacket;
+import com.steto.jaurlib.response.*;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+public class TestProductionPlayback {
+
+    private static final long HOUR = 3600 * 1000L;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private AuroraInverter inverter;
+
+    @Before
+    public void before() throws Exception {
+        AuroraVersionData auroraVersionData = new AuroraVersionData(AI_ModelsEnum.PVI_2000, AI_NationEnum.Italy_ENEL_DK_5950, AI_TransformerType.Transformer_Version, AI_Type.Photovoltaic_Version);
+        inverter = new AuroraInverter(2, "sim", new AuroraResponseFactory(), new AuroraRequestFactory(), auroraVersionData);
+    }
+
+    private long today(int hour, int minute) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, hour);
+        calendar.set(Calendar.MINUTE, minute);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void shouldProduceABellBetweenSunriseAndSunset() {
+        ClearSkyCurve clear = new ClearSkyCurve(2000, 0, 1);
+        ClearSkyCurve cloudy = new ClearSkyCurve(2000, 0.8f, 1);
+
+        assertEquals(0, clear.power(5 * HOUR), 0);
+        assertEquals(0, clear.power(20 * HOUR), 0);
+        assertEquals(2000, clear.power(13 * HOUR), 0.01);
+        assertTrue(clear.power(9 * HOUR) < clear.power(12 * HOUR));
+        for (long time = 7 * HOUR; time < 19 * HOUR; time += 60000) {
+            assertTrue(cloudy.power(time) <= clear.power(time));
+            assertTrue(cloudy.power(time) >= clear.power(time) * 0.2 - 0.01);
+        }
+        assertEquals(cloudy.power(10 * HOUR + 12345), new ClearSkyCurve(2000, 0.8f, 1).power(10 * HOUR + 12345), 0);
+    }
+
+    @Test
+    public void shouldInterpolateARecordedDay() throws Exception {
+        File file = tempFolder.newFile("telemetries.csv");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(today(10, 0) + ",100.0,1000.0,230.0,40.0\n");
+            writer.write(today(11, 0) + ",1200.0,1400.0,231.0,45.0\n");
+        }
+        CsvDayCurve curve = new CsvDayCurve(file.getAbsolutePath());
+
+        assertEquals(2, curve.size());
+        assertEquals(1000, curve.power(10 * HOUR), 0.01);
+        assertEquals(1200, curve.power(10 * HOUR + HOUR / 2), 0.01);
+        assertEquals(0, curve.power(9 * HOUR), 0);
+        assertEquals(0, curve.power(12 * HOUR), 0);
+    }
+
+    @Test
+    public void shouldIntegrateTheEnergyAndGoOfflineAtNight() {
+        inverter.cumulatedEnergyDaily = 500;
+        long total = inverter.cumulatedEnergyTotal;
+        ClearSkyCurve curve = new ClearSkyCurve(2000, 0, 1);
+        ProductionPlayback playback = new ProductionPlayback(curve, today(12, 0), 1);
+        playback.add(inverter, 0.5f);
+
+        playback.update(today(12, 0));
+        playback.update(today(14, 0));
+
+        float noon = curve.power(12 * HOUR) / 2;
+        float afternoon = curve.power(14 * HOUR) / 2;
+        assertEquals(afternoon, inverter.dspGridPowerAll, 0.01);
+        assertEquals(inverter.dspGridPowerAll, inverter.dspGridCurrentAll * inverter.dspGridVoltageAll, 0.1);
+        assertTrue(inverter.online);
+        assertEquals(500 + (noon + afternoon) / 2 * 2, inverter.cumulatedEnergyDaily, 1);
+        assertEquals(total + inverter.cumulatedEnergyDaily - 500, inverter.cumulatedEnergyTotal);
+
+        playback.update(today(23, 0));
+        assertFalse(inverter.online);
+        assertEquals(0, inverter.dspGridPowerAll, 0);
+
+        playback.update(today(23, 0) + 2 * HOUR);
+        assertEquals(0, inverter.cumulatedEnergyDaily);
+    }
+
+    @Test
+    public void shouldKeepStuckMeasures() {
+        FaultInjector faults = new FaultInjector(1);
+        faults.stuckRate = 1;
+        faults.stuckDurationMs = HOUR;
+        ProductionPlayback playback = new ProductionPlayback(new ClearSkyCurve(2000, 0, 1), today(12, 0), 1);
+        playback.add(inverter, 1);
+        playback.update(today(9, 0));
+        float stuck = inverter.dspGridPowerAll;
+
+        playback.setFaults(faults);
+        playback.update(today(10, 0));
+        playback.update(today(10, 30));
+
+        assertEquals(stuck, inverter.dspGridPowerAll, 0);
+        assertEquals(1, faults.getStuck());
+    }
+
+    @Test
+    public void shouldDropAndCorruptResponses() {
+        AuroraBusSimulator simulator = new AuroraBusSimulator();
+        simulator.add(inverter);
+        byte[] request = new AuroraRequestPacket(new MB_address(2), new AuroraRequestFactory().createAReq_DspData(AuroraDspRequestEnum.GRID_POWER_ALL)).toByteArray();
+        byte[] response = new byte[AuroraBusSimulator.RESPONSE_SIZE];
+        FaultInjector faults = new FaultInjector(1);
+        simulator.setFaults(faults);
+
+        faults.crcErrorRate = 1;
+        assertEquals(8, simulator.respond(request, 0, response));
+        int crc = MB_CRC.compute(response, 0, 6);
+        assertNotEquals(crc, (response[6] & 0xFF) | (response[7] & 0xFF) << 8);
+
+        faults.dropRate = 1;
+        assertEquals(0, simulator.respond(request, 0, response));
+
+        faults.dropRate = 0;
+        faults.crcErrorRate = 0;
+        faults.delayMs = 100;
+        assertEquals(8, simulator.respond(request, 0, response));
+        assertEquals(100, simulator.responseDelayMs());
+        assertEquals(1, faults.getDropped());
+        assertEquals(1, faults.getCorrupted());
+
+        inverter.online = false;
+        assertEquals(0, simulator.respond(request, 0, response));
+    }
+}
@@ -1,5 +1,9 @@
 package com.steto.jaurlib;
 
+import com.steto.jaurlib.jfr.BusTransactionEvent;
+import com.steto.jaurlib.metrics.BusMetrics;
+import com.steto.jaurlib.metrics.BusStatistics;
+import com.steto.jaurlib.metrics.MetricsRegistry;
 import com.steto.jaurlib.modbus.MB_PDU;
 import com.steto.jaurlib.modbus.MB_address;
 import com.steto.jaurlib.request.*;
@@ -7,13 +11,14 @@ import com.steto.jaurlib.response.AuroraResponse;
 import com.steto.jaurlib.response.AuroraResponseFactory;
 import com.steto.jaurlib.response.AuroraResponsePacket;
 import com.steto.jaurlib.response.ResponseErrorEnum;
+import com.steto.jaurlib.transport.*;
 import com.steto.jaurlib.utils.FormatStringUtils;
 import jssc.SerialPort;
 import jssc.SerialPortException;
-import jssc.SerialPortTimeoutException;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -28,6 +33,15 @@ public class AuroraDriver {
     protected AuroraResponse msgReceived = null;
     private long receivingPause =50;
     private long communicationPause =50;
+    protected BusMetrics busMetrics = new BusMetrics(MetricsRegistry.getDefault());
+    protected final BusStatistics busStatistics = new BusStatistics();
+    private int requestBytes = 0;
+    private int responseBytes = 0;
+    protected BusTransport transport;
+    private SerialPortTransport serialPortTransport;
+    private FrameJournal journal;
+    private int journalAddress = 0;
+    protected final ResponseTiming responseTiming = new ResponseTiming(100, 30, 2000);
 
     public AuroraDriver(SerialPort serialPort, AuroraRequestFactory reqFactory, AuroraResponseFactory respFactory) {
 
@@ -38,44 +52,159 @@ public class AuroraDriver {
 
     }
 
+    /**
+     * @return the transport set explicitly, otherwise the serial port
+     */
+    protected BusTransport transport() {
+        if (transport != null) {
+            return transport;
+        }
+        if (serialPortTransport == null || serialPortTransport.getSerialPort() != serialPort) {
+            serialPortTransport = new SerialPortTransport(serialPort);
+        }
+        return serialPortTransport;
+    }
+
+    public void setTransport(BusTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Captures every transmitted and received frame to the journal, null to stop capturing.
+     */
+    public synchronized void setJournal(FrameJournal journal) {
+        this.journal = journal;
+    }
+
+    public FrameJournal getJournal() {
+        return journal;
+    }
+
+    private void journal(byte direction, ResponseErrorEnum outcome, byte[] bytes) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(direction, journalAddress, outcome, bytes);
+        } catch (IOException e) {
+            log.severe("Error writing the frame journal, capture stopped: " + e.getMessage());
+            journal = null;
+        }
+    }
+
 
     protected void sendRequest(int address, MB_PDU auroraRequest) throws Exception {
 
         AuroraRequestPacket auroraRequestPacket = new AuroraRequestPacket(new MB_address(address), auroraRequest);
+        byte[] packet = auroraRequestPacket.toByteArray();
         Thread.sleep(communicationPause);
-        serialPort.purgePort(SerialPort.PURGE_RXCLEAR | SerialPort.PURGE_TXCLEAR);
-        serialPort.writeBytes(auroraRequestPacket.toByteArray());
+        BusTransport bus = transport();
+        bus.clearInput();
+        bus.clearOutput();
+        bus.write(packet);
+        requestBytes = packet.length;
+        journalAddress = address;
+        journal(JournalRecord.TRANSMITTED, ResponseErrorEnum.NONE, packet);
 
     }
 
 
-    private AuroraResponse readResponse(AuroraRequest auroraRequest) throws Exception {
+    private AuroraResponse readResponse(AuroraRequest auroraRequest, int timeoutMs) throws Exception {
 
 
         AuroraResponse result = auroraRequest.create(auroraResponseFactory);
 
         if (result == null)
             throw new Exception("No Response available for Request: " + auroraRequest);
+        byte[] buffer = new byte[0];
         try {
-            serialPort.purgePort(SerialPort.PURGE_RXCLEAR);
+            transport().clearInput();
             Thread.sleep(receivingPause);
-            byte[] buffer = serialPort.readBytes(8, serialPortTimeout);
-            log.fine("Read buffer (Hex): " + FormatStringUtils.byteArrayToHex(buffer));
+            long readStart = System.nanoTime();
+            buffer = transport().read(8, timeoutMs);
+            responseTiming.record(System.nanoTime() - readStart);
+            responseBytes = buffer.length;
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Read buffer (Hex): " + FormatStringUtils.byteArrayToHex(buffer));
+            }
             AuroraResponsePacket pkt = new AuroraResponsePacket(result);
             pkt.read(new ByteArrayInputStream(buffer));
             store((AuroraResponse) pkt.getPdu());
             result = (AuroraResponse) pkt.getPdu();
         } catch (IOException ex) {
             result.setErrorCode(ResponseErrorEnum.CRC);
-        } catch (SerialPortTimeoutException e) {
+        } catch (BusTimeoutException e) {
             result.setErrorCode(ResponseErrorEnum.TIMEOUT);
         } catch (Exception ue) {
             result.setErrorCode(ResponseErrorEnum.UNKNOWN);
         }
+        journal(JournalRecord.RECEIVED, result.getErrorCode(), buffer);
 
         return result;
     }
 
+    protected synchronized AuroraResponse execute(int address, AuroraRequest auroraRequest) throws Exception {
+        return execute(address, auroraRequest, serialPortTimeout);
+    }
+
+    /**
+     * Single path of every bus transaction: request, response and transaction metrics.
+     */
+    protected synchronized AuroraResponse execute(int address, AuroraRequest auroraRequest, int timeoutMs) throws Exception {
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Sending Request " + auroraRequest + " to address: " + address);
+        }
+        BusTransactionEvent event = new BusTransactionEvent();
+        event.begin();
+        long start = System.nanoTime();
+        requestBytes = 0;
+        responseBytes = 0;
+        AuroraResponse responseMsg;
+        try {
+            sendRequest(address, auroraRequest);
+            responseMsg = readResponse(auroraRequest, timeoutMs);
+        } catch (Exception e) {
+            record(address, auroraRequest, ResponseErrorEnum.UNKNOWN, System.nanoTime() - start, event);
+            throw e;
+        }
+        record(address, auroraRequest, responseMsg.getErrorCode(), System.nanoTime() - start, event);
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Received response: " + responseMsg);
+        }
+        return responseMsg;
+    }
+
+    private void record(int address, AuroraRequest auroraRequest, ResponseErrorEnum outcome, long nanos, BusTransactionEvent event) {
+        int code = auroraRequest.code.getValue();
+        busMetrics.record(code, outcome, nanos);
+        busStatistics.record(address, code, auroraRequest.getParam1(), outcome, nanos, requestBytes, responseBytes);
+        event.end();
+        if (event.shouldCommit()) {
+            event.address = address;
+            AuroraRequestCodeEnum command = AuroraRequestCodeEnum.fromValue(code);
+            event.command = command != null ? command.name() : String.valueOf(code);
+            event.subcode = auroraRequest.getParam1();
+            event.requestBytes = requestBytes;
+            event.responseBytes = responseBytes;
+            event.outcome = outcome.name();
+            event.commit();
+        }
+    }
+
+    /**
+     * @return latency, traffic and errors of the transactions per address, command and subcode
+     */
+    public BusStatistics getBusStatistics() {
+        return busStatistics;
+    }
+
+    /**
+     * @return the response times of the inverters seen so far, to wait less than the default timeout
+     */
+    public ResponseTiming getResponseTiming() {
+        return responseTiming;
+    }
+
     private void store(AuroraResponse message) {
         msgReceived = message;
     }
@@ -84,116 +213,78 @@ public class AuroraDriver {
     public void stop() {
         try {
 
-            serialPort.closePort();//Close serial port
-        } catch (SerialPortException ex) {
+            transport().close();//Close serial port
+        } catch (Exception ex) {
             System.out.println(ex);
         }
+        FrameJournal current = journal;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ex) {
+                log.warning("Error closing the frame journal: " + ex.getMessage());
+            }
+        }
 
     }
 
 
     public synchronized AuroraResponse acquireVersionId(int address) throws Exception {
+        return execute(address, auroraRequestFactory.createAReq_VersionId());
+    }
 
-        log.info("Sending acquireVersionId to: " + address);
-        AuroraRequest auroraRequest = auroraRequestFactory.createAReq_VersionId();
-        sendRequest(address, auroraRequest);
-        AuroraResponse responseMsg = readResponse(auroraRequest);
-        log.info("Received response: " + responseMsg);
-        return responseMsg;
-
-
+    /**
+     * Probes an address waiting at most timeoutMs for the response, e.g. to sweep the bus.
+     */
+    public synchronized AuroraResponse acquireVersionId(int address, int timeoutMs) throws Exception {
+        return execute(address, auroraRequestFactory.createAReq_VersionId(), timeoutMs);
     }
 
 
     public synchronized AuroraResponse acquireDspValue(int invAddress, AuroraDspRequestEnum requestedValue) throws Exception {
-        log.info("Sending acquireDspValue (" + requestedValue + ") to: " + invAddress);
-        AuroraRequest auroraRequest = auroraRequestFactory.createAReq_DspData(requestedValue);
-        sendRequest(invAddress, auroraRequest);
-        AuroraResponse responseMsg = readResponse(auroraRequest);
-        log.info("Received response: " + responseMsg);
-        return responseMsg;
+        return execute(invAddress, auroraRequestFactory.createAReq_DspData(requestedValue));
 
     }
 
     public synchronized AuroraResponse acquireCumulatedEnergy(int address, AuroraCumEnergyEnum requestedValue) throws Exception {
-        log.info("Sending Cumulated Energy Request to: " + address);
-        AuroraRequest auroraRequest = auroraRequestFactory.createAReq_CumulatedEnergy(requestedValue);
-        sendRequest(address, auroraRequest);
-        AuroraResponse response = readResponse(auroraRequest);
-        log.info("Received response: " + response);
-        return response;
+        return execute(address, auroraRequestFactory.createAReq_CumulatedEnergy(requestedValue));
 
     }
 
 
     public synchronized AuroraResponse acquireState(int address) throws Exception {
-        log.info("Sending State Request to: " + address);
-        AuroraRequest auroraRequest = auroraRequestFactory.createAReq_State();
-        sendRequest(address, auroraRequest);
-        AuroraResponse responseMsg = readResponse(auroraRequest);
-        log.info("Received response: " + responseMsg);
-        return responseMsg;
+        return execute(address, auroraRequestFactory.createAReq_State());
 
     }
 
     public synchronized AuroraResponse acquireFirmwareVersion(int address) throws Exception {
-        log.info("Sending Firmware Request to: " + address);
-        AuroraRequest auroraRequest = auroraRequestFactory.createAReq_FwVersion();
-        sendRequest(address, auroraRequest);
-        AuroraResponse responseMsg = readResponse(auroraRequest);
-        log.info("Received response: " + responseMsg);
-        return responseMsg;
+        return execute(address, auroraRequestFactory.createAReq_FwVersion());
 
     }
 
 
     public synchronized AuroraResponse acquireMFGdate(int address) throws Exception {
-        log.info("Sending Manufacturing Date Request to: " + address);
-        AuroraRequest auroraRequest = auroraRequestFactory.createAReq_MFGdate();
-        sendRequest(address, auroraRequest);
-        AuroraResponse responseMsg = readResponse(auroraRequest);
-        log.info("Received response: " + responseMsg);
-        return responseMsg;
+        return execute(address, auroraRequestFactory.createAReq_MFGdate());
 
     }
 
     public synchronized AuroraResponse acquireSystemConfig(int address) throws Exception {
-        log.info("Sending System Configuration Request to: " + address);
-        AuroraRequest auroraRequest = auroraRequestFactory.createAReq_SystemConfig();
-        sendRequest(address, auroraRequest);
-        AuroraResponse responseMsg = readResponse(auroraRequest);
-        log.info("Received response: " + responseMsg);
-        return responseMsg;
+        return execute(address, auroraRequestFactory.createAReq_SystemConfig());
 
     }
 
     public synchronized AuroraResponse acquireSerialNumber(int address) throws Exception {
-        log.info("Sending Serial Number Request to: " + address);
-        AuroraRequest auroraRequest = auroraRequestFactory.createAReq_SerialNumber();
-        sendRequest(address, auroraRequest);
-        AuroraResponse responseMsg = readResponse(auroraRequest);
-        log.info("Received response: " + responseMsg);
-        return responseMsg;
+        return execute(address, auroraRequestFactory.createAReq_SerialNumber());
 
     }
 
     public synchronized AuroraResponse acquireProductNumber(int address) throws Exception {
-        log.info("Sending Product Number Request to: " + address);
-        AuroraRequest auroraRequest = auroraRequestFactory.createAReq_ProductNumber();
-        sendRequest(address, auroraRequest);
-        AuroraResponse responseMsg = readResponse(auroraRequest);
-        log.info("Received response: " + responseMsg);
-        return responseMsg;
+        return execute(address, auroraRequestFactory.createAReq_ProductNumber());
 
     }
 
     public synchronized AuroraResponse acquireTimeCounter(int address) throws Exception {
-        log.info("Sending Product Number Request to: " + address);
-        AuroraRequest auroraRequest = auroraRequestFactory.createAReq_TimeCounter();
-        sendRequest(address, auroraRequest);
-        AuroraResponse responseMsg = readResponse(auroraRequest);
-        log.info("Received response: " + responseMsg);
-        return responseMsg;
+        return execute(address, auroraRequestFactory.createAReq_TimeCounter());
 
     }
 
@@ -204,22 +295,12 @@ public class AuroraDriver {
     }
 
     public synchronized AuroraResponse acquireData(int address) throws Exception {
-        AuroraRequest auroraRequest =  auroraRequestFactory.createAReq_ActualTime();
-        log.info("Sending Request "+auroraRequest+"to address: " + address);
-        sendRequest(address, auroraRequest);
-        AuroraResponse responseMsg = readResponse(auroraRequest);
-        log.info("Received response: " + responseMsg);
-        return responseMsg;
+        return execute(address, auroraRequestFactory.createAReq_ActualTime());
 
     }
 
     public synchronized AuroraResponse acquireLastAlarms(int address) throws Exception {
-        AuroraRequest auroraRequest =  auroraRequestFactory.createAReq_AlarmsList();
-        log.info("Sending Request "+auroraRequest+" to address: " + address);
-        sendRequest(address, auroraRequest);
-        AuroraResponse responseMsg = readResponse(auroraRequest);
-        log.info("Received response: " + responseMsg);
-        return responseMsg;
+        return execute(address, auroraRequestFactory.createAReq_AlarmsList());
 
     }
 
@@ -0,0 +1,186 @@
+package com.steto.jaurlib.discovery;
+
+import com.steto.jaurlib.AuroraDriver;
+import com.steto.jaurlib.response.AResp_VersionId;
+import com.steto.jaurlib.response.AuroraResponse;
+import com.steto.jaurlib.response.ResponseErrorEnum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds the inverters on the bus probing each address with a version id request. The probe waits only
+ * the timeout of the driver response timing, so an empty address costs the driver pauses plus a few
+ * tens of milliseconds instead of the 2 s default timeout.
+ * The topology found is kept as a cache: {@link #refresh} probes again the known inverters and a few of
+ * the unknown addresses, a known inverter not answering is kept offline, as it is at night.
+ */
+public class BusDiscovery {
+
+    public static final int FIRST_ADDRESS = 1;
+    public static final int LAST_ADDRESS = 63;
+
+    protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    public int firstAddress = FIRST_ADDRESS;
+    public int lastAddress = LAST_ADDRESS;
+
+    private final AuroraDriver auroraDriver;
+    private final Map<Integer, InverterFingerprint> topology = new TreeMap<>();
+    private int cursor = 0;
+    private Timer timer;
+
+    public BusDiscovery(AuroraDriver auroraDriver) {
+        this.auroraDriver = auroraDriver;
+    }
+
+    /**
+     * Probes every address of the range.
+     *
+     * @return the topology after the sweep
+     */
+    public synchronized List<InverterFingerprint> sweep() {
+        long start = System.currentTimeMillis();
+        for (int address = firstAddress; address <= lastAddress; address++) {
+            probe(address);
+        }
+        log.info("Bus sweep of addresses " + firstAddress + "-" + lastAddress + " completed in " + (System.currentTimeMillis() - start) + " ms, inverters found: " + topology.size());
+        return getTopology();
+    }
+
+    /**
+     * Probes the known inverters and the next addressesToProbe addresses with no inverter.
+     */
+    public synchronized void refresh(int addressesToProbe) {
+        for (Integer address : new ArrayList<>(topology.keySet())) {
+            probe(address);
+        }
+        int range = lastAddress - firstAddress + 1;
+        int probed = 0;
+        for (int i = 0; i < range && probed < addressesToProbe; i++) {
+            int address = firstAddress + cursor;
+            cursor = (cursor + 1) % range;
+            if (!topology.containsKey(address)) {
+                probe(address);
+                probed++;
+            }
+        }
+    }
+
+    private void probe(int address) {
+        InverterFingerprint known = topology.get(address);
+        AuroraResponse version;
+        try {
+            version = auroraDriver.acquireVersionId(address, auroraDriver.getResponseTiming().timeoutMs());
+        } catch (Exception e) {
+            version = null;
+        }
+        if (version == null || version.getErrorCode() != ResponseErrorEnum.NONE) {
+            if (known != null) {
+                if (known.online) {
+                    log.info("Inverter at address " + address + " not answering");
+                }
+                known.misses++;
+                known.online = false;
+            }
+            return;
+        }
+        String model = ((AResp_VersionId) version).getModelName();
+        if (known != null && known.online && known.model.equals(model)) {
+            known.lastSeen = System.currentTimeMillis();
+            return;
+        }
+        InverterFingerprint found = fingerprint(address, (AResp_VersionId) version);
+        if (found == null) {
+            return;
+        }
+        if (found.sameInverter(known)) {
+            found.firstSeen = known.firstSeen;
+        } else {
+            log.info("Found inverter: " + found);
+        }
+        topology.put(address, found);
+    }
+
+    /**
+     * A new inverter, or one coming back online, is identified by serial number and firmware.
+     *
+     * @return the fingerprint, null if the inverter did not answer
+     */
+    private InverterFingerprint fingerprint(int address, AResp_VersionId version) {
+        try {
+            AuroraResponse serialNumber = auroraDriver.acquireSerialNumber(address);
+            if (serialNumber.getErrorCode() != ResponseErrorEnum.NONE) {
+                return null;
+            }
+            AuroraResponse firmware = auroraDriver.acquireFirmwareVersion(address);
+            InverterFingerprint result = new InverterFingerprint();
+            result.address = address;
+            result.model = version.getModelName();
+            result.nationality = version.getNationality();
+            result.serialNumber = serialNumber.getValue();
+            result.firmware = firmware.getErrorCode() == ResponseErrorEnum.NONE ? firmware.getValue() : "";
+            result.firstSeen = System.currentTimeMillis();
+            result.lastSeen = result.firstSeen;
+            result.online = true;
+            return result;
+        } catch (Exception e) {
+            log.log(Level.FINE, "Error identifying the inverter at address " + address, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return copies of the inverters found, by address
+     */
+    public synchronized List<InverterFingerprint> getTopology() {
+        List<InverterFingerprint> result = new ArrayList<>();
+        for (InverterFingerprint fingerprint : topology.values()) {
+            result.add(new InverterFingerprint(fingerprint));
+        }
+        return result;
+    }
+
+    /**
+     * @return the lowest address with an inverter online, 0 if none
+     */
+    public synchronized int firstOnlineAddress() {
+        for (InverterFingerprint fingerprint : topology.values()) {
+            if (fingerprint.online) {
+                return fingerprint.address;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Refreshes the topology every periodMs on a daemon thread.
+     */
+    public synchronized void start(long periodMs, final int addressesToProbe) {
+        if (timer == null) {
+            timer = new Timer("bus-discovery", true);
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    refresh(addressesToProbe);
+                }
+            }, periodMs, periodMs);
+        }
+    }
+
+    public void stop() {
+        Timer current;
+        synchronized (this) {
+            current = timer;
+            timer = null;
+        }
+        if (current != null) {
+            current.cancel();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.steto.jaurlib.discovery;
+
+/**
+ * An inverter found on the bus. Model and nationality come from the version id, so a different
+ * inverter put at the same address is told apart by its serial number.
+ */
+public class InverterFingerprint {
+
+    public int address;
+    public String model = "";
+    public String nationality = "";
+    public String serialNumber = "";
+    public String firmware = "";
+    public long firstSeen;
+    public long lastSeen;
+    /**
+     * Consecutive probes not answered, e.g. at night.
+     */
+    public int misses;
+    public boolean online;
+
+    public InverterFingerprint() {
+    }
+
+    public InverterFingerprint(InverterFingerprint other) {
+        address = other.address;
+        model = other.model;
+        nationality = other.nationality;
+        serialNumber = other.serialNumber;
+        firmware = other.firmware;
+        firstSeen = other.firstSeen;
+        lastSeen = other.lastSeen;
+        misses = other.misses;
+        online = other.online;
+    }
+
+    public boolean sameInverter(InverterFingerprint other) {
+        return other != null && model.equals(other.model) && serialNumber.equals(other.serialNumber);
+    }
+
+    @Override
+    public String toString() {
+        return "InverterFingerprint{" +
+                "address=" + address +
+                ", model='" + model + '\'' +
+                ", nationality='" + nationality + '\'' +
+                ", serialNumber='" + serialNumber + '\'' +
+                ", firmware='" + firmware + '\'' +
+                ", online=" + online +
+                '}';
+    }
+}
@@ -0,0 +1,85 @@
+package com.steto.jaurlib.eventbus;
+
+import com.steto.jaurkit.EventBusRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Several measures of one inverter, e.g. measures=dspData:gridPowerAll,cumEnergy:daily,serialNumber: the values
+ * fresh enough are taken from the measure cache, the others read in one bus session in the order listed.
+ */
+public class EBInverterBatchRequest extends EventBusRequest {
+
+    public static class Measure {
+        public final String opcode;
+        public final String subcode;
+
+        public Measure(String opcode, String subcode) {
+            this.opcode = opcode;
+            this.subcode = subcode;
+        }
+
+        /**
+         * @return the key of the value of the measure in the response
+         */
+        public String key() {
+            return subcode == null ? opcode : opcode + ":" + subcode;
+        }
+    }
+
+    private final int address;
+    private final List<Measure> measures;
+    private Long maxAge = null;
+
+    public EBInverterBatchRequest(int inverterAddress, List<Measure> measureList) {
+        this.address = inverterAddress;
+        this.measures = measureList;
+    }
+
+    public EBInverterBatchRequest(Map cmdParams) {
+        this.address = Integer.parseInt((String) cmdParams.get("address"));
+        this.measures = parse((String) cmdParams.get("measures"));
+        this.maxAge = cmdParams.get("maxAge") == null ? EBInverterRequest.DEFAULT_MAX_AGE_MS : EBInverterRequest.parseMaxAge((String) cmdParams.get("maxAge"));
+    }
+
+    /**
+     * @param measures opcode:subcode pairs separated by comma, the subcode omitted by the commands without one
+     */
+    public static List<Measure> parse(String measures) {
+        if (measures == null || measures.trim().isEmpty()) {
+            throw new IllegalArgumentException("No measures requested");
+        }
+        List<Measure> result = new ArrayList<>();
+        for (String measure : measures.split(",")) {
+            String[] codes = measure.trim().split(":");
+            result.add(new Measure(codes[0], codes.length > 1 ? codes[1] : null));
+        }
+        return result;
+    }
+
+    /**
+     * Accepts the latest values read not older than maxAgeMs, 0 to read them from the inverter anyway.
+     */
+    public EBInverterBatchRequest maxAge(long maxAgeMs) {
+        maxAge = maxAgeMs;
+        return this;
+    }
+
+    public int address() {
+        return address;
+    }
+
+    public List<Measure> measures() {
+        return Collections.unmodifiableList(measures);
+    }
+
+    /**
+     * @return the maximum age in ms of a value read before, null if the values must be read from the inverter
+     */
+    public Long maxAge() {
+        return maxAge;
+    }
+}
@@ -8,9 +8,12 @@ import java.util.Map;
  * Created by stefano on 28/12/15.
  */
 public class EBInverterRequest extends EventBusRequest {
+    public static final long DEFAULT_MAX_AGE_MS = 10000;
+
     private String opcode;
     private final String subcode;
     private final int address;
+    private Long maxAge = null;
 
     public EBInverterRequest(String opcode, String subcode, int inverterAddress) {
         this.opcode=opcode;
@@ -23,7 +26,33 @@ public class EBInverterRequest extends EventBusRequest {
         this.opcode = (String) cmdParams.get("opcode");
         this.subcode = (String) cmdParams.get("subcode");
         this.address = Integer.parseInt((String) cmdParams.get("address"));
+        this.maxAge = cmdParams.get("maxAge") == null ? DEFAULT_MAX_AGE_MS : parseMaxAge((String) cmdParams.get("maxAge"));
+
+    }
 
+    /**
+     * @return the maxAge parameter in ms
+     * @throws IllegalArgumentException if not a number of ms, or negative
+     */
+    public static long parseMaxAge(String maxAgeParameter) {
+        long result;
+        try {
+            result = Long.parseLong(maxAgeParameter.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("maxAge is not a number of ms: " + maxAgeParameter);
+        }
+        if (result < 0) {
+            throw new IllegalArgumentException("maxAge cannot be negative: " + maxAgeParameter);
+        }
+        return result;
+    }
+
+    /**
+     * Accepts the latest value read not older than maxAgeMs, 0 to read it from the inverter anyway.
+     */
+    public EBInverterRequest maxAge(long maxAgeMs) {
+        maxAge = maxAgeMs;
+        return this;
     }
 
 
@@ -39,4 +68,11 @@ public class EBInverterRequest extends EventBusRequest {
         return address;
 
     }
+
+    /**
+     * @return the maximum age in ms of a value read before, null if the value must be read from the inverter
+     */
+    public Long maxAge() {
+        return maxAge;
+    }
 }
@@ -7,11 +7,20 @@ public class EBResponseOK extends EBResponse {
 
 
     public final Object data;
+    public Long age = null;
 
     public EBResponseOK(Object payload) {
         data = payload;
     }
 
+    /**
+     * @param ageMs time since the value was read from the inverter
+     */
+    public EBResponseOK(Object payload, long ageMs) {
+        data = payload;
+        age = ageMs;
+    }
+
     public static void main(String[] args) {
 
         EBResponseOK webResponseOK = new EBResponseOK("400");
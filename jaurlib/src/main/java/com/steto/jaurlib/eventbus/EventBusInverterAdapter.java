@@ -1,5 +1,6 @@
 package com.steto.jaurlib.eventbus;
 
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.steto.jaurlib.AuroraDriver;
@@ -8,13 +9,26 @@ import com.steto.jaurlib.cmd.InverterCommandFactory;
 import com.steto.jaurlib.response.AuroraResponse;
 import com.steto.jaurlib.response.ResponseErrorEnum;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * Created by stefano on 28/12/15.
+ * Executes the inverter requests of the EventBus on the driver of the bus the inverter is on, the default
+ * driver unless routed elsewhere. Requests are handled concurrently: each driver serializes the transactions
+ * on its own bus only, so inverters on different buses are polled in parallel.
+ * Every value read is kept in the measure cache: a request accepting a value up to a maximum age is answered from
+ * it when fresh enough, without a bus transaction, with the age of the value.
  */
 public class EventBusInverterAdapter {
     private final EventBus eventBus;
     private final AuroraDriver auroraDriver;
     private final InverterCommandFactory inverterCommandFactory;
+    private final Map<Integer, AuroraDriver> routes = new ConcurrentHashMap<>();
+    private final MeasureCache measureCache = new MeasureCache();
 
     public EventBusInverterAdapter(EventBus aEventBus, AuroraDriver aAuroraDriver, InverterCommandFactory aInverterCommandFactory) {
         eventBus = aEventBus;
@@ -24,19 +38,98 @@ public class EventBusInverterAdapter {
     }
 
 
+    /**
+     * Executes the requests to the inverter at the address on the driver.
+     */
+    public void addRoute(int address, AuroraDriver driver) {
+        routes.put(address, driver);
+    }
+
+    public AuroraDriver driverFor(int address) {
+        AuroraDriver result = routes.get(address);
+        return result == null ? auroraDriver : result;
+    }
+
+    public MeasureCache getMeasureCache() {
+        return measureCache;
+    }
+
     @Subscribe
+    @AllowConcurrentEvents
     public void handleInverterCommand(EBInverterRequest cmd) {
+        Long maxAge = cmd.maxAge();
+        if (maxAge != null) {
+            long now = new Date().getTime();
+            MeasureCache.Sample sample = measureCache.get(cmd.address(), cmd.opcode(), cmd.subcode(), maxAge, now);
+            if (sample != null) {
+                cmd.response = new EBResponseOK(sample.value, sample.age(now));
+                return;
+            }
+        }
+        cmd.response = read(cmd.address(), cmd.opcode(), cmd.subcode(), maxAge != null);
+    }
+
+    /**
+     * Answers the measures of the batch in a map keyed by measure. The values not fresh enough are read holding
+     * the driver, so that no other transaction comes in between; after a timeout the inverter is not
+     * interrogated further.
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void handleInverterBatch(EBInverterBatchRequest cmd) {
+        Map<String, EBResponse> result = new LinkedHashMap<>();
+        List<EBInverterBatchRequest.Measure> toRead = new ArrayList<>();
+        long now = new Date().getTime();
+        for (EBInverterBatchRequest.Measure measure : cmd.measures()) {
+            MeasureCache.Sample sample = cmd.maxAge() == null ? null : measureCache.get(cmd.address(), measure.opcode, measure.subcode, cmd.maxAge(), now);
+            if (sample != null) {
+                result.put(measure.key(), new EBResponseOK(sample.value, sample.age(now)));
+            } else {
+                result.put(measure.key(), null);
+                toRead.add(measure);
+            }
+        }
+
+        AuroraDriver driver = driverFor(cmd.address());
+        synchronized (driver) {
+            boolean timedOut = false;
+            for (EBInverterBatchRequest.Measure measure : toRead) {
+                EBResponse response;
+                if (timedOut) {
+                    response = new EBResponseNOK(ResponseErrorEnum.TIMEOUT.get(), ResponseErrorEnum.TIMEOUT.toString());
+                } else {
+                    response = read(cmd.address(), measure.opcode, measure.subcode, cmd.maxAge() != null);
+                    timedOut = response instanceof EBResponseNOK && ((EBResponseNOK) response).error.code == ResponseErrorEnum.TIMEOUT.get();
+                }
+                result.put(measure.key(), response);
+            }
+        }
+
+        cmd.response = new EBResponseOK(result);
+    }
+
+    /**
+     * Executes the command on the bus and keeps the value read in the measure cache.
+     *
+     * @param withAge the response carries the age of the value, 0 as just read
+     */
+    private EBResponse read(int address, String opcode, String subcode, boolean withAge) {
         EBResponse ebResponse = null;
 
 
         try {
-            InverterCommand inverterCommand = inverterCommandFactory.create(cmd.opcode(), cmd.subcode(), cmd.address());
+            InverterCommand inverterCommand = inverterCommandFactory.create(opcode, subcode, address);
 
             if (inverterCommand != null) {
 
-                AuroraResponse auroraResponse = inverterCommand.execute(auroraDriver);
+                AuroraResponse auroraResponse = inverterCommand.execute(driverFor(address));
 
-                ebResponse = (auroraResponse.getErrorCode() == ResponseErrorEnum.NONE) ? new EBResponseOK(auroraResponse.getValue()) : new EBResponseNOK(auroraResponse.getErrorCode().get(), auroraResponse.getErrorCode().toString());
+                if (auroraResponse.getErrorCode() == ResponseErrorEnum.NONE) {
+                    measureCache.put(address, opcode, subcode, auroraResponse.getValue());
+                    ebResponse = withAge ? new EBResponseOK(auroraResponse.getValue(), 0) : new EBResponseOK(auroraResponse.getValue());
+                } else {
+                    ebResponse = new EBResponseNOK(auroraResponse.getErrorCode().get(), auroraResponse.getErrorCode().toString());
+                }
             } else {
                 ebResponse = new EBResponseNOK(1, "Unrecognized Command");
             }
@@ -47,7 +140,7 @@ public class EventBusInverterAdapter {
         }
 
 
-        cmd.response = ebResponse;
+        return ebResponse;
 
     }
 
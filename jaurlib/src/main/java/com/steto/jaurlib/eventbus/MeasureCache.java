@@ -0,0 +1,66 @@
+package com.steto.jaurlib.eventbus;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest value read from the bus of every measure of every inverter, with the time it was read.
+ */
+public class MeasureCache {
+
+    public static class Sample {
+        public final String value;
+        public final long timestamp;
+
+        public Sample(String value, long timestamp) {
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+
+        public long age(long now) {
+            return Math.max(0, now - timestamp);
+        }
+    }
+
+    private final Map<String, Sample> samples = new ConcurrentHashMap<>();
+
+    private static String key(int address, String opcode, String subcode) {
+        return address + "/" + opcode + "/" + subcode;
+    }
+
+    public void put(int address, String opcode, String subcode, String value, long timestamp) {
+        samples.put(key(address, opcode, subcode), new Sample(value, timestamp));
+    }
+
+    public void put(int address, String opcode, String subcode, String value) {
+        put(address, opcode, subcode, value, new Date().getTime());
+    }
+
+    /**
+     * @return the sample of the measure, or null if never read
+     */
+    public Sample get(int address, String opcode, String subcode) {
+        return samples.get(key(address, opcode, subcode));
+    }
+
+    /**
+     * @return the sample of the measure not older than maxAgeMs, or null if stale or never read; always null
+     * with maxAgeMs 0
+     */
+    public Sample get(int address, String opcode, String subcode, long maxAgeMs, long now) {
+        if (maxAgeMs <= 0) {
+            return null;
+        }
+        Sample result = get(address, opcode, subcode);
+        return (result != null && result.age(now) <= maxAgeMs) ? result : null;
+    }
+
+    public int size() {
+        return samples.size();
+    }
+
+    public void clear() {
+        samples.clear();
+    }
+}
@@ -0,0 +1,35 @@
+package com.steto.jaurlib.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * One request/response exchange on the inverter bus, recorded by Java Flight Recorder.
+ * Enable with -XX:StartFlightRecording or jcmd JFR.start; the event is disabled unless a recording is running.
+ */
+@Name("com.steto.jaurlib.BusTransaction")
+@Label("Bus Transaction")
+@Category({"Aurora", "Bus"})
+@Description("Request sent to an inverter and its response")
+@StackTrace(false)
+public class BusTransactionEvent extends Event {
+
+    @Label("Address")
+    public int address;
+
+    @Label("Command")
+    public String command;
+
+    @Label("Subcode")
+    public int subcode;
+
+    @Label("Request Bytes")
+    @DataAmount
+    public int requestBytes;
+
+    @Label("Response Bytes")
+    @DataAmount
+    public int responseBytes;
+
+    @Label("Outcome")
+    public String outcome;
+}
@@ -0,0 +1,171 @@
+package com.steto.jaurlib.logging;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.*;
+
+/**
+ * Hands the log records over to a background thread that publishes them to the target handler,
+ * so that the logging thread never waits for the console or the disk.
+ * When the queue is full the records are dropped and counted.
+ * <p>
+ * In logging.properties:
+ * <pre>
+ * com.steto.jaurlib.logging.AsyncHandler.target = com.steto.jaurlib.logging.RingFileHandler
+ * com.steto.jaurlib.logging.AsyncHandler.capacity = 1024
+ * com.steto.jaurlib.logging.AsyncHandler.level = FINE
+ * </pre>
+ */
+public class AsyncHandler extends Handler implements Runnable {
+
+    static final int DEFAULT_CAPACITY = 1024;
+    private static final long FLUSH_TIMEOUT_MS = 2000;
+
+    private final Handler target;
+    private final BlockingQueue<LogRecord> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Object idle = new Object();
+    private int pending = 0;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    public AsyncHandler() throws Exception {
+        this(createTarget(property("target", RingFileHandler.class.getName())), intProperty("capacity", DEFAULT_CAPACITY));
+        setLevel(Level.parse(property("level", Level.ALL.getName())));
+    }
+
+    public AsyncHandler(Handler target, int capacity) {
+        this.target = target;
+        queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (!running || !isLoggable(record)) {
+            return;
+        }
+        prepare(record);
+        synchronized (idle) {
+            if (!queue.offer(record)) {
+                dropped.incrementAndGet();
+                return;
+            }
+            pending++;
+        }
+        start();
+    }
+
+    /**
+     * Whatever depends on the logging thread or on mutable arguments is resolved before the hand-over.
+     */
+    private void prepare(LogRecord record) {
+        record.getSourceClassName();
+        Object[] parameters = record.getParameters();
+        if (parameters != null && parameters.length > 0) {
+            Formatter formatter = target.getFormatter() != null ? target.getFormatter() : new SimpleFormatter();
+            record.setMessage(formatter.formatMessage(record));
+            record.setParameters(null);
+        }
+    }
+
+    private synchronized void start() {
+        if (thread == null && running) {
+            thread = new Thread(this, "async-log");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                LogRecord record = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    deliver(record);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+        }
+    }
+
+    private void deliver(LogRecord record) {
+        try {
+            target.publish(record);
+        } catch (RuntimeException e) {
+            reportError("Error publishing log record", e, ErrorManager.WRITE_FAILURE);
+        } finally {
+            synchronized (idle) {
+                pending--;
+                idle.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits for the queued records to reach the target, then flushes it.
+     */
+    @Override
+    public void flush() {
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MS;
+        synchronized (idle) {
+            long wait;
+            while (pending > 0 && thread != null && (wait = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    idle.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        target.flush();
+    }
+
+    @Override
+    public void close() {
+        flush();
+        Thread current;
+        synchronized (this) {
+            running = false;
+            current = thread;
+            thread = null;
+        }
+        if (current != null) {
+            try {
+                current.join(FLUSH_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        target.close();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public Handler getTarget() {
+        return target;
+    }
+
+    private static Handler createTarget(String className) throws Exception {
+        return (Handler) ClassLoader.getSystemClassLoader().loadClass(className.trim()).getDeclaredConstructor().newInstance();
+    }
+
+    static String property(String name, String defaultValue) {
+        return property(AsyncHandler.class, name, defaultValue);
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        return Integer.parseInt(property(name, String.valueOf(defaultValue)));
+    }
+
+    static String property(Class<?> handlerClass, String name, String defaultValue) {
+        String value = LogManager.getLogManager().getProperty(handlerClass.getName() + "." + name);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+}
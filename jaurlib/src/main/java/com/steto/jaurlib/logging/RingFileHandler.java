@@ -0,0 +1,187 @@
+package com.steto.jaurlib.logging;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.logging.*;
+
+/**
+ * File handler meant for SD cards: formatted records collect in a memory buffer and reach the disk in
+ * large writes: when the buffer is full, on a record at flushLevel or above, on the first record after
+ * flushIntervalMs and on close.
+ * Disk usage is capped at count files of limit bytes, used as a ring: when the current file is full
+ * the oldest one is truncated and reused, with no renaming of the others.
+ * Files are named pattern.0 ... pattern.(count-1); the most recently modified one is the current.
+ * <p>
+ * In logging.properties:
+ * <pre>
+ * com.steto.jaurlib.logging.RingFileHandler.pattern = log/aurora.log
+ * com.steto.jaurlib.logging.RingFileHandler.limit = 1000000
+ * com.steto.jaurlib.logging.RingFileHandler.count = 5
+ * com.steto.jaurlib.logging.RingFileHandler.bufferSize = 65536
+ * com.steto.jaurlib.logging.RingFileHandler.flushIntervalMs = 30000
+ * com.steto.jaurlib.logging.RingFileHandler.flushLevel = WARNING
+ * com.steto.jaurlib.logging.RingFileHandler.formatter = com.steto.jaurmon.monitor.monLogFormatter
+ * </pre>
+ */
+public class RingFileHandler extends Handler {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String pattern;
+    private final long limit;
+    private final int count;
+    private final long flushIntervalMs;
+    private final Level flushLevel;
+    private final byte[] buffer;
+    private int buffered = 0;
+    private long bufferedSince = 0;
+    private int current;
+    private long currentSize;
+    private OutputStream out;
+
+    public RingFileHandler() throws IOException {
+        this(property("pattern", "log/aurora.log"),
+                Long.parseLong(property("limit", "1000000")),
+                Integer.parseInt(property("count", "5")),
+                Integer.parseInt(property("bufferSize", "65536")),
+                Long.parseLong(property("flushIntervalMs", "30000")),
+                Level.parse(property("flushLevel", Level.WARNING.getName())));
+        setLevel(Level.parse(property("level", Level.ALL.getName())));
+        String formatter = property("formatter", null);
+        try {
+            setFormatter(formatter != null ? (Formatter) ClassLoader.getSystemClassLoader().loadClass(formatter).getDeclaredConstructor().newInstance() : new SimpleFormatter());
+        } catch (Exception e) {
+            reportError("Error creating formatter: " + formatter, e, ErrorManager.GENERIC_FAILURE);
+            setFormatter(new SimpleFormatter());
+        }
+    }
+
+    public RingFileHandler(String pattern, long limit, int count, int bufferSize, long flushIntervalMs, Level flushLevel) throws IOException {
+        this.pattern = pattern;
+        this.limit = Math.max(1024, limit);
+        this.count = Math.max(1, count);
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushLevel = flushLevel;
+        buffer = new byte[Math.max(1024, Math.min(bufferSize, (int) Math.min(Integer.MAX_VALUE, this.limit)))];
+        setFormatter(new SimpleFormatter());
+        File parent = new File(pattern).getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Error creating log directory: " + parent);
+        }
+        current = newest();
+        open(current, true);
+    }
+
+    public File file(int index) {
+        return new File(pattern + "." + index);
+    }
+
+    public File currentFile() {
+        return file(current);
+    }
+
+    private int newest() {
+        int result = 0;
+        long newest = -1;
+        for (int i = 0; i < count; i++) {
+            File file = file(i);
+            if (file.exists() && file.lastModified() > newest) {
+                newest = file.lastModified();
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    private void open(int index, boolean append) throws IOException {
+        File file = file(index);
+        currentSize = append && file.exists() ? file.length() : 0;
+        out = new FileOutputStream(file, append);
+    }
+
+    @Override
+    public synchronized void publish(LogRecord record) {
+        if (out == null || !isLoggable(record)) {
+            return;
+        }
+        byte[] bytes;
+        try {
+            bytes = getFormatter().format(record).getBytes(UTF8);
+        } catch (Exception e) {
+            reportError("Error formatting log record", e, ErrorManager.FORMAT_FAILURE);
+            return;
+        }
+        long now = record.getMillis();
+        if (buffered + bytes.length > buffer.length) {
+            writeBuffer();
+        }
+        if (bytes.length > buffer.length) {
+            write(bytes, 0, bytes.length);
+        } else {
+            if (buffered == 0) {
+                bufferedSince = now;
+            }
+            System.arraycopy(bytes, 0, buffer, buffered, bytes.length);
+            buffered += bytes.length;
+        }
+        if (record.getLevel().intValue() >= flushLevel.intValue() || now - bufferedSince >= flushIntervalMs) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        writeBuffer();
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                reportError("Error flushing log file", e, ErrorManager.FLUSH_FAILURE);
+            }
+        }
+    }
+
+    private void writeBuffer() {
+        if (buffered > 0) {
+            write(buffer, 0, buffered);
+            buffered = 0;
+        }
+    }
+
+    /**
+     * Writes whole records only: a record never spans two files.
+     */
+    private void write(byte[] bytes, int offset, int length) {
+        if (out == null) {
+            return;
+        }
+        try {
+            if (currentSize > 0 && currentSize + length > limit) {
+                out.close();
+                current = (current + 1) % count;
+                open(current, false);
+            }
+            out.write(bytes, offset, length);
+            currentSize += length;
+        } catch (IOException e) {
+            reportError("Error writing log file", e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                reportError("Error closing log file", e, ErrorManager.CLOSE_FAILURE);
+            }
+            out = null;
+        }
+    }
+
+    private static String property(String name, String defaultValue) {
+        return AsyncHandler.property(RingFileHandler.class, name, defaultValue);
+    }
+}
@@ -0,0 +1,55 @@
+package com.steto.jaurlib.metrics;
+
+import com.steto.jaurlib.request.AuroraRequestCodeEnum;
+import com.steto.jaurlib.response.ResponseErrorEnum;
+
+/**
+ * Bus transactions by command and outcome, with their duration by command.
+ * The series are looked up once per command and then kept in an array indexed by command code.
+ */
+public class BusMetrics {
+
+    public static final String TRANSACTIONS = "aurora_bus_transactions_total";
+    public static final String TRANSACTION_SECONDS = "aurora_bus_transaction_seconds";
+
+    private final MetricsRegistry registry;
+    private final CommandSeries[] commands = new CommandSeries[256];
+
+    private static class CommandSeries {
+        final Counter[] byOutcome;
+        final Histogram duration;
+
+        CommandSeries(Counter[] byOutcome, Histogram duration) {
+            this.byOutcome = byOutcome;
+            this.duration = duration;
+        }
+    }
+
+    public BusMetrics(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void record(int code, ResponseErrorEnum outcome, long nanos) {
+        int index = code & 0xFF;
+        CommandSeries series = commands[index];
+        if (series == null) {
+            series = create(index);
+        }
+        series.byOutcome[outcome.ordinal()].inc();
+        series.duration.observeNanos(nanos);
+    }
+
+    private synchronized CommandSeries create(int code) {
+        if (commands[code] == null) {
+            AuroraRequestCodeEnum command = AuroraRequestCodeEnum.fromValue(code);
+            String label = command != null ? command.name() : String.valueOf(code);
+            Counter[] byOutcome = new Counter[ResponseErrorEnum.values().length];
+            for (ResponseErrorEnum outcome : ResponseErrorEnum.values()) {
+                byOutcome[outcome.ordinal()] = registry.counter(TRANSACTIONS, "Bus transactions by command and outcome", "command", label, "outcome", outcome.name());
+            }
+            Histogram duration = registry.histogram(TRANSACTION_SECONDS, "Duration of the bus transactions", Histogram.LATENCY_BUCKETS, "command", label);
+            commands[code] = new CommandSeries(byOutcome, duration);
+        }
+        return commands[code];
+    }
+}
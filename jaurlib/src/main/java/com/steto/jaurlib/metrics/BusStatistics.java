@@ -0,0 +1,158 @@
+package com.steto.jaurlib.metrics;
+
+import com.steto.jaurlib.request.AuroraRequestCodeEnum;
+import com.steto.jaurlib.response.ResponseErrorEnum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Latency, traffic and error counts of the bus transactions per (address, command code, subcode).
+ * Everything lives in arrays allocated up front: a small open addressing table maps the key to a slot,
+ * latencies go to log-linear buckets (8 per power of two of microseconds, so percentiles are within 12.5%).
+ * Recording allocates nothing.
+ */
+public class BusStatistics {
+
+    static final int TABLE_SIZE = 256;
+    static final int MAX_KEYS = TABLE_SIZE * 3 / 4;
+    static final int OVERFLOW_SLOT = TABLE_SIZE;
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 24;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final int OUTCOMES = ResponseErrorEnum.values().length;
+
+    private final int[] keys = new int[TABLE_SIZE];
+    private int usedKeys = 0;
+    private final long[] outcomes = new long[(TABLE_SIZE + 1) * OUTCOMES];
+    private final long[] latencyBuckets = new long[(TABLE_SIZE + 1) * BUCKETS];
+    private final long[] latencySumMicros = new long[TABLE_SIZE + 1];
+    private final long[] latencyMaxMicros = new long[TABLE_SIZE + 1];
+    private final long[] bytesSent = new long[TABLE_SIZE + 1];
+    private final long[] bytesReceived = new long[TABLE_SIZE + 1];
+
+    public synchronized void record(int address, int code, int subcode, ResponseErrorEnum outcome, long nanos, int sent, int received) {
+        int slot = slot(((address & 0xFF) << 16) | ((code & 0xFF) << 8) | (subcode & 0xFF));
+        outcomes[slot * OUTCOMES + outcome.ordinal()]++;
+        bytesSent[slot] += sent;
+        bytesReceived[slot] += received;
+        if (outcome != ResponseErrorEnum.TIMEOUT) {
+            long micros = Math.max(0, nanos / 1000);
+            latencyBuckets[slot * BUCKETS + bucket(micros)]++;
+            latencySumMicros[slot] += micros;
+            latencyMaxMicros[slot] = Math.max(latencyMaxMicros[slot], micros);
+        }
+    }
+
+    /**
+     * @return the slot of the key, the overflow slot once the table is full
+     */
+    private int slot(int key) {
+        int stored = key + 1;
+        int index = (key * 0x9E3779B9) >>> 24;
+        while (keys[index] != 0) {
+            if (keys[index] == stored) {
+                return index;
+            }
+            index = (index + 1) & (TABLE_SIZE - 1);
+        }
+        if (usedKeys >= MAX_KEYS) {
+            return OVERFLOW_SLOT;
+        }
+        keys[index] = stored;
+        usedKeys++;
+        return index;
+    }
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the exclusive upper bound, in microseconds, of the bucket
+     */
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    public synchronized List<CommandStatistics> snapshot() {
+        List<CommandStatistics> result = new ArrayList<>();
+        for (int slot = 0; slot <= TABLE_SIZE; slot++) {
+            if (slot < TABLE_SIZE && keys[slot] == 0) {
+                continue;
+            }
+            CommandStatistics stats = new CommandStatistics();
+            if (slot < TABLE_SIZE) {
+                int key = keys[slot] - 1;
+                stats.address = key >>> 16;
+                stats.code = (key >>> 8) & 0xFF;
+                stats.subcode = key & 0xFF;
+                AuroraRequestCodeEnum command = AuroraRequestCodeEnum.fromValue(stats.code);
+                stats.command = command != null ? command.name() : String.valueOf(stats.code);
+            } else {
+                stats.address = -1;
+                stats.code = -1;
+                stats.subcode = -1;
+                stats.command = "OTHER";
+            }
+            for (ResponseErrorEnum outcome : ResponseErrorEnum.values()) {
+                stats.transactions += outcomes[slot * OUTCOMES + outcome.ordinal()];
+            }
+            if (stats.transactions == 0) {
+                continue;
+            }
+            stats.crcErrors = outcomes[slot * OUTCOMES + ResponseErrorEnum.CRC.ordinal()];
+            stats.timeouts = outcomes[slot * OUTCOMES + ResponseErrorEnum.TIMEOUT.ordinal()];
+            stats.unknownErrors = outcomes[slot * OUTCOMES + ResponseErrorEnum.UNKNOWN.ordinal()];
+            stats.bytesSent = bytesSent[slot];
+            stats.bytesReceived = bytesReceived[slot];
+            long timed = stats.transactions - stats.timeouts;
+            if (timed > 0) {
+                stats.meanMs = latencySumMicros[slot] / 1000.0 / timed;
+                stats.maxMs = latencyMaxMicros[slot] / 1000.0;
+                stats.p50Ms = percentileMs(slot, timed, 0.50);
+                stats.p95Ms = percentileMs(slot, timed, 0.95);
+                stats.p99Ms = percentileMs(slot, timed, 0.99);
+            }
+            result.add(stats);
+        }
+        return result;
+    }
+
+    private double percentileMs(int slot, long count, double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long cumulated = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            cumulated += latencyBuckets[slot * BUCKETS + bucket];
+            if (cumulated >= rank) {
+                return Math.min(bucketUpperBound(bucket), latencyMaxMicros[slot]) / 1000.0;
+            }
+        }
+        return latencyMaxMicros[slot] / 1000.0;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(keys, 0);
+        usedKeys = 0;
+        Arrays.fill(outcomes, 0);
+        Arrays.fill(latencyBuckets, 0);
+        Arrays.fill(latencySumMicros, 0);
+        Arrays.fill(latencyMaxMicros, 0);
+        Arrays.fill(bytesSent, 0);
+        Arrays.fill(bytesReceived, 0);
+    }
+}
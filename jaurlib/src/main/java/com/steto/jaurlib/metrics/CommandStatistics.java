@@ -0,0 +1,44 @@
+package com.steto.jaurlib.metrics;
+
+/**
+ * Bus statistics of one (address, command code, subcode), as reported by {@link BusStatistics#snapshot()}.
+ * Latencies are in milliseconds and do not include timed out transactions.
+ */
+public class CommandStatistics {
+    public int address;
+    public String command;
+    public int code;
+    public int subcode;
+    public long transactions;
+    public long crcErrors;
+    public long timeouts;
+    public long unknownErrors;
+    public long bytesSent;
+    public long bytesReceived;
+    public double meanMs;
+    public double p50Ms;
+    public double p95Ms;
+    public double p99Ms;
+    public double maxMs;
+
+    public double errorRate() {
+        return transactions == 0 ? 0 : (double) (crcErrors + timeouts + unknownErrors) / transactions;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandStatistics{" +
+                "address=" + address +
+                ", command=" + command +
+                ", subcode=" + subcode +
+                ", transactions=" + transactions +
+                ", crcErrors=" + crcErrors +
+                ", timeouts=" + timeouts +
+                ", unknownErrors=" + unknownErrors +
+                ", p50Ms=" + p50Ms +
+                ", p95Ms=" + p95Ms +
+                ", p99Ms=" + p99Ms +
+                ", maxMs=" + maxMs +
+                '}';
+    }
+}
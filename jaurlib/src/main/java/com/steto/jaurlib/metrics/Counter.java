@@ -0,0 +1,29 @@
+package com.steto.jaurlib.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter. Increments are striped by LongAdder, so that threads updating the same counter do not
+ * contend; reads sum the stripes.
+ */
+public class Counter extends Metric {
+
+    private final LongAdder cells = new LongAdder();
+
+    public void inc() {
+        cells.increment();
+    }
+
+    public void add(long delta) {
+        cells.add(delta);
+    }
+
+    public long get() {
+        return cells.sum();
+    }
+
+    @Override
+    void write(StringBuilder out, String name, String labels) {
+        appendSample(out, name, labels, get());
+    }
+}
@@ -0,0 +1,24 @@
+package com.steto.jaurlib.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last value of a measure.
+ */
+public class Gauge extends Metric {
+
+    private final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    public void set(double value) {
+        bits.set(Double.doubleToRawLongBits(value));
+    }
+
+    public double get() {
+        return Double.longBitsToDouble(bits.get());
+    }
+
+    @Override
+    void write(StringBuilder out, String name, String labels) {
+        appendSample(out, name, labels, get());
+    }
+}
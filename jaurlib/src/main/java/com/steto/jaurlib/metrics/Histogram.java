@@ -0,0 +1,79 @@
+package com.steto.jaurlib.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution over fixed buckets, each bucket counting the observations up to its upper bound.
+ */
+public class Histogram extends Metric {
+
+    /**
+     * Upper bounds in seconds, from a millisecond to half a minute.
+     */
+    public static final double[] LATENCY_BUCKETS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    private final double[] bounds;
+    private final AtomicLongArray counts;
+    private final AtomicLong sumBits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    public Histogram(double[] bounds) {
+        this.bounds = bounds.clone();
+        Arrays.sort(this.bounds);
+        counts = new AtomicLongArray(this.bounds.length + 1);
+    }
+
+    public void observe(double value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        long current;
+        do {
+            current = sumBits.get();
+        } while (!sumBits.compareAndSet(current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + value)));
+    }
+
+    public void observeNanos(long nanos) {
+        observe(nanos / 1e9);
+    }
+
+    public long count() {
+        long result = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            result += counts.get(i);
+        }
+        return result;
+    }
+
+    public double sum() {
+        return Double.longBitsToDouble(sumBits.get());
+    }
+
+    /**
+     * @return the number of observations up to the bound of each bucket, the last one being +Inf
+     */
+    public long[] cumulativeCounts() {
+        long[] result = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < result.length; i++) {
+            total += counts.get(i);
+            result[i] = total;
+        }
+        return result;
+    }
+
+    @Override
+    void write(StringBuilder out, String name, String labels) {
+        long[] cumulative = cumulativeCounts();
+        String separator = labels.isEmpty() ? "" : ",";
+        for (int i = 0; i < cumulative.length; i++) {
+            String le = i < bounds.length ? format(bounds[i]) : "+Inf";
+            appendSample(out, name + "_bucket", labels + separator + "le=\"" + le + "\"", cumulative[i]);
+        }
+        appendSample(out, name + "_sum", labels, sum());
+        appendSample(out, name + "_count", labels, cumulative[cumulative.length - 1]);
+    }
+}
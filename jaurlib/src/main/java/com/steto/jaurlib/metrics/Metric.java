@@ -0,0 +1,35 @@
+package com.steto.jaurlib.metrics;
+
+/**
+ * A single time series of a metric family.
+ */
+public abstract class Metric {
+
+    /**
+     * Appends the Prometheus text lines of this series.
+     *
+     * @param labels the formatted label set, e.g. command="GETDSP", empty for none
+     */
+    abstract void write(StringBuilder out, String name, String labels);
+
+    static void appendSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,124 @@
+package com.steto.jaurlib.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Named counters, gauges and histograms, exported in the Prometheus text format.
+ * Looking up a metric is meant for setup: callers on a hot path keep the returned instance.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    private static class Family {
+        final String name;
+        final String help;
+        final String type;
+        final ConcurrentMap<String, Metric> series = new ConcurrentSkipListMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    /**
+     * @return the registry shared by the driver and the monitor
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param labels label names and values, alternated
+     */
+    public Counter counter(String name, String help, String... labels) {
+        Metric result = family(name, help, "counter").series.get(formatLabels(labels));
+        if (result == null) {
+            result = register(name, labels, new Counter());
+        }
+        return (Counter) result;
+    }
+
+    public Gauge gauge(String name, String help, String... labels) {
+        Metric result = family(name, help, "gauge").series.get(formatLabels(labels));
+        if (result == null) {
+            result = register(name, labels, new Gauge());
+        }
+        return (Gauge) result;
+    }
+
+    public Histogram histogram(String name, String help, double[] buckets, String... labels) {
+        Metric result = family(name, help, "histogram").series.get(formatLabels(labels));
+        if (result == null) {
+            result = register(name, labels, new Histogram(buckets));
+        }
+        return (Histogram) result;
+    }
+
+    private Family family(String name, String help, String type) {
+        Family result = families.get(name);
+        if (result == null) {
+            Family created = new Family(name, help, type);
+            result = families.putIfAbsent(name, created);
+            if (result == null) {
+                result = created;
+            }
+        }
+        if (!result.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " already registered as " + result.type);
+        }
+        return result;
+    }
+
+    private Metric register(String name, String[] labels, Metric metric) {
+        Metric existing = families.get(name).series.putIfAbsent(formatLabels(labels), metric);
+        return existing != null ? existing : metric;
+    }
+
+    static String formatLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name and value pairs");
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    result.append('\\').append(c);
+                } else if (c == '\n') {
+                    result.append("\\n");
+                } else {
+                    result.append(c);
+                }
+            }
+            result.append('"');
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return every metric in the Prometheus text exposition format, version 0.0.4
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Metric> entry : family.series.entrySet()) {
+                entry.getValue().write(out, family.name, entry.getKey());
+            }
+        }
+        return out.toString();
+    }
+}
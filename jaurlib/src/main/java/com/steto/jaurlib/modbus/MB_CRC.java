@@ -7,6 +7,19 @@ public class MB_CRC extends MB_Struct {
 
     public Unsigned16 val = new Unsigned16();
 
+    private static final int[] TABLE = new int[256];
+
+    static {
+        int polynomial = 0x8408;
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x1) != 0 ? (crc >>> 1) ^ polynomial : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
     public MB_CRC(MB_Struct msg) {
         this(msg.toByteArray());
     }
@@ -35,30 +48,20 @@ public class MB_CRC extends MB_Struct {
     }
 
     int compute(byte[] data) {
+        return compute(data, 0, data.length);
+    }
 
-
-        int count = data.length;
-        int offset = 0;
-
-        int polynomial = 0x8408;
-        int crc = 0xFFFF;
-        if (count == 0)
+    /**
+     * CRC of length bytes from offset, one table lookup per byte.
+     */
+    public static int compute(byte[] data, int offset, int length) {
+        if (length == 0)
             return 0;
-        for (int i = 0; i < count; i++) {
-            byte current = data[offset + i];
-            for (int j = 0; j < 8; j++, current >>= 1) {
-                if (((crc ^ current) & 0x1) > 0) {
-                    crc = ((crc >> 1) ^ polynomial);
-                } else {
-                    crc >>= 1;
-                }
-                crc &= 0xFFFF;
-            }
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ data[i]) & 0xFF];
         }
-
-        crc = ~crc;
-
-        return (crc & 0xFFFF);
+        return ~crc & 0xFFFF;
     }
 
     public int getValue() {
@@ -25,5 +25,17 @@ public enum AuroraRequestCodeEnum {
         value=val;
     }
 
+    /**
+     * @return the command with the given code, null if unknown
+     */
+    public static AuroraRequestCodeEnum fromValue(int code) {
+        for (AuroraRequestCodeEnum e : values()) {
+            if (e.value == code) {
+                return e;
+            }
+        }
+        return null;
+    }
+
 
 }
\ No newline at end of file
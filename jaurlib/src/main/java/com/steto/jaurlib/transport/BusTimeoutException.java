@@ -0,0 +1,11 @@
+package com.steto.jaurlib.transport;
+
+/**
+ * The expected bytes did not arrive in time.
+ */
+public class BusTimeoutException extends Exception {
+
+    public BusTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,20 @@
+package com.steto.jaurlib.transport;
+
+/**
+ * Byte level access to the inverter bus.
+ */
+public interface BusTransport {
+
+    void clearInput() throws Exception;
+
+    void clearOutput() throws Exception;
+
+    void write(byte[] frame) throws Exception;
+
+    /**
+     * @throws BusTimeoutException if the bytes do not arrive within the timeout
+     */
+    byte[] read(int length, int timeoutMs) throws Exception;
+
+    void close() throws Exception;
+}
@@ -0,0 +1,160 @@
+package com.steto.jaurlib.transport;
+
+import com.steto.jaurlib.response.ResponseErrorEnum;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Append only binary journal of the frames exchanged on the bus, written through a memory mapped region.
+ * <p>
+ * The file starts with the magic number and the format version, then every record is:
+ * direction (1 byte, 0 marks the end), address (1), outcome (1), length (2), timestamp in ms (8),
+ * nanos elapsed since the journal was opened (8) and the raw bytes.
+ */
+public class FrameJournal implements Closeable {
+
+    static final int MAGIC = 0x4155524A;
+    static final short VERSION = 1;
+    static final int FILE_HEADER_SIZE = 6;
+    static final int RECORD_HEADER_SIZE = 21;
+    static final int REGION_SIZE = 1 << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long startNanos = System.nanoTime();
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+
+    public FrameJournal(String path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        if (file.length() == 0) {
+            map(0, FILE_HEADER_SIZE);
+            region.putInt(MAGIC);
+            region.putShort(VERSION);
+            position = FILE_HEADER_SIZE;
+        } else {
+            position = findEnd(path);
+        }
+    }
+
+    public synchronized void append(byte direction, int address, ResponseErrorEnum outcome, byte[] bytes) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Journal closed");
+        }
+        int size = RECORD_HEADER_SIZE + bytes.length;
+        if (region == null || position + size > regionStart + region.capacity()) {
+            map(position, size);
+        }
+        region.position((int) (position - regionStart));
+        region.put(direction);
+        region.put((byte) address);
+        region.put((byte) outcome.get());
+        region.putShort((short) bytes.length);
+        region.putLong(new Date().getTime());
+        region.putLong(System.nanoTime() - startNanos);
+        region.put(bytes);
+        position += size;
+    }
+
+    private void map(long start, int minSize) throws IOException {
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(REGION_SIZE, minSize));
+    }
+
+    public synchronized long size() {
+        return position;
+    }
+
+    /**
+     * Flushes the journal and trims the file to the recorded frames.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        if (region != null) {
+            region.force();
+            region = null;
+        }
+        try {
+            channel.truncate(position);
+        } catch (IOException e) {
+            // a mapped region may prevent truncation on some platforms, the end marker is still there
+        }
+        file.close();
+    }
+
+    public static List<JournalRecord> read(String path) throws IOException {
+        List<JournalRecord> result = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+        try {
+            checkHeader(in, path);
+            JournalRecord record;
+            while ((record = readRecord(in)) != null) {
+                result.add(record);
+            }
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    private static long findEnd(String path) throws IOException {
+        long result = FILE_HEADER_SIZE;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+        try {
+            checkHeader(in, path);
+            JournalRecord record;
+            while ((record = readRecord(in)) != null) {
+                result += RECORD_HEADER_SIZE + record.bytes.length;
+            }
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    private static void checkHeader(DataInputStream in, String path) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a frame journal: " + path);
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported frame journal version " + version + ": " + path);
+        }
+    }
+
+    /**
+     * @return the next record, null at the end of the journal or on a truncated record
+     */
+    private static JournalRecord readRecord(DataInputStream in) throws IOException {
+        int direction = in.read();
+        if (direction <= 0) {
+            return null;
+        }
+        try {
+            JournalRecord result = new JournalRecord();
+            result.direction = (byte) direction;
+            result.address = in.readUnsignedByte();
+            result.outcome = ResponseErrorEnum.fromCode(in.readUnsignedByte());
+            result.bytes = new byte[in.readUnsignedShort()];
+            result.timestamp = in.readLong();
+            result.elapsedNanos = in.readLong();
+            in.readFully(result.bytes);
+            if (result.outcome == null) {
+                result.outcome = ResponseErrorEnum.UNKNOWN;
+            }
+            return result;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+}
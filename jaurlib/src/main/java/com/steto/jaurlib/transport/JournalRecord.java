@@ -0,0 +1,48 @@
+package com.steto.jaurlib.transport;
+
+import com.steto.jaurlib.response.ResponseErrorEnum;
+import com.steto.jaurlib.utils.FormatStringUtils;
+
+/**
+ * A frame captured by the {@link FrameJournal}.
+ */
+public class JournalRecord {
+
+    public static final byte TRANSMITTED = 1;
+    public static final byte RECEIVED = 2;
+
+    public long timestamp;
+    public long elapsedNanos;
+    public byte direction;
+    public int address;
+    public ResponseErrorEnum outcome = ResponseErrorEnum.NONE;
+    public byte[] bytes = new byte[0];
+
+    public JournalRecord() {
+    }
+
+    public JournalRecord(long timestamp, long elapsedNanos, byte direction, int address, ResponseErrorEnum outcome, byte[] bytes) {
+        this.timestamp = timestamp;
+        this.elapsedNanos = elapsedNanos;
+        this.direction = direction;
+        this.address = address;
+        this.outcome = outcome;
+        this.bytes = bytes;
+    }
+
+    public boolean isTransmitted() {
+        return direction == TRANSMITTED;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalRecord{" +
+                "timestamp=" + timestamp +
+                ", elapsedNanos=" + elapsedNanos +
+                ", direction=" + (isTransmitted() ? "TX" : "RX") +
+                ", address=" + address +
+                ", outcome=" + outcome +
+                ", bytes=" + FormatStringUtils.byteArrayToHex(bytes) +
+                '}';
+    }
+}
@@ -0,0 +1,111 @@
+package com.steto.jaurlib.transport;
+
+import com.steto.jaurlib.response.ResponseErrorEnum;
+import com.steto.jaurlib.utils.FormatStringUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Plays a {@link FrameJournal} back to the driver: every written request consumes the next transmitted frame
+ * and every read returns the received frame that followed it, CRC errors and timeouts included.
+ * In real time mode the frames are delivered with the original spacing, otherwise as fast as they are asked for.
+ */
+public class ReplayTransport implements BusTransport {
+
+    protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    private final List<JournalRecord> records;
+    private final long[] offsetNanos;
+    private final boolean realTime;
+    private long replayStart = -1;
+    private int next = 0;
+    private int mismatches = 0;
+
+    public ReplayTransport(List<JournalRecord> records, boolean realTime) {
+        this.records = records;
+        this.realTime = realTime;
+        offsetNanos = new long[records.size()];
+        for (int i = 1; i < records.size(); i++) {
+            JournalRecord previous = records.get(i - 1);
+            JournalRecord current = records.get(i);
+            long delta = current.elapsedNanos - previous.elapsedNanos;
+            if (delta < 0) {
+                delta = Math.max(0, current.timestamp - previous.timestamp) * 1000000;
+            }
+            offsetNanos[i] = offsetNanos[i - 1] + delta;
+        }
+    }
+
+    public static ReplayTransport open(String journalPath, boolean realTime) throws IOException {
+        return new ReplayTransport(FrameJournal.read(journalPath), realTime);
+    }
+
+    @Override
+    public void clearInput() {
+    }
+
+    @Override
+    public void clearOutput() {
+    }
+
+    @Override
+    public synchronized void write(byte[] frame) throws Exception {
+        while (next < records.size() && !records.get(next).isTransmitted()) {
+            next++;
+        }
+        if (next >= records.size()) {
+            throw new IOException("End of the journal reached");
+        }
+        JournalRecord record = records.get(next);
+        if (!Arrays.equals(record.bytes, frame)) {
+            mismatches++;
+            log.warning("Request " + FormatStringUtils.byteArrayToHex(frame) + " differs from the recorded one: " + record);
+        }
+        pace(next);
+        next++;
+    }
+
+    @Override
+    public synchronized byte[] read(int length, int timeoutMs) throws Exception {
+        if (next >= records.size() || records.get(next).isTransmitted()) {
+            throw new BusTimeoutException("No recorded answer");
+        }
+        JournalRecord record = records.get(next);
+        pace(next);
+        next++;
+        if (record.outcome == ResponseErrorEnum.TIMEOUT || record.bytes.length < length) {
+            throw new BusTimeoutException("Recorded timeout");
+        }
+        return record.bytes.length == length ? record.bytes : Arrays.copyOf(record.bytes, length);
+    }
+
+    private void pace(int index) throws InterruptedException {
+        if (!realTime) {
+            return;
+        }
+        if (replayStart < 0) {
+            replayStart = System.nanoTime() - offsetNanos[index];
+        }
+        long wait = replayStart + offsetNanos[index] - System.nanoTime();
+        if (wait > 0) {
+            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        }
+    }
+
+    public synchronized int remaining() {
+        return records.size() - next;
+    }
+
+    /**
+     * @return how many requests did not match the recorded ones
+     */
+    public synchronized int mismatches() {
+        return mismatches;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,67 @@
+package com.steto.jaurlib.transport;
+
+/**
+ * Adaptive model of the time an inverter takes to answer: smoothed response time and mean deviation,
+ * as for TCP retransmission timers, so that a timeout of mean + 4 deviations is rarely hit by a live
+ * inverter while an empty address is given up quickly.
+ * Until the first response the timeout is the initial one.
+ */
+public class ResponseTiming {
+
+    private final int initialTimeoutMs;
+    private final int minTimeoutMs;
+    private final int maxTimeoutMs;
+    private double smoothedMs = -1;
+    private double deviationMs = 0;
+    private long samples = 0;
+
+    public ResponseTiming(int initialTimeoutMs, int minTimeoutMs, int maxTimeoutMs) {
+        this.initialTimeoutMs = initialTimeoutMs;
+        this.minTimeoutMs = minTimeoutMs;
+        this.maxTimeoutMs = maxTimeoutMs;
+    }
+
+    /**
+     * Records the time a response took to arrive.
+     */
+    public synchronized void record(long nanos) {
+        double ms = nanos / 1e6;
+        if (samples++ == 0) {
+            smoothedMs = ms;
+            deviationMs = ms / 2;
+        } else {
+            deviationMs += (Math.abs(ms - smoothedMs) - deviationMs) / 4;
+            smoothedMs += (ms - smoothedMs) / 8;
+        }
+    }
+
+    public synchronized int timeoutMs() {
+        if (samples == 0) {
+            return initialTimeoutMs;
+        }
+        long result = (long) Math.ceil(smoothedMs + 4 * deviationMs);
+        return (int) Math.max(minTimeoutMs, Math.min(maxTimeoutMs, result));
+    }
+
+    public synchronized double getSmoothedMs() {
+        return smoothedMs;
+    }
+
+    public synchronized double getDeviationMs() {
+        return deviationMs;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResponseTiming{" +
+                "smoothedMs=" + smoothedMs +
+                ", deviationMs=" + deviationMs +
+                ", samples=" + samples +
+                ", timeoutMs=" + timeoutMs() +
+                '}';
+    }
+}
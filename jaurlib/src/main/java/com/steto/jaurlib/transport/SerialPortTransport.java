@@ -0,0 +1,49 @@
+package com.steto.jaurlib.transport;
+
+import jssc.SerialPort;
+import jssc.SerialPortTimeoutException;
+
+/**
+ * RS485 bus reached through a serial port.
+ */
+public class SerialPortTransport implements BusTransport {
+
+    private final SerialPort serialPort;
+
+    public SerialPortTransport(SerialPort serialPort) {
+        this.serialPort = serialPort;
+    }
+
+    public SerialPort getSerialPort() {
+        return serialPort;
+    }
+
+    @Override
+    public void clearInput() throws Exception {
+        serialPort.purgePort(SerialPort.PURGE_RXCLEAR);
+    }
+
+    @Override
+    public void clearOutput() throws Exception {
+        serialPort.purgePort(SerialPort.PURGE_TXCLEAR);
+    }
+
+    @Override
+    public void write(byte[] frame) throws Exception {
+        serialPort.writeBytes(frame);
+    }
+
+    @Override
+    public byte[] read(int length, int timeoutMs) throws Exception {
+        try {
+            return serialPort.readBytes(length, timeoutMs);
+        } catch (SerialPortTimeoutException e) {
+            throw new BusTimeoutException("No answer on " + e.getPortName() + " within " + e.getTimeoutValue() + " ms");
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        serialPort.closePort();
+    }
+}
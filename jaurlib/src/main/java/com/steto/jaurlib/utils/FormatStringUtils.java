@@ -12,11 +12,15 @@ import java.util.Map;
  */
 public class FormatStringUtils {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     public static String byteArrayToHex(byte[] a) {
-        StringBuilder sb = new StringBuilder(a.length * 2);
-        for (byte b : a)
-            sb.append(String.format("%02x", b & 0xff));
-        return sb.toString();
+        char[] result = new char[a.length * 2];
+        for (int i = 0; i < a.length; i++) {
+            result[2 * i] = HEX_DIGITS[(a[i] >> 4) & 0x0f];
+            result[2 * i + 1] = HEX_DIGITS[a[i] & 0x0f];
+        }
+        return new String(result);
     }
 
 
@@ -0,0 +1,211 @@
+package com.steto.jaurlib.eventbus;
+
+import com.google.common.eventbus.EventBus;
+import com.steto.jaurlib.AuroraDriver;
+import com.steto.jaurlib.cmd.InverterCommandFactory;
+import com.steto.jaurlib.request.AuroraDspRequestEnum;
+import com.steto.jaurlib.request.AuroraCumEnergyEnum;
+import com.steto.jaurlib.response.AResp_CumulatedEnergy;
+import com.steto.jaurlib.response.AResp_DspData;
+import com.steto.jaurlib.response.ResponseErrorEnum;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestEventBusInverterAdapter {
+
+    EventBus eventBus;
+    AuroraDriver firstBus;
+    AuroraDriver secondBus;
+    EventBusInverterAdapter adapter;
+
+    private AuroraDriver driver(final float value, final long delayMs) throws Exception {
+        AuroraDriver result = mock(AuroraDriver.class);
+        when(result.acquireDspValue(anyInt(), any(AuroraDspRequestEnum.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(delayMs);
+                AResp_DspData response = new AResp_DspData();
+                response.setFloatParam(value);
+                return response;
+            }
+        });
+        return result;
+    }
+
+    @Before
+    public void before() throws Exception {
+        eventBus = new EventBus();
+        firstBus = driver(100, 300);
+        secondBus = driver(200, 300);
+        adapter = new EventBusInverterAdapter(eventBus, firstBus, new InverterCommandFactory());
+        adapter.addRoute(5, secondBus);
+    }
+
+    private float read(int address) {
+        EBInverterRequest request = new EBInverterRequest("dspData", "gridPowerAll", address);
+        eventBus.post(request);
+        return Float.parseFloat((String) ((EBResponseOK) request.getResponse()).data);
+    }
+
+    @Test
+    public void shouldExecuteOnTheBusOfTheInverter() {
+        assertEquals(100, read(2), 0.001);
+        assertEquals(200, read(5), 0.001);
+        assertEquals(100, read(6), 0.001);
+    }
+
+    @Test
+    public void shouldExecuteTheRequestsOfDifferentBusesInParallel() throws Exception {
+        final float[] results = new float[2];
+        Thread[] threads = new Thread[2];
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 2; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    results[index] = read(index == 0 ? 2 : 5);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(100, results[0], 0.001);
+        assertEquals(200, results[1], 0.001);
+        assertTrue("Requests serialized: " + elapsed + " ms", elapsed < 550);
+    }
+
+    private EBResponseOK webRead(int address, String maxAge) {
+        Map<String, String> params = new HashMap<>();
+        params.put("opcode", "dspData");
+        params.put("subcode", "gridPowerAll");
+        params.put("address", String.valueOf(address));
+        if (maxAge != null) {
+            params.put("maxAge", maxAge);
+        }
+        EBInverterRequest request = new EBInverterRequest(params);
+        eventBus.post(request);
+        return (EBResponseOK) request.getResponse();
+    }
+
+    @Test
+    public void shouldServeTheWebReadsFromTheLatestValue() throws Exception {
+        read(2);
+        long start = new Date().getTime();
+        EBResponseOK response = webRead(2, null);
+        long elapsed = new Date().getTime() - start;
+
+        assertEquals(100, Float.parseFloat((String) response.data), 0.001);
+        assertTrue("Age: " + response.age, response.age >= 0 && response.age < 1000);
+        assertTrue("Read from the bus: " + elapsed + " ms", elapsed < 100);
+        verify(firstBus, times(1)).acquireDspValue(anyInt(), any(AuroraDspRequestEnum.class));
+        assertEquals(1, adapter.getMeasureCache().size());
+    }
+
+    @Test
+    public void shouldReadFromTheBusWhenTheValueIsStaleOrAbsent() throws Exception {
+        EBResponseOK response = webRead(2, null);
+        assertEquals(0L, response.age.longValue());
+
+        adapter.getMeasureCache().put(2, "dspData", "gridPowerAll", "50.0", new Date().getTime() - 5000);
+        assertEquals(50, Float.parseFloat((String) webRead(2, null).data), 0.001);
+        assertEquals(100, Float.parseFloat((String) webRead(2, "1000").data), 0.001);
+        assertEquals(100, Float.parseFloat((String) webRead(2, "0").data), 0.001);
+        verify(firstBus, times(3)).acquireDspValue(anyInt(), any(AuroraDspRequestEnum.class));
+    }
+
+    @Test
+    public void shouldNeverServeFromTheCacheWithMaxAgeZero() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            webRead(2, "0");
+        }
+        verify(firstBus, times(5)).acquireDspValue(anyInt(), any(AuroraDspRequestEnum.class));
+    }
+
+    @Test
+    public void shouldRejectABadMaxAge() {
+        for (String maxAge : new String[]{"abc", "-1", ""}) {
+            try {
+                webRead(2, maxAge);
+                fail("Accepted maxAge: " + maxAge);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("maxAge"));
+            }
+        }
+    }
+
+    @Test
+    public void shouldAlwaysReadFromTheBusTheAcquisitionRequests() throws Exception {
+        read(2);
+        EBInverterRequest request = new EBInverterRequest("dspData", "gridPowerAll", 2);
+        eventBus.post(request);
+
+        assertNull(((EBResponseOK) request.getResponse()).age);
+        verify(firstBus, times(2)).acquireDspValue(anyInt(), any(AuroraDspRequestEnum.class));
+    }
+
+    private Map batchRead(int address, String measures) {
+        Map<String, String> params = new HashMap<>();
+        params.put("address", String.valueOf(address));
+        params.put("measures", measures);
+        EBInverterBatchRequest request = new EBInverterBatchRequest(params);
+        eventBus.post(request);
+        return (Map) ((EBResponseOK) request.getResponse()).data;
+    }
+
+    @Test
+    public void shouldAnswerABatchFromTheCacheAndOneBusSession() throws Exception {
+        AResp_CumulatedEnergy energy = new AResp_CumulatedEnergy();
+        energy.setLongParam(3000);
+        when(firstBus.acquireCumulatedEnergy(anyInt(), any(AuroraCumEnergyEnum.class))).thenReturn(energy);
+        read(2);
+
+        Map result = batchRead(2, "dspData:gridPowerAll,cumEnergy:daily,bad");
+
+        assertEquals(3, result.size());
+        EBResponseOK power = (EBResponseOK) result.get("dspData:gridPowerAll");
+        assertEquals(100, Float.parseFloat((String) power.data), 0.001);
+        assertTrue(power.age < 1000);
+        EBResponseOK daily = (EBResponseOK) result.get("cumEnergy:daily");
+        assertEquals(3000, Float.parseFloat((String) daily.data), 0.001);
+        assertEquals(0L, daily.age.longValue());
+        assertEquals(1, ((EBResponseNOK) result.get("bad")).error.code.intValue());
+        verify(firstBus, times(1)).acquireDspValue(anyInt(), any(AuroraDspRequestEnum.class));
+        assertTrue(new EBResponseOK(result).toJson().contains("\"cumEnergy:daily\":{\"data\""));
+    }
+
+    @Test
+    public void shouldStopTheBusSessionAtTheFirstTimeout() throws Exception {
+        AResp_DspData timeout = new AResp_DspData();
+        timeout.setErrorCode(ResponseErrorEnum.TIMEOUT);
+        when(firstBus.acquireDspValue(anyInt(), any(AuroraDspRequestEnum.class))).thenReturn(timeout);
+
+        Map result = batchRead(2, "dspData:gridPowerAll,cumEnergy:daily");
+
+        assertEquals(ResponseErrorEnum.TIMEOUT.get(), ((EBResponseNOK) result.get("dspData:gridPowerAll")).error.code.intValue());
+        assertEquals(ResponseErrorEnum.TIMEOUT.get(), ((EBResponseNOK) result.get("cumEnergy:daily")).error.code.intValue());
+        verify(firstBus, never()).acquireCumulatedEnergy(anyInt(), any(AuroraCumEnergyEnum.class));
+    }
+}
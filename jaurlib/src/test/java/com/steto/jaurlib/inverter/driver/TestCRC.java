@@ -56,5 +56,14 @@ public class TestCRC {
 
     }
 
+    @Test
+    public void shouldComputeCRCofAnArrayRange() {
+        byte[] testBuff = {0x00, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x99, (byte) 0xAA, (byte) 0xBB, (byte) 0xCC, 0x00};
+
+        assertEquals(0x8F51, MB_CRC.compute(testBuff, 1, 12));
+        assertEquals(new MB_CRC(new byte[]{(byte) 0x99, (byte) 0xAA}).getValue(), MB_CRC.compute(testBuff, 9, 2));
+        assertEquals(0, MB_CRC.compute(testBuff, 3, 0));
+    }
+
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,66 @@
+package com.steto.jaurlib.jfr;
+
+import com.steto.jaurlib.AuroraDriver;
+import com.steto.jaurlib.request.AuroraDspRequestEnum;
+import com.steto.jaurlib.request.AuroraRequestFactory;
+import com.steto.jaurlib.response.AuroraResponseFactory;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import jssc.SerialPort;
+import jssc.SerialPortTimeoutException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestBusTransactionEvent {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldRecordDriverTransactions() throws Exception {
+        SerialPort serialPort = mock(SerialPort.class);
+        when(serialPort.readBytes(anyInt(), anyInt())).thenThrow(new SerialPortTimeoutException("test", "readBytes", 2000));
+        AuroraDriver auroraDriver = new AuroraDriver(serialPort, new AuroraRequestFactory(), new AuroraResponseFactory());
+        File dump = new File(tempFolder.getRoot(), "bus.jfr");
+
+        Recording recording = new Recording();
+        try {
+            recording.enable(BusTransactionEvent.class).withoutThreshold();
+            recording.start();
+            auroraDriver.acquireDspValue(2, AuroraDspRequestEnum.GRID_POWER_ALL);
+            auroraDriver.acquireDspValue(3, AuroraDspRequestEnum.GRID_POWER_ALL);
+            recording.stop();
+            recording.dump(dump.toPath());
+        } finally {
+            recording.close();
+        }
+
+        List<RecordedEvent> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump.toPath())) {
+            if (event.getEventType().getName().equals("com.steto.jaurlib.BusTransaction")) {
+                events.add(event);
+            }
+        }
+        assertEquals(2, events.size());
+        RecordedEvent event = events.get(1);
+        assertEquals(3, event.getInt("address"));
+        assertEquals("GETDSP", event.getString("command"));
+        assertEquals(AuroraDspRequestEnum.GRID_POWER_ALL.get(), event.getInt("subcode"));
+        assertEquals(10, event.getInt("requestBytes"));
+        assertEquals(0, event.getInt("responseBytes"));
+        assertEquals("TIMEOUT", event.getString("outcome"));
+        assertTrue(event.getDuration().toNanos() > 0);
+    }
+}
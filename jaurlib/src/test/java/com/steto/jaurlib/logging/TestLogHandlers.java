@@ -0,0 +1,166 @@
+package com.steto.jaurlib.logging;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.*;
+
+import static org.junit.Assert.*;
+
+public class TestLogHandlers {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private String read(File file) throws Exception {
+        return file.exists() ? new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8")) : "";
+    }
+
+    private RingFileHandler ringHandler(long limit, int count, int bufferSize) throws Exception {
+        RingFileHandler result = new RingFileHandler(new File(tempFolder.getRoot(), "log/test.log").getAbsolutePath(), limit, count, bufferSize, 60000, Level.WARNING);
+        result.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                return formatMessage(record) + "\n";
+            }
+        });
+        return result;
+    }
+
+    @Test
+    public void shouldBufferUntilFlush() throws Exception {
+        RingFileHandler handler = ringHandler(100000, 2, 4096);
+
+        handler.publish(new LogRecord(Level.INFO, "first"));
+        handler.publish(new LogRecord(Level.FINE, "second"));
+        assertEquals("", read(handler.currentFile()));
+
+        handler.publish(new LogRecord(Level.WARNING, "third"));
+        assertEquals("first\nsecond\nthird\n", read(handler.currentFile()));
+
+        handler.publish(new LogRecord(Level.INFO, "fourth"));
+        handler.close();
+        assertEquals("first\nsecond\nthird\nfourth\n", read(handler.currentFile()));
+    }
+
+    @Test
+    public void shouldReuseFilesAsARing() throws Exception {
+        RingFileHandler handler = ringHandler(2048, 3, 1024);
+        String line = String.format("%099d", 0);
+        for (int i = 0; i < 200; i++) {
+            handler.publish(new LogRecord(Level.INFO, line));
+        }
+        handler.close();
+
+        long total = 0;
+        for (int i = 0; i < 3; i++) {
+            long length = handler.file(i).length();
+            assertTrue("file " + i + " is " + length, length > 0 && length <= 2048);
+            assertEquals(0, length % 100);
+            total += length;
+        }
+        assertFalse(handler.file(3).exists());
+        assertTrue(total < 200 * 100);
+    }
+
+    @Test
+    public void shouldAppendToTheNewestFileAfterRestart() throws Exception {
+        RingFileHandler handler = ringHandler(100000, 3, 1024);
+        handler.publish(new LogRecord(Level.INFO, "before"));
+        handler.close();
+
+        handler = ringHandler(100000, 3, 1024);
+        handler.publish(new LogRecord(Level.INFO, "after"));
+        handler.close();
+
+        assertEquals("before\nafter\n", read(handler.file(0)));
+    }
+
+    @Test
+    public void shouldPublishInOrderOnAnotherThread() throws Exception {
+        final List<String> messages = new ArrayList<>();
+        final List<String> threads = new ArrayList<>();
+        Handler target = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(getFormatter().formatMessage(record) + "@" + record.getSourceMethodName());
+                threads.add(Thread.currentThread().getName());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        target.setFormatter(new SimpleFormatter());
+        AsyncHandler handler = new AsyncHandler(target, 100);
+        Logger logger = Logger.getLogger("TestAsyncHandler");
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+        try {
+            for (int i = 0; i < 10; i++) {
+                logger.log(Level.INFO, "message {0}", i);
+            }
+            handler.flush();
+        } finally {
+            logger.removeHandler(handler);
+            handler.close();
+        }
+
+        assertEquals(10, messages.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("message " + i + "@shouldPublishInOrderOnAnotherThread", messages.get(i));
+            assertEquals("async-log", threads.get(i));
+        }
+        assertEquals(0, handler.getDropped());
+    }
+
+    @Test
+    public void shouldDropWhenTheQueueIsFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        Handler target = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        AsyncHandler handler = new AsyncHandler(target, 2);
+        handler.publish(new LogRecord(Level.INFO, "taken"));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            handler.publish(new LogRecord(Level.INFO, "queued " + i));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(3, handler.getDropped());
+
+        release.countDown();
+        handler.close();
+    }
+}
@@ -0,0 +1,108 @@
+package com.steto.jaurlib.metrics;
+
+import com.steto.jaurlib.AuroraDriver;
+import com.steto.jaurlib.request.AuroraDspRequestEnum;
+import com.steto.jaurlib.request.AuroraRequestFactory;
+import com.steto.jaurlib.response.AuroraResponseFactory;
+import com.steto.jaurlib.response.ResponseErrorEnum;
+import jssc.SerialPort;
+import jssc.SerialPortTimeoutException;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestBusStatistics {
+
+    BusStatistics busStatistics = new BusStatistics();
+
+    @Test
+    public void shouldMapLatenciesToBuckets() {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 100, 1000, 12345, 999999, 16777215};
+        for (long value : values) {
+            int bucket = BusStatistics.bucket(value);
+            assertTrue(value + " below its bucket", bucket == 0 || BusStatistics.bucketUpperBound(bucket - 1) <= value);
+            assertTrue(value + " above its bucket", value < BusStatistics.bucketUpperBound(bucket));
+            assertTrue(BusStatistics.bucketUpperBound(bucket) <= value * 1.125 + 1);
+        }
+        assertEquals(BusStatistics.BUCKETS - 1, BusStatistics.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void shouldReportPercentilesPerCommand() {
+        for (int i = 1; i <= 100; i++) {
+            busStatistics.record(2, 59, 3, ResponseErrorEnum.NONE, i * 1000000L, 10, 8);
+        }
+        busStatistics.record(2, 59, 3, ResponseErrorEnum.CRC, 5000000L, 10, 8);
+        busStatistics.record(2, 59, 3, ResponseErrorEnum.TIMEOUT, 2000000000L, 10, 0);
+        busStatistics.record(2, 59, 21, ResponseErrorEnum.NONE, 40000000L, 10, 8);
+        busStatistics.record(3, 50, 0, ResponseErrorEnum.UNKNOWN, 1000000L, 10, 0);
+
+        List<CommandStatistics> snapshot = busStatistics.snapshot();
+
+        assertEquals(3, snapshot.size());
+        CommandStatistics gridPower = find(snapshot, 2, 59, 3);
+        assertEquals("GETDSP", gridPower.command);
+        assertEquals(102, gridPower.transactions);
+        assertEquals(1, gridPower.crcErrors);
+        assertEquals(1, gridPower.timeouts);
+        assertEquals(1020, gridPower.bytesSent);
+        assertEquals(808, gridPower.bytesReceived);
+        assertEquals(50, gridPower.p50Ms, 50 * 0.125);
+        assertEquals(95, gridPower.p95Ms, 95 * 0.125);
+        assertEquals(99, gridPower.p99Ms, 99 * 0.125);
+        assertEquals(100, gridPower.maxMs, 0.001);
+        assertEquals(2.0 / 102, gridPower.errorRate(), 1e-9);
+        assertEquals(40, find(snapshot, 2, 59, 21).p99Ms, 40 * 0.125);
+        assertEquals(1, find(snapshot, 3, 50, 0).unknownErrors);
+    }
+
+    @Test
+    public void shouldUseOverflowSlotWhenFull() {
+        for (int subcode = 0; subcode < 256; subcode++) {
+            busStatistics.record(2, 59, subcode, ResponseErrorEnum.NONE, 1000000L, 10, 8);
+        }
+        List<CommandStatistics> snapshot = busStatistics.snapshot();
+
+        assertEquals(BusStatistics.MAX_KEYS + 1, snapshot.size());
+        CommandStatistics overflow = find(snapshot, -1, -1, -1);
+        assertEquals(256 - BusStatistics.MAX_KEYS, overflow.transactions);
+
+        busStatistics.reset();
+        assertTrue(busStatistics.snapshot().isEmpty());
+    }
+
+    @Test
+    public void shouldRecordDriverTransactions() throws Exception {
+        SerialPort serialPort = mock(SerialPort.class);
+        when(serialPort.readBytes(anyInt(), anyInt())).thenThrow(new SerialPortTimeoutException("test", "readBytes", 2000));
+        AuroraDriver auroraDriver = new AuroraDriver(serialPort, new AuroraRequestFactory(), new AuroraResponseFactory());
+
+        auroraDriver.acquireDspValue(2, AuroraDspRequestEnum.GRID_POWER_ALL);
+        auroraDriver.acquireDspValue(2, AuroraDspRequestEnum.GRID_POWER_ALL);
+
+        List<CommandStatistics> snapshot = auroraDriver.getBusStatistics().snapshot();
+        assertEquals(1, snapshot.size());
+        CommandStatistics stats = snapshot.get(0);
+        assertEquals(2, stats.address);
+        assertEquals("GETDSP", stats.command);
+        assertEquals(AuroraDspRequestEnum.GRID_POWER_ALL.get(), stats.subcode);
+        assertEquals(2, stats.timeouts);
+        assertEquals(20, stats.bytesSent);
+        assertEquals(0, stats.bytesReceived);
+    }
+
+    private static CommandStatistics find(List<CommandStatistics> snapshot, int address, int code, int subcode) {
+        for (CommandStatistics stats : snapshot) {
+            if (stats.address == address && stats.code == code && stats.subcode == subcode) {
+                return stats;
+            }
+        }
+        fail("No statistics for " + address + "/" + code + "/" + subcode);
+        return null;
+    }
+}
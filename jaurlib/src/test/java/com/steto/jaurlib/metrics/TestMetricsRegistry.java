@@ -0,0 +1,87 @@
+package com.steto.jaurlib.metrics;
+
+import com.steto.jaurlib.response.ResponseErrorEnum;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestMetricsRegistry {
+
+    MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    public void shouldCountConcurrentIncrements() throws Exception {
+        final Counter counter = registry.counter("test_total", "Test counter");
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        counter.inc();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(800000, counter.get());
+        assertSame(counter, registry.counter("test_total", "Test counter"));
+    }
+
+    @Test
+    public void shouldBucketObservations() {
+        Histogram histogram = registry.histogram("test_seconds", "Test histogram", new double[]{0.1, 1});
+        histogram.observe(0.05);
+        histogram.observe(0.1);
+        histogram.observe(0.5);
+        histogram.observe(3);
+
+        assertArrayEquals(new long[]{2, 3, 4}, histogram.cumulativeCounts());
+        assertEquals(4, histogram.count());
+        assertEquals(3.65, histogram.sum(), 1e-9);
+    }
+
+    @Test
+    public void shouldExportPrometheusText() {
+        registry.counter("requests_total", "Requests", "path", "/cmd", "outcome", "ok").add(3);
+        registry.gauge("power_watts", "Power").set(1500.5);
+        registry.histogram("latency_seconds", "Latency", new double[]{0.5}, "path", "a\"b").observe(0.25);
+
+        String text = registry.toPrometheus();
+
+        assertTrue(text.contains("# HELP requests_total Requests\n# TYPE requests_total counter\n"));
+        assertTrue(text.contains("requests_total{path=\"/cmd\",outcome=\"ok\"} 3\n"));
+        assertTrue(text.contains("# TYPE power_watts gauge\npower_watts 1500.5\n"));
+        assertTrue(text.contains("latency_seconds_bucket{path=\"a\\\"b\",le=\"0.5\"} 1\n"));
+        assertTrue(text.contains("latency_seconds_bucket{path=\"a\\\"b\",le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains("latency_seconds_sum{path=\"a\\\"b\"} 0.25\n"));
+        assertTrue(text.contains("latency_seconds_count{path=\"a\\\"b\"} 1\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTypeClash() {
+        registry.counter("clash", "Counter");
+        registry.gauge("clash", "Gauge");
+    }
+
+    @Test
+    public void shouldRecordBusTransactions() {
+        BusMetrics busMetrics = new BusMetrics(registry);
+        busMetrics.record(59, ResponseErrorEnum.NONE, 20000000);
+        busMetrics.record(59, ResponseErrorEnum.CRC, 30000000);
+        busMetrics.record(59, ResponseErrorEnum.NONE, 20000000);
+
+        assertEquals(2, registry.counter(BusMetrics.TRANSACTIONS, "", "command", "GETDSP", "outcome", "NONE").get());
+        assertEquals(1, registry.counter(BusMetrics.TRANSACTIONS, "", "command", "GETDSP", "outcome", "CRC").get());
+        assertEquals(0, registry.counter(BusMetrics.TRANSACTIONS, "", "command", "GETDSP", "outcome", "TIMEOUT").get());
+        assertEquals(3, registry.histogram(BusMetrics.TRANSACTION_SECONDS, "", Histogram.LATENCY_BUCKETS, "command", "GETDSP").count());
+    }
+}
@@ -0,0 +1,141 @@
+package com.steto.jaurlib.transport;
+
+import com.steto.jaurlib.AuroraDriver;
+import com.steto.jaurlib.request.AuroraDspRequestEnum;
+import com.steto.jaurlib.request.AuroraRequestFactory;
+import com.steto.jaurlib.response.AuroraResponse;
+import com.steto.jaurlib.response.AuroraResponseFactory;
+import com.steto.jaurlib.response.ResponseErrorEnum;
+import jssc.SerialPort;
+import jssc.SerialPortTimeoutException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestFrameJournal {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // answer to a DSP request: transmission state, global state, 230.5 as big endian float, crc
+    byte[] validAnswer = {0x00, 0x06, 0x43, 0x66, (byte) 0x80, 0x00, (byte) 0x00, (byte) 0x00};
+    byte[] corruptedAnswer = {0x00, 0x06, 0x43, 0x66, (byte) 0x80, 0x00, (byte) 0xAA, (byte) 0xBB};
+
+    private byte[] withCrc(byte[] frame) {
+        byte[] result = frame.clone();
+        int crc = 0xFFFF;
+        for (int i = 0; i < 6; i++) {
+            crc ^= result[i] & 0xFF;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x8408 : crc >>> 1;
+            }
+        }
+        crc = ~crc & 0xFFFF;
+        result[6] = (byte) crc;
+        result[7] = (byte) (crc >>> 8);
+        return result;
+    }
+
+    @Test
+    public void shouldAppendAndReadRecords() throws Exception {
+        String path = new File(tempFolder.getRoot(), "bus.journal").getAbsolutePath();
+        FrameJournal journal = new FrameJournal(path);
+        journal.append(JournalRecord.TRANSMITTED, 2, ResponseErrorEnum.NONE, new byte[]{1, 2, 3});
+        journal.append(JournalRecord.RECEIVED, 2, ResponseErrorEnum.CRC, new byte[]{4, 5});
+        journal.close();
+
+        journal = new FrameJournal(path);
+        journal.append(JournalRecord.RECEIVED, 3, ResponseErrorEnum.TIMEOUT, new byte[0]);
+        journal.close();
+
+        List<JournalRecord> records = FrameJournal.read(path);
+        assertEquals(3, records.size());
+        assertTrue(records.get(0).isTransmitted());
+        assertArrayEquals(new byte[]{1, 2, 3}, records.get(0).bytes);
+        assertEquals(ResponseErrorEnum.CRC, records.get(1).outcome);
+        assertArrayEquals(new byte[]{4, 5}, records.get(1).bytes);
+        assertEquals(3, records.get(2).address);
+        assertEquals(ResponseErrorEnum.TIMEOUT, records.get(2).outcome);
+        assertEquals(FrameJournal.FILE_HEADER_SIZE + 3 * FrameJournal.RECORD_HEADER_SIZE + 5, new File(path).length());
+    }
+
+    @Test
+    public void shouldGrowBeyondOneRegion() throws Exception {
+        String path = new File(tempFolder.getRoot(), "big.journal").getAbsolutePath();
+        FrameJournal journal = new FrameJournal(path);
+        byte[] frame = new byte[1000];
+        int count = 3 * FrameJournal.REGION_SIZE / frame.length;
+        for (int i = 0; i < count; i++) {
+            frame[0] = (byte) i;
+            journal.append(JournalRecord.TRANSMITTED, 2, ResponseErrorEnum.NONE, frame);
+        }
+        journal.close();
+
+        List<JournalRecord> records = FrameJournal.read(path);
+        assertEquals(count, records.size());
+        assertEquals((byte) (count - 1), records.get(count - 1).bytes[0]);
+    }
+
+    @Test
+    public void shouldReplayCapturedTraffic() throws Exception {
+        SerialPort serialPort = mock(SerialPort.class);
+        when(serialPort.readBytes(anyInt(), anyInt()))
+                .thenReturn(withCrc(validAnswer))
+                .thenReturn(corruptedAnswer)
+                .thenThrow(new SerialPortTimeoutException("test", "readBytes", 2000));
+        AuroraDriver recordingDriver = new AuroraDriver(serialPort, new AuroraRequestFactory(), new AuroraResponseFactory());
+        String path = new File(tempFolder.getRoot(), "capture.journal").getAbsolutePath();
+        recordingDriver.setJournal(new FrameJournal(path));
+
+        List<AuroraResponse> recorded = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            recorded.add(recordingDriver.acquireDspValue(2, AuroraDspRequestEnum.GRID_VOLTAGE_ALL));
+        }
+        recordingDriver.stop();
+
+        ReplayTransport replay = ReplayTransport.open(path, false);
+        assertEquals(6, replay.remaining());
+        AuroraDriver replayDriver = new AuroraDriver(null, new AuroraRequestFactory(), new AuroraResponseFactory());
+        replayDriver.setTransport(replay);
+        for (AuroraResponse expected : recorded) {
+            AuroraResponse response = replayDriver.acquireDspValue(2, AuroraDspRequestEnum.GRID_VOLTAGE_ALL);
+            assertEquals(expected.getErrorCode(), response.getErrorCode());
+            assertEquals(expected.getValue(), response.getValue());
+        }
+        assertEquals(ResponseErrorEnum.NONE, recorded.get(0).getErrorCode());
+        assertEquals(ResponseErrorEnum.CRC, recorded.get(1).getErrorCode());
+        assertEquals(ResponseErrorEnum.TIMEOUT, recorded.get(2).getErrorCode());
+        assertEquals(0, replay.remaining());
+        assertEquals(0, replay.mismatches());
+    }
+
+    @Test
+    public void shouldKeepOriginalTimingInRealTime() throws Exception {
+        List<JournalRecord> records = new ArrayList<>();
+        records.add(new JournalRecord(0, 0, JournalRecord.TRANSMITTED, 2, ResponseErrorEnum.NONE, new byte[]{1}));
+        records.add(new JournalRecord(0, 300000000L, JournalRecord.RECEIVED, 2, ResponseErrorEnum.NONE, new byte[]{2}));
+        ReplayTransport replay = new ReplayTransport(records, true);
+
+        long start = System.currentTimeMillis();
+        replay.write(new byte[]{1});
+        assertArrayEquals(new byte[]{2}, replay.read(1, 1000));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("elapsed " + elapsed, elapsed >= 290);
+        try {
+            replay.read(1, 1000);
+            fail();
+        } catch (BusTimeoutException e) {
+            assertEquals(0, replay.remaining());
+        }
+    }
+}
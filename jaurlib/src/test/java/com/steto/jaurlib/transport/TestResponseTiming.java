@@ -0,0 +1,58 @@
+package com.steto.jaurlib.transport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestResponseTiming {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void shouldUseTheInitialTimeoutBeforeAnyResponse() {
+        ResponseTiming timing = new ResponseTiming(100, 30, 2000);
+
+        assertEquals(100, timing.timeoutMs());
+        assertEquals(0, timing.getSamples());
+    }
+
+    @Test
+    public void shouldConvergeToTheResponseTime() {
+        ResponseTiming timing = new ResponseTiming(100, 10, 2000);
+        for (int i = 0; i < 100; i++) {
+            timing.record(20 * MS);
+        }
+
+        assertEquals(20, timing.getSmoothedMs(), 0.01);
+        assertEquals(0, timing.getDeviationMs(), 0.01);
+        assertEquals(20, timing.timeoutMs(), 1);
+    }
+
+    @Test
+    public void shouldWidenTheTimeoutWithJitter() {
+        ResponseTiming steady = new ResponseTiming(100, 10, 2000);
+        ResponseTiming jittery = new ResponseTiming(100, 10, 2000);
+        for (int i = 0; i < 100; i++) {
+            steady.record(20 * MS);
+            jittery.record((i % 2 == 0 ? 10 : 30) * MS);
+        }
+
+        assertTrue(jittery.timeoutMs() > steady.timeoutMs() + 20);
+    }
+
+    @Test
+    public void shouldClampTheTimeout() {
+        ResponseTiming timing = new ResponseTiming(100, 30, 500);
+        timing.record(MS);
+        for (int i = 0; i < 10; i++) {
+            timing.record(MS / 10);
+        }
+        assertEquals(30, timing.timeoutMs());
+
+        for (int i = 0; i < 10; i++) {
+            timing.record(5000 * MS);
+        }
+        assertEquals(500, timing.timeoutMs());
+    }
+}
@@ -5,16 +5,36 @@ import com.google.common.eventbus.Subscribe;
 import com.google.gson.Gson;
 import com.steto.jaurlib.AuroraDriver;
 import com.steto.jaurlib.cmd.InverterCommandFactory;
+import com.steto.jaurlib.discovery.BusDiscovery;
+import com.steto.jaurlib.discovery.InverterFingerprint;
 import com.steto.jaurlib.eventbus.*;
+import com.steto.jaurlib.metrics.BusStatistics;
+import com.steto.jaurlib.metrics.Gauge;
+import com.steto.jaurlib.metrics.Histogram;
+import com.steto.jaurlib.metrics.MetricsRegistry;
 import com.steto.jaurlib.request.AuroraRequestFactory;
 import com.steto.jaurlib.response.AResp_VersionId;
 import com.steto.jaurlib.response.AuroraResponse;
 import com.steto.jaurlib.response.AuroraResponseFactory;
 import com.steto.jaurlib.response.ResponseErrorEnum;
+import com.steto.jaurlib.transport.FrameJournal;
+import com.steto.jaurlib.transport.ReplayTransport;
+import com.steto.jaurmon.monitor.cmd.MonCmdBusStats;
+import com.steto.jaurmon.monitor.cmd.MonCmdFleet;
 import com.steto.jaurmon.monitor.cmd.MonCmdReadStatus;
+import com.steto.jaurmon.monitor.cmd.MonCmdTopology;
 import com.steto.jaurmon.monitor.cmd.MonReqLoadInvSettings;
 import com.steto.jaurmon.monitor.cmd.MonReqSaveInvSettings;
+import com.steto.jaurmon.monitor.export.TelemetryExporter;
+import com.steto.jaurmon.monitor.federation.FederationClient;
+import com.steto.jaurmon.monitor.federation.FederationParams;
+import com.steto.jaurmon.monitor.federation.FederationReceiver;
+import com.steto.jaurmon.monitor.jfr.AcquisitionTickEvent;
+import com.steto.jaurmon.monitor.jfr.EventBusDispatchEvent;
+import com.steto.jaurmon.monitor.mqtt.MqttParams;
+import com.steto.jaurmon.monitor.mqtt.MqttPublisher;
 import com.steto.jaurmon.monitor.pvoutput.PvOutputNew;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputSink;
 import com.steto.jaurmon.monitor.telegram.TelegramPlg;
 import com.steto.jaurmon.monitor.webserver.AuroraWebServer;
 import com.steto.jaurmon.utils.MyUtils;
@@ -26,6 +46,9 @@ import org.apache.commons.configuration.SubnodeConfiguration;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static com.steto.jaurlib.response.ResponseErrorEnum.*;
@@ -33,23 +56,31 @@ import static com.steto.jaurlib.response.ResponseErrorEnum.*;
 
 public class AuroraMonitor {
 
+    public static final String MEASURE_GAUGE = "jaurmon_measure";
+    public static final String DISPATCH_SECONDS = "jaurmon_eventbus_dispatch_seconds";
 
     private final EventBus theEventBus;
     protected HwSettings hwSettings;
     protected MonitorSettings settings;
-    TelemetriesQueue telemetriesQueue = new TelemetriesQueue(2);
+    protected final PollScheduler scheduler = new PollScheduler();
 
 
     private final String configurationFileName;
     protected Logger log = Logger.getLogger(getClass().getSimpleName());
-    protected float dailyCumulatedEnergy = 0;
     protected final AuroraDriver auroraDriver;
-    private InverterStatusEnum inverterStatus = InverterStatusEnum.OFFLINE;
+    protected final BusDiscovery busDiscovery;
+    private boolean autoAddress = false;
     private boolean pvOutputRunning = false;
-    private Date lastCheckDate;
-    private float dailyPeekPower = -1;
-    private long dailyPeekPowerTime = 0;
-    private boolean dailyPeekPowerSent = false;
+    private final InverterBus mainBus;
+    private final List<InverterBus> buses = new ArrayList<>();
+    private InverterState primary;
+    private volatile boolean polling = false;
+    private PlantAggregator plantAggregator;
+    private long lastTopologySync = 0;
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private final Histogram acquisitionTime = metrics.histogram("jaurmon_acquisition_seconds", "Duration of the periodic data acquisition", Histogram.LATENCY_BUCKETS);
+    private final Gauge inverterOnline = metrics.gauge("jaurmon_inverter_online", "1 if the inverter is answering, 0 otherwise");
+    private final Map<Class<?>, Histogram> dispatchTimes = new ConcurrentHashMap<>();
 
     public AuroraMonitor(EventBus aEventBus, AuroraDriver auroraDriver, String configFile, String dataLogDirPath) throws Exception {
 
@@ -58,14 +89,21 @@ public class AuroraMonitor {
 
         this.configurationFileName = configFile;
 
-        lastCheckDate = new Date();
-
         hwSettings = loadHwSettings();
         settings = loadSettings();
 
 
         hwSettings = hwSettings == null ? new HwSettings() : hwSettings;
         settings = settings == null ? new MonitorSettings() : settings;
+        busDiscovery = new BusDiscovery(auroraDriver);
+        autoAddress = hwSettings.inverterAddress == 0;
+        mainBus = new InverterBus("inverter", auroraDriver, scheduler);
+        buses.add(mainBus);
+        buildFleet();
+        loadBuses();
+        if (isFleet()) {
+            plantAggregator = new PlantAggregator(theEventBus);
+        }
 
 
         theEventBus.register(this);
@@ -74,10 +112,36 @@ public class AuroraMonitor {
     }
 
 
-    public void init() throws SerialPortException {
+    public void init() throws SerialPortException, IOException {
 
         log.info("Aurora Monitor Initializing...");
-        initInverterDriver(hwSettings.serialPort, hwSettings.serialPortBaudRate);
+        if (hwSettings.replayJournal.isEmpty()) {
+            initInverterDriver(hwSettings.serialPort, hwSettings.serialPortBaudRate);
+        } else {
+            auroraDriver.setTransport(ReplayTransport.open(hwSettings.replayJournal, hwSettings.replayRealTime));
+            log.info("Replaying bus traffic from: " + hwSettings.replayJournal);
+        }
+        if (!hwSettings.frameJournal.isEmpty()) {
+            auroraDriver.setJournal(new FrameJournal(hwSettings.frameJournal));
+            log.info("Recording bus traffic to: " + hwSettings.frameJournal);
+        }
+        if (autoAddress || isAllInverters()) {
+            busDiscovery.sweep();
+        }
+        if (autoAddress) {
+            resolveInverterAddress();
+        }
+        buildFleet();
+        busDiscovery.stop();
+        if (hwSettings.discoveryPeriodSec > 0) {
+            busDiscovery.start((long) (hwSettings.discoveryPeriodSec * 1000), 4);
+        }
+        for (InverterBus bus : buses) {
+            if (bus != mainBus && !bus.opened) {
+                initBusDriver(bus);
+                bus.opened = true;
+            }
+        }
 
         checkInverterStatus();
     }
@@ -88,6 +152,12 @@ public class AuroraMonitor {
         log.info("Serial Port initialized with values: " + serialPortName + ", " + serialPortBaudRate);
     }
 
+    protected void initBusDriver(InverterBus bus) throws SerialPortException {
+
+        bus.driver.setSerialPort(bus.serialPort, bus.serialPortBaudRate);
+        log.info("Serial Port of bus " + bus.name + " initialized with values: " + bus.serialPort + ", " + bus.serialPortBaudRate);
+    }
+
 
     protected HwSettings loadHwSettings() throws Exception {
 
@@ -100,6 +170,11 @@ public class AuroraMonitor {
             result.inverterAddress = inverterParams.getInt("inverterAddress");
             result.serialPortBaudRate = inverterParams.getInt("serialPortBaudRate");
             result.serialPort = inverterParams.getString("serialPort");
+            result.frameJournal = inverterParams.getString("frameJournal", result.frameJournal);
+            result.replayJournal = inverterParams.getString("replayJournal", result.replayJournal);
+            result.replayRealTime = inverterParams.getBoolean("replayRealTime", result.replayRealTime);
+            result.discoveryPeriodSec = inverterParams.getFloat("discoveryPeriodSec", result.discoveryPeriodSec);
+            result.inverterAddresses = String.join(",", inverterParams.getStringArray("inverterAddresses")).trim();
         } catch (Exception e) {
             String errMsg = "Error reading file: " + configurationFileName + ", " + e.getMessage();
 //            log.severe("Error reading file: " + configurationFileName + ", " + e.getMessage());
@@ -119,6 +194,9 @@ public class AuroraMonitor {
 
             result.inverterInterrogationPeriodSec = inverterParams.getFloat("inverterInterrogationPeriodSec");
             result.energyEstimationEnable = inverterParams.getBoolean("energyEstimationEnable");
+            result.extraDspMeasures = inverterParams.getStringArray("extraDspMeasures");
+            result.offlinePollPeriodSec = inverterParams.getFloat("offlinePollPeriodSec", result.offlinePollPeriodSec);
+            result.webServerPort = inverterParams.getInt("webServerPort", result.webServerPort);
         } catch (Exception e) {
             String errMsg = "Error reading file: " + configurationFileName + ", " + e.getMessage();
 //            log.severe("Error reading file: " + configurationFileName + ", " + e.getMessage());
@@ -133,7 +211,7 @@ public class AuroraMonitor {
 
 
         HierarchicalINIConfiguration iniConfObj = new HierarchicalINIConfiguration(configurationFileName);
-        iniConfObj.setProperty("inverter.inverterAddress", hwSettings.inverterAddress);
+        iniConfObj.setProperty("inverter.inverterAddress", autoAddress ? 0 : hwSettings.inverterAddress);
         iniConfObj.setProperty("inverter.serialPortBaudRate", hwSettings.serialPortBaudRate);
         iniConfObj.setProperty("inverter.serialPort", hwSettings.serialPort);
 
@@ -147,6 +225,7 @@ public class AuroraMonitor {
         HierarchicalINIConfiguration iniConfObj = new HierarchicalINIConfiguration(configurationFileName);
         iniConfObj.setProperty("monitor.inverterInterrogationPeriodSec", settings.inverterInterrogationPeriodSec);
         iniConfObj.setProperty("monitor.energyEstimationEnable", settings.energyEstimationEnable);
+        iniConfObj.setProperty("monitor.extraDspMeasures", settings.extraDspMeasures);
 
         iniConfObj.save();
 
@@ -162,51 +241,225 @@ public class AuroraMonitor {
     }
 
 
+    /**
+     * With no address configured, polls the first inverter online in the bus topology.
+     */
+    private void resolveInverterAddress() {
+        int address = busDiscovery.firstOnlineAddress();
+        if (address > 0 && address != hwSettings.inverterAddress) {
+            log.info("Polling the inverter found at address: " + address);
+            setInverterAddress(address);
+        }
+    }
+
+    /**
+     * With inverterAddresses set polls each inverter listed with its profile, otherwise the single inverter
+     * at inverterAddress as before.
+     */
+    public boolean isFleet() {
+        return !hwSettings.inverterAddresses.isEmpty();
+    }
+
+    /**
+     * Aggregates the plant out of the inverters reported on the event bus, local or not, as the central node
+     * of a federation does even without a local fleet.
+     */
+    public void aggregatePlant() {
+        if (plantAggregator == null) {
+            plantAggregator = new PlantAggregator(theEventBus);
+        }
+    }
+
+    public int getWebServerPort() {
+        return settings.webServerPort;
+    }
+
+    private boolean isAllInverters() {
+        return "all".equalsIgnoreCase(hwSettings.inverterAddresses);
+    }
+
+    private void buildFleet() {
+        scheduler.clear();
+        scheduler.offlinePeriodSec = settings.offlinePollPeriodSec;
+        if (!isFleet()) {
+            primary = new InverterState(hwSettings.inverterAddress, settings.inverterInterrogationPeriodSec, settings.extraDspMeasures);
+            scheduler.add(primary);
+            return;
+        }
+        if (isAllInverters()) {
+            for (InverterFingerprint fingerprint : busDiscovery.getTopology()) {
+                scheduler.add(loadInverterProfile(fingerprint.address));
+            }
+        } else {
+            for (String address : hwSettings.inverterAddresses.split(",")) {
+                scheduler.add(loadInverterProfile(Integer.parseInt(address.trim())));
+            }
+        }
+        List<InverterState> inverters = scheduler.getInverters();
+        primary = inverters.isEmpty() ? null : inverters.get(0);
+        log.info("Polling inverters: " + inverters);
+    }
+
+    /**
+     * The profile of an inverter is read from the section [inverter_address], the missing keys from [monitor].
+     */
+    private InverterState loadInverterProfile(int address) {
+        InverterState result = new InverterState(address, settings.inverterInterrogationPeriodSec, settings.extraDspMeasures);
+        try {
+            HierarchicalINIConfiguration iniConfObj = new HierarchicalINIConfiguration(configurationFileName);
+            SubnodeConfiguration profile = iniConfObj.getSection("inverter_" + address);
+            result.periodSec = profile.getFloat("inverterInterrogationPeriodSec", result.periodSec);
+            if (profile.containsKey("extraDspMeasures")) {
+                result.extraDspMeasures = profile.getStringArray("extraDspMeasures");
+            }
+        } catch (Exception e) {
+            log.warning("Error reading the profile of inverter " + address + ", " + e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Reads the other RS485 lines of a fleet, a [bus_name] section each with serialPort, serialPortBaudRate
+     * and inverterAddresses. Telemetries identify the inverters by address, unique across the lines.
+     */
+    private void loadBuses() throws Exception {
+        HierarchicalINIConfiguration iniConfObj = new HierarchicalINIConfiguration(configurationFileName);
+        for (Object section : iniConfObj.getSections()) {
+            if (section == null || !section.toString().startsWith("bus_")) {
+                continue;
+            }
+            if (!isFleet()) {
+                log.warning("Ignoring section " + section + ", more buses need inverterAddresses in section inverter");
+                continue;
+            }
+            SubnodeConfiguration busParams = iniConfObj.getSection(section.toString());
+            PollScheduler busScheduler = new PollScheduler();
+            busScheduler.offlinePeriodSec = settings.offlinePollPeriodSec;
+            InverterBus bus = new InverterBus(section.toString().substring("bus_".length()), new AuroraDriver(null, new AuroraRequestFactory(), new AuroraResponseFactory()), busScheduler);
+            bus.serialPort = busParams.getString("serialPort");
+            bus.serialPortBaudRate = busParams.getInt("serialPortBaudRate", hwSettings.serialPortBaudRate);
+            for (String address : busParams.getStringArray("inverterAddresses")) {
+                int inverterAddress = Integer.parseInt(address.trim());
+                if (findInverter(inverterAddress) != null) {
+                    throw new Exception("Inverter address " + inverterAddress + " on more than one bus");
+                }
+                busScheduler.add(loadInverterProfile(inverterAddress));
+            }
+            buses.add(bus);
+            log.info("Polling bus: " + bus);
+        }
+    }
+
+    private InverterState findInverter(int address) {
+        for (InverterBus bus : buses) {
+            InverterState result = bus.scheduler.get(address);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    public List<InverterBus> getBuses() {
+        return new ArrayList<>(buses);
+    }
+
+    /**
+     * Routes the requests to the inverters of the other buses to their drivers.
+     */
+    public void routeInverterRequests(EventBusInverterAdapter adapter) {
+        for (InverterBus bus : buses) {
+            if (bus != mainBus) {
+                for (InverterState inverter : bus.scheduler.getInverters()) {
+                    adapter.addRoute(inverter.address, bus.driver);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the inverters found on the bus since the last check, polling all of them.
+     */
+    private void syncTopology() {
+        long now = System.currentTimeMillis();
+        if (!isAllInverters() || hwSettings.discoveryPeriodSec <= 0 || now - lastTopologySync < hwSettings.discoveryPeriodSec * 1000) {
+            return;
+        }
+        lastTopologySync = now;
+        for (InverterFingerprint fingerprint : busDiscovery.getTopology()) {
+            if (scheduler.get(fingerprint.address) == null) {
+                log.info("Polling the new inverter at address: " + fingerprint.address);
+                scheduler.add(loadInverterProfile(fingerprint.address));
+            }
+        }
+        if (primary == null && scheduler.size() > 0) {
+            primary = scheduler.getInverters().get(0);
+        }
+    }
+
     public void checkInverterStatus() {
+        for (InverterBus bus : buses) {
+            for (InverterState inverter : bus.scheduler.getInverters()) {
+                checkInverterStatus(bus, inverter);
+            }
+        }
+    }
+
+    private void checkInverterStatus(InverterBus bus, InverterState inverter) {
 
         AuroraResponse badResult = new AResp_VersionId();
         badResult.setErrorCode(UNKNOWN);
 
         AuroraResponse result;
         try {
-            result = auroraDriver.acquireVersionId(hwSettings.inverterAddress);
+            result = bus.driver.acquireVersionId(inverter.address);
         } catch (Exception e) {
             result = badResult;
         }
 
         result = result == null ? badResult : result;
 
-        log.fine("Check Status Result: " + result.getErrorCode());
-        updateInverterStatus(result.getErrorCode());
+        log.log(Level.FINE, "Check Status Result: {0}", result.getErrorCode());
+        updateInverterStatus(inverter, result.getErrorCode());
 
 
     }
 
-    private void updateInverterStatus(ResponseErrorEnum acquisitionOutcome) {
-
-        boolean correct = (acquisitionOutcome == NONE);
-        switch (inverterStatus) {
-            case OFFLINE:
-                inverterStatus = correct ? InverterStatusEnum.ONLINE : InverterStatusEnum.OFFLINE;
-                break;
-            case ONLINE:
-                inverterStatus = correct ? InverterStatusEnum.ONLINE : InverterStatusEnum.UNCERTAIN;
-                break;
-            case UNCERTAIN:
-                inverterStatus = correct ? InverterStatusEnum.ONLINE : InverterStatusEnum.OFFLINE;
-                break;
+    private void updateInverterStatus(InverterState inverter, ResponseErrorEnum acquisitionOutcome) {
 
+        InverterStatusEnum previousStatus = inverter.update(acquisitionOutcome);
+        InverterStatusEnum inverterStatus = inverter.getStatus();
+        inverterOnline.set(isInverterOnline() ? 1 : 0);
+        if (isFleet()) {
+            log.log(inverterStatus != previousStatus ? Level.INFO : Level.FINE, "Inverter " + inverter.address + " Status is :{0}", inverterStatus);
+        } else {
+            log.log(inverterStatus != previousStatus ? Level.INFO : Level.FINE, "Inverter Status is :{0}", inverterStatus);
         }
-        log.info("Inverter Status is :" + inverterStatus);
     }
 
 
     public void stop() {
-        auroraDriver.stop();
+        polling = false;
+        busDiscovery.stop();
+        for (InverterBus bus : buses) {
+            if (bus == mainBus || bus.opened) {
+                bus.driver.stop();
+            }
+        }
     }
 
+    /**
+     * @return true if the inverter, or any of the fleet, is online
+     */
     public boolean isInverterOnline() {
-        return inverterStatus == InverterStatusEnum.ONLINE || inverterStatus == InverterStatusEnum.UNCERTAIN;
+        for (InverterBus bus : buses) {
+            for (InverterState inverter : bus.scheduler.getInverters()) {
+                if (inverter.isOnline()) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     public boolean getPvOutputRunningStatus() {
@@ -238,6 +491,9 @@ public class AuroraMonitor {
 
     public void setInverterAddress(int aInverterAddress) {
         hwSettings.inverterAddress = aInverterAddress;
+        if (!isFleet() && primary != null) {
+            primary.address = aInverterAddress;
+        }
     }
 
     public void setInverterInterrogationPeriod(float inverterQueryPeriodSec) {
@@ -248,15 +504,27 @@ public class AuroraMonitor {
         settings.energyEstimationEnable = value;
     }
 
+    public String[] getExtraDspMeasures() {
+        return settings.extraDspMeasures;
+    }
+
+    public void setExtraDspMeasures(String[] measures) {
+        settings.extraDspMeasures = measures == null ? new String[0] : measures;
+    }
+
     public float getInverterInterrogationPeriod() {
         return settings.inverterInterrogationPeriodSec;
     }
 
 
     public float acquireInverterMeasure(String cmdCode, String cmdOpCode) throws InverterCRCException {
+        return acquireInverterMeasure(cmdCode, cmdOpCode, hwSettings.inverterAddress);
+    }
+
+    public float acquireInverterMeasure(String cmdCode, String cmdOpCode, int inverterAddress) throws InverterCRCException {
 
         float measure = 0;
-        EBInverterRequest ebInverterRequest = new EBInverterRequest(cmdCode, cmdOpCode, hwSettings.inverterAddress);
+        EBInverterRequest ebInverterRequest = new EBInverterRequest(cmdCode, cmdOpCode, inverterAddress);
         theEventBus.post(ebInverterRequest);
         if (ebInverterRequest.getResponse() instanceof EBResponseOK) {
             EBResponseOK ebResponse = (EBResponseOK) ebInverterRequest.getResponse();
@@ -274,23 +542,38 @@ public class AuroraMonitor {
     }
 
     public PeriodicInverterTelemetries acquireDataToBePublished() throws InverterCRCException, InverterTimeoutException {
+        return acquireDataToBePublished(hwSettings.inverterAddress, settings.extraDspMeasures);
+    }
+
+    public PeriodicInverterTelemetries acquireDataToBePublished(int inverterAddress, String[] extraDspMeasures) throws InverterCRCException, InverterTimeoutException {
 
-        log.info("Starting data acquisition from inverter");
+        log.fine("Starting data acquisition from inverter");
+        long start = System.nanoTime();
 
         PeriodicInverterTelemetries result = new PeriodicInverterTelemetries();
 
-        result.gridPowerAll = acquireInverterMeasure("dspData", "gridPowerAll");
+        result.gridPowerAll = acquireInverterMeasure("dspData", "gridPowerAll", inverterAddress);
 
-        result.cumulatedEnergy = acquireInverterMeasure("cumEnergy", "daily");
+        result.cumulatedEnergy = acquireInverterMeasure("cumEnergy", "daily", inverterAddress);
 
-        result.gridVoltageAll = acquireInverterMeasure("dspData", "gridVoltageAll");
+        result.gridVoltageAll = acquireInverterMeasure("dspData", "gridVoltageAll", inverterAddress);
 
-        result.inverterTemp = acquireInverterMeasure("dspData", "inverterTemp");
+        result.inverterTemp = acquireInverterMeasure("dspData", "inverterTemp", inverterAddress);
 
+        for (String measure : extraDspMeasures) {
+            try {
+                result.extraMeasures.put(measure, acquireInverterMeasure("dspData", measure, inverterAddress));
+            } catch (Exception e) {
+                log.warning("Error acquiring measure: " + measure + ", " + e.getMessage());
+            }
+        }
 
-        float deltaT = new Date().getTime() - result.timestamp;
-        deltaT /= 1000;
-        log.info("Data acquisition from inverter completed in " + deltaT + " sec: " + result);
+        acquisitionTime.observeNanos(System.nanoTime() - start);
+        if (log.isLoggable(Level.FINE)) {
+            float deltaT = new Date().getTime() - result.timestamp;
+            deltaT /= 1000;
+            log.fine("Data acquisition from inverter completed in " + deltaT + " sec: " + result);
+        }
 
 
         return result;
@@ -298,6 +581,56 @@ public class AuroraMonitor {
     }
 
 
+    /**
+     * Posts the message, recording how long the subscribers took to handle it.
+     */
+    private void dispatch(Object msg) {
+        EventBusDispatchEvent event = new EventBusDispatchEvent();
+        event.begin();
+        long start = System.nanoTime();
+        theEventBus.post(msg);
+        event.end();
+        if (event.shouldCommit()) {
+            event.eventType = msg.getClass().getSimpleName();
+            event.commit();
+        }
+        dispatchTime(msg.getClass()).observeNanos(System.nanoTime() - start);
+    }
+
+    private Histogram dispatchTime(Class<?> eventClass) {
+        Histogram result = dispatchTimes.get(eventClass);
+        if (result == null) {
+            result = metrics.histogram(DISPATCH_SECONDS, "Time spent dispatching monitor events to the subscribers", Histogram.LATENCY_BUCKETS,
+                    "event", eventClass.getSimpleName());
+            dispatchTimes.put(eventClass, result);
+        }
+        return result;
+    }
+
+    private void updateMeasureGauges(InverterState inverter, PeriodicInverterTelemetries telemetries) {
+        updateMeasureGauge(inverter, telemetries, "cumulatedEnergy", telemetries.cumulatedEnergy);
+        updateMeasureGauge(inverter, telemetries, "gridPowerAll", telemetries.gridPowerAll);
+        updateMeasureGauge(inverter, telemetries, "gridVoltageAll", telemetries.gridVoltageAll);
+        updateMeasureGauge(inverter, telemetries, "inverterTemp", telemetries.inverterTemp);
+        for (Map.Entry<String, Float> entry : telemetries.extraMeasures.entrySet()) {
+            updateMeasureGauge(inverter, telemetries, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void updateMeasureGauge(InverterState inverter, PeriodicInverterTelemetries telemetries, String measure, float value) {
+        Gauge gauge = inverter.measureGauges.get(measure);
+        if (gauge == null) {
+            String help = "Latest acquired measure";
+            if (telemetries.inverterAddress == PeriodicInverterTelemetries.PLANT) {
+                gauge = metrics.gauge(MEASURE_GAUGE, help, "measure", measure);
+            } else {
+                gauge = metrics.gauge(MEASURE_GAUGE, help, "measure", measure, "inverter", String.valueOf(telemetries.inverterAddress));
+            }
+            inverter.measureGauges.put(measure, gauge);
+        }
+        gauge.set(value);
+    }
+
     public void start() {
         Timer timer = new Timer(true);
         timer.schedule(new TimerTask() {
@@ -319,92 +652,123 @@ public class AuroraMonitor {
         log.info("Timer armed, 60 secs to start msg");
 
 
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                while (true) {
-                    try {
-
-                        Date actualDate = new Date();
-                        if (!MyUtils.sameDay(actualDate, lastCheckDate)) {
-                            dailyCumulatedEnergy = 0;
-                            telemetriesQueue.clear();
-                            dailyPeekPower = 0;
-                            log.info("It's a new day: Cumulated Energy RESET!");
-                        }
-                        lastCheckDate = actualDate;
-
-                        log.info("Acquiring new data from inverter...");
-                        PeriodicInverterTelemetries telemetries = acquireDataToBePublished();
-                        updateInverterStatus(NONE);
-
-                        boolean newMaximum = telemetries.gridPowerAll > dailyPeekPower;
-                        if (newMaximum) {
-                            dailyPeekPower = telemetries.gridPowerAll;
-                            dailyPeekPowerTime = telemetries.timestamp;
-                            dailyPeekPowerSent = false;
-                            log.info("New daily peek power: " + dailyPeekPower);
-
-                        }
-
-                        Calendar c = Calendar.getInstance();
-                        long now = c.getTimeInMillis();
-                        c.set(Calendar.HOUR_OF_DAY, 0);
-                        c.set(Calendar.MINUTE, 0);
-                        c.set(Calendar.SECOND, 0);
-                        c.set(Calendar.MILLISECOND, 0);
-                        long passed = now - c.getTimeInMillis();
-                        long secondsPassed = passed / 1000;
-
-
-                        if (secondsPassed > 3600 * 14 && (!dailyPeekPowerSent || newMaximum)) {
-                            log.fine("It's time to send a Peek Power " + dailyPeekPower);
-                            dailyPeekPowerSent = true;
-                            MonitorMsgDailyMaxPower monitorMsgDailyMaxPower = new MonitorMsgDailyMaxPower(dailyPeekPower, dailyPeekPowerTime);
-                            theEventBus.post(monitorMsgDailyMaxPower);
-                            log.info("Sent Msg: " + monitorMsgDailyMaxPower);
-                        }
-
-
-                        // fix energy calcutation when 0
-                        telemetriesQueue.add(telemetries);
-                        PeriodicInverterTelemetries fixedTelemetries = telemetriesQueue.fixedAverage();
-                        dailyCumulatedEnergy += fixedTelemetries.cumulatedEnergy;
-                        log.info("Energy Estimation (Wh), Measured: " + telemetries.cumulatedEnergy + ", Estimated: " + dailyCumulatedEnergy + ", difference: " + (telemetries.cumulatedEnergy - dailyCumulatedEnergy));
-                        if (settings.energyEstimationEnable) {
-                            log.info("Fixed Energy calculation, Last One: " + fixedTelemetries.cumulatedEnergy + ", Day Total: " + dailyCumulatedEnergy);
-                            telemetries.cumulatedEnergy = dailyCumulatedEnergy;
-                        }
-
-                        theEventBus.post(telemetries);
-                    } catch (InverterCRCException e) {
-                        updateInverterStatus(CRC);
-                    } catch (InverterTimeoutException e) {
-                        updateInverterStatus(TIMEOUT);
-                    } catch (Exception e) {
-                       log.severe(e.getMessage());
-
-                    } finally {
-                        try {
-                            long time2wait = (long) (settings.inverterInterrogationPeriodSec * 1000);
-                            switch (inverterStatus) {
-                                case ONLINE:
-                                    theEventBus.post(new MonitorMsgInverterStatus(true));
-                                    break;
-                                case OFFLINE:
-                                    theEventBus.post(new MonitorMsgInverterStatus(false));
-                                    break;
-                            }
-                            Thread.sleep(time2wait);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
+        polling = true;
+        for (final InverterBus bus : buses) {
+            bus.thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    pollBus(bus);
+                }
+            }, "bus-" + bus.name);
+            bus.thread.start();
+        }
+
+    }
+
+    /**
+     * Loop of the thread owning the bus, the only one polling its inverters.
+     */
+    private void pollBus(InverterBus bus) {
+        bus.scheduler.restart(System.nanoTime());
+        while (polling) {
+            try {
+                Date actualDate = new Date();
+                if (!MyUtils.sameDay(actualDate, bus.lastCheckDate)) {
+                    for (InverterState inverter : bus.scheduler.getInverters()) {
+                        inverter.newDay();
                     }
+                    log.info("It's a new day: Cumulated Energy RESET!");
+                }
+                bus.lastCheckDate = actualDate;
+                if (bus == mainBus) {
+                    syncTopology();
+                }
 
+                InverterState inverter = bus.scheduler.next(System.nanoTime());
+                if (inverter != null) {
+                    poll(bus, inverter);
+                } else {
+                    long time2wait = Math.min(bus.scheduler.nanosToNext(System.nanoTime()), TimeUnit.SECONDS.toNanos(1));
+                    TimeUnit.NANOSECONDS.sleep(time2wait);
                 }
+            } catch (Exception e) {
+                e.printStackTrace();
             }
-        }).start();
 
+        }
+    }
+
+    /**
+     * Acquires the telemetries of the inverter and schedules its next poll. In fleet mode the telemetries and
+     * the messages carry the inverter address, otherwise the PLANT one as the inverter is the whole plant.
+     */
+    private void poll(InverterBus bus, InverterState inverter) {
+        int messageAddress = isFleet() ? inverter.address : PeriodicInverterTelemetries.PLANT;
+        PeriodicInverterTelemetries telemetries = null;
+        AcquisitionTickEvent tick = new AcquisitionTickEvent();
+        tick.begin();
+        try {
+            if (!isFleet()) {
+                if (autoAddress && !isInverterOnline()) {
+                    resolveInverterAddress();
+                }
+                inverter.address = hwSettings.inverterAddress;
+                inverter.periodSec = settings.inverterInterrogationPeriodSec;
+                inverter.extraDspMeasures = settings.extraDspMeasures;
+            }
+
+            log.fine("Acquiring new data from inverter...");
+            telemetries = acquireDataToBePublished(inverter.address, inverter.extraDspMeasures);
+            telemetries.inverterAddress = messageAddress;
+            updateInverterStatus(inverter, NONE);
+            tick.outcome = NONE.name();
+            tick.gridPowerAll = telemetries.gridPowerAll;
+
+            MonitorMsgDailyMaxPower monitorMsgDailyMaxPower = inverter.updatePeak(telemetries, messageAddress);
+            if (monitorMsgDailyMaxPower != null) {
+                dispatch(monitorMsgDailyMaxPower);
+                log.info("Sent Msg: " + monitorMsgDailyMaxPower);
+            }
+
+            float dailyCumulatedEnergy = inverter.integrateEnergy(telemetries);
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Energy Estimation (Wh), Measured: " + telemetries.cumulatedEnergy + ", Estimated: " + dailyCumulatedEnergy + ", difference: " + (telemetries.cumulatedEnergy - dailyCumulatedEnergy));
+            }
+            if (settings.energyEstimationEnable) {
+                telemetries.cumulatedEnergy = dailyCumulatedEnergy;
+            }
+
+            updateMeasureGauges(inverter, telemetries);
+            dispatch(telemetries);
+        } catch (InverterCRCException e) {
+            updateInverterStatus(inverter, CRC);
+            tick.outcome = CRC.name();
+        } catch (InverterTimeoutException e) {
+            updateInverterStatus(inverter, TIMEOUT);
+            tick.outcome = TIMEOUT.name();
+        } catch (Exception e) {
+            log.severe(e.getMessage());
+            tick.outcome = UNKNOWN.name();
+
+        } finally {
+            try {
+                InverterStatusEnum inverterStatus = inverter.getStatus();
+                switch (inverterStatus) {
+                    case ONLINE:
+                        dispatch(new MonitorMsgInverterStatus(true, messageAddress));
+                        break;
+                    case OFFLINE:
+                        dispatch(new MonitorMsgInverterStatus(false, messageAddress));
+                        break;
+                }
+                tick.inverterStatus = inverterStatus.name();
+                tick.commit();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            inverter.completed(telemetries);
+            bus.scheduler.polled(inverter, System.nanoTime());
+        }
     }
 
     @Subscribe
@@ -420,6 +784,7 @@ public class AuroraMonitor {
             setSerialPortBaudRate(newSettings.serialPortBaudRate);
             setSerialPortName(newSettings.serialPort);
             setInverterAddress(newSettings.inverterAddress);
+            autoAddress = newSettings.inverterAddress == 0;
             init();
             saveHwSettingsConfiguration();
 
@@ -473,6 +838,59 @@ public class AuroraMonitor {
 
     }
 
+    @Subscribe
+    public void execCommand(MonCmdBusStats cmd) {
+        InverterBus bus = mainBus;
+        for (InverterBus candidate : buses) {
+            if (candidate.name.equals(cmd.getBus())) {
+                bus = candidate;
+            }
+        }
+        BusStatistics busStatistics = bus.driver.getBusStatistics();
+        if (busStatistics == null) {
+            cmd.response = new EBResponseNOK(-1, "Bus statistics not available");
+            return;
+        }
+        cmd.response = new EBResponseOK(busStatistics.snapshot());
+        if (cmd.isReset()) {
+            busStatistics.reset();
+        }
+    }
+
+    @Subscribe
+    public void execCommand(MonCmdFleet cmd) {
+        List<Map<String, Object>> inverters = new ArrayList<>();
+        for (InverterBus bus : buses) {
+            for (InverterState inverter : bus.scheduler.getInverters()) {
+                inverters.add(inverterState(bus, inverter));
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("inverters", inverters);
+        if (plantAggregator != null) {
+            result.put("plant", plantAggregator.getTotals());
+            result.put("plantDailyPeakPower", plantAggregator.getDailyPeakPower());
+        }
+        cmd.response = new EBResponseOK(result);
+    }
+
+    private Map<String, Object> inverterState(InverterBus bus, InverterState inverter) {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("bus", bus.name);
+        state.put("address", inverter.address);
+        state.put("periodSec", inverter.periodSec);
+        state.put("status", inverter.getStatus().name());
+        state.put("polls", inverter.getPolls());
+        state.put("dailyPeakPower", inverter.getDailyPeakPower());
+        state.put("telemetries", inverter.getLastTelemetries());
+        return state;
+    }
+
+    @Subscribe
+    public void execCommand(MonCmdTopology cmd) {
+        cmd.response = new EBResponseOK(cmd.isSweep() ? busDiscovery.sweep() : busDiscovery.getTopology());
+    }
+
     public static void main(String[] args) throws Exception {
 
         Logger log = Logger.getLogger("mainLogger");
@@ -507,14 +925,54 @@ public class AuroraMonitor {
 
             AuroraMonitor auroraMonitor = new AuroraMonitor(theEventBus, auroraDriver, configurationFileName, logDirectoryPath);
             EventBusInverterAdapter eventBusInverterAdapter = new EventBusInverterAdapter(theEventBus, auroraDriver, new InverterCommandFactory());
-            auroraMonitor.init();
-            auroraMonitor.start();
-            PvOutputNew pvOutput = new PvOutputNew(configurationFileName, theEventBus);
+            auroraMonitor.routeInverterRequests(eventBusInverterAdapter);
+            FederationParams federationParams = FederationClient.loadParams(configurationFileName);
+            FederationReceiver federationReceiver = null;
+            if (federationParams.isCentral()) {
+                federationReceiver = new FederationReceiver(federationParams, theEventBus);
+                auroraMonitor.aggregatePlant();
+                if (!auroraMonitor.getSerialPortName().isEmpty() && !auroraMonitor.isFleet()) {
+                    log.warning("The local inverter of a federation central node needs inverterAddresses, its telemetries are taken for the plant ones");
+                }
+            }
+            if (federationParams.isCentral() && auroraMonitor.getSerialPortName().isEmpty()) {
+                log.info("No local inverters, federation central node only");
+            } else {
+                auroraMonitor.init();
+                auroraMonitor.start();
+            }
+            if (federationParams.isEdge()) {
+                new FederationClient(federationParams, theEventBus).start();
+            }
+            PvOutputNew pvOutput = new PvOutputNew(configurationFileName, theEventBus, false);
+            TelemetryExporter telemetryExporter = new TelemetryExporter(theEventBus);
+            telemetryExporter.addSink(new PvOutputSink(pvOutput), PvOutputSink.policy(pvOutput.getParams()));
+            List<PvOutputNew> inverterPvOutputs = new ArrayList<>();
+            for (Object section : new HierarchicalINIConfiguration(configurationFileName).getSections()) {
+                if (section != null && section.toString().startsWith("pvoutput_")) {
+                    PvOutputNew inverterPvOutput = new PvOutputNew(configurationFileName, theEventBus, false, Integer.parseInt(section.toString().substring("pvoutput_".length())));
+                    telemetryExporter.addSink(new PvOutputSink(inverterPvOutput), PvOutputSink.policy(inverterPvOutput.getParams()));
+                    inverterPvOutputs.add(inverterPvOutput);
+                }
+            }
+            telemetryExporter.loadSinks(configurationFileName);
+            telemetryExporter.start();
             pvOutput.start();
+            for (PvOutputNew inverterPvOutput : inverterPvOutputs) {
+                inverterPvOutput.start();
+            }
+            MqttParams mqttParams = MqttPublisher.loadParams(configurationFileName);
+            if (!mqttParams.brokerHost.isEmpty()) {
+                new MqttPublisher(mqttParams, theEventBus).start();
+            }
 
 
             log.info("Creating Web Server...");
-            AuroraWebServer auroraWebServer = new AuroraWebServer(8000, webDirectoryPath, theEventBus);
+            AuroraWebServer auroraWebServer = new AuroraWebServer(auroraMonitor.getWebServerPort(), webDirectoryPath, theEventBus);
+            if (federationReceiver != null) {
+                auroraWebServer.setFederationReceiver(federationReceiver);
+                federationReceiver.start();
+            }
             log.info("Starting Web Server...");
             new Thread(auroraWebServer).start();
             Thread.sleep(1000);
@@ -8,7 +8,22 @@ import java.util.Properties;
 public class HwSettings {
     public String serialPort = "/dev/tty";
     public int serialPortBaudRate = 19200;
+    /**
+     * 0 to use the first inverter found on the bus.
+     */
     public int inverterAddress = 2;
+    public String frameJournal = "";
+    public String replayJournal = "";
+    public boolean replayRealTime = false;
+    /**
+     * Period of the background refresh of the bus topology, 0 to disable it.
+     */
+    public float discoveryPeriodSec = 0;
+    /**
+     * Addresses of the inverters to poll, as "2,3,5", or "all" for every inverter found on the bus;
+     * empty to poll the single inverter at inverterAddress.
+     */
+    public String inverterAddresses = "";
 
     public Properties toProperties() {
         Properties result = new Properties();
@@ -0,0 +1,37 @@
+package com.steto.jaurmon.monitor;
+
+import com.steto.jaurlib.AuroraDriver;
+
+import java.util.Date;
+
+/**
+ * One RS485 line and the inverters on it: its driver, its scheduler and the thread owning the bus,
+ * the only one polling it. Lines are physically independent and are polled in parallel.
+ */
+public class InverterBus {
+
+    public final String name;
+    public final AuroraDriver driver;
+    public final PollScheduler scheduler;
+    public String serialPort = "";
+    public int serialPortBaudRate = 19200;
+
+    Date lastCheckDate = new Date();
+    boolean opened = false;
+    Thread thread;
+
+    public InverterBus(String name, AuroraDriver driver, PollScheduler scheduler) {
+        this.name = name;
+        this.driver = driver;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public String toString() {
+        return "InverterBus{" +
+                "name='" + name + '\'' +
+                ", serialPort='" + serialPort + '\'' +
+                ", inverters=" + scheduler.getInverters() +
+                '}';
+    }
+}
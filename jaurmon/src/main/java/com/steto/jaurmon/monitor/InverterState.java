@@ -0,0 +1,143 @@
+package com.steto.jaurmon.monitor;
+
+import com.steto.jaurlib.metrics.Gauge;
+import com.steto.jaurlib.response.ResponseErrorEnum;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One inverter polled by the monitor: its acquisition profile, status, daily energy estimation and peak power.
+ */
+public class InverterState {
+
+    public int address;
+    public float periodSec;
+    public String[] extraDspMeasures;
+
+    InverterStatusEnum status = InverterStatusEnum.OFFLINE;
+    float dailyCumulatedEnergy = 0;
+    final TelemetriesQueue telemetriesQueue = new TelemetriesQueue(2);
+    float dailyPeakPower = -1;
+    long dailyPeakPowerTime = 0;
+    boolean dailyPeakPowerSent = false;
+    long nextPollNanos = System.nanoTime();
+    long polls = 0;
+    PeriodicInverterTelemetries lastTelemetries;
+    // gauges of the measures, by measure, updated by the thread polling the inverter only
+    final Map<String, Gauge> measureGauges = new HashMap<>();
+
+    public InverterState(int address, float periodSec, String[] extraDspMeasures) {
+        this.address = address;
+        this.periodSec = periodSec;
+        this.extraDspMeasures = extraDspMeasures == null ? new String[0] : extraDspMeasures;
+    }
+
+    /**
+     * Updates the status with the outcome of an acquisition: online inverters become uncertain at the first
+     * error and offline at the second.
+     *
+     * @return the previous status
+     */
+    public synchronized InverterStatusEnum update(ResponseErrorEnum acquisitionOutcome) {
+        InverterStatusEnum previousStatus = status;
+        boolean correct = (acquisitionOutcome == ResponseErrorEnum.NONE);
+        switch (status) {
+            case OFFLINE:
+                status = correct ? InverterStatusEnum.ONLINE : InverterStatusEnum.OFFLINE;
+                break;
+            case ONLINE:
+                status = correct ? InverterStatusEnum.ONLINE : InverterStatusEnum.UNCERTAIN;
+                break;
+            case UNCERTAIN:
+                status = correct ? InverterStatusEnum.ONLINE : InverterStatusEnum.OFFLINE;
+                break;
+        }
+        return previousStatus;
+    }
+
+    public synchronized InverterStatusEnum getStatus() {
+        return status;
+    }
+
+    public synchronized boolean isOnline() {
+        return status == InverterStatusEnum.ONLINE || status == InverterStatusEnum.UNCERTAIN;
+    }
+
+    public synchronized PeriodicInverterTelemetries getLastTelemetries() {
+        return lastTelemetries;
+    }
+
+    public synchronized long getPolls() {
+        return polls;
+    }
+
+    public synchronized float getDailyPeakPower() {
+        return dailyPeakPower;
+    }
+
+    synchronized void newDay() {
+        dailyCumulatedEnergy = 0;
+        telemetriesQueue.clear();
+        dailyPeakPower = 0;
+    }
+
+    /**
+     * Integrates the energy of the telemetries, fixing the readouts at 0.
+     *
+     * @return the estimated energy of the day
+     */
+    synchronized float integrateEnergy(PeriodicInverterTelemetries telemetries) {
+        telemetriesQueue.add(telemetries);
+        dailyCumulatedEnergy += telemetriesQueue.fixedAverage().cumulatedEnergy;
+        return dailyCumulatedEnergy;
+    }
+
+    /**
+     * @param telemetries the telemetries acquired, null if the poll failed
+     */
+    synchronized void completed(PeriodicInverterTelemetries telemetries) {
+        polls++;
+        if (telemetries != null) {
+            lastTelemetries = telemetries;
+        }
+    }
+
+    /**
+     * Tracks the daily peak power: after 14:00 the peak is sent once, then again at each new maximum.
+     *
+     * @return the message to send, null if none
+     */
+    synchronized MonitorMsgDailyMaxPower updatePeak(PeriodicInverterTelemetries telemetries, int messageAddress) {
+        boolean newMaximum = telemetries.gridPowerAll > dailyPeakPower;
+        if (newMaximum) {
+            dailyPeakPower = telemetries.gridPowerAll;
+            dailyPeakPowerTime = telemetries.timestamp;
+            dailyPeakPowerSent = false;
+        }
+        Calendar c = Calendar.getInstance();
+        long now = c.getTimeInMillis();
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        long secondsPassed = (now - c.getTimeInMillis()) / 1000;
+        if (secondsPassed > 3600 * 14 && (!dailyPeakPowerSent || newMaximum)) {
+            dailyPeakPowerSent = true;
+            return new MonitorMsgDailyMaxPower(dailyPeakPower, dailyPeakPowerTime, messageAddress);
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "InverterState{" +
+                "address=" + address +
+                ", periodSec=" + periodSec +
+                ", status=" + status +
+                ", polls=" + polls +
+                ", dailyPeakPower=" + dailyPeakPower +
+                '}';
+    }
+}
@@ -6,16 +6,23 @@ package com.steto.jaurmon.monitor;
 public class MonitorMsgDailyMaxPower {
     public long timestamp=0;
     public float value = 0;
+    public int inverterAddress = PeriodicInverterTelemetries.PLANT;
 
     public MonitorMsgDailyMaxPower(float value, long time) {
         this.value = value;
         this.timestamp = time;
     }
 
+    public MonitorMsgDailyMaxPower(float value, long time, int inverterAddress) {
+        this(value, time);
+        this.inverterAddress = inverterAddress;
+    }
+
     @Override
     public String toString() {
         return "MonitorMsgDailyMaxPower{" +
-                "timestamp=" + timestamp +
+                "inverterAddress=" + inverterAddress +
+                ", timestamp=" + timestamp +
                 ", value=" + value +
                 '}';
     }
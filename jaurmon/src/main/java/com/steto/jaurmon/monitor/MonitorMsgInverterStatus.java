@@ -5,8 +5,14 @@ package com.steto.jaurmon.monitor;
  */
 public class MonitorMsgInverterStatus {
     public boolean isOnline= true;
+    public int inverterAddress = PeriodicInverterTelemetries.PLANT;
 
     public MonitorMsgInverterStatus(boolean isOnline) {
         this.isOnline = isOnline;
     }
+
+    public MonitorMsgInverterStatus(boolean isOnline, int inverterAddress) {
+        this.isOnline = isOnline;
+        this.inverterAddress = inverterAddress;
+    }
 }
@@ -8,4 +8,10 @@ public class MonitorSettings {
 
     public float inverterInterrogationPeriodSec;
     public boolean energyEstimationEnable;
+    public String[] extraDspMeasures = new String[0];
+    /**
+     * Polling period of the inverters offline, when longer than their interrogation period.
+     */
+    public float offlinePollPeriodSec = 0;
+    public int webServerPort = 8000;
 }
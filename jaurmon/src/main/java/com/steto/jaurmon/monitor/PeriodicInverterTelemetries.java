@@ -1,17 +1,26 @@
 package com.steto.jaurmon.monitor;
 
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Created by stefano on 18/01/16.
  */
 public class PeriodicInverterTelemetries {
 
+    /**
+     * Address of the plant totals, which with a single inverter are the telemetries of that inverter.
+     */
+    public static final int PLANT = 0;
+
+    public int inverterAddress = PLANT;
     public long timestamp= new Date().getTime();
     public float cumulatedEnergy=0;
     public float gridPowerAll=0;
     public float gridVoltageAll=0;
     public float inverterTemp=0;
+    public Map<String, Float> extraMeasures = new LinkedHashMap<>();
 
     public void setTimestamp(long time) {
         timestamp=time;
@@ -20,12 +29,14 @@ public class PeriodicInverterTelemetries {
     @Override
     public String toString() {
         return "PeriodicInverterTelemetries{" +
-                "date=" + new Date(timestamp) +
+                "inverterAddress=" + inverterAddress +
+                ", date=" + new Date(timestamp) +
                 ", timestamp=" + timestamp +
                 ", cumulatedEnergy=" + cumulatedEnergy +
                 ", gridPowerAll=" + gridPowerAll +
                 ", gridVoltageAll=" + gridVoltageAll +
                 ", inverterTemp=" + inverterTemp +
+                ", extraMeasures=" + extraMeasures +
                 '}';
     }
 }
@@ -0,0 +1,139 @@
+package com.steto.jaurmon.monitor;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.steto.jaurmon.utils.MyUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Streams the plant totals out of the telemetries of its inverters. Once every inverter online has reported
+ * since the last totals, publishes telemetries at the PLANT address with the daily energy and the power
+ * summed, grid voltage and temperature averaged over the inverters online; extra measures are per inverter only.
+ * Energy already produced today by an inverter gone offline is still counted.
+ * Also publishes the plant status, online while any inverter is, and the plant daily peak power.
+ */
+public class PlantAggregator {
+
+    private final EventBus theEventBus;
+    private final Map<Integer, PeriodicInverterTelemetries> latest = new TreeMap<>();
+    private final Map<Integer, Boolean> online = new TreeMap<>();
+    private final Set<Integer> reported = new HashSet<>();
+    private final InverterState plant = new InverterState(PeriodicInverterTelemetries.PLANT, 0, null);
+    private Boolean plantOnline = null;
+
+    public PlantAggregator(EventBus aEventBus) {
+        theEventBus = aEventBus;
+        aEventBus.register(this);
+    }
+
+    @Subscribe
+    public void handle(PeriodicInverterTelemetries telemetries) {
+        if (telemetries.inverterAddress == PeriodicInverterTelemetries.PLANT) {
+            return;
+        }
+        List<Object> messages = new ArrayList<>();
+        synchronized (this) {
+            latest.put(telemetries.inverterAddress, telemetries);
+            if (!online.containsKey(telemetries.inverterAddress)) {
+                online.put(telemetries.inverterAddress, true);
+            }
+            reported.add(telemetries.inverterAddress);
+            roundCompleted(messages);
+        }
+        post(messages);
+    }
+
+    @Subscribe
+    public void handle(MonitorMsgInverterStatus msg) {
+        if (msg.inverterAddress == PeriodicInverterTelemetries.PLANT) {
+            return;
+        }
+        List<Object> messages = new ArrayList<>();
+        synchronized (this) {
+            online.put(msg.inverterAddress, msg.isOnline);
+            boolean anyOnline = online.containsValue(true);
+            if (plantOnline == null || plantOnline != anyOnline) {
+                plantOnline = anyOnline;
+                messages.add(new MonitorMsgInverterStatus(anyOnline, PeriodicInverterTelemetries.PLANT));
+            }
+            if (!msg.isOnline) {
+                roundCompleted(messages);
+            }
+        }
+        post(messages);
+    }
+
+    private void roundCompleted(List<Object> messages) {
+        if (reported.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Integer, Boolean> entry : online.entrySet()) {
+            if (entry.getValue() && !reported.contains(entry.getKey())) {
+                return;
+            }
+        }
+        reported.clear();
+        PeriodicInverterTelemetries totals = totals();
+        if (plant.lastTelemetries != null && !MyUtils.sameDay(new Date(plant.lastTelemetries.timestamp), new Date(totals.timestamp))) {
+            plant.newDay();
+        }
+        plant.lastTelemetries = totals;
+        MonitorMsgDailyMaxPower peak = plant.updatePeak(totals, PeriodicInverterTelemetries.PLANT);
+        messages.add(totals);
+        if (peak != null) {
+            messages.add(peak);
+        }
+    }
+
+    private PeriodicInverterTelemetries totals() {
+        PeriodicInverterTelemetries result = new PeriodicInverterTelemetries();
+        result.inverterAddress = PeriodicInverterTelemetries.PLANT;
+        result.timestamp = 0;
+        for (PeriodicInverterTelemetries telemetries : latest.values()) {
+            result.timestamp = Math.max(result.timestamp, telemetries.timestamp);
+        }
+        Date today = new Date(result.timestamp);
+        int count = 0;
+        for (PeriodicInverterTelemetries telemetries : latest.values()) {
+            if (!MyUtils.sameDay(today, new Date(telemetries.timestamp))) {
+                continue;
+            }
+            result.cumulatedEnergy += telemetries.cumulatedEnergy;
+            if (online.get(telemetries.inverterAddress)) {
+                result.gridPowerAll += telemetries.gridPowerAll;
+                result.gridVoltageAll += telemetries.gridVoltageAll;
+                result.inverterTemp += telemetries.inverterTemp;
+                count++;
+            }
+        }
+        if (count > 0) {
+            result.gridVoltageAll /= count;
+            result.inverterTemp /= count;
+        }
+        return result;
+    }
+
+    private void post(List<Object> messages) {
+        for (Object message : messages) {
+            theEventBus.post(message);
+        }
+    }
+
+    /**
+     * @return the last plant totals published, null if none yet
+     */
+    public synchronized PeriodicInverterTelemetries getTotals() {
+        return plant.lastTelemetries;
+    }
+
+    public synchronized float getDailyPeakPower() {
+        return plant.getDailyPeakPower();
+    }
+}
@@ -0,0 +1,95 @@
+package com.steto.jaurmon.monitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Round-robin scheduling of the inverters sharing one bus. Each inverter is due a period of its profile after its last poll,
+ * an offline one offlinePeriodSec after when that is longer, so that inverters off for the night do not
+ * fill the bus with timeouts. Among the inverters due the next one after the last polled is chosen:
+ * with the bus saturated every inverter still gets its turn, whatever the periods.
+ */
+public class PollScheduler {
+
+    public float offlinePeriodSec = 0;
+
+    private final List<InverterState> inverters = new ArrayList<>();
+    private int cursor = 0;
+
+    /**
+     * The inverter is due at once.
+     */
+    public synchronized void add(InverterState inverter) {
+        inverter.nextPollNanos = System.nanoTime();
+        inverters.add(inverter);
+    }
+
+    /**
+     * Makes every inverter due at the time.
+     */
+    public synchronized void restart(long nanoTime) {
+        for (InverterState inverter : inverters) {
+            inverter.nextPollNanos = nanoTime;
+        }
+    }
+
+    public synchronized void clear() {
+        inverters.clear();
+        cursor = 0;
+    }
+
+    public synchronized List<InverterState> getInverters() {
+        return new ArrayList<>(inverters);
+    }
+
+    public synchronized InverterState get(int address) {
+        for (InverterState inverter : inverters) {
+            if (inverter.address == address) {
+                return inverter;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return inverters.size();
+    }
+
+    /**
+     * @return the next inverter due at the time, null if none is
+     */
+    public synchronized InverterState next(long nanoTime) {
+        int size = inverters.size();
+        for (int i = 0; i < size; i++) {
+            int index = (cursor + i) % size;
+            InverterState inverter = inverters.get(index);
+            if (inverter.nextPollNanos - nanoTime <= 0) {
+                cursor = (index + 1) % size;
+                return inverter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Schedules the next poll of the inverter one period after the end of this one, completed at endNanos.
+     */
+    public synchronized void polled(InverterState inverter, long endNanos) {
+        float periodSec = inverter.periodSec;
+        if (!inverter.isOnline() && offlinePeriodSec > periodSec) {
+            periodSec = offlinePeriodSec;
+        }
+        inverter.nextPollNanos = endNanos + (long) (periodSec * 1e9);
+    }
+
+    /**
+     * @return the nanoseconds until an inverter is due, 0 if one is already
+     */
+    public synchronized long nanosToNext(long nanoTime) {
+        long result = Long.MAX_VALUE;
+        for (InverterState inverter : inverters) {
+            result = Math.min(result, Math.max(0, inverter.nextPollNanos - nanoTime));
+        }
+        return result;
+    }
+}
@@ -1,6 +1,7 @@
 package com.steto.jaurmon.monitor;
 
 import java.util.*;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -38,18 +39,37 @@ public class TelemetriesQueue {
 
     }
 
+    /**
+     * Adds the telemetries sorting the queue once; beyond the maximum size the oldest ones are dropped.
+     */
+    public void addAll(List<PeriodicInverterTelemetries> telemetries) {
+        synchronized (dataList) {
+            dataList.addAll(telemetries);
+            Collections.sort(dataList, Timestamp);
+            int excess = dataList.size() - maxDim;
+            if (excess > 0) {
+                dataList.subList(0, excess).clear();
+            }
+        }
+    }
+
     public PeriodicInverterTelemetries average() {
 
         return average(0);
     }
 
     public PeriodicInverterTelemetries average(long sinceTime) {
-        log.info("Averaging telemetries since: " + new Date(sinceTime)) ;
+        boolean fine = log.isLoggable(Level.FINE);
+        if (fine) {
+            log.fine("Averaging telemetries since: " + new Date(sinceTime));
+        }
         PeriodicInverterTelemetries result = new PeriodicInverterTelemetries();
         int count = 0;
         for (PeriodicInverterTelemetries telemetry : dataList) {
             if (telemetry.timestamp >= sinceTime) {
-                log.fine("Adding telemetry "+telemetry);
+                if (fine) {
+                    log.fine("Adding telemetry " + telemetry);
+                }
                 count++;
                 result.gridPowerAll += telemetry.gridPowerAll;
                 result.gridVoltageAll += telemetry.gridVoltageAll;
@@ -63,10 +83,13 @@ public class TelemetriesQueue {
         result.gridVoltageAll /= count;
         result.inverterTemp /= count;
 
+        result.inverterAddress = dataList.get(dataList.size() - 1).inverterAddress;
         result.timestamp = dataList.get(dataList.size() - 1).timestamp;
         result.cumulatedEnergy = dataList.get(dataList.size() - 1).cumulatedEnergy;
 
-        log.fine("Average result of "+count+" telemetries:" + result);
+        if (fine) {
+            log.fine("Average result of " + count + " telemetries:" + result);
+        }
         return result;
     }
 
@@ -83,6 +106,7 @@ public class TelemetriesQueue {
     private float estimateEnergy() {
 
         float energy = 0;
+        boolean finer = log.isLoggable(Level.FINER);
 
         if (dataList.size() > 0) {
             for (int i = 1; i < dataList.size(); i++) {
@@ -91,22 +115,29 @@ public class TelemetriesQueue {
                 float deltaHours = (float) (deltaT / 3600.0);
                 float partialEnergy = powMed * deltaHours;
                 energy += partialEnergy;
-                log.finer("partial energy (Wh): " + partialEnergy + ", powMed: " + powMed + ", deltaT: " + deltaT);
+                if (finer) {
+                    log.finer("partial energy (Wh): " + partialEnergy + ", powMed: " + powMed + ", deltaT: " + deltaT);
+                }
             }
         }
 
-        log.fine("Estimated Energy: " + energy);
+        log.log(Level.FINE, "Estimated Energy: {0}", energy);
         return energy;
     }
 
     public void removeOlderThan(long timestamp) {
-        log.fine("Discarding telemetries since: "+new Date(timestamp));
+        boolean fine = log.isLoggable(Level.FINE);
+        if (fine) {
+            log.fine("Discarding telemetries since: " + new Date(timestamp));
+        }
         ListIterator<PeriodicInverterTelemetries> iterator = dataList.listIterator();
 //        while (iterator.hasNext() && iterator.next().timestamp < timestamp) {
         while (iterator.hasNext()) {
             PeriodicInverterTelemetries telem = iterator.next();
             if (telem.timestamp < timestamp) {
-                log.fine("Telemetry discarded: " + telem);
+                if (fine) {
+                    log.fine("Telemetry discarded: " + telem);
+                }
                 iterator.remove();
             }
         }
@@ -0,0 +1,24 @@
+package com.steto.jaurmon.monitor.cmd;
+
+import com.steto.jaurkit.EventBusRequest;
+
+import java.util.Map;
+
+/**
+ * Reads the bus statistics per address, command and subcode; with reset=true they are cleared after reading.
+ * With more buses, bus selects one by name, the [inverter] one by default.
+ */
+public class MonCmdBusStats extends EventBusRequest {
+
+    public MonCmdBusStats(Map<String, String> params) {
+        super(params);
+    }
+
+    public String getBus() {
+        return paramsMap == null ? null : paramsMap.get("bus");
+    }
+
+    public boolean isReset() {
+        return paramsMap != null && Boolean.parseBoolean(paramsMap.get("reset"));
+    }
+}
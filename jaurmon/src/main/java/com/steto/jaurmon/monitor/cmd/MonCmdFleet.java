@@ -0,0 +1,15 @@
+package com.steto.jaurmon.monitor.cmd;
+
+import com.steto.jaurkit.EventBusRequest;
+
+import java.util.Map;
+
+/**
+ * Reads the state of the inverters polled by the monitor and the plant totals.
+ */
+public class MonCmdFleet extends EventBusRequest {
+
+    public MonCmdFleet(Map<String, String> params) {
+        super(params);
+    }
+}
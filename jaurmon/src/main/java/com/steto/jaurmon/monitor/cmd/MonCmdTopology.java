@@ -0,0 +1,19 @@
+package com.steto.jaurmon.monitor.cmd;
+
+import com.steto.jaurkit.EventBusRequest;
+
+import java.util.Map;
+
+/**
+ * Reads the inverters found on the bus; with sweep=true all the addresses are probed again first.
+ */
+public class MonCmdTopology extends EventBusRequest {
+
+    public MonCmdTopology(Map<String, String> params) {
+        super(params);
+    }
+
+    public boolean isSweep() {
+        return paramsMap != null && Boolean.parseBoolean(paramsMap.get("sweep"));
+    }
+}
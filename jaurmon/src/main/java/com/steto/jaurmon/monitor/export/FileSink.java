@@ -0,0 +1,70 @@
+package com.steto.jaurmon.monitor.export;
+
+import au.com.bytecode.opencsv.CSVWriter;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Appends the telemetries to one csv file per day, one per inverter for a fleet:
+ * timestamp, cumulatedEnergy, gridPowerAll, gridVoltageAll, inverterTemp.
+ */
+public class FileSink implements TelemetrySink {
+
+    public static final String NAME = "file";
+
+    private final File directory;
+    private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+
+    public FileSink(String directoryPath) throws IOException {
+        directory = new File(directoryPath);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Error creating directory: " + directoryPath);
+        }
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void send(List<PeriodicInverterTelemetries> batch) throws Exception {
+        String currentFile = null;
+        CSVWriter writer = null;
+        try {
+            for (PeriodicInverterTelemetries telemetries : batch) {
+                String inverter = telemetries.inverterAddress == PeriodicInverterTelemetries.PLANT ? "" : telemetries.inverterAddress + "_";
+                String fileName = "telemetries_" + inverter + dayFormat.format(new Date(telemetries.timestamp)) + ".csv";
+                if (!fileName.equals(currentFile)) {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                    currentFile = fileName;
+                    writer = new CSVWriter(new BufferedWriter(new FileWriter(new File(directory, fileName), true)), ',', CSVWriter.NO_QUOTE_CHARACTER);
+                }
+                writer.writeNext(new String[]{
+                        Long.toString(telemetries.timestamp),
+                        Float.toString(telemetries.cumulatedEnergy),
+                        Float.toString(telemetries.gridPowerAll),
+                        Float.toString(telemetries.gridVoltageAll),
+                        Float.toString(telemetries.inverterTemp)});
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        // a file is open only while a batch is written
+    }
+}
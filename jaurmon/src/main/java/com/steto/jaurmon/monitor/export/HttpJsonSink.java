@@ -0,0 +1,81 @@
+package com.steto.jaurmon.monitor.export;
+
+import com.google.gson.Gson;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Posts every batch as a json array of telemetries.
+ * 2xx responses are successes, 4xx responses (except 408 and 429) are rejections, anything else is retried.
+ */
+public class HttpJsonSink implements TelemetrySink {
+
+    public static final String NAME = "http-json";
+    public static final int CONNECT_TIMEOUT_MS = 5000;
+    public static final int SOCKET_TIMEOUT_MS = 10000;
+
+    private final String url;
+    private final Gson gson = new Gson();
+    private final CloseableHttpClient httpClient;
+
+    public HttpJsonSink(String url) {
+        this.url = url;
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(1);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                .setConnectionRequestTimeout(CONNECT_TIMEOUT_MS)
+                .setSocketTimeout(SOCKET_TIMEOUT_MS)
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void send(List<PeriodicInverterTelemetries> batch) throws Exception {
+        HttpPost request = new HttpPost(url);
+        request.setEntity(new StringEntity(gson.toJson(batch), ContentType.APPLICATION_JSON));
+        CloseableHttpResponse response = httpClient.execute(request);
+        int statusCode;
+        try {
+            statusCode = response.getStatusLine().getStatusCode();
+            EntityUtils.consume(response.getEntity());
+        } finally {
+            response.close();
+        }
+        checkStatus(statusCode, url);
+    }
+
+    @Override
+    public void close() throws Exception {
+        httpClient.close();
+    }
+
+    static void checkStatus(int statusCode, String url) throws Exception {
+        if (statusCode >= 200 && statusCode < 300) {
+            return;
+        }
+        if (statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429) {
+            throw new TelemetryRejectedException("Response code: " + statusCode + " from: " + url);
+        }
+        throw new IOException("Response code: " + statusCode + " from: " + url);
+    }
+}
@@ -0,0 +1,156 @@
+package com.steto.jaurmon.monitor.export;
+
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import com.steto.jaurmon.utils.HttpUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the telemetries, extra DSP measures included, to an InfluxDB write endpoint in line protocol
+ * with millisecond timestamps (e.g. http://host:8086/write?db=solar, precision=ms is added when missing).
+ * Every batch is sent gzipped in a single POST.
+ */
+public class InfluxLineProtocolSink implements TelemetrySink {
+
+    public static final String NAME = "influx";
+
+    private final String url;
+    private final String measurement;
+    private final String tags;
+    private final StringBuilder lines = new StringBuilder(4096);
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * @param tags tag set appended to every point, e.g. "site=home,address=2", empty for none
+     */
+    public InfluxLineProtocolSink(String url, String measurement, String tags) {
+        this.url = withMsPrecision(url);
+        this.measurement = escape(measurement, false);
+        this.tags = tags == null ? "" : tags.trim();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(1);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(HttpJsonSink.CONNECT_TIMEOUT_MS)
+                .setConnectionRequestTimeout(HttpJsonSink.CONNECT_TIMEOUT_MS)
+                .setSocketTimeout(HttpJsonSink.SOCKET_TIMEOUT_MS)
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    /**
+     * InfluxDB reads the timestamps as ns unless told otherwise.
+     *
+     * @throws IllegalArgumentException if the url asks for a precision other than ms
+     */
+    static String withMsPrecision(String url) {
+        int queryStart = url.indexOf('?');
+        if (queryStart < 0) {
+            return url + "?precision=ms";
+        }
+        for (String param : url.substring(queryStart + 1).split("&")) {
+            if (param.startsWith("precision=")) {
+                if (!param.equals("precision=ms")) {
+                    throw new IllegalArgumentException("Timestamps are in ms, unsupported " + param + " in: " + url);
+                }
+                return url;
+            }
+        }
+        return url + (queryStart == url.length() - 1 ? "" : "&") + "precision=ms";
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void send(List<PeriodicInverterTelemetries> batch) throws Exception {
+        HttpPost request = new HttpPost(url);
+        ByteArrayEntity entity = new ByteArrayEntity(HttpUtils.gzip(encode(batch)));
+        entity.setContentType("text/plain; charset=utf-8");
+        request.setHeader("Content-Encoding", "gzip");
+        request.setEntity(entity);
+        CloseableHttpResponse response = httpClient.execute(request);
+        int statusCode;
+        try {
+            statusCode = response.getStatusLine().getStatusCode();
+            EntityUtils.consume(response.getEntity());
+        } finally {
+            response.close();
+        }
+        HttpJsonSink.checkStatus(statusCode, url);
+    }
+
+    @Override
+    public void close() throws Exception {
+        httpClient.close();
+    }
+
+    /**
+     * One line per telemetry, fields with a non finite value are left out.
+     * Not thread safe: the sink is used by its worker thread only.
+     */
+    public String encode(List<PeriodicInverterTelemetries> batch) {
+        lines.setLength(0);
+        for (PeriodicInverterTelemetries telemetries : batch) {
+            int lineStart = lines.length();
+            lines.append(measurement);
+            if (!tags.isEmpty()) {
+                lines.append(',').append(tags);
+            }
+            if (telemetries.inverterAddress != PeriodicInverterTelemetries.PLANT) {
+                lines.append(",inverter=").append(telemetries.inverterAddress);
+            }
+            int fields = 0;
+            fields = appendField("cumulatedEnergy", telemetries.cumulatedEnergy, fields);
+            fields = appendField("gridPowerAll", telemetries.gridPowerAll, fields);
+            fields = appendField("gridVoltageAll", telemetries.gridVoltageAll, fields);
+            fields = appendField("inverterTemp", telemetries.inverterTemp, fields);
+            if (telemetries.extraMeasures != null) {
+                for (Map.Entry<String, Float> entry : telemetries.extraMeasures.entrySet()) {
+                    if (entry.getValue() != null) {
+                        fields = appendField(escape(entry.getKey(), true), entry.getValue(), fields);
+                    }
+                }
+            }
+            if (fields == 0) {
+                lines.setLength(lineStart);
+                continue;
+            }
+            lines.append(' ').append(telemetries.timestamp).append('\n');
+        }
+        return lines.toString();
+    }
+
+    private int appendField(String key, float value, int fields) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return fields;
+        }
+        lines.append(fields == 0 ? ' ' : ',').append(key).append('=').append(value);
+        return fields + 1;
+    }
+
+    static String escape(String name, boolean escapeEquals) {
+        StringBuilder result = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == ',' || c == ' ' || (escapeEquals && c == '=')) {
+                result.append('\\');
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+}
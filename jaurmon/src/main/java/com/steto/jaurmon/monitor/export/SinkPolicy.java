@@ -0,0 +1,27 @@
+package com.steto.jaurmon.monitor.export;
+
+/**
+ * Queueing, batching and retry settings of a sink.
+ * Without an outbox directory the batches that cannot be delivered are retried from memory,
+ * up to queueCapacity telemetries.
+ */
+public class SinkPolicy {
+    public int queueCapacity = 1000;
+    public int batchSize = 50;
+    public long maxBatchAgeMs = 10000;
+    public long retryDelayMs = 1000;
+    public long maxRetryDelayMs = 5 * 60 * 1000;
+    public String outboxDirectory = null;
+
+    @Override
+    public String toString() {
+        return "SinkPolicy{" +
+                "queueCapacity=" + queueCapacity +
+                ", batchSize=" + batchSize +
+                ", maxBatchAgeMs=" + maxBatchAgeMs +
+                ", retryDelayMs=" + retryDelayMs +
+                ", maxRetryDelayMs=" + maxRetryDelayMs +
+                ", outboxDirectory='" + outboxDirectory + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,29 @@
+package com.steto.jaurmon.monitor.export;
+
+/**
+ * Snapshot of the delivery counters of a sink.
+ */
+public class SinkStatus {
+    public String name;
+    public int queued;
+    public int outboxFiles;
+    public long sentBatches;
+    public long sentTelemetries;
+    public long failedBatches;
+    public long rejectedTelemetries;
+    public long droppedTelemetries;
+
+    @Override
+    public String toString() {
+        return "SinkStatus{" +
+                "name='" + name + '\'' +
+                ", queued=" + queued +
+                ", outboxFiles=" + outboxFiles +
+                ", sentBatches=" + sentBatches +
+                ", sentTelemetries=" + sentTelemetries +
+                ", failedBatches=" + failedBatches +
+                ", rejectedTelemetries=" + rejectedTelemetries +
+                ", droppedTelemetries=" + droppedTelemetries +
+                '}';
+    }
+}
@@ -0,0 +1,274 @@
+package com.steto.jaurmon.monitor.export;
+
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers the telemetries of one sink on its own thread.
+ * Telemetries are batched by size or age; while the sink is failing, batches go to the outbox,
+ * or without one are kept in memory up to queueCapacity telemetries, and are replayed, oldest first,
+ * with an exponential backoff.
+ */
+public class SinkWorker implements Runnable {
+
+    private static final long MAX_POLL_MS = 1000;
+
+    protected Logger log;
+    private final TelemetrySink sink;
+    private final SinkPolicy policy;
+    private final BlockingQueue<PeriodicInverterTelemetries> queue;
+    private final TelemetryOutbox outbox;
+    private final List<PeriodicInverterTelemetries> pending = new ArrayList<>();
+    private final ArrayDeque<List<PeriodicInverterTelemetries>> retained = new ArrayDeque<>();
+    private int retainedTelemetries = 0;
+    private long pendingSince = 0;
+    private long retryDelayMs;
+    private long nextAttempt = 0;
+    private boolean outboxPending;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    private volatile long sentBatches = 0;
+    private volatile long sentTelemetries = 0;
+    private volatile long failedBatches = 0;
+    private volatile long rejectedTelemetries = 0;
+    private final AtomicLong droppedTelemetries = new AtomicLong();
+
+    public SinkWorker(TelemetrySink sink, SinkPolicy policy) throws IOException {
+        this.sink = sink;
+        this.policy = policy;
+        log = Logger.getLogger(getClass().getSimpleName() + "." + sink.name());
+        queue = new ArrayBlockingQueue<>(Math.max(1, policy.queueCapacity));
+        outbox = policy.outboxDirectory != null ? new TelemetryOutbox(policy.outboxDirectory) : null;
+        retryDelayMs = policy.retryDelayMs;
+        outboxPending = outbox != null && outbox.oldest() != null;
+    }
+
+    /**
+     * Never blocks: when the queue is full the telemetries are dropped.
+     */
+    public boolean offer(PeriodicInverterTelemetries telemetries) {
+        boolean queued = queue.offer(telemetries);
+        if (!queued) {
+            droppedTelemetries.incrementAndGet();
+            log.warning("Queue full, telemetries dropped: " + telemetries);
+        }
+        return queued;
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this, "sink-" + sink.name());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the worker after flushing what is queued to the sink or, failing that, to the outbox,
+     * then closes the sink.
+     */
+    public void stop() {
+        Thread current;
+        synchronized (this) {
+            running = false;
+            current = thread;
+            thread = null;
+        }
+        if (current != null) {
+            current.interrupt();
+            try {
+                current.join(policy.maxBatchAgeMs + 5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        log.info("Sink worker started, " + policy);
+        while (running) {
+            try {
+                step(pollTimeout(new Date().getTime()));
+            } catch (InterruptedException e) {
+                log.fine("Sink worker interrupted");
+            } catch (Exception e) {
+                log.log(Level.SEVERE, "Error delivering telemetries: " + e.getMessage(), e);
+            }
+        }
+        queue.drainTo(pending);
+        long now = new Date().getTime();
+        if (!retained.isEmpty()) {
+            nextAttempt = 0;
+            replayRetained(now);
+        }
+        if (!pending.isEmpty()) {
+            flush(now);
+        }
+        if (retainedTelemetries > 0) {
+            droppedTelemetries.addAndGet(retainedTelemetries);
+            log.warning(retainedTelemetries + " telemetries not delivered, dropped");
+        }
+        try {
+            sink.close();
+        } catch (Exception e) {
+            log.warning("Error closing sink: " + e.getMessage());
+        }
+        log.info("Sink worker stopped");
+    }
+
+    protected void step(long pollMs) throws InterruptedException {
+        PeriodicInverterTelemetries telemetries = queue.poll(pollMs, TimeUnit.MILLISECONDS);
+        long now = new Date().getTime();
+        if (telemetries != null) {
+            if (pending.isEmpty()) {
+                pendingSince = now;
+            }
+            pending.add(telemetries);
+            queue.drainTo(pending, Math.max(0, policy.batchSize - pending.size()));
+        }
+        if (pending.size() >= policy.batchSize || (!pending.isEmpty() && now - pendingSince >= policy.maxBatchAgeMs)) {
+            flush(now);
+        }
+        if (outboxPending && now >= nextAttempt) {
+            replayOutbox(now);
+        }
+        if (!retained.isEmpty() && now >= nextAttempt) {
+            replayRetained(now);
+        }
+    }
+
+    private long pollTimeout(long now) {
+        long timeout = MAX_POLL_MS;
+        if (!pending.isEmpty()) {
+            timeout = Math.min(timeout, pendingSince + policy.maxBatchAgeMs - now);
+        }
+        if (outboxPending || !retained.isEmpty()) {
+            timeout = Math.min(timeout, nextAttempt - now);
+        }
+        return Math.max(0, timeout);
+    }
+
+    private void flush(long now) {
+        List<PeriodicInverterTelemetries> batch = new ArrayList<>(pending);
+        pending.clear();
+        boolean backlog = now < nextAttempt || outboxPending || !retained.isEmpty();
+        if (backlog || !deliver(batch, now)) {
+            store(batch);
+        }
+    }
+
+    private void replayOutbox(long now) {
+        File file = outbox.oldest();
+        if (file == null) {
+            outboxPending = false;
+            return;
+        }
+        try {
+            List<PeriodicInverterTelemetries> batch = outbox.read(file);
+            if (batch.isEmpty() || deliver(batch, now)) {
+                outbox.remove(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.severe("Error reading outbox file: " + file + ", " + e.getMessage() + ", set aside: " + outbox.setAside(file));
+        }
+    }
+
+    /**
+     * Delivers the retained batches in order, up to the first failure.
+     */
+    private void replayRetained(long now) {
+        while (!retained.isEmpty() && deliver(retained.peekFirst(), now)) {
+            retainedTelemetries -= retained.pollFirst().size();
+        }
+    }
+
+    /**
+     * @return false if the batch should be retried
+     */
+    private boolean deliver(List<PeriodicInverterTelemetries> batch, long now) {
+        try {
+            sink.send(batch);
+            sentBatches++;
+            sentTelemetries += batch.size();
+            retryDelayMs = policy.retryDelayMs;
+            nextAttempt = 0;
+            return true;
+        } catch (TelemetryRejectedException e) {
+            rejectedTelemetries += batch.size();
+            log.warning(batch.size() + " telemetries rejected: " + e.getMessage());
+            return true;
+        } catch (Exception e) {
+            failedBatches++;
+            nextAttempt = now + retryDelayMs;
+            log.warning("Error sending " + batch.size() + " telemetries, next attempt in " + retryDelayMs + " ms: " + e.getMessage());
+            retryDelayMs = Math.min(retryDelayMs * 2, policy.maxRetryDelayMs);
+            return false;
+        }
+    }
+
+    private void store(List<PeriodicInverterTelemetries> batch) {
+        if (outbox == null) {
+            retain(batch);
+            return;
+        }
+        try {
+            outbox.append(batch);
+            outboxPending = true;
+        } catch (IOException e) {
+            droppedTelemetries.addAndGet(batch.size());
+            log.severe("Error writing " + batch.size() + " telemetries to the outbox: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps the batch for a retry, dropping the oldest telemetries beyond the queue capacity.
+     */
+    private void retain(List<PeriodicInverterTelemetries> batch) {
+        retained.addLast(batch);
+        retainedTelemetries += batch.size();
+        int capacity = Math.max(1, policy.queueCapacity);
+        while (retainedTelemetries > capacity) {
+            List<PeriodicInverterTelemetries> oldest = retained.peekFirst();
+            int excess = Math.min(retainedTelemetries - capacity, oldest.size());
+            oldest.subList(0, excess).clear();
+            if (oldest.isEmpty()) {
+                retained.pollFirst();
+            }
+            retainedTelemetries -= excess;
+            droppedTelemetries.addAndGet(excess);
+            log.warning("Retry buffer full, " + excess + " telemetries dropped");
+        }
+    }
+
+    public SinkStatus status() {
+        SinkStatus result = new SinkStatus();
+        result.name = sink.name();
+        result.queued = queue.size();
+        result.outboxFiles = outbox != null ? outbox.size() : 0;
+        result.sentBatches = sentBatches;
+        result.sentTelemetries = sentTelemetries;
+        result.failedBatches = failedBatches;
+        result.rejectedTelemetries = rejectedTelemetries;
+        result.droppedTelemetries = droppedTelemetries.get();
+        return result;
+    }
+
+    public TelemetrySink getSink() {
+        return sink;
+    }
+}
@@ -0,0 +1,108 @@
+package com.steto.jaurmon.monitor.export;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import org.apache.commons.configuration.HierarchicalINIConfiguration;
+import org.apache.commons.configuration.SubnodeConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Subscribes once to the inverter telemetries and hands them to every registered sink.
+ * Each sink has its own worker, so a slow or failing sink never delays the others or the acquisition.
+ */
+public class TelemetryExporter {
+
+    protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    private final List<SinkWorker> workers = new CopyOnWriteArrayList<>();
+    private boolean running = false;
+
+    public TelemetryExporter(EventBus aEventBus) {
+        aEventBus.register(this);
+    }
+
+    public synchronized SinkWorker addSink(TelemetrySink sink, SinkPolicy policy) throws IOException {
+        SinkWorker worker = new SinkWorker(sink, policy);
+        workers.add(worker);
+        if (running) {
+            worker.start();
+        }
+        log.info("Added sink: " + sink.name() + ", " + policy);
+        return worker;
+    }
+
+    /**
+     * Adds the sinks configured in the [export] section of the configuration file.
+     */
+    public void loadSinks(String configFileName) throws Exception {
+
+        HierarchicalINIConfiguration iniConfObj = new HierarchicalINIConfiguration(configFileName);
+        SubnodeConfiguration params = iniConfObj.getSection("export");
+
+        String outboxDirectory = params.getString("outboxDirectory", "");
+        String httpJsonUrl = params.getString("httpJsonUrl", "");
+        String fileDirectory = params.getString("fileDirectory", "");
+        String influxUrl = params.getString("influxUrl", "");
+
+        if (!httpJsonUrl.isEmpty()) {
+            SinkPolicy policy = loadPolicy(params, outboxDirectory, HttpJsonSink.NAME);
+            addSink(new HttpJsonSink(httpJsonUrl), policy);
+        }
+        if (!influxUrl.isEmpty()) {
+            SinkPolicy policy = loadPolicy(params, outboxDirectory, InfluxLineProtocolSink.NAME);
+            String measurement = params.getString("influxMeasurement", "inverter");
+            String tags = params.getString("influxTags", "");
+            addSink(new InfluxLineProtocolSink(influxUrl, measurement, tags), policy);
+        }
+        if (!fileDirectory.isEmpty()) {
+            SinkPolicy policy = loadPolicy(params, "", FileSink.NAME);
+            addSink(new FileSink(fileDirectory), policy);
+        }
+    }
+
+    static SinkPolicy loadPolicy(SubnodeConfiguration params, String outboxDirectory, String sinkName) {
+        SinkPolicy result = new SinkPolicy();
+        result.queueCapacity = params.getInt("queueCapacity", result.queueCapacity);
+        result.batchSize = params.getInt("batchSize", result.batchSize);
+        result.maxBatchAgeMs = (long) (params.getFloat("maxBatchAgeSec", result.maxBatchAgeMs / 1000f) * 1000);
+        if (!outboxDirectory.isEmpty()) {
+            result.outboxDirectory = outboxDirectory + File.separator + sinkName;
+        }
+        return result;
+    }
+
+    @Subscribe
+    public void handle(PeriodicInverterTelemetries telemetries) {
+        for (SinkWorker worker : workers) {
+            worker.offer(telemetries);
+        }
+    }
+
+    public synchronized void start() {
+        running = true;
+        for (SinkWorker worker : workers) {
+            worker.start();
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        for (SinkWorker worker : workers) {
+            worker.stop();
+        }
+    }
+
+    public List<SinkStatus> status() {
+        List<SinkStatus> result = new ArrayList<>();
+        for (SinkWorker worker : workers) {
+            result.add(worker.status());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+package com.steto.jaurmon.monitor.export;
+
+import com.google.gson.Gson;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import com.steto.jaurmon.utils.MyUtils;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Durable store for the batches a sink could not deliver.
+ * Every batch is a file holding one json telemetry per line; file names sort in arrival order.
+ */
+public class TelemetryOutbox {
+
+    static final String EXTENSION = ".json";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final Gson gson = new Gson();
+    private long sequence = 0;
+
+    public TelemetryOutbox(String directoryPath) throws IOException {
+        directory = new File(directoryPath);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Error creating outbox directory: " + directoryPath);
+        }
+    }
+
+    public synchronized void append(List<PeriodicInverterTelemetries> batch) throws IOException {
+        String fileName = String.format("%013d-%06d", new Date().getTime(), sequence++ % 1000000);
+        File temp = new File(directory, fileName + ".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF8));
+        try {
+            for (PeriodicInverterTelemetries telemetries : batch) {
+                out.write(gson.toJson(telemetries));
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(new File(directory, fileName + EXTENSION))) {
+            throw new IOException("Error writing outbox file: " + temp);
+        }
+    }
+
+    /**
+     * @return the oldest stored batch file, null if the outbox is empty
+     */
+    public File oldest() {
+        File[] files = MyUtils.selectFiles(directory.getAbsolutePath(), EXTENSION);
+        return files.length > 0 ? files[0] : null;
+    }
+
+    public int size() {
+        return MyUtils.selectFiles(directory.getAbsolutePath(), EXTENSION).length;
+    }
+
+    public List<PeriodicInverterTelemetries> read(File file) throws IOException {
+        List<PeriodicInverterTelemetries> result = new ArrayList<>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    result.add(gson.fromJson(line, PeriodicInverterTelemetries.class));
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    public boolean remove(File file) {
+        return file.delete();
+    }
+
+    /**
+     * Renames a file that cannot be read so that it is not replayed anymore.
+     */
+    public boolean setAside(File file) {
+        String name = file.getName();
+        if (name.endsWith(EXTENSION)) {
+            name = name.substring(0, name.length() - EXTENSION.length());
+        }
+        return file.renameTo(new File(directory, name + ".corrupted"));
+    }
+}
@@ -0,0 +1,11 @@
+package com.steto.jaurmon.monitor.export;
+
+/**
+ * Thrown by a sink when the destination refuses a batch that would be refused again if retried.
+ */
+public class TelemetryRejectedException extends Exception {
+
+    public TelemetryRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,28 @@
+package com.steto.jaurmon.monitor.export;
+
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+
+import java.util.List;
+
+/**
+ * Destination of the inverter telemetries handled by the TelemetryExporter.
+ * Each sink is called on its own worker thread, one batch at a time.
+ */
+public interface TelemetrySink {
+
+    String name();
+
+    /**
+     * Delivers a batch, oldest telemetries first.
+     *
+     * @throws TelemetryRejectedException if the destination refused the data, the batch is not retried
+     * @throws Exception                  if the batch could not be delivered and should be retried
+     */
+    void send(List<PeriodicInverterTelemetries> batch) throws Exception;
+
+    /**
+     * Releases the connections of the sink, called by its worker once stopped.
+     */
+    void close() throws Exception;
+
+}
@@ -0,0 +1,16 @@
+package com.steto.jaurmon.monitor.federation;
+
+/**
+ * Answer of the central node: the last sequence number of the stream it has applied.
+ */
+public class FederationAck {
+    public String node;
+    public String stream;
+    public long offset;
+
+    public FederationAck(String node, String stream, long offset) {
+        this.node = node;
+        this.stream = stream;
+        this.offset = offset;
+    }
+}
@@ -0,0 +1,18 @@
+package com.steto.jaurmon.monitor.federation;
+
+import java.util.List;
+
+/**
+ * Body of an ingest request: the records of a node, in sequence order.
+ */
+public class FederationBatch {
+    public String node;
+    public String stream;
+    public List<FederationRecord> records;
+
+    public FederationBatch(String node, String stream, List<FederationRecord> records) {
+        this.node = node;
+        this.stream = stream;
+        this.records = records;
+    }
+}
@@ -0,0 +1,307 @@
+package com.steto.jaurmon.monitor.federation;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.gson.Gson;
+import com.steto.jaurlib.metrics.Gauge;
+import com.steto.jaurlib.metrics.MetricsRegistry;
+import com.steto.jaurmon.monitor.MonitorMsgInverterStatus;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import com.steto.jaurmon.utils.HttpUtils;
+import org.apache.commons.configuration.HierarchicalINIConfiguration;
+import org.apache.commons.configuration.SubnodeConfiguration;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Edge side of the federation: journals the telemetries and the status changes of the inverters of this node and
+ * streams them to the central node in gzipped json batches. A batch leaves when batchSize records are journaled
+ * or the oldest is maxBatchAgeMs old. After a failure, and at start, the client asks the central node the last
+ * record it applied and resumes from there. The plant totals of an edge are left out: the central node
+ * computes them for the whole plant.
+ */
+public class FederationClient implements Runnable {
+
+    private static final long MAX_POLL_MS = 1000;
+    public static final int CONNECT_TIMEOUT_MS = 5000;
+    public static final int SOCKET_TIMEOUT_MS = 10000;
+
+    protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    private final FederationParams params;
+    private final FederationJournal journal;
+    private final BlockingQueue<FederationRecord> queue;
+    private final Gson gson = new Gson();
+    private final CloseableHttpClient httpClient;
+    private final Gauge backlog = MetricsRegistry.getDefault().gauge("jaurmon_federation_backlog", "Records journaled and not acknowledged yet by the central node");
+    private boolean synced = false;
+    private long pendingSince = 0;
+    private long retryDelayMs;
+    private long nextAttempt = 0;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    private volatile long sentBatches = 0;
+    private volatile long sentRecords = 0;
+    private volatile long failedBatches = 0;
+    private final AtomicLong droppedRecords = new AtomicLong();
+
+    public FederationClient(FederationParams params, EventBus aEventBus) throws IOException {
+        this.params = params;
+        journal = new FederationJournal(params.journalDirectory, params.journalCapacity);
+        queue = new ArrayBlockingQueue<>(Math.max(1, params.queueCapacity));
+        retryDelayMs = params.retryDelayMs;
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(1);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                .setConnectionRequestTimeout(CONNECT_TIMEOUT_MS)
+                .setSocketTimeout(SOCKET_TIMEOUT_MS)
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+        aEventBus.register(this);
+    }
+
+    public static FederationParams loadParams(String configFileName) throws Exception {
+
+        HierarchicalINIConfiguration iniConfObj = new HierarchicalINIConfiguration(configFileName);
+        SubnodeConfiguration params = iniConfObj.getSection("federation");
+        FederationParams result = new FederationParams();
+
+        result.role = params.getString("role", result.role).trim();
+        result.node = params.getString("node", result.node);
+        result.centralUrl = params.getString("centralUrl", result.centralUrl);
+        result.journalDirectory = params.getString("journalDirectory", result.journalDirectory);
+        result.journalCapacity = params.getInt("journalCapacity", result.journalCapacity);
+        result.queueCapacity = params.getInt("queueCapacity", result.queueCapacity);
+        result.batchSize = params.getInt("batchSize", result.batchSize);
+        result.maxBatchAgeMs = (long) (params.getFloat("maxBatchAgeSec", result.maxBatchAgeMs / 1000f) * 1000);
+        result.addressOffset = params.getInt("addressOffset", result.addressOffset);
+        result.offsetsFile = params.getString("offsetsFile", result.offsetsFile);
+        result.nodeTimeoutSec = params.getFloat("nodeTimeoutSec", result.nodeTimeoutSec);
+        SubnodeConfiguration inverter = iniConfObj.getSection("inverter");
+        result.fleet = !String.join(",", inverter.getStringArray("inverterAddresses")).trim().isEmpty();
+        result.inverterAddress = inverter.getInt("inverterAddress", result.inverterAddress);
+
+        return result;
+    }
+
+    @Subscribe
+    public void handle(PeriodicInverterTelemetries telemetries) {
+        if (telemetries.inverterAddress != PeriodicInverterTelemetries.PLANT || !params.fleet) {
+            offer(FederationRecord.telemetries(federatedAddress(telemetries.inverterAddress), telemetries));
+        }
+    }
+
+    @Subscribe
+    public void handle(MonitorMsgInverterStatus msg) {
+        if (msg.inverterAddress != PeriodicInverterTelemetries.PLANT || !params.fleet) {
+            offer(FederationRecord.status(federatedAddress(msg.inverterAddress), msg.isOnline));
+        }
+    }
+
+    /**
+     * With a single inverter its telemetries carry the PLANT address, in the federation its own one.
+     */
+    private int federatedAddress(int inverterAddress) {
+        int address = inverterAddress == PeriodicInverterTelemetries.PLANT ? params.inverterAddress : inverterAddress;
+        return address + params.addressOffset;
+    }
+
+    /**
+     * Never blocks: when the queue is full the record is dropped.
+     */
+    public boolean offer(FederationRecord record) {
+        boolean queued = queue.offer(record);
+        if (!queued) {
+            droppedRecords.incrementAndGet();
+            log.warning("Queue full, record dropped: " + record);
+        }
+        return queued;
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this, "federation-" + params.node);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the client after journaling what is queued.
+     */
+    public void stop() {
+        Thread current;
+        synchronized (this) {
+            running = false;
+            current = thread;
+            thread = null;
+        }
+        if (current != null) {
+            current.interrupt();
+            try {
+                current.join(SOCKET_TIMEOUT_MS + CONNECT_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        log.info("Federation client started, stream: " + journal.getStream() + ", " + params);
+        while (running) {
+            try {
+                step(pollTimeout(new Date().getTime()));
+            } catch (InterruptedException e) {
+                log.fine("Federation client interrupted");
+            } catch (Exception e) {
+                log.log(Level.SEVERE, "Error streaming records: " + e.getMessage(), e);
+            }
+        }
+        List<FederationRecord> records = new ArrayList<>();
+        queue.drainTo(records);
+        store(records, new Date().getTime());
+        log.info("Federation client stopped");
+    }
+
+    protected void step(long pollMs) throws InterruptedException {
+        FederationRecord record = queue.poll(pollMs, TimeUnit.MILLISECONDS);
+        long now = new Date().getTime();
+        if (record != null) {
+            List<FederationRecord> records = new ArrayList<>();
+            records.add(record);
+            queue.drainTo(records);
+            store(records, now);
+        }
+        if (journal.size() > 0 && now >= dueTime()) {
+            deliver(now);
+        }
+        backlog.set(journal.size());
+    }
+
+    private long dueTime() {
+        long due = journal.size() >= params.batchSize ? 0 : pendingSince + params.maxBatchAgeMs;
+        return Math.max(due, nextAttempt);
+    }
+
+    private long pollTimeout(long now) {
+        if (journal.size() == 0) {
+            return MAX_POLL_MS;
+        }
+        return Math.max(0, Math.min(MAX_POLL_MS, dueTime() - now));
+    }
+
+    private void store(List<FederationRecord> records, long now) {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (journal.size() == 0) {
+            pendingSince = now;
+        }
+        try {
+            int overflow = journal.append(records);
+            if (overflow > 0) {
+                droppedRecords.addAndGet(overflow);
+                log.warning("Journal full, " + overflow + " records dropped");
+            }
+        } catch (IOException e) {
+            droppedRecords.addAndGet(records.size());
+            log.severe("Error writing " + records.size() + " records to the journal: " + e.getMessage());
+        }
+    }
+
+    private void deliver(long now) {
+        try {
+            if (!synced) {
+                FederationAck ack = execute(new HttpGet(params.centralUrl + "/offset?node=" + URLEncoder.encode(params.node, "UTF-8")
+                        + "&stream=" + URLEncoder.encode(journal.getStream(), "UTF-8")));
+                journal.acknowledge(ack.offset);
+                synced = true;
+                log.info("Resuming the stream after record: " + ack.offset + ", records to send: " + journal.size());
+            }
+            List<FederationRecord> batch = journal.pending(params.batchSize);
+            if (!batch.isEmpty()) {
+                HttpPost request = new HttpPost(params.centralUrl + "/ingest");
+                ByteArrayEntity entity = new ByteArrayEntity(HttpUtils.gzip(gson.toJson(new FederationBatch(params.node, journal.getStream(), batch))));
+                entity.setContentType("application/json; charset=utf-8");
+                request.setHeader("Content-Encoding", "gzip");
+                request.setEntity(entity);
+                FederationAck ack = execute(request);
+                journal.acknowledge(ack.offset);
+                sentBatches++;
+                sentRecords += batch.size();
+            }
+            retryDelayMs = params.retryDelayMs;
+            nextAttempt = 0;
+        } catch (IOException | RuntimeException e) {
+            synced = false;
+            failedBatches++;
+            nextAttempt = now + retryDelayMs;
+            log.warning("Error streaming to: " + params.centralUrl + ", next attempt in " + retryDelayMs + " ms: " + e.getMessage());
+            retryDelayMs = Math.min(retryDelayMs * 2, params.maxRetryDelayMs);
+        }
+    }
+
+    private FederationAck execute(HttpRequestBase request) throws IOException {
+        CloseableHttpResponse response = httpClient.execute(request);
+        try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String body = EntityUtils.toString(response.getEntity(), "UTF-8");
+            if (statusCode != 200) {
+                throw new IOException("Response code: " + statusCode + " from: " + request.getURI() + ", " + body);
+            }
+            FederationAck result = gson.fromJson(body, FederationAck.class);
+            if (result == null) {
+                throw new IOException("Empty response from: " + request.getURI());
+            }
+            return result;
+        } finally {
+            response.close();
+        }
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("node", params.node);
+        result.put("stream", journal.getStream());
+        result.put("queued", queue.size());
+        result.put("journaled", journal.size());
+        result.put("acknowledged", journal.getAcknowledged());
+        result.put("sentBatches", sentBatches);
+        result.put("sentRecords", sentRecords);
+        result.put("failedBatches", failedBatches);
+        result.put("droppedRecords", droppedRecords.get());
+        return result;
+    }
+
+    public FederationJournal getJournal() {
+        return journal;
+    }
+}
@@ -0,0 +1,219 @@
+package com.steto.jaurmon.monitor.federation;
+
+import com.google.gson.Gson;
+import com.steto.jaurmon.utils.MyUtils;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Bounded disk log of the records of an edge node, kept until the central node acknowledges them.
+ * Records are numbered from 1 in the stream of the node; every segment is a file holding one json record per line,
+ * named after its first sequence number. The stream id, the next sequence number and the last one acknowledged
+ * survive a restart, a journal created from scratch starts a new stream.
+ */
+public class FederationJournal {
+
+    static final String EXTENSION = ".json";
+    static final String STATE_FILE = "journal.properties";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final int capacity;
+    private final Gson gson = new Gson();
+    private String stream;
+    private long nextSequence = 1;
+    private long acknowledged = 0;
+
+    public FederationJournal(String directoryPath, int capacity) throws IOException {
+        directory = new File(directoryPath);
+        this.capacity = capacity;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Error creating journal directory: " + directoryPath);
+        }
+        loadState();
+        File[] files = segments();
+        if (files.length > 0) {
+            File newest = files[files.length - 1];
+            try {
+                List<FederationRecord> records = read(newest);
+                long last = records.isEmpty() ? firstSequence(newest) - 1 : records.get(records.size() - 1).sequence;
+                nextSequence = Math.max(nextSequence, last + 1);
+            } catch (IOException | RuntimeException e) {
+                setAside(newest);
+            }
+        }
+        if (stream == null) {
+            stream = UUID.randomUUID().toString();
+        }
+        saveState();
+    }
+
+    /**
+     * Numbers the records and stores them.
+     *
+     * @return the number of records that did not fit and were dropped, without a sequence number
+     */
+    public synchronized int append(List<FederationRecord> records) throws IOException {
+        int accepted = (int) Math.min(records.size(), Math.max(0, capacity - size()));
+        if (accepted == 0) {
+            return records.size();
+        }
+        String fileName = String.format("%019d", nextSequence);
+        File temp = new File(directory, fileName + ".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF8));
+        try {
+            for (int i = 0; i < accepted; i++) {
+                FederationRecord record = records.get(i);
+                record.sequence = nextSequence + i;
+                out.write(gson.toJson(record));
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(new File(directory, fileName + EXTENSION))) {
+            throw new IOException("Error writing journal file: " + temp);
+        }
+        nextSequence += accepted;
+        return records.size() - accepted;
+    }
+
+    /**
+     * @return up to max records not acknowledged yet, oldest first
+     */
+    public synchronized List<FederationRecord> pending(int max) {
+        List<FederationRecord> result = new ArrayList<>();
+        File[] files = segments();
+        for (int i = 0; i < files.length && result.size() < max; i++) {
+            if (lastSequence(files, i) <= acknowledged) {
+                continue;
+            }
+            try {
+                for (FederationRecord record : read(files[i])) {
+                    if (record.sequence > acknowledged && result.size() < max) {
+                        result.add(record);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                setAside(files[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the segments whose records are all acknowledged.
+     */
+    public synchronized void acknowledge(long sequence) throws IOException {
+        sequence = Math.min(sequence, nextSequence - 1);
+        if (sequence <= acknowledged) {
+            return;
+        }
+        acknowledged = sequence;
+        File[] files = segments();
+        for (int i = 0; i < files.length && lastSequence(files, i) <= acknowledged; i++) {
+            files[i].delete();
+        }
+        saveState();
+    }
+
+    /**
+     * @return the number of records not acknowledged yet
+     */
+    public synchronized long size() {
+        return nextSequence - 1 - acknowledged;
+    }
+
+    public synchronized long getAcknowledged() {
+        return acknowledged;
+    }
+
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    public String getStream() {
+        return stream;
+    }
+
+    public List<FederationRecord> read(File file) throws IOException {
+        List<FederationRecord> result = new ArrayList<>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    result.add(gson.fromJson(line, FederationRecord.class));
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    private File[] segments() {
+        return MyUtils.selectFiles(directory.getAbsolutePath(), EXTENSION);
+    }
+
+    private long lastSequence(File[] files, int index) {
+        return index + 1 < files.length ? firstSequence(files[index + 1]) - 1 : nextSequence - 1;
+    }
+
+    private static long firstSequence(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+    }
+
+    /**
+     * Renames a segment that cannot be read so that it is not sent anymore.
+     */
+    private boolean setAside(File file) {
+        String name = file.getName();
+        if (name.endsWith(EXTENSION)) {
+            name = name.substring(0, name.length() - EXTENSION.length());
+        }
+        return file.renameTo(new File(directory, name + ".corrupted"));
+    }
+
+    private void loadState() throws IOException {
+        File file = new File(directory, STATE_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        Properties state = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            state.load(in);
+        } finally {
+            in.close();
+        }
+        stream = state.getProperty("stream");
+        nextSequence = Long.parseLong(state.getProperty("nextSequence", "1"));
+        acknowledged = Long.parseLong(state.getProperty("acknowledged", "0"));
+    }
+
+    private void saveState() throws IOException {
+        Properties state = new Properties();
+        state.setProperty("stream", stream);
+        state.setProperty("nextSequence", String.valueOf(nextSequence));
+        state.setProperty("acknowledged", String.valueOf(acknowledged));
+        File temp = new File(directory, STATE_FILE + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            state.store(out, "federation journal");
+        } finally {
+            out.close();
+        }
+        File file = new File(directory, STATE_FILE);
+        file.delete();
+        if (!temp.renameTo(file)) {
+            throw new IOException("Error writing journal state: " + file);
+        }
+    }
+}
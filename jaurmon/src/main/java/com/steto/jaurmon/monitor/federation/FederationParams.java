@@ -0,0 +1,54 @@
+package com.steto.jaurmon.monitor.federation;
+
+/**
+ * Settings of the [federation] section. An empty role disables the federation.
+ */
+public class FederationParams {
+    public static final String EDGE = "edge";
+    public static final String CENTRAL = "central";
+
+    public String role = "";
+
+    public String node = "edge";
+    public String centralUrl = "";
+    public String journalDirectory = "./federation";
+    public int journalCapacity = 100000;
+    public int queueCapacity = 1000;
+    public int batchSize = 100;
+    public long maxBatchAgeMs = 5000;
+    public long retryDelayMs = 1000;
+    public long maxRetryDelayMs = 60 * 1000;
+    /**
+     * Added to the addresses of the inverters of the node, to keep them unique in the plant.
+     */
+    public int addressOffset = 0;
+    public int inverterAddress = 2;
+    public boolean fleet = false;
+
+    public String offsetsFile = "./federation/offsets.properties";
+    public float nodeTimeoutSec = 600;
+
+    public boolean isEdge() {
+        return EDGE.equalsIgnoreCase(role);
+    }
+
+    public boolean isCentral() {
+        return CENTRAL.equalsIgnoreCase(role);
+    }
+
+    @Override
+    public String toString() {
+        return "FederationParams{" +
+                "role='" + role + '\'' +
+                ", node='" + node + '\'' +
+                ", centralUrl='" + centralUrl + '\'' +
+                ", journalDirectory='" + journalDirectory + '\'' +
+                ", journalCapacity=" + journalCapacity +
+                ", batchSize=" + batchSize +
+                ", maxBatchAgeMs=" + maxBatchAgeMs +
+                ", addressOffset=" + addressOffset +
+                ", offsetsFile='" + offsetsFile + '\'' +
+                ", nodeTimeoutSec=" + nodeTimeoutSec +
+                '}';
+    }
+}
@@ -0,0 +1,224 @@
+package com.steto.jaurmon.monitor.federation;
+
+import com.google.common.eventbus.EventBus;
+import com.steto.jaurmon.monitor.MonitorMsgInverterStatus;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Central side of the federation: merges the streams of the edge nodes into the local event bus, where their
+ * telemetries feed the plant aggregation, PVOutput and the sinks as local ones do. The records of a node are
+ * applied once and in order: the ones already applied are skipped, so an edge may resend after a disconnection.
+ * The offset of every stream is saved in offsetsFile. The inverters of a node silent for nodeTimeoutSec are set
+ * offline, and online again with its next telemetries.
+ */
+public class FederationReceiver {
+
+    static class NodeState {
+        String stream;
+        long offset = 0;
+        long lastSeen = 0;
+        long records = 0;
+        long duplicates = 0;
+        long lost = 0;
+        final Map<Integer, Boolean> online = new TreeMap<>();
+    }
+
+    protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    private final EventBus theEventBus;
+    private final FederationParams params;
+    private final Map<String, NodeState> nodes = new TreeMap<>();
+    private Timer timer;
+
+    public FederationReceiver(FederationParams params, EventBus aEventBus) throws IOException {
+        this.params = params;
+        theEventBus = aEventBus;
+        loadOffsets();
+    }
+
+    /**
+     * @return the last record of the stream applied, 0 for a new stream
+     */
+    public synchronized FederationAck offset(String node, String stream) {
+        NodeState state = node(node, stream);
+        return new FederationAck(node, state.stream, state.offset);
+    }
+
+    /**
+     * Posts the records not applied yet on the event bus, in sequence order.
+     *
+     * @return the last record of the stream applied
+     */
+    public synchronized FederationAck receive(FederationBatch batch) throws IOException {
+        NodeState state = node(batch.node, batch.stream);
+        state.lastSeen = new Date().getTime();
+        long applied = 0;
+        if (batch.records != null) {
+            for (FederationRecord record : batch.records) {
+                if (record.sequence <= state.offset) {
+                    state.duplicates++;
+                    continue;
+                }
+                if (record.sequence > state.offset + 1) {
+                    state.lost += record.sequence - state.offset - 1;
+                    log.warning("Node " + batch.node + " records lost: " + (state.offset + 1) + "-" + (record.sequence - 1));
+                }
+                apply(state, record);
+                state.offset = record.sequence;
+                state.records++;
+                applied++;
+            }
+        }
+        if (applied > 0) {
+            saveOffsets();
+        }
+        return new FederationAck(batch.node, state.stream, state.offset);
+    }
+
+    private NodeState node(String node, String stream) {
+        if (node == null || node.isEmpty() || stream == null || stream.isEmpty()) {
+            throw new IllegalArgumentException("Missing node or stream");
+        }
+        NodeState result = nodes.get(node);
+        if (result == null) {
+            result = new NodeState();
+            result.stream = stream;
+            nodes.put(node, result);
+            log.info("New node: " + node + ", stream: " + stream);
+        } else if (!stream.equals(result.stream)) {
+            log.info("Node " + node + " started a new stream: " + stream + ", previous one: " + result.stream + " at record: " + result.offset);
+            result.stream = stream;
+            result.offset = 0;
+        }
+        return result;
+    }
+
+    private void apply(NodeState state, FederationRecord record) {
+        if (record.telemetries != null) {
+            if (Boolean.FALSE.equals(state.online.get(record.inverterAddress))) {
+                theEventBus.post(new MonitorMsgInverterStatus(true, record.inverterAddress));
+            }
+            state.online.put(record.inverterAddress, true);
+            record.telemetries.inverterAddress = record.inverterAddress;
+            theEventBus.post(record.telemetries);
+        } else if (record.online != null) {
+            state.online.put(record.inverterAddress, record.online);
+            theEventBus.post(new MonitorMsgInverterStatus(record.online, record.inverterAddress));
+        }
+    }
+
+    /**
+     * Sets offline the inverters of the nodes silent for longer than nodeTimeoutSec.
+     */
+    public synchronized void checkTimeouts(long now) {
+        for (Map.Entry<String, NodeState> entry : nodes.entrySet()) {
+            NodeState state = entry.getValue();
+            if (state.lastSeen == 0 || now - state.lastSeen < params.nodeTimeoutSec * 1000) {
+                continue;
+            }
+            for (Map.Entry<Integer, Boolean> inverter : state.online.entrySet()) {
+                if (inverter.getValue()) {
+                    log.warning("Node " + entry.getKey() + " silent, inverter " + inverter.getKey() + " set offline");
+                    inverter.setValue(false);
+                    theEventBus.post(new MonitorMsgInverterStatus(false, inverter.getKey()));
+                }
+            }
+        }
+    }
+
+    public synchronized void start() {
+        if (timer == null) {
+            long periodMs = Math.max(1000, Math.min(10000, (long) (params.nodeTimeoutSec * 500)));
+            timer = new Timer("federation-timeouts", true);
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    checkTimeouts(new Date().getTime());
+                }
+            }, periodMs, periodMs);
+        }
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    public synchronized List<Map<String, Object>> status() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map.Entry<String, NodeState> entry : nodes.entrySet()) {
+            NodeState state = entry.getValue();
+            Map<String, Object> node = new LinkedHashMap<>();
+            node.put("node", entry.getKey());
+            node.put("stream", state.stream);
+            node.put("offset", state.offset);
+            node.put("lastSeen", state.lastSeen);
+            node.put("records", state.records);
+            node.put("duplicates", state.duplicates);
+            node.put("lost", state.lost);
+            node.put("inverters", new TreeMap<>(state.online));
+            result.add(node);
+        }
+        return result;
+    }
+
+    private void loadOffsets() throws IOException {
+        File file = new File(params.offsetsFile);
+        if (!file.exists()) {
+            return;
+        }
+        Properties offsets = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            offsets.load(in);
+        } finally {
+            in.close();
+        }
+        for (String key : offsets.stringPropertyNames()) {
+            if (key.endsWith(".stream")) {
+                String node = key.substring(0, key.length() - ".stream".length());
+                NodeState state = new NodeState();
+                state.stream = offsets.getProperty(key);
+                state.offset = Long.parseLong(offsets.getProperty(node + ".offset", "0"));
+                nodes.put(node, state);
+            }
+        }
+        log.info("Loaded the offsets of " + nodes.size() + " nodes from: " + file);
+    }
+
+    private void saveOffsets() throws IOException {
+        Properties offsets = new Properties();
+        for (Map.Entry<String, NodeState> entry : nodes.entrySet()) {
+            offsets.setProperty(entry.getKey() + ".stream", entry.getValue().stream);
+            offsets.setProperty(entry.getKey() + ".offset", String.valueOf(entry.getValue().offset));
+        }
+        File file = new File(params.offsetsFile);
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Error creating offsets directory: " + directory);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            offsets.store(out, "federation offsets");
+        } finally {
+            out.close();
+        }
+        file.delete();
+        if (!temp.renameTo(file)) {
+            throw new IOException("Error writing offsets file: " + file);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.steto.jaurmon.monitor.federation;
+
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+
+/**
+ * One event of an edge node: the telemetries of an inverter or a change of its status, numbered in the
+ * stream of the node.
+ */
+public class FederationRecord {
+    public long sequence;
+    public int inverterAddress;
+    public PeriodicInverterTelemetries telemetries;
+    public Boolean online;
+
+    public static FederationRecord telemetries(int inverterAddress, PeriodicInverterTelemetries telemetries) {
+        FederationRecord result = new FederationRecord();
+        result.inverterAddress = inverterAddress;
+        result.telemetries = telemetries;
+        return result;
+    }
+
+    public static FederationRecord status(int inverterAddress, boolean online) {
+        FederationRecord result = new FederationRecord();
+        result.inverterAddress = inverterAddress;
+        result.online = online;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "FederationRecord{" +
+                "sequence=" + sequence +
+                ", inverterAddress=" + inverterAddress +
+                ", telemetries=" + telemetries +
+                ", online=" + online +
+                '}';
+    }
+}
@@ -0,0 +1,23 @@
+package com.steto.jaurmon.monitor.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * One iteration of the monitor acquisition loop: inverter interrogation, processing and dispatch of the
+ * results, sleep excluded. The bus transactions of the tick are recorded as nested events.
+ */
+@Name("com.steto.jaurmon.AcquisitionTick")
+@Label("Acquisition Tick")
+@Category({"Aurora", "Monitor"})
+@StackTrace(false)
+public class AcquisitionTickEvent extends Event {
+
+    @Label("Outcome")
+    public String outcome;
+
+    @Label("Inverter Status")
+    public String inverterStatus;
+
+    @Label("Grid Power (W)")
+    public float gridPowerAll;
+}
@@ -0,0 +1,16 @@
+package com.steto.jaurmon.monitor.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Post of a monitor message to the EventBus, i.e. the time taken by its synchronous subscribers.
+ */
+@Name("com.steto.jaurmon.EventBusDispatch")
+@Label("EventBus Dispatch")
+@Category({"Aurora", "Monitor"})
+@StackTrace(false)
+public class EventBusDispatchEvent extends Event {
+
+    @Label("Event Type")
+    public String eventType;
+}
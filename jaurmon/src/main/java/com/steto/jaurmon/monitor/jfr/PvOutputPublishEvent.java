@@ -0,0 +1,36 @@
+package com.steto.jaurmon.monitor.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Live or batch upload of telemetries to PVOutput.
+ */
+@Name("com.steto.jaurmon.PvOutputPublish")
+@Label("PVOutput Publish")
+@Category({"Aurora", "PVOutput"})
+@StackTrace(false)
+public class PvOutputPublishEvent extends Event {
+
+    public static final String LIVE = "live";
+    public static final String BATCH = "batch";
+
+    @Label("Kind")
+    public String kind;
+
+    @Label("Records")
+    public int records;
+
+    @Label("Status Code")
+    @Description("HTTP response code, -1 if the server could not be reached")
+    public int statusCode;
+
+    public void commit(String kind, int records, int statusCode) {
+        end();
+        if (shouldCommit()) {
+            this.kind = kind;
+            this.records = records;
+            this.statusCode = statusCode;
+            commit();
+        }
+    }
+}
@@ -9,19 +9,22 @@ import java.util.logging.LogRecord;
  * Created by stefano on 07/12/14.
  */
 public class monLogFormatter extends Formatter {
+
+    private final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("y.M.d HH:mm:ss.SSS");
+    private final Date date = new Date();
+
     @Override
     public synchronized String format(LogRecord record) {
-        Date date = new Date(record.getMillis());
-        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("y.M.d HH:mm:ss.SSS");
+        date.setTime(record.getMillis());
 
         String str = simpleDateFormat.format(date);
-        StringBuilder builder = new StringBuilder();
+        StringBuilder builder = new StringBuilder(128);
         builder.append(str).append(" ")
                 .append(record.getThreadID()).append(" ")
                 .append(record.getLevel()).append(" ")
                 .append(record.getSourceClassName()).append(" ")
                 .append(record.getSourceMethodName()).append(" \"")
-                .append(record.getMessage()).append("\"\n");
+                .append(formatMessage(record)).append("\"\n");
         return builder.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+package com.steto.jaurmon.monitor.mqtt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Encoding and decoding of the MQTT 3.1.1 control packets the publisher needs.
+ */
+public class MqttCodec {
+
+    public static final int CONNECT = 1;
+    public static final int CONNACK = 2;
+    public static final int PUBLISH = 3;
+    public static final int PUBACK = 4;
+    public static final int PINGREQ = 12;
+    public static final int PINGRESP = 13;
+    public static final int DISCONNECT = 14;
+
+    public static final int MAX_REMAINING_LENGTH = 268435455;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static class Packet {
+        public int type;
+        public int flags;
+        public byte[] body;
+
+        public int qos() {
+            return (flags >> 1) & 3;
+        }
+
+        public boolean dup() {
+            return (flags & 8) != 0;
+        }
+
+        public boolean retain() {
+            return (flags & 1) != 0;
+        }
+
+        /**
+         * @return the packet identifier of a PUBACK or of a QoS 1 PUBLISH
+         */
+        public int packetId() {
+            int offset = 0;
+            if (type == PUBLISH) {
+                offset = 2 + readShort(body, 0);
+            }
+            return readShort(body, offset);
+        }
+
+        public MqttMessage message() {
+            int topicLength = readShort(body, 0);
+            String topic = new String(body, 2, topicLength, UTF8);
+            int offset = 2 + topicLength + (qos() > 0 ? 2 : 0);
+            return new MqttMessage(topic, new String(body, offset, body.length - offset, UTF8), retain());
+        }
+    }
+
+    public static byte[] connect(String clientId, int keepAliveSec, String username, String password, MqttMessage will) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        writeString(body, "MQTT");
+        body.write(4);
+        int flags = 0x02;
+        if (will != null) {
+            flags |= 0x04 | (1 << 3) | (will.retain ? 0x20 : 0);
+        }
+        boolean hasUser = username != null && !username.isEmpty();
+        if (hasUser) {
+            flags |= 0x80;
+            if (password != null && !password.isEmpty()) {
+                flags |= 0x40;
+            }
+        }
+        body.write(flags);
+        body.write(keepAliveSec >> 8);
+        body.write(keepAliveSec);
+        writeString(body, clientId);
+        if (will != null) {
+            writeString(body, will.topic);
+            writeString(body, will.payload);
+        }
+        if (hasUser) {
+            writeString(body, username);
+            if ((flags & 0x40) != 0) {
+                writeString(body, password);
+            }
+        }
+        return packet(CONNECT << 4, body);
+    }
+
+    public static byte[] connack(int returnCode) {
+        return new byte[]{(byte) (CONNACK << 4), 2, 0, (byte) returnCode};
+    }
+
+    public static byte[] publish(MqttMessage message, int packetId, boolean dup) {
+        byte[] payload = message.payload.getBytes(UTF8);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(message.topic.length() + payload.length + 8);
+        writeString(body, message.topic);
+        body.write(packetId >> 8);
+        body.write(packetId);
+        body.write(payload, 0, payload.length);
+        int header = (PUBLISH << 4) | (dup ? 8 : 0) | (1 << 1) | (message.retain ? 1 : 0);
+        return packet(header, body);
+    }
+
+    public static byte[] puback(int packetId) {
+        return new byte[]{(byte) (PUBACK << 4), 2, (byte) (packetId >> 8), (byte) packetId};
+    }
+
+    public static byte[] pingreq() {
+        return new byte[]{(byte) (PINGREQ << 4), 0};
+    }
+
+    public static byte[] pingresp() {
+        return new byte[]{(byte) (PINGRESP << 4), 0};
+    }
+
+    public static byte[] disconnect() {
+        return new byte[]{(byte) (DISCONNECT << 4), 0};
+    }
+
+    public static Packet read(InputStream in) throws IOException {
+        int header = in.read();
+        if (header < 0) {
+            throw new EOFException("Connection closed");
+        }
+        Packet result = new Packet();
+        result.type = (header >> 4) & 0x0F;
+        result.flags = header & 0x0F;
+        result.body = new byte[readRemainingLength(in)];
+        int offset = 0;
+        while (offset < result.body.length) {
+            int count = in.read(result.body, offset, result.body.length - offset);
+            if (count < 0) {
+                throw new EOFException("Connection closed");
+            }
+            offset += count;
+        }
+        return result;
+    }
+
+    static int readRemainingLength(InputStream in) throws IOException {
+        int result = 0;
+        int multiplier = 1;
+        int digit;
+        do {
+            digit = in.read();
+            if (digit < 0) {
+                throw new EOFException("Connection closed");
+            }
+            if (multiplier > 128 * 128 * 128) {
+                throw new IOException("Malformed remaining length");
+            }
+            result += (digit & 0x7F) * multiplier;
+            multiplier *= 128;
+        } while ((digit & 0x80) != 0);
+        return result;
+    }
+
+    static void writeRemainingLength(ByteArrayOutputStream out, int length) {
+        if (length > MAX_REMAINING_LENGTH) {
+            throw new IllegalArgumentException("Packet too large: " + length);
+        }
+        do {
+            int digit = length % 128;
+            length /= 128;
+            out.write(length > 0 ? digit | 0x80 : digit);
+        } while (length > 0);
+    }
+
+    private static byte[] packet(int header, ByteArrayOutputStream body) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(body.size() + 5);
+        result.write(header);
+        writeRemainingLength(result, body.size());
+        result.write(body.toByteArray(), 0, body.size());
+        return result.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(UTF8);
+        out.write(bytes.length >> 8);
+        out.write(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+}
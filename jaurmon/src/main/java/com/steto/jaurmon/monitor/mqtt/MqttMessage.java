@@ -0,0 +1,25 @@
+package com.steto.jaurmon.monitor.mqtt;
+
+/**
+ * An application message, always published with QoS 1.
+ */
+public class MqttMessage {
+    public String topic;
+    public String payload;
+    public boolean retain;
+
+    public MqttMessage(String topic, String payload, boolean retain) {
+        this.topic = topic;
+        this.payload = payload;
+        this.retain = retain;
+    }
+
+    @Override
+    public String toString() {
+        return "MqttMessage{" +
+                "topic='" + topic + '\'' +
+                ", payload='" + payload + '\'' +
+                ", retain=" + retain +
+                '}';
+    }
+}
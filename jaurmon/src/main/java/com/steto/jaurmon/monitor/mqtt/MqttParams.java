@@ -0,0 +1,49 @@
+package com.steto.jaurmon.monitor.mqtt;
+
+/**
+ * Settings of the [mqtt] section. An empty brokerHost disables the publisher.
+ */
+public class MqttParams {
+    public String brokerHost = "";
+    public int brokerPort = 1883;
+    public String clientId = "jaurmon";
+    public String username = "";
+    public String password = "";
+    public String topicPrefix = "aurora";
+    public int inverterAddress = 2;
+    public boolean retain = true;
+    public int keepAliveSec = 30;
+    public int maxInflight = 16;
+    public int queueCapacity = 1000;
+    public String spoolDirectory = "";
+    public int spoolCapacity = 100000;
+    public long reconnectDelayMs = 1000;
+    public long maxReconnectDelayMs = 60 * 1000;
+
+    public String topic(String measure) {
+        return topicPrefix + "/" + inverterAddress + "/" + measure;
+    }
+
+    /**
+     * @param address the inverter of the fleet, 0 for the plant published at inverterAddress
+     */
+    public String topic(int address, String measure) {
+        return address == 0 ? topic(measure) : topicPrefix + "/" + address + "/" + measure;
+    }
+
+    @Override
+    public String toString() {
+        return "MqttParams{" +
+                "broker=" + brokerHost + ":" + brokerPort +
+                ", clientId='" + clientId + '\'' +
+                ", topicPrefix='" + topicPrefix + '\'' +
+                ", inverterAddress=" + inverterAddress +
+                ", retain=" + retain +
+                ", keepAliveSec=" + keepAliveSec +
+                ", maxInflight=" + maxInflight +
+                ", queueCapacity=" + queueCapacity +
+                ", spoolDirectory='" + spoolDirectory + '\'' +
+                ", spoolCapacity=" + spoolCapacity +
+                '}';
+    }
+}
@@ -0,0 +1,488 @@
+package com.steto.jaurmon.monitor.mqtt;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.steto.jaurmon.monitor.MonitorMsgDailyMaxPower;
+import com.steto.jaurmon.monitor.MonitorMsgInverterStatus;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import org.apache.commons.configuration.HierarchicalINIConfiguration;
+import org.apache.commons.configuration.SubnodeConfiguration;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes telemetries and inverter status changes to an MQTT broker, one retained topic per measure
+ * (e.g. aurora/2/gridPowerAll).
+ * Messages are sent with QoS 1 keeping up to maxInflight of them waiting for their PUBACK.
+ * While the broker is unreachable they are kept in the spool and published, oldest first, once connected again.
+ */
+public class MqttPublisher implements Runnable {
+
+    public static final String CONNECTED_TOPIC = "connected";
+    static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final long MAX_POLL_MS = 1000;
+
+    protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    private final MqttParams params;
+    private final BlockingQueue<MqttMessage> queue;
+    private final MqttSpool spool;
+    private final LinkedHashMap<Integer, MqttMessage> inflight = new LinkedHashMap<>();
+    private final Deque<MqttMessage> retry = new ArrayDeque<>();
+
+    private volatile Socket socket;
+    private OutputStream out;
+    private volatile boolean alive = false;
+    private volatile long lastRead = 0;
+    private long lastWrite = 0;
+    private int nextPacketId = 1;
+    private boolean replaying = false;
+    private long reconnectDelayMs;
+    private long nextConnect = 0;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public MqttPublisher(MqttParams params, EventBus aEventBus) throws IOException {
+        this.params = params;
+        queue = new ArrayBlockingQueue<>(Math.max(1, params.queueCapacity));
+        spool = params.spoolDirectory.isEmpty() ? null : new MqttSpool(params.spoolDirectory, params.spoolCapacity);
+        reconnectDelayMs = params.reconnectDelayMs;
+        aEventBus.register(this);
+    }
+
+    /**
+     * @return the [mqtt] settings, the topic address being the one of the [inverter] section, 0 for the plant
+     * of a fleet
+     */
+    public static MqttParams loadParams(String configFileName) throws Exception {
+
+        HierarchicalINIConfiguration iniConfObj = new HierarchicalINIConfiguration(configFileName);
+        SubnodeConfiguration params = iniConfObj.getSection("mqtt");
+        MqttParams result = new MqttParams();
+
+        result.brokerHost = params.getString("brokerHost", result.brokerHost);
+        result.brokerPort = params.getInt("brokerPort", result.brokerPort);
+        result.clientId = params.getString("clientId", result.clientId);
+        result.username = params.getString("username", result.username);
+        result.password = params.getString("password", result.password);
+        result.topicPrefix = params.getString("topicPrefix", result.topicPrefix);
+        result.retain = params.getBoolean("retain", result.retain);
+        result.keepAliveSec = params.getInt("keepAliveSec", result.keepAliveSec);
+        result.maxInflight = params.getInt("maxInflight", result.maxInflight);
+        result.queueCapacity = params.getInt("queueCapacity", result.queueCapacity);
+        result.spoolDirectory = params.getString("spoolDirectory", result.spoolDirectory);
+        result.spoolCapacity = params.getInt("spoolCapacity", result.spoolCapacity);
+        SubnodeConfiguration inverter = iniConfObj.getSection("inverter");
+        result.inverterAddress = inverter.getString("inverterAddresses", "").trim().isEmpty() ? inverter.getInt("inverterAddress", result.inverterAddress) : 0;
+
+        return result;
+    }
+
+    @Subscribe
+    public void handle(PeriodicInverterTelemetries telemetries) {
+        int address = telemetries.inverterAddress;
+        offerMeasure(address, "cumulatedEnergy", telemetries.cumulatedEnergy);
+        offerMeasure(address, "gridPowerAll", telemetries.gridPowerAll);
+        offerMeasure(address, "gridVoltageAll", telemetries.gridVoltageAll);
+        offerMeasure(address, "inverterTemp", telemetries.inverterTemp);
+        if (telemetries.extraMeasures != null) {
+            for (Map.Entry<String, Float> entry : telemetries.extraMeasures.entrySet()) {
+                if (entry.getValue() != null) {
+                    offerMeasure(address, entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        offer(new MqttMessage(params.topic(address, "timestamp"), String.valueOf(telemetries.timestamp), params.retain));
+    }
+
+    @Subscribe
+    public void handle(MonitorMsgInverterStatus msg) {
+        offer(new MqttMessage(params.topic(msg.inverterAddress, "inverterStatus"), msg.isOnline ? "online" : "offline", params.retain));
+    }
+
+    @Subscribe
+    public void handle(MonitorMsgDailyMaxPower msg) {
+        offer(new MqttMessage(params.topic(msg.inverterAddress, "dailyMaxPower"), String.valueOf(msg.value), params.retain));
+        offer(new MqttMessage(params.topic(msg.inverterAddress, "dailyMaxPowerTimestamp"), String.valueOf(msg.timestamp), params.retain));
+    }
+
+    private void offerMeasure(int address, String measure, float value) {
+        if (!Float.isNaN(value) && !Float.isInfinite(value)) {
+            offer(new MqttMessage(params.topic(address, measure), String.valueOf(value), params.retain));
+        }
+    }
+
+    /**
+     * Never blocks: when the queue is full the message is dropped.
+     */
+    public boolean offer(MqttMessage message) {
+        boolean queued = queue.offer(message);
+        if (!queued) {
+            dropped.incrementAndGet();
+            log.warning("Queue full, message dropped: " + message);
+        }
+        return queued;
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this, "mqtt-publisher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the publisher; what cannot be published in a couple of seconds goes to the spool.
+     */
+    public void stop() {
+        Thread current;
+        synchronized (this) {
+            running = false;
+            current = thread;
+            thread = null;
+        }
+        if (current != null) {
+            current.interrupt();
+            try {
+                current.join(CONNECT_TIMEOUT_MS * 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        log.info("MQTT publisher started, " + params);
+        while (running) {
+            try {
+                if (socket != null && !alive) {
+                    disconnect("connection lost");
+                }
+                if (socket == null && !connect()) {
+                    offlineStep();
+                } else {
+                    onlineStep();
+                }
+            } catch (InterruptedException e) {
+                log.fine("MQTT publisher interrupted");
+            } catch (IOException e) {
+                disconnect(e.getMessage());
+            } catch (Exception e) {
+                log.log(Level.SEVERE, "Error publishing: " + e.getMessage(), e);
+            }
+        }
+        shutdown();
+        log.info("MQTT publisher stopped");
+    }
+
+    private void offlineStep() throws InterruptedException {
+        long wait = Math.min(MAX_POLL_MS, Math.max(1, nextConnect - new Date().getTime()));
+        if (spool == null) {
+            Thread.sleep(wait);
+            return;
+        }
+        MqttMessage message = queue.poll(wait, TimeUnit.MILLISECONDS);
+        if (message != null) {
+            List<MqttMessage> messages = new ArrayList<>();
+            messages.add(message);
+            queue.drainTo(messages);
+            store(messages);
+        }
+    }
+
+    private void onlineStep() throws IOException, InterruptedException {
+        if (!retry.isEmpty()) {
+            publish(retry.pollFirst());
+            return;
+        }
+        if (spool != null && spool.size() > 0) {
+            replaySegment();
+            return;
+        }
+        MqttMessage message = queue.poll(Math.min(MAX_POLL_MS, params.keepAliveSec * 500L), TimeUnit.MILLISECONDS);
+        if (message != null) {
+            publish(message);
+        }
+        keepAlive();
+    }
+
+    /**
+     * Publishes the oldest spool segment, removing it once every message of it is acknowledged. If the connection
+     * is lost, or the publisher stopped, meanwhile the segment stays in the spool and is replayed whole, so its
+     * messages are not retried on their own.
+     */
+    private void replaySegment() throws IOException, InterruptedException {
+        File file = spool.oldest();
+        if (file == null) {
+            return;
+        }
+        List<MqttMessage> messages;
+        try {
+            messages = spool.read(file);
+        } catch (IOException | RuntimeException e) {
+            log.severe("Error reading spool file: " + file + ", " + e.getMessage() + ", set aside: " + spool.setAside(file));
+            return;
+        }
+        awaitWindow(0);
+        replaying = true;
+        try {
+            for (MqttMessage message : messages) {
+                publish(message);
+            }
+            awaitWindow(0);
+        } catch (IOException e) {
+            disconnect(e.getMessage());
+            throw e;
+        } catch (InterruptedException e) {
+            synchronized (inflight) {
+                inflight.clear();
+            }
+            throw e;
+        } finally {
+            replaying = false;
+        }
+        spool.remove(file, messages.size());
+        if (queue.remainingCapacity() < queue.size()) {
+            List<MqttMessage> live = new ArrayList<>();
+            queue.drainTo(live);
+            store(live);
+        }
+    }
+
+    private void publish(MqttMessage message) throws IOException, InterruptedException {
+        awaitWindow(Math.max(1, params.maxInflight) - 1);
+        int packetId;
+        synchronized (inflight) {
+            packetId = nextPacketId();
+            inflight.put(packetId, message);
+        }
+        write(MqttCodec.publish(message, packetId, false));
+    }
+
+    /**
+     * Waits until at most limit messages are waiting for their PUBACK.
+     */
+    private void awaitWindow(int limit) throws IOException, InterruptedException {
+        long deadline = new Date().getTime() + params.keepAliveSec * 1000L;
+        synchronized (inflight) {
+            while (inflight.size() > limit) {
+                if (!alive) {
+                    throw new IOException("Connection lost");
+                }
+                long remaining = deadline - new Date().getTime();
+                if (remaining <= 0) {
+                    throw new IOException("PUBACK timeout");
+                }
+                inflight.wait(remaining);
+            }
+        }
+    }
+
+    private int nextPacketId() {
+        do {
+            nextPacketId = nextPacketId % 65535 + 1;
+        } while (inflight.containsKey(nextPacketId));
+        return nextPacketId;
+    }
+
+    private void keepAlive() throws IOException {
+        long now = new Date().getTime();
+        if (now - lastRead > params.keepAliveSec * 1500L) {
+            throw new IOException("No response from broker");
+        }
+        if (now - lastWrite >= params.keepAliveSec * 500L) {
+            write(MqttCodec.pingreq());
+        }
+    }
+
+    private void write(byte[] packet) throws IOException {
+        out.write(packet);
+        out.flush();
+        lastWrite = new Date().getTime();
+    }
+
+    private boolean connect() {
+        long now = new Date().getTime();
+        if (now < nextConnect) {
+            return false;
+        }
+        Socket candidate = new Socket();
+        try {
+            candidate.connect(new InetSocketAddress(params.brokerHost, params.brokerPort), CONNECT_TIMEOUT_MS);
+            candidate.setSoTimeout(CONNECT_TIMEOUT_MS);
+            candidate.setTcpNoDelay(true);
+            OutputStream candidateOut = new BufferedOutputStream(candidate.getOutputStream());
+            MqttMessage will = new MqttMessage(params.topic(CONNECTED_TOPIC), "false", true);
+            candidateOut.write(MqttCodec.connect(params.clientId, params.keepAliveSec, params.username, params.password, will));
+            candidateOut.flush();
+            InputStream in = new BufferedInputStream(candidate.getInputStream());
+            MqttCodec.Packet connack = MqttCodec.read(in);
+            if (connack.type != MqttCodec.CONNACK || connack.body.length < 2 || connack.body[1] != 0) {
+                throw new IOException("Connection refused, return code: " + (connack.body.length > 1 ? connack.body[1] : -1));
+            }
+            candidate.setSoTimeout(0);
+            socket = candidate;
+            out = candidateOut;
+            lastRead = lastWrite = new Date().getTime();
+            alive = true;
+            Thread reader = new Thread(new Reader(candidate, in), "mqtt-reader");
+            reader.setDaemon(true);
+            reader.start();
+            reconnectDelayMs = params.reconnectDelayMs;
+            log.info("Connected to broker " + params.brokerHost + ":" + params.brokerPort);
+            retry.addFirst(new MqttMessage(params.topic(CONNECTED_TOPIC), "true", true));
+            return true;
+        } catch (IOException e) {
+            close(candidate);
+            nextConnect = now + reconnectDelayMs;
+            log.warning("Error connecting to broker " + params.brokerHost + ":" + params.brokerPort + ", next attempt in " + reconnectDelayMs + " ms: " + e.getMessage());
+            reconnectDelayMs = Math.min(reconnectDelayMs * 2, params.maxReconnectDelayMs);
+            return false;
+        }
+    }
+
+    /**
+     * Unacknowledged messages are published again after reconnecting, but the ones of a segment
+     * being replayed that is still in the spool.
+     */
+    private void disconnect(String reason) {
+        if (socket == null) {
+            return;
+        }
+        log.warning("Disconnected from broker: " + reason);
+        alive = false;
+        close(socket);
+        socket = null;
+        synchronized (inflight) {
+            if (!replaying) {
+                List<MqttMessage> unacked = new ArrayList<>(inflight.values());
+                for (int i = unacked.size() - 1; i >= 0; i--) {
+                    retry.addFirst(unacked.get(i));
+                }
+            }
+            inflight.clear();
+        }
+        nextConnect = new Date().getTime() + reconnectDelayMs;
+    }
+
+    private void shutdown() {
+        Thread.interrupted();
+        if (socket != null) {
+            try {
+                while (!retry.isEmpty()) {
+                    publish(retry.pollFirst());
+                }
+                awaitWindow(0);
+                write(MqttCodec.disconnect());
+            } catch (IOException | InterruptedException e) {
+                log.warning("Error closing the connection: " + e.getMessage());
+            }
+            disconnect("publisher stopped");
+        }
+        List<MqttMessage> remaining = new ArrayList<>(retry);
+        retry.clear();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            store(remaining);
+        }
+    }
+
+    private void store(List<MqttMessage> messages) {
+        if (spool == null) {
+            dropped.addAndGet(messages.size());
+            return;
+        }
+        try {
+            int overflow = spool.append(messages);
+            if (overflow > 0) {
+                dropped.addAndGet(overflow);
+                log.warning("Spool full, " + overflow + " messages dropped");
+            }
+        } catch (IOException e) {
+            dropped.addAndGet(messages.size());
+            log.severe("Error writing " + messages.size() + " messages to the spool: " + e.getMessage());
+        }
+    }
+
+    private static void close(Socket s) {
+        try {
+            s.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private class Reader implements Runnable {
+        private final Socket connection;
+        private final InputStream in;
+
+        Reader(Socket connection, InputStream in) {
+            this.connection = connection;
+            this.in = in;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    MqttCodec.Packet packet = MqttCodec.read(in);
+                    lastRead = new Date().getTime();
+                    if (packet.type == MqttCodec.PUBACK) {
+                        synchronized (inflight) {
+                            if (inflight.remove(packet.packetId()) != null) {
+                                published.incrementAndGet();
+                            }
+                            inflight.notifyAll();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (inflight) {
+                    if (socket == connection) {
+                        alive = false;
+                    }
+                    inflight.notifyAll();
+                }
+            }
+        }
+    }
+
+    public boolean isConnected() {
+        return alive;
+    }
+
+    public int inflight() {
+        synchronized (inflight) {
+            return inflight.size();
+        }
+    }
+
+    public int queued() {
+        return queue.size();
+    }
+
+    public int spooled() {
+        return spool != null ? spool.size() : 0;
+    }
+
+    public long published() {
+        return published.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,114 @@
+package com.steto.jaurmon.monitor.mqtt;
+
+import com.google.gson.Gson;
+import com.steto.jaurmon.utils.MyUtils;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Bounded disk queue of the messages that could not be published while the broker was unreachable.
+ * Every segment is a file holding one json message per line; file names sort in arrival order.
+ */
+public class MqttSpool {
+
+    static final String EXTENSION = ".json";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final int capacity;
+    private final Gson gson = new Gson();
+    private long sequence = 0;
+    private int size = 0;
+
+    public MqttSpool(String directoryPath, int capacity) throws IOException {
+        directory = new File(directoryPath);
+        this.capacity = capacity;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Error creating spool directory: " + directoryPath);
+        }
+        for (File file : MyUtils.selectFiles(directory.getAbsolutePath(), EXTENSION)) {
+            try {
+                size += read(file).size();
+            } catch (IOException | RuntimeException e) {
+                setAside(file);
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages that did not fit and were dropped
+     */
+    public synchronized int append(List<MqttMessage> messages) throws IOException {
+        int accepted = Math.min(messages.size(), Math.max(0, capacity - size));
+        if (accepted == 0) {
+            return messages.size();
+        }
+        String fileName = String.format("%013d-%06d", new Date().getTime(), sequence++ % 1000000);
+        File temp = new File(directory, fileName + ".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF8));
+        try {
+            for (int i = 0; i < accepted; i++) {
+                out.write(gson.toJson(messages.get(i)));
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(new File(directory, fileName + EXTENSION))) {
+            throw new IOException("Error writing spool file: " + temp);
+        }
+        size += accepted;
+        return messages.size() - accepted;
+    }
+
+    /**
+     * @return the oldest segment, null if the spool is empty
+     */
+    public File oldest() {
+        File[] files = MyUtils.selectFiles(directory.getAbsolutePath(), EXTENSION);
+        return files.length > 0 ? files[0] : null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public List<MqttMessage> read(File file) throws IOException {
+        List<MqttMessage> result = new ArrayList<>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    result.add(gson.fromJson(line, MqttMessage.class));
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    public synchronized boolean remove(File file, int messages) {
+        boolean result = file.delete();
+        if (result) {
+            size = Math.max(0, size - messages);
+        }
+        return result;
+    }
+
+    /**
+     * Renames a segment that cannot be read so that it is not replayed anymore.
+     */
+    public boolean setAside(File file) {
+        String name = file.getName();
+        if (name.endsWith(EXTENSION)) {
+            name = name.substring(0, name.length() - EXTENSION.length());
+        }
+        return file.renameTo(new File(directory, name + ".corrupted"));
+    }
+}
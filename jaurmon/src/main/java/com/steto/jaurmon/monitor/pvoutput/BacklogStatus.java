@@ -0,0 +1,37 @@
+package com.steto.jaurmon.monitor.pvoutput;
+
+/**
+ * Snapshot of the PVOutput backlog upload progress.
+ */
+public class BacklogStatus {
+    public boolean running;
+    public int pendingFiles;
+    public int pendingRecords;
+    public int pendingRequests;
+    public long oldestPendingTimestamp;
+    public long uploadedRecords;
+    public long uploadedRequests;
+    public long failedRequests;
+    public long expiredRecords;
+    public long rejectedRecords;
+    public int availableRequests;
+    public long etaSec;
+
+    @Override
+    public String toString() {
+        return "BacklogStatus{" +
+                "running=" + running +
+                ", pendingFiles=" + pendingFiles +
+                ", pendingRecords=" + pendingRecords +
+                ", pendingRequests=" + pendingRequests +
+                ", oldestPendingTimestamp=" + oldestPendingTimestamp +
+                ", uploadedRecords=" + uploadedRecords +
+                ", uploadedRequests=" + uploadedRequests +
+                ", failedRequests=" + failedRequests +
+                ", expiredRecords=" + expiredRecords +
+                ", rejectedRecords=" + rejectedRecords +
+                ", availableRequests=" + availableRequests +
+                ", etaSec=" + etaSec +
+                '}';
+    }
+}
@@ -23,5 +23,13 @@ public class EBPvOutputRequest extends EventBusRequest {
         return opcode;
     }
 
+    /**
+     * @return the inverter whose PVOutput publication is addressed, 0 for the plant
+     */
+    public int inverterAddress() {
+        Object address = paramsMap == null ? null : paramsMap.get("address");
+        return address == null ? 0 : Integer.parseInt(address.toString());
+    }
+
 
 }
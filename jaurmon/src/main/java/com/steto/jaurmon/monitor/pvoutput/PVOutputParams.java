@@ -11,6 +11,9 @@ public class PVOutputParams {
     public String url;
     public String apiKey;
     public float timeWindowSec;
+    public int requestsPerHour = 60;
+    public int retentionDays = 14;
+    public int batchSize = 30;
 
     public Properties toProperties() {
         Properties result = new Properties();
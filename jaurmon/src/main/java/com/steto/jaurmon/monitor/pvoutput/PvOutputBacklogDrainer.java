@@ -0,0 +1,242 @@
+package com.steto.jaurmon.monitor.pvoutput;
+
+import com.steto.jaurlib.metrics.Gauge;
+import com.steto.jaurlib.metrics.MetricsRegistry;
+import com.steto.jaurmon.utils.MyUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Uploads the PVOutput csv backup files, oldest first and in chunks of at most batchSize records,
+ * alongside the live publication. Requests are paced by the request budget shared with the live updates.
+ * Chunks refused by PVOutput are set aside in the rejected folder instead of being retried.
+ */
+public class PvOutputBacklogDrainer implements Runnable {
+
+    static final long HOUR_MS = 3600 * 1000;
+    static final String EXPIRED_DIRECTORY = "expired";
+    static final String REJECTED_DIRECTORY = "rejected";
+    static final long STATUS_REFRESH_MS = 60 * 1000;
+
+    protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    private final PvOutputNew pvOutput;
+    private volatile boolean running = false;
+    private long minRequestIntervalMs = 1000;
+    private long maxRetryDelayMs = 5 * 60 * 1000;
+    private long retryDelayMs = minRequestIntervalMs;
+    private volatile long uploadedRecords = 0;
+    private volatile long uploadedRequests = 0;
+    private volatile long failedRequests = 0;
+    private volatile long expiredRecords = 0;
+    private volatile long rejectedRecords = 0;
+    private long lastStatusRefresh = 0;
+    private final Gauge backlogRecords = MetricsRegistry.getDefault().gauge("jaurmon_pvoutput_backlog_records", "Records waiting in the PVOutput backlog");
+    private final Gauge backlogRequests = MetricsRegistry.getDefault().gauge("jaurmon_pvoutput_backlog_requests", "Requests needed to upload the PVOutput backlog");
+
+    public PvOutputBacklogDrainer(PvOutputNew pvOutput) {
+        this.pvOutput = pvOutput;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        running = true;
+        log.info("Backlog drain started");
+        while (running) {
+            long time2wait = minRequestIntervalMs;
+            try {
+                time2wait = drainNext();
+                if (new Date().getTime() - lastStatusRefresh >= STATUS_REFRESH_MS) {
+                    status();
+                }
+            } catch (Exception e) {
+                log.log(Level.SEVERE, "Error draining PVOutput backlog: " + e.getMessage(), e);
+            }
+            try {
+                Thread.sleep(time2wait);
+            } catch (InterruptedException e) {
+                running = false;
+            }
+        }
+        log.info("Backlog drain stopped");
+    }
+
+    /**
+     * Uploads the oldest chunk of the oldest backup file if the request budget allows it. The backup files are
+     * locked while the chunk is selected and while the file is updated, not during the upload, so that a slow
+     * PVOutput does not hold the live publication saving its records.
+     *
+     * @return the time to wait, in ms, before the next attempt
+     */
+    protected long drainNext() throws IOException {
+
+        String fileName = MyUtils.selectFirstFile(pvOutput.getBackupDirectory(), ".csv");
+        if (fileName.isEmpty()) {
+            return idlePollMs();
+        }
+
+        List<PvOutputRecord> chunk;
+        synchronized (pvOutput.backupLock()) {
+
+            List<PvOutputRecord> records = PvOutputNew.readPvOutputRecordSet(fileName);
+            List<PvOutputRecord> valid = new ArrayList<>();
+            List<PvOutputRecord> expired = new ArrayList<>();
+            long oldestAccepted = new Date().getTime() - pvOutput.getParams().retentionDays * 24 * HOUR_MS;
+            for (PvOutputRecord record : records) {
+                if (record.timestamp >= oldestAccepted) {
+                    valid.add(record);
+                } else {
+                    expired.add(record);
+                }
+            }
+
+            if (!expired.isEmpty()) {
+                expiredRecords += expired.size();
+                log.warning(expired.size() + " records in: " + fileName + " are older than " + pvOutput.getParams().retentionDays + " days and cannot be uploaded anymore");
+                setAside(fileName, EXPIRED_DIRECTORY, expired);
+                rewrite(fileName, valid);
+            } else if (valid.isEmpty()) {
+                log.warning("File: " + fileName + " is empty or has no valid data");
+                rewrite(fileName, valid);
+            }
+            if (valid.isEmpty()) {
+                return minRequestIntervalMs;
+            }
+
+            long now = new Date().getTime();
+            float livePeriodSec = pvOutput.livePeriodSec();
+            PvOutputRequestBudget budget = pvOutput.getRequestBudget();
+            if (!budget.tryAcquireBacklog(livePeriodSec)) {
+                long wait = Math.max(minRequestIntervalMs, budget.msUntilBacklogToken(livePeriodSec, now));
+                log.fine("Backlog request budget exhausted, next upload in " + wait + " ms");
+                return Math.min(wait, maxRetryDelayMs);
+            }
+
+            int chunkSize = Math.min(valid.size(), Math.max(1, pvOutput.getParams().batchSize));
+            chunk = new ArrayList<>(valid.subList(0, chunkSize));
+        }
+
+        int responseCode = pvOutput.sendBatch(chunk);
+
+        if (responseCode == 200) {
+            uploadedRequests++;
+            uploadedRecords += chunk.size();
+            int remaining = removeHead(fileName, chunk.size());
+            log.info(chunk.size() + " records contained in: " + fileName + " where successfully updated to PvOutput, " + remaining + " left");
+        } else if (responseCode == 400) {
+            rejectedRecords += chunk.size();
+            log.warning(chunk.size() + " records contained in: " + fileName + " were rejected by PvOutput, moved to: " + REJECTED_DIRECTORY);
+            synchronized (pvOutput.backupLock()) {
+                setAside(fileName, REJECTED_DIRECTORY, chunk);
+            }
+            removeHead(fileName, chunk.size());
+        } else {
+            failedRequests++;
+            long wait = retryDelayMs;
+            retryDelayMs = Math.min(retryDelayMs * 2, maxRetryDelayMs);
+            return wait;
+        }
+        retryDelayMs = minRequestIntervalMs;
+        return minRequestIntervalMs;
+    }
+
+    /**
+     * Removes the records uploaded from the head of the file, keeping those the live publication appended meanwhile.
+     *
+     * @return the records left in the file
+     */
+    private int removeHead(String fileName, int count) throws IOException {
+        synchronized (pvOutput.backupLock()) {
+            List<PvOutputRecord> records = new File(fileName).exists() ? PvOutputNew.readPvOutputRecordSet(fileName) : new ArrayList<PvOutputRecord>();
+            List<PvOutputRecord> remaining = records.subList(Math.min(count, records.size()), records.size());
+            rewrite(fileName, remaining);
+            return remaining.size();
+        }
+    }
+
+    private void rewrite(String fileName, List<PvOutputRecord> records) throws IOException {
+        if (records.isEmpty()) {
+            boolean deleted = new File(fileName).delete();
+            log.info("Backup file: " + fileName + " completed. The file was deleted? " + deleted);
+        } else {
+            PvOutputNew.writePvOutputRecordSet(fileName, records, false);
+        }
+    }
+
+    private void setAside(String fileName, String directory, List<PvOutputRecord> records) throws IOException {
+        File file = new File(fileName);
+        File dir = new File(file.getParentFile(), directory);
+        if (!dir.exists() && !dir.mkdirs()) {
+            log.warning("Error creating directory: " + dir + ", " + records.size() + " records dropped");
+            return;
+        }
+        PvOutputNew.writePvOutputRecordSet(new File(dir, file.getName()).getAbsolutePath(), records, true);
+    }
+
+    private long idlePollMs() {
+        long period = (long) (pvOutput.getParams().period * 1000);
+        return Math.max(minRequestIntervalMs, Math.min(period, 60000));
+    }
+
+    public BacklogStatus status() {
+
+        BacklogStatus result = new BacklogStatus();
+        File[] files = MyUtils.selectFiles(pvOutput.getBackupDirectory(), ".csv");
+        int batchSize = Math.max(1, pvOutput.getParams().batchSize);
+        result.running = running;
+        result.pendingFiles = files.length;
+        for (File file : files) {
+            try {
+                int lines = Files.readAllLines(file.toPath(), Charset.defaultCharset()).size();
+                result.pendingRecords += lines;
+                result.pendingRequests += (lines + batchSize - 1) / batchSize;
+            } catch (IOException e) {
+                log.warning("Error reading backup file: " + file + ", " + e.getMessage());
+            }
+        }
+        if (files.length > 0) {
+            try {
+                List<PvOutputRecord> oldest = PvOutputNew.readPvOutputRecordSet(files[0].getAbsolutePath());
+                result.oldestPendingTimestamp = oldest.isEmpty() ? 0 : oldest.get(0).timestamp;
+            } catch (IOException e) {
+                log.warning("Error reading backup file: " + files[0] + ", " + e.getMessage());
+            }
+        }
+        result.uploadedRecords = uploadedRecords;
+        result.uploadedRequests = uploadedRequests;
+        result.failedRequests = failedRequests;
+        result.expiredRecords = expiredRecords;
+        result.rejectedRecords = rejectedRecords;
+
+        long now = new Date().getTime();
+        PvOutputRequestBudget budget = pvOutput.getRequestBudget();
+        result.availableRequests = budget.available(now);
+        long eta = budget.estimateBacklogMs(result.pendingRequests, pvOutput.livePeriodSec(), minRequestIntervalMs, now);
+        result.etaSec = eta < 0 ? -1 : eta / 1000;
+
+        backlogRecords.set(result.pendingRecords);
+        backlogRequests.set(result.pendingRequests);
+        lastStatusRefresh = now;
+
+        return result;
+    }
+
+    public void setMinRequestInterval(long minRequestIntervalMs) {
+        this.minRequestIntervalMs = minRequestIntervalMs;
+    }
+}
@@ -0,0 +1,122 @@
+package com.steto.jaurmon.monitor.pvoutput;
+
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+/**
+ * Writes the addstatus and addbatchstatus requests into a reusable buffer.
+ * Date and time strings are cached per minute, floats are appended without intermediate strings.
+ * An encoder is not thread safe: use one per thread. The time zone is the default one when the encoder is created.
+ */
+public class PvOutputEncoder {
+
+    private static final char FIELD_SEP = ',';
+    private static final char RECORD_SEP = ';';
+    private static final String ENCODED_FIELD_SEP = "%2C";
+    private static final String ENCODED_RECORD_SEP = "%3B";
+    private static final String ENCODED_TIME_SEP = "%3A";
+
+    private final StringBuilder buffer = new StringBuilder(256);
+    private final Calendar calendar = new GregorianCalendar();
+    private long cachedMinute = Long.MIN_VALUE;
+    private int year, month, day, hour, minute;
+
+    /**
+     * Same content as PvOutputNew.pvOutputRecordList2String, not url encoded.
+     */
+    public String batchData(List<PvOutputRecord> records) {
+        buffer.setLength(0);
+        appendBatchData(records, false);
+        return buffer.toString();
+    }
+
+    public String batchUpdateUrl(String url, String apiKey, int systemId, List<PvOutputRecord> records) {
+        buffer.setLength(0);
+        buffer.append(url).append("/addbatchstatus.jsp?");
+        appendCredentials(apiKey, systemId);
+        buffer.append("&data=");
+        appendBatchData(records, true);
+        return buffer.toString();
+    }
+
+    public String liveUpdateUrl(String url, String apiKey, int systemId, PeriodicInverterTelemetries tele) {
+        buffer.setLength(0);
+        buffer.append(url).append("/addstatus.jsp?");
+        appendCredentials(apiKey, systemId);
+        buffer.append("&d=");
+        appendDate(tele.timestamp);
+        buffer.append("&t=");
+        appendTime(tele.timestamp, ENCODED_TIME_SEP);
+        buffer.append("&v1=").append(tele.cumulatedEnergy);
+        buffer.append("&v2=").append(tele.gridPowerAll);
+        buffer.append("&v5=").append(tele.inverterTemp);
+        buffer.append("&v6=").append(tele.gridVoltageAll);
+        return buffer.toString();
+    }
+
+    private void appendCredentials(String apiKey, int systemId) {
+        buffer.append("key=").append(URLEncoder.encode(String.valueOf(apiKey), StandardCharsets.UTF_8));
+        buffer.append("&sid=").append(systemId);
+    }
+
+    private void appendBatchData(List<PvOutputRecord> records, boolean urlEncoded) {
+        String fieldSep = urlEncoded ? ENCODED_FIELD_SEP : String.valueOf(FIELD_SEP);
+        String recordSep = urlEncoded ? ENCODED_RECORD_SEP : String.valueOf(RECORD_SEP);
+        String timeSep = urlEncoded ? ENCODED_TIME_SEP : ":";
+        for (int i = 0; i < records.size(); i++) {
+            PvOutputRecord pvRecord = records.get(i);
+            if (i > 0) {
+                buffer.append(recordSep);
+            }
+            appendDate(pvRecord.timestamp);
+            buffer.append(fieldSep);
+            appendTime(pvRecord.timestamp, timeSep);
+            buffer.append(fieldSep).append(pvRecord.dailyCumulatedEnergy);
+            buffer.append(fieldSep).append(pvRecord.totalPowerGenerated);
+            buffer.append(fieldSep).append("-1");
+            buffer.append(fieldSep).append("-1");
+            buffer.append(fieldSep).append(pvRecord.temperature);
+            buffer.append(fieldSep).append(pvRecord.totalGridVoltage);
+        }
+    }
+
+    private void appendDate(long timestamp) {
+        updateCalendarFields(timestamp);
+        buffer.append(year);
+        appendTwoDigits(month);
+        appendTwoDigits(day);
+    }
+
+    private void appendTime(long timestamp, String separator) {
+        updateCalendarFields(timestamp);
+        appendTwoDigits(hour);
+        buffer.append(separator);
+        appendTwoDigits(minute);
+    }
+
+    private void appendTwoDigits(int value) {
+        if (value < 10) {
+            buffer.append('0');
+        }
+        buffer.append(value);
+    }
+
+    private void updateCalendarFields(long timestamp) {
+        long minuteBucket = timestamp / 60000;
+        if (minuteBucket == cachedMinute) {
+            return;
+        }
+        calendar.setTimeInMillis(timestamp);
+        year = calendar.get(Calendar.YEAR);
+        month = calendar.get(Calendar.MONTH) + 1;
+        day = calendar.get(Calendar.DAY_OF_MONTH);
+        hour = calendar.get(Calendar.HOUR_OF_DAY);
+        minute = calendar.get(Calendar.MINUTE);
+        cachedMinute = minuteBucket;
+    }
+}
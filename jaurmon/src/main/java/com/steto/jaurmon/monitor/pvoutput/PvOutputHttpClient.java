@@ -0,0 +1,134 @@
+package com.steto.jaurmon.monitor.pvoutput;
+
+import org.apache.http.Header;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared HTTP client for all the PVOutput requests: pooled keep-alive connections, the same timeouts
+ * and retry policy for test, status and batch requests, and a bounded executor for asynchronous calls.
+ */
+public class PvOutputHttpClient {
+
+    public static final int CONNECT_TIMEOUT_MS = 5000;
+    public static final int SOCKET_TIMEOUT_MS = 10000;
+    public static final int MAX_RETRIES = 1;
+    public static final int MAX_CONNECTIONS = 4;
+    public static final int MAX_QUEUED_REQUESTS = 16;
+
+    protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ThreadPoolExecutor executor;
+
+    public static class Result {
+        public int statusCode = -1;
+        public String rateLimitLimit;
+        public String rateLimitRemaining;
+        public String rateLimitReset;
+    }
+
+    public PvOutputHttpClient() {
+        this(CONNECT_TIMEOUT_MS, SOCKET_TIMEOUT_MS);
+    }
+
+    public PvOutputHttpClient(int connectTimeoutMs, int socketTimeoutMs) {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setConnectionRequestTimeout(connectTimeoutMs)
+                .setSocketTimeout(socketTimeoutMs)
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .setRetryHandler(new DefaultHttpRequestRetryHandler(MAX_RETRIES, false))
+                .build();
+
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED_REQUESTS), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "pvoutput-http-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Sends a GET request asking for the rate limit headers.
+     * Connection failures are logged and reported with statusCode -1.
+     */
+    public Result get(String requestUrl) {
+        Result result = new Result();
+        HttpGet request = new HttpGet(requestUrl);
+        request.setHeader(PvOutputRequestBudget.RATE_LIMIT_REQUEST_HEADER, "1");
+        try {
+            CloseableHttpResponse response = httpClient.execute(request);
+            try {
+                result.statusCode = response.getStatusLine().getStatusCode();
+                result.rateLimitLimit = headerValue(response.getFirstHeader(PvOutputRequestBudget.RATE_LIMIT_LIMIT_HEADER));
+                result.rateLimitRemaining = headerValue(response.getFirstHeader(PvOutputRequestBudget.RATE_LIMIT_REMAINING_HEADER));
+                result.rateLimitReset = headerValue(response.getFirstHeader(PvOutputRequestBudget.RATE_LIMIT_RESET_HEADER));
+                EntityUtils.consume(response.getEntity());
+            } finally {
+                response.close();
+            }
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Sending 'GET' request: " + requestUrl);
+                log.fine("Response Code: " + result.statusCode);
+            }
+        } catch (IOException e) {
+            log.severe("Error sending request to PVOutput: " + e.getMessage() + ", requestUrl: " + requestUrl);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the task on the publisher thread.
+     *
+     * @throws RejectedExecutionException if MAX_QUEUED_REQUESTS tasks are already waiting
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    public int queuedRequests() {
+        return executor.getQueue().size();
+    }
+
+    public void close() {
+        executor.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.warning("Error closing PVOutput http client: " + e.getMessage());
+        }
+        connectionManager.shutdown();
+    }
+
+    private static String headerValue(Header header) {
+        return header != null ? header.getValue() : null;
+    }
+}
@@ -7,26 +7,24 @@ import com.google.common.eventbus.Subscribe;
 import com.steto.jaurlib.eventbus.EBResponse;
 import com.steto.jaurlib.eventbus.EBResponseNOK;
 import com.steto.jaurlib.eventbus.EBResponseOK;
+import com.steto.jaurlib.metrics.Histogram;
+import com.steto.jaurlib.metrics.MetricsRegistry;
 import com.steto.jaurmon.monitor.MonitorMsgInverterStatus;
 import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
 import com.steto.jaurmon.monitor.TelemetriesQueue;
+import com.steto.jaurmon.monitor.jfr.PvOutputPublishEvent;
 import com.steto.jaurmon.utils.FormatStringUtils;
 import com.steto.jaurmon.utils.HttpUtils;
-import com.steto.jaurmon.utils.MyUtils;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalINIConfiguration;
 import org.apache.commons.configuration.SubnodeConfiguration;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +33,7 @@ import java.util.logging.Logger;
  */
 public class PvOutputNew {
 
+    public static final String REQUEST_SECONDS = "jaurmon_pvoutput_request_seconds";
 
     private final EventBus theEventBus;
     private final String configfileName;
@@ -43,14 +42,64 @@ public class PvOutputNew {
     protected Logger log = Logger.getLogger(getClass().getSimpleName());
     private boolean running = false;
     TelemetriesQueue telemetriesQueue = new TelemetriesQueue();
-    private int HTTP_REQUEST_TIMEOUT = 10000;
     private boolean isInverterOnline = true;
+    private final Object backupLock = new Object();
+    private final PvOutputBacklogDrainer backlogDrainer = new PvOutputBacklogDrainer(this);
+    private final PvOutputRequestBudget requestBudget;
+    private final PvOutputHttpClient httpClient = new PvOutputHttpClient();
+    private final Histogram requestOk = MetricsRegistry.getDefault().histogram(REQUEST_SECONDS, "Duration of the PVOutput requests", Histogram.LATENCY_BUCKETS, "outcome", "ok");
+    private final Histogram requestFailed = MetricsRegistry.getDefault().histogram(REQUEST_SECONDS, "Duration of the PVOutput requests", Histogram.LATENCY_BUCKETS, "outcome", "error");
+    private final boolean standalone;
+    private final int inverterAddress;
+    private PeriodicInverterTelemetries lastPublished = null;
+    private static final ThreadLocal<PvOutputEncoder> encoder = new ThreadLocal<PvOutputEncoder>() {
+        @Override
+        protected PvOutputEncoder initialValue() {
+            return new PvOutputEncoder();
+        }
+    };
+    private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyyMMdd");
+        }
+    };
+    private static final ThreadLocal<SimpleDateFormat> dayTimeFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("HH:mm");
+        }
+    };
 
     public PvOutputNew(String aFileName, EventBus aEventBus) {
+        this(aFileName, aEventBus, true);
+    }
+
+    /**
+     * @param standalone if false the live telemetries are not taken from the EventBus and no main loop is started:
+     *                   live publication is driven by a PvOutputSink registered on the TelemetryExporter
+     */
+    public PvOutputNew(String aFileName, EventBus aEventBus, boolean standalone) {
+        this(aFileName, aEventBus, standalone, PeriodicInverterTelemetries.PLANT);
+    }
+
+    /**
+     * Publishes the telemetries of one inverter of the fleet to its own PVOutput system: the parameters of the
+     * section [pvoutput_inverterAddress] override those of [pvoutput], the backup files go to csv/inverterAddress.
+     *
+     * @param inverterAddress the inverter published, PLANT for the plant totals
+     */
+    public PvOutputNew(String aFileName, EventBus aEventBus, boolean standalone, int inverterAddress) {
+        this.standalone = standalone;
+        this.inverterAddress = inverterAddress;
         theEventBus = aEventBus;
         configfileName = aFileName;
+        if (inverterAddress != PeriodicInverterTelemetries.PLANT) {
+            pvOutputDataDirectoryPath = pvOutputDataDirectoryPath + File.separator + "inverter" + inverterAddress;
+        }
         aEventBus.register(this);
         params = loadConfigurationParams(aFileName);
+        requestBudget = new PvOutputRequestBudget(params.requestsPerHour);
         createPvOutputLogDirectory();
 
     }
@@ -62,13 +111,17 @@ public class PvOutputNew {
         try {
             result = new PVOutputParams();
             HierarchicalINIConfiguration iniConfObj = new HierarchicalINIConfiguration(fileName);
-            SubnodeConfiguration params = iniConfObj.getSection("pvoutput");
-
-            result.url = params.getString("url");
-            result.period = params.getFloat("period");
-            result.systemId = params.getInt("systemId");
-            result.apiKey = params.getString("apiKey");
-            result.timeWindowSec = params.getFloat("timeWindowSec");
+            SubnodeConfiguration defaults = iniConfObj.getSection("pvoutput");
+            SubnodeConfiguration params = iniConfObj.getSection(sectionName());
+
+            result.url = params.getString("url", defaults.getString("url"));
+            result.period = params.getFloat("period", defaults.getFloat("period"));
+            result.systemId = params.getInt("systemId", defaults.getInt("systemId"));
+            result.apiKey = params.getString("apiKey", defaults.getString("apiKey"));
+            result.timeWindowSec = params.getFloat("timeWindowSec", defaults.getFloat("timeWindowSec"));
+            result.requestsPerHour = params.getInt("requestsPerHour", defaults.getInt("requestsPerHour", result.requestsPerHour));
+            result.retentionDays = params.getInt("retentionDays", defaults.getInt("retentionDays", result.retentionDays));
+            result.batchSize = params.getInt("batchSize", defaults.getInt("batchSize", result.batchSize));
 
         } catch (Exception e) {
             String errMsg = "Error reading file: " + fileName + ", " + e.getMessage();
@@ -78,6 +131,14 @@ public class PvOutputNew {
         return result;
     }
 
+    private String sectionName() {
+        return inverterAddress == PeriodicInverterTelemetries.PLANT ? "pvoutput" : "pvoutput_" + inverterAddress;
+    }
+
+    public int getInverterAddress() {
+        return inverterAddress;
+    }
+
     protected void createPvOutputLogDirectory() {
         File dataLogDirectory = new File(pvOutputDataDirectoryPath);
         if (!dataLogDirectory.exists()) {
@@ -96,7 +157,9 @@ public class PvOutputNew {
     @Subscribe
     public void handle(MonitorMsgInverterStatus msg) {
 
-        isInverterOnline = msg.isOnline;
+        if (msg.inverterAddress == inverterAddress) {
+            isInverterOnline = msg.isOnline;
+        }
     }
 
 
@@ -104,9 +167,8 @@ public class PvOutputNew {
     public void handle(PeriodicInverterTelemetries telemetries) {
         try {
 
-            if (running) {
-                telemetriesQueue.add(telemetries);
-                log.info("Stored telemetries: " + telemetries);
+            if (running && standalone && telemetries.inverterAddress == inverterAddress) {
+                addTelemetries(Collections.singletonList(telemetries));
             }
 
         } catch (Exception ex) {
@@ -117,6 +179,9 @@ public class PvOutputNew {
     @Subscribe
     public void handle(EBPvOutputRequest request) {
 
+        if (request.inverterAddress() != inverterAddress) {
+            return;
+        }
         try {
             switch (request.opcode()) {
                 case "read":
@@ -137,6 +202,9 @@ public class PvOutputNew {
                 case "status":
                     request.response = handleStatusRequest(request.paramsMap);
                     break;
+                case "backlog":
+                    request.response = handleBacklogRequest(request.paramsMap);
+                    break;
                 default:
                     request.response = new EBResponseNOK(-1, "Received invalid command: " + request.opcode());
                     break;
@@ -155,6 +223,12 @@ public class PvOutputNew {
 
     }
 
+    protected EBResponse handleBacklogRequest(Map<String, String> paramsMap) {
+
+        return new EBResponseOK(backlogDrainer.status());
+
+    }
+
     protected EBResponse handleTestRequest(Map<String, String> paramsMap) {
 
         EBResponse result;
@@ -206,8 +280,24 @@ public class PvOutputNew {
             newParams.systemId = Integer.parseInt(paramsMap.get("systemId"));
             newParams.period = Float.parseFloat(paramsMap.get("period"));
             newParams.timeWindowSec = Float.parseFloat(paramsMap.get("timeWindowSec"));
+            if (paramsMap.containsKey("requestsPerHour")) {
+                newParams.requestsPerHour = Integer.parseInt(paramsMap.get("requestsPerHour"));
+            } else if (params != null) {
+                newParams.requestsPerHour = params.requestsPerHour;
+            }
+            if (paramsMap.containsKey("retentionDays")) {
+                newParams.retentionDays = Integer.parseInt(paramsMap.get("retentionDays"));
+            } else if (params != null) {
+                newParams.retentionDays = params.retentionDays;
+            }
+            if (paramsMap.containsKey("batchSize")) {
+                newParams.batchSize = Integer.parseInt(paramsMap.get("batchSize"));
+            } else if (params != null) {
+                newParams.batchSize = params.batchSize;
+            }
             saveParams(newParams);
             params = newParams;
+            requestBudget.setLimit(newParams.requestsPerHour);
             result = new EBResponseOK("");
         } catch (Exception ex) {
             result = new EBResponseNOK(1, "Error saving data: " + ex.getMessage());
@@ -219,11 +309,14 @@ public class PvOutputNew {
 
     private void saveParams(PVOutputParams newParams) throws ConfigurationException {
         HierarchicalINIConfiguration iniConfObj = new HierarchicalINIConfiguration(new File(configfileName));
-        iniConfObj.setProperty("pvoutput.systemId", newParams.systemId);
-        iniConfObj.setProperty("pvoutput.apiKey", newParams.apiKey);
-        iniConfObj.setProperty("pvoutput.period", newParams.period);
-        iniConfObj.setProperty("pvoutput.url", newParams.url);
-        iniConfObj.setProperty("pvoutput.timeWindowSec", newParams.timeWindowSec);
+        iniConfObj.setProperty(sectionName() + ".systemId", newParams.systemId);
+        iniConfObj.setProperty(sectionName() + ".apiKey", newParams.apiKey);
+        iniConfObj.setProperty(sectionName() + ".period", newParams.period);
+        iniConfObj.setProperty(sectionName() + ".url", newParams.url);
+        iniConfObj.setProperty(sectionName() + ".timeWindowSec", newParams.timeWindowSec);
+        iniConfObj.setProperty(sectionName() + ".requestsPerHour", newParams.requestsPerHour);
+        iniConfObj.setProperty(sectionName() + ".retentionDays", newParams.retentionDays);
+        iniConfObj.setProperty(sectionName() + ".batchSize", newParams.batchSize);
 
         iniConfObj.save();
 
@@ -231,22 +324,48 @@ public class PvOutputNew {
 
     public boolean testPvOutputServer() throws IOException {
 
-        int responseCode = -1;
-        String requestUrl = generatePvOutputTestUrl();
+        if (!requestBudget.tryAcquireLive()) {
+            throw new IOException("PVOutput hourly request limit reached");
+        }
 
-        URL obj = new URL(requestUrl);
-        HttpURLConnection con;
-        con = (HttpURLConnection) obj.openConnection();
+        String requestUrl = generatePvOutputTestUrl();
+        int responseCode = sendGet(requestUrl);
 
-        // optional default is GET
-        con.setRequestMethod("GET");
+        return responseCode == 200;
 
-        responseCode = con.getResponseCode();
-        log.info("Sending 'GET' request: " + requestUrl);
-        log.info("Response Code: " + responseCode + " " + con.getResponseMessage());
+    }
 
-        return responseCode == 200;
+    /**
+     * @return the HTTP response code, -1 if the server could not be reached
+     */
+    protected int sendGet(String requestUrl) {
+        long start = System.nanoTime();
+        PvOutputHttpClient.Result result = httpClient.get(requestUrl);
+        (result.statusCode == 200 ? requestOk : requestFailed).observeNanos(System.nanoTime() - start);
+        if (result.statusCode > 0) {
+            updateRequestBudget(result.statusCode, result.rateLimitLimit, result.rateLimitRemaining, result.rateLimitReset);
+        }
+        return result.statusCode;
+    }
 
+    protected void updateRequestBudget(int responseCode, String limit, String remaining, String reset) {
+        long now = new Date().getTime();
+        long resetTime = 0;
+        try {
+            if (reset != null) {
+                resetTime = Long.parseLong(reset.trim()) * 1000;
+            }
+            if (remaining != null) {
+                int serverLimit = limit != null ? Integer.parseInt(limit.trim()) : 0;
+                requestBudget.update(serverLimit, Integer.parseInt(remaining.trim()), resetTime, now);
+            }
+        } catch (NumberFormatException e) {
+            log.warning("Invalid rate limit headers, limit: " + limit + ", remaining: " + remaining + ", reset: " + reset);
+        }
+        if (responseCode == 403) {
+            log.warning("PVOutput refused the request, hourly request limit exceeded");
+            requestBudget.exhausted(resetTime, now);
+        }
     }
 
     private String generatePvOutputTestUrl() {
@@ -262,43 +381,110 @@ public class PvOutputNew {
 
     public void stop() {
         running = false;
+        backlogDrainer.stop();
         log.info("Main Loop Stopped");
     }
 
+    /**
+     * Releases the http connections and the publisher thread, the instance cannot be started again.
+     */
+    public void close() {
+        stop();
+        httpClient.close();
+    }
+
     public void start() {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                mainLoop();
+        if (standalone) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    mainLoop();
+                }
+            }).start();
+        } else {
+            running = true;
+            log.info("Live publication enabled");
+        }
+        if (!backlogDrainer.isRunning()) {
+            new Thread(backlogDrainer).start();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isInverterOnline() {
+        return isInverterOnline;
+    }
+
+    public PVOutputParams getParams() {
+        return params;
+    }
+
+    public String getBackupDirectory() {
+        return pvOutputDataDirectoryPath;
+    }
+
+    public void setBackupDirectory(String path) {
+        pvOutputDataDirectoryPath = path;
+        createPvOutputLogDirectory();
+    }
+
+    public PvOutputRequestBudget getRequestBudget() {
+        return requestBudget;
+    }
+
+    /**
+     * Period of the live updates currently being published, 0 if none.
+     */
+    public float livePeriodSec() {
+        return running && isInverterOnline ? params.period : 0;
+    }
+
+    Object backupLock() {
+        return backupLock;
+    }
+
+    public void addTelemetries(List<PeriodicInverterTelemetries> telemetries) {
+        for (PeriodicInverterTelemetries item : telemetries) {
+            if (item.inverterAddress != inverterAddress) {
+                continue;
             }
-        }).start();
+            telemetriesQueue.add(item);
+            log.log(Level.FINE, "Stored telemetries: {0}", item);
+        }
+    }
+
+    /**
+     * Average of the telemetries received in the last timeWindowSec, null if there is nothing new to publish.
+     */
+    public synchronized PeriodicInverterTelemetries nextLiveData() {
+        long since = new Date().getTime() - (long) (params.timeWindowSec * 1000);
+        telemetriesQueue.removeOlderThan(since);
+        PeriodicInverterTelemetries result = telemetriesQueue.average();
+        if (result == null || sameData(result, lastPublished)) {
+            return null;
+        }
+        lastPublished = result;
+        return result;
     }
 
     protected void mainLoop() {
         final long PERIODICITY = (long) (params.period * 1000);
-        final long WINDOW_MS = (long) (params.timeWindowSec * 1000);
         log.info("Main Loop Started");
         running = true;
         while (running) {
             try {
                 if (isInverterOnline) {
-                    Long now = new Date().getTime();
-                    Long since = now - WINDOW_MS;
-                    telemetriesQueue.removeOlderThan(since);
-                    PeriodicInverterTelemetries dataPublished = telemetriesQueue.average();
+                    PeriodicInverterTelemetries dataPublished = nextLiveData();
                     if (dataPublished != null) {
-                        publish2PvOutput(dataPublished);
+                        publishAsync(dataPublished);
                     } else {
-                        log.fine("No data available for publication");
+                        log.fine("No new data available for publication");
                     }
                 } else {
-                    log.info("Inverter is not online, examining data backup files");
-                    String pvOutputFileData = MyUtils.selectFirstFile(pvOutputDataDirectoryPath, ".csv");
-                    if (pvOutputFileData.isEmpty()) {
-                        log.fine("No backup file found to upload to PvOutput in: " + pvOutputDataDirectoryPath);
-                    } else {
-                        batchPublish2PvOutput(pvOutputFileData);
-                    }
+                    log.fine("Inverter is not online, no live data to publish");
                 }
 
             } catch (Exception e) {
@@ -317,52 +503,54 @@ public class PvOutputNew {
     }
 
 
-    public String savePvOutputRecord(PvOutputRecord pvData) throws Exception {
+    private static boolean sameData(PeriodicInverterTelemetries a, PeriodicInverterTelemetries b) {
+        return b != null && a.timestamp == b.timestamp && a.cumulatedEnergy == b.cumulatedEnergy &&
+                a.gridPowerAll == b.gridPowerAll && a.gridVoltageAll == b.gridVoltageAll && a.inverterTemp == b.inverterTemp;
+    }
 
-        String[] values = new String[5];
-        values[0] = Long.toString(pvData.timestamp);
-        values[1] = Float.toString(pvData.dailyCumulatedEnergy);
-        values[2] = Float.toString(pvData.totalPowerGenerated);
-        values[3] = Float.toString(pvData.temperature);
-        values[4] = Float.toString(pvData.totalGridVoltage);
+    public String savePvOutputRecord(PvOutputRecord pvData) throws Exception {
 
         Date actualDate = new Date(pvData.timestamp);
         String fileName = FormatStringUtils.fromDate(actualDate);
         fileName = pvOutputDataDirectoryPath + File.separator + fileName + ".csv";
-        BufferedWriter out = new BufferedWriter(new FileWriter(fileName, true));
-        CSVWriter writer = new CSVWriter(out, ',', CSVWriter.NO_QUOTE_CHARACTER);
-        writer.writeNext(values);
-        out.close();
+        synchronized (backupLock) {
+            writePvOutputRecordSet(fileName, Collections.singletonList(pvData), true);
+        }
         log.info("PVOutput data saved in: " + fileName);
         return fileName;
     }
 
+    /**
+     * Publishes the telemetries on the PVOutput http thread, so that a slow server does not stall the main loop.
+     * If too many requests are already waiting the telemetries are saved for the backlog upload.
+     */
+    public Future<Boolean> publishAsync(final PeriodicInverterTelemetries telemetries) throws Exception {
+        try {
+            return httpClient.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return publish2PvOutput(telemetries);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warning("Too many PVOutput requests pending, live data saved for later upload");
+            savePvOutputRecord(new PvOutputRecord(telemetries));
+            return null;
+        }
+    }
+
     public boolean publish2PvOutput(PeriodicInverterTelemetries telemetries) throws Exception {
         boolean executed = false;
         String requestUrl = generatePvOutputLiveUpdateUrl(telemetries);// put in your url
         int responseCode = -1;
 
-        CloseableHttpClient httpClient = null;
-
-        try {
-
-            RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(HTTP_REQUEST_TIMEOUT).build();
-            httpClient = HttpClientBuilder.create().setDefaultRequestConfig(requestConfig).build();
-
-            HttpGet request = new HttpGet(requestUrl);
-
-            org.apache.http.HttpResponse response = httpClient.execute(request);
-            log.fine("Response code:" + response.getStatusLine());
-
-            responseCode = response.getStatusLine().getStatusCode();
-            log.info("Sending 'GET' request: " + requestUrl);
-
-
-        } catch (Exception e) {
-            log.severe("Error publishing data to PVOutput: " + e.getMessage());
-        }
-        finally{
-            httpClient.close();
+        if (!requestBudget.tryAcquireLive()) {
+            log.warning("PVOutput hourly request limit reached, live data saved for later upload");
+        } else {
+            PvOutputPublishEvent event = new PvOutputPublishEvent();
+            event.begin();
+            responseCode = sendGet(requestUrl);
+            event.commit(PvOutputPublishEvent.LIVE, 1, responseCode);
         }
         executed = (responseCode == 200);
         if (!executed) {
@@ -377,72 +565,34 @@ public class PvOutputNew {
     }
 
     private String generatePvOutputLiveUpdateUrl(PeriodicInverterTelemetries tele) {
-        Map<String, Object> map = new LinkedHashMap<>();
-
-        Date now = new Date();
-        now.setTime(tele.timestamp);
-        String date = convertDate(now);
-        String time = convertDayTime(now);
-        map.put("key", params.apiKey);
-        map.put("sid", params.systemId);
-        map.put("d", date);
-        map.put("t", time);
-        map.put("v1", tele.cumulatedEnergy);
-        map.put("v2", tele.gridPowerAll);
-        map.put("v5", tele.inverterTemp);
-        map.put("v6", tele.gridVoltageAll);
-
-        String result = params.url + "/addstatus.jsp?" + HttpUtils.urlEncodeUTF8(map);
-        return result;
+        return encoder.get().liveUpdateUrl(params.url, params.apiKey, params.systemId, tele);
     }
 
     public static String convertDate(Date aDate) {
-        SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyyMMdd");
-
-        return DATE_FORMAT.format(aDate);
+        return dateFormat.get().format(aDate);
     }
 
     public static String convertDayTime(Date aDate) {
-        SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("HH:mm");
-        DATE_FORMAT.setTimeZone(TimeZone.getDefault());
-
-        return DATE_FORMAT.format(aDate);
+        return dayTimeFormat.get().format(aDate);
     }
 
-    public void batchPublish2PvOutput(String dataStorageFileName) throws IOException {
-        int responseCode = -1;
-        String data = "";
-        String requestUrl = "";
-        boolean toBeDeleted = false;
-        try {
-            List<PvOutputRecord> savedData2Send = readPvOutputRecordSet(dataStorageFileName);
-            if (!savedData2Send.isEmpty()) {
-                data = pvOutputRecordList2String(savedData2Send);
-                requestUrl = generatePvOutputBatchUpdateUrl(data);
-                URL obj = new URL(requestUrl);
-                HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-                // TODO Inserire timeout per il socker come per l'update singolo
-                // optional default is GET
-                con.setConnectTimeout(5000);
-                con.setReadTimeout(5000);
-                con.setRequestMethod("GET");
-                responseCode = con.getResponseCode();
-                log.info("Sending 'GET' request: " + requestUrl);
-                log.info("Response Code: " + responseCode + " " + con.getResponseMessage());
-                toBeDeleted = (responseCode == 200);
-            } else {
-                log.warning("File: " + dataStorageFileName + " is empty or has no valid data");
-            }
-        } catch (Exception e) {
-            log.severe("Error publishing batch data  to PVOutput: " + e.getMessage());
-            log.severe("Data: " + data + "\n requestUrl" + requestUrl);
-        }
-        if (toBeDeleted) {
-            boolean deleted = new File(dataStorageFileName).delete();
-            log.info("Data contained in: " + dataStorageFileName + " where successfully updated to PvOutput. The file was deleted? " + deleted);
-        }
-
+    public boolean batchPublish2PvOutput(List<PvOutputRecord> savedData2Send) {
+        return sendBatch(savedData2Send) == 200;
+    }
 
+    /**
+     * Sends the records in a single addbatchstatus request, the caller is in charge of the request budget
+     * and of keeping the list within the batch size.
+     *
+     * @return the HTTP response code, -1 if the server could not be reached
+     */
+    protected int sendBatch(List<PvOutputRecord> savedData2Send) {
+        PvOutputPublishEvent event = new PvOutputPublishEvent();
+        event.begin();
+        String requestUrl = encoder.get().batchUpdateUrl(params.url, params.apiKey, params.systemId, savedData2Send);
+        int responseCode = sendGet(requestUrl);
+        event.commit(PvOutputPublishEvent.BATCH, savedData2Send.size(), responseCode);
+        return responseCode;
     }
 
     public static List<PvOutputRecord> readPvOutputRecordSet(String filePath) throws IOException {
@@ -468,33 +618,25 @@ public class PvOutputNew {
 
     }
 
-    public String pvOutputRecordList2String(List<PvOutputRecord> dataList) {
-        String charSep = ",";
-        String recordSep = ";";
-        String data = "";
-        for (PvOutputRecord pvRecord : dataList) {
-            Date date = new Date();
-            date.setTime(pvRecord.timestamp);
-            data += convertDate(date) + charSep + convertDayTime(date) + charSep + pvRecord.dailyCumulatedEnergy + charSep + pvRecord.totalPowerGenerated + charSep;
-            data += "-1" + charSep + "-1" + charSep;
-            data += pvRecord.temperature + charSep + pvRecord.totalGridVoltage + recordSep;
-        }
-        data = data.substring(0, data.length() - 1);
+    public static void writePvOutputRecordSet(String filePath, List<PvOutputRecord> records, boolean append) throws IOException {
 
-        return data;
+        BufferedWriter out = new BufferedWriter(new FileWriter(filePath, append));
+        CSVWriter writer = new CSVWriter(out, ',', CSVWriter.NO_QUOTE_CHARACTER);
+        for (PvOutputRecord pvData : records) {
+            String[] values = new String[5];
+            values[0] = Long.toString(pvData.timestamp);
+            values[1] = Float.toString(pvData.dailyCumulatedEnergy);
+            values[2] = Float.toString(pvData.totalPowerGenerated);
+            values[3] = Float.toString(pvData.temperature);
+            values[4] = Float.toString(pvData.totalGridVoltage);
+            writer.writeNext(values);
+        }
+        writer.close();
 
     }
 
-    private String generatePvOutputBatchUpdateUrl(String data) {
-        Map<String, Object> map = new LinkedHashMap<>();
-
-
-        map.put("key", params.apiKey);
-        map.put("sid", params.systemId);
-        map.put("data", data);
-
-        String result = params.url + "/addbatchstatus.jsp?" + HttpUtils.urlEncodeUTF8(map);
-        return result;
+    public String pvOutputRecordList2String(List<PvOutputRecord> dataList) {
+        return encoder.get().batchData(dataList);
     }
 
 
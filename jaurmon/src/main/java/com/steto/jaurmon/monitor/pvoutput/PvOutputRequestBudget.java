@@ -0,0 +1,143 @@
+package com.steto.jaurmon.monitor.pvoutput;
+
+import java.util.Date;
+
+/**
+ * Token bucket tracking the PVOutput hourly request limit, shared by live and backlog requests.
+ * Live updates may use every token; backlog requests must leave a reserve covering the next
+ * LIVE_RESERVE_SEC seconds of live updates, so live data always has priority.
+ * The bucket is corrected with the X-Rate-Limit-* headers returned by the server.
+ */
+public class PvOutputRequestBudget {
+
+    static final long HOUR_MS = 3600 * 1000;
+    static final float LIVE_RESERVE_SEC = 600;
+
+    public static final String RATE_LIMIT_REQUEST_HEADER = "X-Rate-Limit";
+    public static final String RATE_LIMIT_LIMIT_HEADER = "X-Rate-Limit-Limit";
+    public static final String RATE_LIMIT_REMAINING_HEADER = "X-Rate-Limit-Remaining";
+    public static final String RATE_LIMIT_RESET_HEADER = "X-Rate-Limit-Reset";
+
+    private int limit;
+    private double tokens;
+    private long lastRefill;
+    private long blockedUntil = 0;
+
+    public PvOutputRequestBudget(int requestsPerHour) {
+        this(requestsPerHour, new Date().getTime());
+    }
+
+    public PvOutputRequestBudget(int requestsPerHour, long now) {
+        limit = Math.max(1, requestsPerHour);
+        tokens = limit;
+        lastRefill = now;
+    }
+
+    public synchronized void setLimit(int requestsPerHour) {
+        limit = Math.max(1, requestsPerHour);
+        tokens = Math.min(tokens, limit);
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public boolean tryAcquireLive() {
+        return tryAcquireLive(new Date().getTime());
+    }
+
+    public synchronized boolean tryAcquireLive(long now) {
+        return tryAcquire(now, 0);
+    }
+
+    public boolean tryAcquireBacklog(float livePeriodSec) {
+        return tryAcquireBacklog(livePeriodSec, new Date().getTime());
+    }
+
+    /**
+     * @param livePeriodSec period of the live updates running alongside, 0 if none
+     */
+    public synchronized boolean tryAcquireBacklog(float livePeriodSec, long now) {
+        return tryAcquire(now, liveReserve(livePeriodSec));
+    }
+
+    private boolean tryAcquire(long now, int reserve) {
+        refill(now);
+        if (now < blockedUntil || tokens - reserve < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    public synchronized int liveReserve(float livePeriodSec) {
+        if (livePeriodSec <= 0) {
+            return 0;
+        }
+        return (int) Math.min(limit - 1, Math.ceil(LIVE_RESERVE_SEC / livePeriodSec));
+    }
+
+    /**
+     * Time to wait before a backlog request could be granted.
+     */
+    public synchronized long msUntilBacklogToken(float livePeriodSec, long now) {
+        refill(now);
+        double missing = liveReserve(livePeriodSec) + 1 - tokens;
+        long wait = missing <= 0 ? 0 : (long) Math.ceil(missing * HOUR_MS / limit);
+        return Math.max(wait, blockedUntil - now);
+    }
+
+    public synchronized int available(long now) {
+        refill(now);
+        return now < blockedUntil ? 0 : (int) tokens;
+    }
+
+    /**
+     * Aligns the bucket with the rate limit state reported by the server.
+     *
+     * @param resetTime time (ms) at which the server restores the full limit, 0 if unknown
+     */
+    public synchronized void update(int serverLimit, int remaining, long resetTime, long now) {
+        refill(now);
+        if (serverLimit > 0) {
+            limit = serverLimit;
+        }
+        tokens = Math.min(Math.min(tokens, limit), Math.max(0, remaining));
+        if (remaining <= 0) {
+            blockedUntil = resetTime > now ? resetTime : now + HOUR_MS / limit;
+        }
+    }
+
+    /**
+     * The server refused a request because the limit was exceeded.
+     */
+    public synchronized void exhausted(long resetTime, long now) {
+        update(0, 0, resetTime, now);
+    }
+
+    /**
+     * Estimated time needed to send the given number of backlog requests.
+     */
+    public synchronized long estimateBacklogMs(int requests, float livePeriodSec, long minIntervalMs, long now) {
+        refill(now);
+        int reserve = liveReserve(livePeriodSec);
+        int availableNow = now < blockedUntil ? 0 : (int) Math.max(0, tokens - reserve);
+        if (requests <= availableNow) {
+            return requests * minIntervalMs;
+        }
+        double liveRequestsPerHour = livePeriodSec > 0 ? 3600 / livePeriodSec : 0;
+        double backlogRequestsPerHour = limit - liveRequestsPerHour;
+        if (backlogRequestsPerHour <= 0) {
+            return -1;
+        }
+        long blocked = Math.max(0, blockedUntil - now);
+        return blocked + availableNow * minIntervalMs + (long) ((requests - availableNow) * HOUR_MS / backlogRequestsPerHour);
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(limit, tokens + (now - lastRefill) * (double) limit / HOUR_MS);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.steto.jaurmon.monitor.pvoutput;
+
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import com.steto.jaurmon.monitor.export.SinkPolicy;
+import com.steto.jaurmon.monitor.export.TelemetrySink;
+
+import java.util.List;
+
+/**
+ * Publishes the live PVOutput status from the TelemetryExporter: each batch collects one PVOutput period.
+ * Failed publications go to the PVOutput backup files, uploaded by the backlog drainer, so the exporter
+ * keeps no outbox for this sink.
+ */
+public class PvOutputSink implements TelemetrySink {
+
+    public static final String NAME = "pvoutput";
+
+    private final PvOutputNew pvOutput;
+
+    public PvOutputSink(PvOutputNew pvOutput) {
+        this.pvOutput = pvOutput;
+    }
+
+    public static SinkPolicy policy(PVOutputParams params) {
+        SinkPolicy result = new SinkPolicy();
+        result.batchSize = result.queueCapacity;
+        result.maxBatchAgeMs = (long) (params.period * 1000);
+        return result;
+    }
+
+    @Override
+    public String name() {
+        int address = pvOutput.getInverterAddress();
+        return address == PeriodicInverterTelemetries.PLANT ? NAME : NAME + "_" + address;
+    }
+
+    @Override
+    public void send(List<PeriodicInverterTelemetries> batch) throws Exception {
+        if (!pvOutput.isRunning()) {
+            return;
+        }
+        pvOutput.addTelemetries(batch);
+        if (!pvOutput.isInverterOnline()) {
+            return;
+        }
+        PeriodicInverterTelemetries dataPublished = pvOutput.nextLiveData();
+        if (dataPublished != null) {
+            pvOutput.publish2PvOutput(dataPublished);
+        }
+    }
+
+    @Override
+    public void close() {
+        // the PVOutput client belongs to the monitor
+    }
+}
@@ -4,6 +4,7 @@ import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.steto.jaurmon.monitor.MonitorMsgDailyMaxPower;
 import com.steto.jaurmon.monitor.MonitorMsgStarted;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,6 +31,9 @@ public class TelegramPlg {
     public void handle(final MonitorMsgDailyMaxPower maxPowerMsg) {
 
         log.fine("Handling:  " + maxPowerMsg);
+        if (maxPowerMsg.inverterAddress != PeriodicInverterTelemetries.PLANT) {
+            return;
+        }
         new Thread(new Runnable() {
             @Override
 
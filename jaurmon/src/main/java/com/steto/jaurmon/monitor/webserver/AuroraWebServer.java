@@ -5,6 +5,8 @@ package com.steto.jaurmon.monitor.webserver;
  */
 
 import com.google.common.eventbus.EventBus;
+import com.steto.jaurlib.metrics.MetricsRegistry;
+import com.steto.jaurmon.monitor.federation.FederationReceiver;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.ContextHandler;
@@ -12,6 +14,8 @@ import org.eclipse.jetty.server.handler.ContextHandlerCollection;
 import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.server.nio.SelectChannelConnector;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 
@@ -23,6 +27,7 @@ public class AuroraWebServer implements Runnable {
     private final int port;
     private final String resourcePath;
     private Server server;
+    private FederationReceiver federationReceiver;
 
     public AuroraWebServer(int port, String path, EventBus eventBus) {
         this.theEventBus = eventBus;
@@ -30,6 +35,13 @@ public class AuroraWebServer implements Runnable {
         resourcePath = path;
     }
 
+    /**
+     * Serves the edge nodes of a federation under /federation.
+     */
+    public void setFederationReceiver(FederationReceiver federationReceiver) {
+        this.federationReceiver = federationReceiver;
+    }
+
     public void run() {
 
  /* Configure the http server */
@@ -62,11 +74,29 @@ public class AuroraWebServer implements Runnable {
         pvoutputContext.setContextPath("/pvoutput");
         pvoutputContext.setHandler(new InverterCmdHandler(theEventBus));
 
+        ContextHandler metricsContext = new ContextHandler();
+        metricsContext.setContextPath("/metrics");
+        metricsContext.setHandler(new MetricsHandler(MetricsRegistry.getDefault()));
+
+        ContextHandler apiContext = new ContextHandler();
+        apiContext.setContextPath("/api");
+        apiContext.setHandler(new LiveStreamHandler(theEventBus));
+
+        List<Handler> handlers = new ArrayList<>();
+        handlers.add(resourceContext);
+        handlers.add(cmdContext);
+        handlers.add(pvoutputContext);
+        handlers.add(metricsContext);
+        handlers.add(apiContext);
+        if (federationReceiver != null) {
+            ContextHandler federationContext = new ContextHandler();
+            federationContext.setContextPath("/federation");
+            federationContext.setHandler(new FederationHandler(federationReceiver));
+            handlers.add(federationContext);
+        }
+
         ContextHandlerCollection contexts = new ContextHandlerCollection();
-        contexts.setHandlers(new Handler[]{
-                        resourceContext, cmdContext, pvoutputContext
-                }
-        );
+        contexts.setHandlers(handlers.toArray(new Handler[handlers.size()]));
 
         server.setHandler(contexts);
 
@@ -0,0 +1,90 @@
+package com.steto.jaurmon.monitor.webserver;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.steto.jaurmon.monitor.federation.FederationAck;
+import com.steto.jaurmon.monitor.federation.FederationBatch;
+import com.steto.jaurmon.monitor.federation.FederationReceiver;
+import com.steto.jaurmon.utils.HttpUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Endpoint of the central node of a federation: offset?node=&stream= answers the last record of the stream applied,
+ * a POST to ingest applies a batch, gzipped or not, and answers the same; nodes lists the edge nodes.
+ */
+class FederationHandler extends AbstractHandler {
+
+    protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    private final FederationReceiver receiver;
+    private final Gson gson = new Gson();
+
+    public FederationHandler(FederationReceiver receiver) {
+        this.receiver = receiver;
+    }
+
+    public void handle(String target,
+                       Request baseRequest,
+                       HttpServletRequest request,
+                       HttpServletResponse response)
+            throws IOException, ServletException {
+        String[] pathList = request.getRequestURI().split("/");
+        String command = pathList[pathList.length - 1];
+        int status = HttpServletResponse.SC_OK;
+        String responseString;
+        try {
+            switch (command) {
+                case "offset":
+                    Map<String, String> queryMap = request.getQueryString() == null ? new HashMap<String, String>() : HttpUtils.getQueryMap(request.getQueryString());
+                    responseString = gson.toJson(receiver.offset(queryMap.get("node"), queryMap.get("stream")));
+                    break;
+                case "ingest":
+                    if (!"POST".equals(request.getMethod())) {
+                        status = HttpServletResponse.SC_METHOD_NOT_ALLOWED;
+                        responseString = "POST required";
+                        break;
+                    }
+                    InputStream in = request.getInputStream();
+                    if ("gzip".equalsIgnoreCase(request.getHeader("Content-Encoding"))) {
+                        in = new GZIPInputStream(in);
+                    }
+                    FederationBatch batch = gson.fromJson(new InputStreamReader(in, "UTF-8"), FederationBatch.class);
+                    if (batch == null) {
+                        throw new IllegalArgumentException("Empty batch");
+                    }
+                    FederationAck ack = receiver.receive(batch);
+                    responseString = gson.toJson(ack);
+                    break;
+                case "nodes":
+                    responseString = gson.toJson(receiver.status());
+                    break;
+                default:
+                    status = HttpServletResponse.SC_NOT_FOUND;
+                    responseString = "Unknown federation request: " + command;
+            }
+        } catch (IllegalArgumentException | JsonParseException e) {
+            status = HttpServletResponse.SC_BAD_REQUEST;
+            responseString = "Bad federation request: " + e.getMessage();
+            log.warning(responseString);
+        } catch (Exception e) {
+            status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+            responseString = "Error elaborating federation request: " + command + ", " + e.getMessage();
+            log.severe(responseString);
+        }
+        response.setContentType("application/json;charset=utf-8");
+        response.setStatus(status);
+        response.getWriter().println(responseString);
+        baseRequest.setHandled(true);
+    }
+}
@@ -2,12 +2,16 @@ package com.steto.jaurmon.monitor.webserver;
 
 import com.google.common.eventbus.EventBus;
 import com.steto.jaurlib.eventbus.EBResponseNOK;
+import com.steto.jaurlib.eventbus.EBInverterBatchRequest;
 import com.steto.jaurlib.eventbus.EBInverterRequest;
 import com.steto.jaurkit.EventBusRequest;
+import com.steto.jaurlib.response.ResponseErrorEnum;
 
 import com.steto.jaurmon.monitor.cmd.*;
 import com.steto.jaurmon.monitor.pvoutput.EBPvOutputRequest;
 import com.steto.jaurmon.utils.HttpUtils;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
@@ -16,14 +20,73 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Created by stefano on 27/12/15.
+ * The commands are executed on COMMAND_THREADS threads of their own while the request is suspended, so a slow
+ * or sleeping inverter holds no thread of the web server. A command not completed within its deadline,
+ * DEFAULT_DEADLINE_MS or the deadline parameter in ms, is answered with a timeout error; beyond QUEUE_CAPACITY
+ * commands waiting, a command is rejected with BUSY.
  */
 class InverterCmdHandler extends AbstractHandler {
+    static final int COMMAND_THREADS = 4;
+    static final int QUEUE_CAPACITY = 16;
+    static final long DEFAULT_DEADLINE_MS = 10000;
+    static final int BUSY = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+    private static final String PENDING = "jaurmon.command.pending";
+
     private EventBus theEventBus;
     protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    private ThreadPoolExecutor executor;
+
+    /**
+     * A command being executed for a suspended request. Either the command completing or the deadline expiring
+     * completes it, whichever comes first: the command resumes the request only if first, and does not touch it
+     * afterwards, the request may already serve another one.
+     */
+    class PendingCommand implements Runnable {
+        private final Continuation continuation;
+        private final String commandReceived;
+        private final EventBusRequest eventBusRequest;
+        private final AtomicReference<String> result = new AtomicReference<>();
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+
+        PendingCommand(Continuation continuation, String commandReceived, EventBusRequest eventBusRequest) {
+            this.continuation = continuation;
+            this.commandReceived = commandReceived;
+            this.eventBusRequest = eventBusRequest;
+        }
+
+        @Override
+        public void run() {
+            if (completed.get()) {
+                return;
+            }
+            result.set(execute(commandReceived, eventBusRequest));
+            if (completed.compareAndSet(false, true)) {
+                continuation.resume();
+            } else {
+                log.fine("Command completed after the deadline: " + commandReceived);
+            }
+        }
+
+        /**
+         * @return true if the deadline expired before the command completed
+         */
+        boolean expire() {
+            return completed.compareAndSet(false, true);
+        }
+    }
 
 
     public InverterCmdHandler(EventBus aEventBus) {
@@ -51,9 +114,21 @@ class InverterCmdHandler extends AbstractHandler {
             case "inv":
                 result = new EBInverterRequest(cmdParams);
                 break;
+            case "invBatch":
+                result = new EBInverterBatchRequest(cmdParams);
+                break;
             case "pvoutput":
                 result = new EBPvOutputRequest(cmdParams);
                 break;
+            case "busStats":
+                result = new MonCmdBusStats(cmdParams);
+                break;
+            case "topology":
+                result = new MonCmdTopology(cmdParams);
+                break;
+            case "fleet":
+                result = new MonCmdFleet(cmdParams);
+                break;
 
         }
 
@@ -66,23 +141,49 @@ class InverterCmdHandler extends AbstractHandler {
                        HttpServletResponse response)
             throws IOException, ServletException {
         // elimina lo / iniziale
+        String[] pathList = request.getRequestURI().split("/");
+        final String commandReceived = pathList[pathList.length - 1];
+        final Continuation continuation = ContinuationSupport.getContinuation(request);
+
+        PendingCommand pending = (PendingCommand) continuation.getAttribute(PENDING);
+        if (pending != null) {
+            if (continuation.isExpired() && pending.expire()) {
+                executor.remove(pending);
+                String errMsg = "Deadline expired elaborating command: " + commandReceived;
+                log.warning(errMsg);
+                respond(baseRequest, response, commandReceived, new EBResponseNOK(ResponseErrorEnum.TIMEOUT.get(), errMsg).toJson());
+            } else {
+                respond(baseRequest, response, commandReceived, pending.result.get());
+            }
+            return;
+        }
+
         String responseString = "";
-        String commandReceived = "";
         try {
-            String[] pathList = request.getRequestURI().split("/");
-            commandReceived = pathList[pathList.length - 1];
-
-            log.info("Handling request: " + commandReceived);
+            log.log(Level.FINE, "Handling request: {0}", commandReceived);
             Map<String, String> queryMap = null;
             if (request.getQueryString() != null && !request.getQueryString().isEmpty()) {
                 queryMap = HttpUtils.getQueryMap(request.getQueryString());
             }
 
-            EventBusRequest eventBusRequest = createMonitorCommand(commandReceived, queryMap);
+            final EventBusRequest eventBusRequest = createMonitorCommand(commandReceived, queryMap);
             if (eventBusRequest != null) {
-                theEventBus.post(eventBusRequest);
-                responseString = eventBusRequest.response.toJson();
-                log.info("Command :" + commandReceived + " decoded as :" + eventBusRequest + ", response: " + responseString);
+                long deadline = (queryMap != null && queryMap.get("deadline") != null) ? parseDeadline(queryMap.get("deadline")) : DEFAULT_DEADLINE_MS;
+                continuation.setTimeout(deadline);
+                continuation.suspend();
+                baseRequest.setHandled(true);
+                PendingCommand command = new PendingCommand(continuation, commandReceived, eventBusRequest);
+                continuation.setAttribute(PENDING, command);
+                try {
+                    executor.execute(command);
+                } catch (RejectedExecutionException e) {
+                    command.expire();
+                    String errMsg = "Too many commands waiting, rejected: " + commandReceived;
+                    log.warning(errMsg);
+                    respond(baseRequest, response, commandReceived, new EBResponseNOK(BUSY, errMsg).toJson(), BUSY);
+                    continuation.complete();
+                }
+                return;
 
             } else {
                 String errMsg = "Received UNKNOWN Command: " + commandReceived;
@@ -92,19 +193,85 @@ class InverterCmdHandler extends AbstractHandler {
             }
 
 
+        } catch (IllegalArgumentException e) {
+            String errMsg = "Bad parameters of command: " + commandReceived + ", " + e.getMessage();
+            responseString = new EBResponseNOK(1, errMsg).toJson();
+            log.warning(errMsg);
+        } catch (Exception e) {
+            String errMsg = "Error elaborating command: " + commandReceived + ", " + e.getMessage();
+            responseString = errMsg;
+            log.severe(errMsg);
+        }
+        respond(baseRequest, response, commandReceived, responseString);
+    }
+
+    /**
+     * @return the deadline parameter in ms
+     * @throws IllegalArgumentException if not a positive number of ms, 0 would suspend the request forever
+     */
+    static long parseDeadline(String deadlineParameter) {
+        long result;
+        try {
+            result = Long.parseLong(deadlineParameter.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("deadline is not a number of ms: " + deadlineParameter);
+        }
+        if (result <= 0) {
+            throw new IllegalArgumentException("deadline must be positive: " + deadlineParameter);
+        }
+        return result;
+    }
+
+    private String execute(String commandReceived, EventBusRequest eventBusRequest) {
+        String responseString;
+        try {
+            theEventBus.post(eventBusRequest);
+            responseString = eventBusRequest.response.toJson();
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Command :" + commandReceived + " decoded as :" + eventBusRequest + ", response: " + responseString);
+            }
         } catch (Exception e) {
             String errMsg = "Error elaborating command: " + commandReceived + ", " + e.getMessage();
             responseString = errMsg;
             log.severe(errMsg);
-        } finally {
-            log.info("Response to request: " + commandReceived + ", is: " + responseString);
-            response.setContentType("text/html;charset=utf-8");
-            response.getWriter().println(responseString);
-            baseRequest.setHandled(true);
-            response.setStatus(HttpServletResponse.SC_OK);
+        }
+        return responseString;
+    }
+
+    private void respond(Request baseRequest, HttpServletResponse response, String commandReceived, String responseString) throws IOException {
+        respond(baseRequest, response, commandReceived, responseString, HttpServletResponse.SC_OK);
+    }
 
+    private void respond(Request baseRequest, HttpServletResponse response, String commandReceived, String responseString, int status) throws IOException {
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Response to request: " + commandReceived + ", is: " + responseString);
         }
+        response.setStatus(status);
+        response.setContentType("text/html;charset=utf-8");
+        response.getWriter().println(responseString);
+        baseRequest.setHandled(true);
     }
 
+    @Override
+    protected void doStart() throws Exception {
+        executor = new ThreadPoolExecutor(COMMAND_THREADS, COMMAND_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "command-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        executor.shutdownNow();
+        super.doStop();
+    }
 
 }
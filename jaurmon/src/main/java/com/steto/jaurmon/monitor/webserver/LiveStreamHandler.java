@@ -0,0 +1,222 @@
+package com.steto.jaurmon.monitor.webserver;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.gson.Gson;
+import com.steto.jaurmon.monitor.MonitorMsgDailyMaxPower;
+import com.steto.jaurmon.monitor.MonitorMsgInverterStatus;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Pushes the telemetries, the status changes and the daily peak power to the dashboards as server-sent events,
+ * as soon as they are posted on the event bus. Requests are suspended, so an idle client holds no thread.
+ * A client has at most one write in flight: the events posted meanwhile are coalesced, a slow client gets only the
+ * latest of each kind and inverter. A new client gets the latest events at once, and a comment every
+ * KEEPALIVE_MS finds the clients gone.
+ */
+class LiveStreamHandler extends AbstractHandler {
+
+    static final long KEEPALIVE_MS = 15000;
+    static final int WRITER_THREADS = 4;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    private final EventBus theEventBus;
+    private final Gson gson = new Gson();
+    private final Map<String, String> latest = new ConcurrentHashMap<>();
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private ExecutorService writers;
+    private Timer timer;
+
+    class Client implements Runnable {
+        private final Continuation continuation;
+        private final OutputStream out;
+        private final Map<String, String> pending = new LinkedHashMap<>();
+        private boolean writing = false;
+        private boolean closed = false;
+
+        Client(Continuation continuation, OutputStream out) {
+            this.continuation = continuation;
+            this.out = out;
+        }
+
+        /**
+         * Replaces the event of the same key not written yet.
+         */
+        synchronized void offer(String key, String event) {
+            if (closed) {
+                return;
+            }
+            pending.put(key, event);
+            if (!writing) {
+                writing = true;
+                writers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                List<String> events;
+                synchronized (this) {
+                    if (pending.isEmpty() || closed) {
+                        writing = false;
+                        return;
+                    }
+                    events = new ArrayList<>(pending.values());
+                    pending.clear();
+                }
+                try {
+                    for (String event : events) {
+                        out.write(event.getBytes(UTF8));
+                    }
+                    out.flush();
+                } catch (IOException | RuntimeException e) {
+                    log.fine("Stream client gone: " + e.getMessage());
+                    close();
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pending.clear();
+            }
+            clients.remove(this);
+            try {
+                continuation.complete();
+            } catch (IllegalStateException e) {
+                log.fine("Stream already completed: " + e.getMessage());
+            }
+        }
+    }
+
+    public LiveStreamHandler(EventBus aEventBus) {
+        theEventBus = aEventBus;
+    }
+
+    public void handle(String target,
+                       Request baseRequest,
+                       HttpServletRequest request,
+                       HttpServletResponse response)
+            throws IOException, ServletException {
+        if (!"/stream".equals(target)) {
+            return;
+        }
+        Continuation continuation = ContinuationSupport.getContinuation(request);
+        continuation.setTimeout(0);
+        continuation.suspend(response);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/event-stream;charset=utf-8");
+        response.setHeader("Cache-Control", "no-cache");
+        baseRequest.setHandled(true);
+
+        Client client = new Client(continuation, response.getOutputStream());
+        clients.add(client);
+        client.offer("retry", "retry: 3000\n\n");
+        for (Map.Entry<String, String> entry : latest.entrySet()) {
+            client.offer(entry.getKey(), entry.getValue());
+        }
+        log.fine("Stream client connected: " + request.getRemoteAddr() + ", clients: " + clients.size());
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void handle(PeriodicInverterTelemetries telemetries) {
+        publish("telemetries", telemetries.inverterAddress, telemetries);
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void handle(MonitorMsgInverterStatus msg) {
+        publish("status", msg.inverterAddress, msg);
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void handle(MonitorMsgDailyMaxPower msg) {
+        publish("dailyMaxPower", msg.inverterAddress, msg);
+    }
+
+    private void publish(String name, int inverterAddress, Object msg) {
+        String key = name + "/" + inverterAddress;
+        String event = "event: " + name + "\ndata: " + gson.toJson(msg) + "\n\n";
+        latest.put(key, event);
+        for (Client client : clients) {
+            client.offer(key, event);
+        }
+    }
+
+    public int getClients() {
+        return clients.size();
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        writers = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "live-stream-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer = new Timer("live-stream-keepalive", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                for (Client client : clients) {
+                    client.offer("keepalive", ": keepalive\n\n");
+                }
+            }
+        }, KEEPALIVE_MS, KEEPALIVE_MS);
+        theEventBus.register(this);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        theEventBus.unregister(this);
+        timer.cancel();
+        for (Client client : clients) {
+            client.close();
+        }
+        writers.shutdown();
+        super.doStop();
+    }
+}
@@ -0,0 +1,33 @@
+package com.steto.jaurmon.monitor.webserver;
+
+import com.steto.jaurlib.metrics.MetricsRegistry;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves the metrics registry in the Prometheus text format.
+ */
+class MetricsHandler extends AbstractHandler {
+
+    private final MetricsRegistry registry;
+
+    public MetricsHandler(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void handle(String target,
+                       Request baseRequest,
+                       HttpServletRequest request,
+                       HttpServletResponse response)
+            throws IOException, ServletException {
+        response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.getWriter().write(registry.toPrometheus());
+        baseRequest.setHandled(true);
+    }
+}
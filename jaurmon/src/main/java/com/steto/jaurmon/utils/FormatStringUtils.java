@@ -14,10 +14,7 @@ import java.util.Map;
 public class FormatStringUtils {
 
     public static String byteArrayToHex(byte[] a) {
-        StringBuilder sb = new StringBuilder(a.length * 2);
-        for (byte b : a)
-            sb.append(String.format("%02x", b & 0xff));
-        return sb.toString();
+        return com.steto.jaurlib.utils.FormatStringUtils.byteArrayToHex(a);
     }
 
     public static String jsonResult(boolean isResultOk) {
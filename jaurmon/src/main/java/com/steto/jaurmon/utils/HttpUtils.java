@@ -1,10 +1,15 @@
 package com.steto.jaurmon.utils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by stefano on 20/12/14.
@@ -71,4 +76,14 @@ public class HttpUtils {
         return map;
     }
 
+    public static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() / 4 + 64);
+        Writer writer = new OutputStreamWriter(new GZIPOutputStream(out), "UTF-8");
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+        return out.toByteArray();
+    }
 }
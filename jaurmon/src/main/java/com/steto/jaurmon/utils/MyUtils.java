@@ -31,6 +31,16 @@ public class MyUtils {
     public static String selectFirstFile(String filePath, final CharSequence extension) {
 
         String result = "";
+        File[] files = selectFiles(filePath, extension);
+        if (files.length>0) {
+            result = files[0].getAbsolutePath();
+        }
+
+        return result;
+    }
+
+    public static File[] selectFiles(String filePath, final CharSequence extension) {
+
         File folder = new File(filePath);
         File[] files = folder.listFiles(new FileFilter() {
             @Override
@@ -38,12 +48,12 @@ public class MyUtils {
                 return !aFile.isDirectory() && aFile.getName().contains(extension);
             }
         });
-        if (files != null && files.length>0) {
-            Arrays.sort(files);
-            result = files[0].getAbsolutePath();
+        if (files == null) {
+            return new File[0];
         }
+        Arrays.sort(files);
 
-        return result;
+        return files;
     }
 
 }
@@ -111,6 +111,38 @@ public class FakeAuroraWebClient {
         return result;
     }
 
+    public String sendMetricsRequest() {
+        String requestUrl = serverAddress + "/metrics";
+        String result = "";
+        try {
+            HttpClient httpClient = HttpClients.createDefault();
+            HttpResponse response = httpClient.execute(new HttpGet(requestUrl));
+            HttpEntity entity = response.getEntity();
+            result = EntityUtils.toString(entity, "UTF-8");
+            log.info("Sending 'GET' request: " + requestUrl);
+            log.info("Response Code: " + response.getStatusLine().getStatusCode());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    public String sendBusStatsRequest(boolean reset) {
+        String requestUrl = serverAddress + "/cmd/busStats" + (reset ? "?reset=true" : "");
+        String result = "";
+        try {
+            HttpClient httpClient = HttpClients.createDefault();
+            HttpResponse response = httpClient.execute(new HttpGet(requestUrl));
+            HttpEntity entity = response.getEntity();
+            result = EntityUtils.toString(entity, "UTF-8");
+            log.info("Sending 'GET' request: " + requestUrl);
+            log.info("Response Code: " + response.getStatusLine().getStatusCode() + " " + result);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
     public String sendInverterCommand(String address, String opcode, String subcode) {
 
         Map mapConfig = new HashMap<String,String>();
@@ -134,4 +166,26 @@ public class FakeAuroraWebClient {
         return result;
     }
 
+    public String sendInverterBatchCommand(String address, String measures) {
+
+        Map mapConfig = new HashMap<String,String>();
+        mapConfig.put("address",address);
+        mapConfig.put("measures",measures);
+        String queryUrl = HttpUtils.urlEncodeUTF8(mapConfig) ;
+
+        String requestUrl = serverAddress + "/cmd/invBatch/" + "?" + queryUrl;
+        String result = "";
+        try {
+            HttpClient httpClient = HttpClients.createDefault();
+            HttpResponse response = httpClient.execute(new HttpGet(requestUrl));
+            HttpEntity entity = response.getEntity();
+            result = EntityUtils.toString(entity, "UTF-8");
+            log.info("Sending 'GET' request: " + requestUrl);
+            log.info("Response Code: " + response.getStatusLine().getStatusCode() + " " + result);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
 }
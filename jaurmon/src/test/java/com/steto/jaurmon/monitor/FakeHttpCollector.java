@@ -0,0 +1,98 @@
+package com.steto.jaurmon.monitor;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Http endpoint recording the body of every request, gunzipped if needed, and answering with a settable status.
+ */
+public class FakeHttpCollector implements Runnable {
+
+    private final Integer servicePort;
+    private final ConcurrentLinkedQueue<String> bodies = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<String> queries = new ConcurrentLinkedQueue<>();
+    private volatile int responseStatus = HttpServletResponse.SC_OK;
+    private Server server;
+
+    public FakeHttpCollector(Integer port) {
+        this.servicePort = port;
+    }
+
+    public void setResponseStatus(int responseStatus) {
+        this.responseStatus = responseStatus;
+    }
+
+    public String pollBody() {
+        return bodies.poll();
+    }
+
+    public String pollQuery() {
+        return queries.poll();
+    }
+
+    public int received() {
+        return bodies.size();
+    }
+
+    public String waitForBody(long wait) throws InterruptedException {
+        long timestamp = new Date().getTime();
+        while (bodies.isEmpty() && ((new Date().getTime() - timestamp) < wait)) {
+            Thread.sleep(100);
+        }
+        return bodies.poll();
+    }
+
+    public void stop() throws Exception {
+        server.stop();
+    }
+
+    @Override
+    public void run() {
+
+        server = new Server();
+        SelectChannelConnector connector = new SelectChannelConnector();
+        connector.setPort(servicePort);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+                InputStream in = request.getInputStream();
+                if ("gzip".equals(request.getHeader("Content-Encoding"))) {
+                    in = new GZIPInputStream(in);
+                }
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    body.write(buffer, 0, read);
+                }
+                int status = responseStatus;
+                if (status >= 200 && status < 300) {
+                    bodies.add(body.toString("UTF-8"));
+                    queries.add(String.valueOf(request.getQueryString()));
+                }
+                response.setStatus(status);
+                baseRequest.setHandled(true);
+            }
+        });
+
+        try {
+            server.start();
+            server.join();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.steto.jaurmon.monitor;
+
+import com.steto.jaurmon.monitor.mqtt.MqttCodec;
+import com.steto.jaurmon.monitor.mqtt.MqttMessage;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Minimal MQTT 3.1.1 broker accepting one client at a time; it records the published messages
+ * and the retained value of every topic. Acknowledgements can be held back to check the in-flight window.
+ */
+public class FakeMqttBroker implements Runnable {
+
+    protected Logger log = Logger.getLogger(getClass().getSimpleName());
+    private final int port;
+    private ServerSocket serverSocket;
+    private volatile Socket client;
+    private volatile boolean autoAck = true;
+    private int ackLimit = -1;
+    private final List<Integer> heldAcks = new ArrayList<>();
+    private final List<MqttCodec.Packet> publishes = new ArrayList<>();
+    private final Map<String, String> retained = new LinkedHashMap<>();
+    private String clientId;
+
+    public FakeMqttBroker(int port) {
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        Thread thread = new Thread(this, "fake-mqtt-broker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        Socket current = client;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    public synchronized void setAutoAck(boolean autoAck) {
+        this.autoAck = autoAck;
+    }
+
+    /**
+     * Acknowledges only the next limit messages, then holds the acknowledgements.
+     */
+    public synchronized void setAckLimit(int limit) {
+        this.ackLimit = limit;
+    }
+
+    public void ackAll() throws IOException {
+        List<Integer> acks;
+        synchronized (this) {
+            acks = new ArrayList<>(heldAcks);
+            heldAcks.clear();
+            autoAck = true;
+        }
+        OutputStream out = client.getOutputStream();
+        for (Integer packetId : acks) {
+            out.write(MqttCodec.puback(packetId));
+        }
+        out.flush();
+    }
+
+    public synchronized List<MqttMessage> messages() {
+        List<MqttMessage> result = new ArrayList<>();
+        for (MqttCodec.Packet packet : publishes) {
+            result.add(packet.message());
+        }
+        return result;
+    }
+
+    public synchronized List<MqttCodec.Packet> packets() {
+        return new ArrayList<>(publishes);
+    }
+
+    public synchronized String retained(String topic) {
+        return retained.get(topic);
+    }
+
+    public synchronized String getClientId() {
+        return clientId;
+    }
+
+    @Override
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try {
+                client = serverSocket.accept();
+                serve(client);
+            } catch (IOException e) {
+                log.fine("Client disconnected: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        try {
+            while (true) {
+                MqttCodec.Packet packet = MqttCodec.read(in);
+                byte[] reply = null;
+                synchronized (this) {
+                    switch (packet.type) {
+                        case MqttCodec.CONNECT:
+                            int offset = 10;
+                            int length = ((packet.body[offset] & 0xFF) << 8) | (packet.body[offset + 1] & 0xFF);
+                            clientId = new String(packet.body, offset + 2, length, "UTF-8");
+                            reply = MqttCodec.connack(0);
+                            break;
+                        case MqttCodec.PUBLISH:
+                            publishes.add(packet);
+                            MqttMessage message = packet.message();
+                            if (message.retain) {
+                                retained.put(message.topic, message.payload);
+                            }
+                            if (autoAck && ackLimit != 0) {
+                                reply = MqttCodec.puback(packet.packetId());
+                                if (ackLimit > 0) {
+                                    ackLimit--;
+                                }
+                            } else {
+                                heldAcks.add(packet.packetId());
+                            }
+                            break;
+                        case MqttCodec.PINGREQ:
+                            reply = MqttCodec.pingresp();
+                            break;
+                        case MqttCodec.DISCONNECT:
+                            return;
+                    }
+                }
+                if (reply != null) {
+                    out.write(reply);
+                    out.flush();
+                }
+            }
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -14,9 +14,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Created by stefano on 19/12/14.
@@ -52,7 +52,9 @@ class PvOutputHttpRequestHandler extends AbstractHandler {
         Map<String,String> queyMap = HttpUtils.getQueryMap(request.getQueryString());
         String a =  queyMap.get("key");
         String b =  queyMap.get("sid");
-        if (queyMap.get("key").equals(fakePVOutputServer.key) &&
+        if (!fakePVOutputServer.consumeRateLimit(request, response)) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+        } else if (queyMap.get("key").equals(fakePVOutputServer.key) &&
                 queyMap.get("sid").equals(fakePVOutputServer.systemId.toString())) {
 
             response.setStatus(HttpServletResponse.SC_OK);
@@ -76,9 +78,11 @@ public class FakePVOutputServer implements Runnable {
     public String key;
     public String pvOutUrl;
     String lastRequest = null;
-    Queue<String> requestQueue = new LinkedList<>();
+    Queue<String> requestQueue = new ConcurrentLinkedQueue<>();
     private long responseDelay;
     private Server server;
+    private int rateLimit = 0;
+    private int rateLimitRemaining = 0;
 
 
     public FakePVOutputServer(Integer port, String pvOutKey, Integer pvOutSystemId, String pvOutServiceUrl) {
@@ -145,6 +149,27 @@ public class FakePVOutputServer implements Runnable {
     }
 
 
+    public synchronized void setRateLimit(int limit, int remaining) {
+        rateLimit = limit;
+        rateLimitRemaining = remaining;
+    }
+
+    synchronized boolean consumeRateLimit(HttpServletRequest request, HttpServletResponse response) {
+        if (rateLimit <= 0) {
+            return true;
+        }
+        boolean allowed = rateLimitRemaining > 0;
+        if (allowed) {
+            rateLimitRemaining--;
+        }
+        if ("1".equals(request.getHeader("X-Rate-Limit"))) {
+            response.setHeader("X-Rate-Limit-Limit", String.valueOf(rateLimit));
+            response.setHeader("X-Rate-Limit-Remaining", String.valueOf(rateLimitRemaining));
+            response.setHeader("X-Rate-Limit-Reset", String.valueOf(new Date().getTime() / 1000 + 3600));
+        }
+        return allowed;
+    }
+
     public void setResponseDelay(long responseDelay) {
         this.responseDelay = responseDelay;
     }
@@ -49,6 +49,9 @@ public class TestUtility {
         iniConfObj.setProperty("pvoutput.period", pvOutputParams.period);
         iniConfObj.setProperty("pvoutput.url", pvOutputParams.url);
         iniConfObj.setProperty("pvoutput.timeWindowSec", pvOutputParams.timeWindowSec);
+        iniConfObj.setProperty("pvoutput.requestsPerHour", pvOutputParams.requestsPerHour);
+        iniConfObj.setProperty("pvoutput.retentionDays", pvOutputParams.retentionDays);
+        iniConfObj.setProperty("pvoutput.batchSize", pvOutputParams.batchSize);
 
         iniConfObj.save();
 
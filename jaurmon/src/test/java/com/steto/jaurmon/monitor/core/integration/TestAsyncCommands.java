@@ -0,0 +1,196 @@
+package com.steto.jaurmon.monitor.core.integration;
+
+import com.google.common.eventbus.EventBus;
+import com.google.gson.Gson;
+import com.steto.jaurlib.AuroraDriver;
+import com.steto.jaurlib.cmd.InverterCommandFactory;
+import com.steto.jaurlib.eventbus.EBResponseNOK;
+import com.steto.jaurlib.eventbus.EBResponseOK;
+import com.steto.jaurlib.eventbus.EventBusInverterAdapter;
+import com.steto.jaurlib.request.AuroraDspRequestEnum;
+import com.steto.jaurlib.response.AResp_DspData;
+import com.steto.jaurlib.response.ResponseErrorEnum;
+import com.steto.jaurmon.monitor.webserver.AuroraWebServer;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static com.steto.jaurmon.monitor.RandomObjectGenerator.getInt;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestAsyncCommands {
+
+    int port = 1024 + getInt(64000);
+    EventBus theEventBus = new EventBus();
+    AuroraDriver auroraDriver = mock(AuroraDriver.class);
+    AuroraWebServer auroraWebServer;
+
+    @Before
+    public void before() throws Exception {
+        when(auroraDriver.acquireDspValue(anyInt(), any(AuroraDspRequestEnum.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(1000);
+                AResp_DspData response = new AResp_DspData();
+                response.setFloatParam(230);
+                return response;
+            }
+        });
+        new EventBusInverterAdapter(theEventBus, auroraDriver, new InverterCommandFactory());
+        auroraWebServer = new AuroraWebServer(port, "./html", theEventBus);
+        new Thread(auroraWebServer).start();
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void after() throws Exception {
+        auroraWebServer.stop();
+    }
+
+    private String get(String query) throws Exception {
+        return EntityUtils.toString(HttpClients.createDefault().execute(new HttpGet("http://localhost:" + port + "/cmd/inv?" + query)).getEntity(), "UTF-8");
+    }
+
+    private int serverThreads() {
+        int result = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("qtp")) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void shouldAnswerWithTimeoutWhenTheDeadlineExpires() throws Exception {
+        long start = new Date().getTime();
+        String jsonResult = get("opcode=dspData&subcode=gridPowerAll&address=2&maxAge=0&deadline=300");
+        long elapsed = new Date().getTime() - start;
+
+        EBResponseNOK result = new Gson().fromJson(jsonResult, EBResponseNOK.class);
+        assertEquals(ResponseErrorEnum.TIMEOUT.get(), result.error.code.intValue());
+        assertTrue("Answered in " + elapsed + " ms", elapsed < 900);
+
+        jsonResult = get("opcode=dspData&subcode=gridPowerAll&address=2&maxAge=0");
+        assertEquals(230, Float.parseFloat((String) new Gson().fromJson(jsonResult, EBResponseOK.class).data), 0.001);
+    }
+
+    @Test
+    public void shouldNotHoldAServerThreadPerPendingCommand() throws Exception {
+        int threadsBefore = serverThreads();
+        final List<String> results = new ArrayList<>();
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Thread client = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        String jsonResult = get("opcode=dspData&subcode=gridPowerAll&address=2&maxAge=0&deadline=1500");
+                        synchronized (results) {
+                            results.add(jsonResult);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            client.start();
+            clients.add(client);
+        }
+        Thread.sleep(500);
+        int threadsDuring = serverThreads();
+        for (Thread client : clients) {
+            client.join(5000);
+        }
+
+        assertTrue("Server threads: " + threadsBefore + " -> " + threadsDuring, threadsDuring - threadsBefore < 10);
+        assertEquals(30, results.size());
+        int answered = 0;
+        for (String jsonResult : results) {
+            if (!jsonResult.contains("\"error\"")) {
+                answered++;
+            } else {
+                int code = new Gson().fromJson(jsonResult, EBResponseNOK.class).error.code;
+                assertTrue("Error: " + code, code == ResponseErrorEnum.TIMEOUT.get() || code == 503);
+            }
+        }
+        assertTrue("Answered: " + answered, answered >= 1);
+    }
+
+    @Test
+    public void shouldAnswerABadMaxAgeWithAnError() throws Exception {
+        for (String maxAge : new String[]{"abc", "-5"}) {
+            EBResponseNOK result = new Gson().fromJson(get("opcode=dspData&subcode=gridPowerAll&address=2&maxAge=" + maxAge), EBResponseNOK.class);
+            assertEquals(1, result.error.code.intValue());
+            assertTrue(result.error.message, result.error.message.contains("maxAge"));
+        }
+    }
+
+    @Test
+    public void shouldAnswerABadDeadlineWithAnError() throws Exception {
+        for (String deadline : new String[]{"0", "-100", "soon"}) {
+            long start = new Date().getTime();
+            EBResponseNOK result = new Gson().fromJson(get("opcode=dspData&subcode=gridPowerAll&address=2&maxAge=0&deadline=" + deadline), EBResponseNOK.class);
+            assertEquals(1, result.error.code.intValue());
+            assertTrue(result.error.message, result.error.message.contains("deadline"));
+            assertTrue(new Date().getTime() - start < 900);
+        }
+    }
+
+    @Test
+    public void shouldRejectTheCommandsBeyondTheQueueCapacity() throws Exception {
+        final List<Integer> statuses = new ArrayList<>();
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Thread client = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int status = HttpClients.createDefault().execute(new HttpGet("http://localhost:" + port + "/cmd/inv?opcode=dspData&subcode=gridPowerAll&address=2&maxAge=0&deadline=500")).getStatusLine().getStatusCode();
+                        synchronized (statuses) {
+                            statuses.add(status);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            client.start();
+            clients.add(client);
+        }
+        for (Thread client : clients) {
+            client.join(5000);
+        }
+
+        assertEquals(30, statuses.size());
+        assertTrue("Statuses: " + statuses, statuses.contains(503));
+        assertTrue("Statuses: " + statuses, statuses.contains(200));
+    }
+
+    @Test
+    public void shouldNotServeAnExpiredResponseToTheNextRequest() throws Exception {
+        org.apache.http.impl.client.CloseableHttpClient client = HttpClients.createDefault();
+        String base = "http://localhost:" + port + "/cmd/";
+        String expired = EntityUtils.toString(client.execute(new HttpGet(base + "inv?opcode=dspData&subcode=gridPowerAll&address=2&maxAge=0&deadline=300")).getEntity());
+        assertTrue(expired, expired.contains("Deadline expired"));
+        Thread.sleep(1200);
+
+        String next = EntityUtils.toString(client.execute(new HttpGet(base + "status")).getEntity());
+        assertTrue(next, !next.contains("230"));
+        client.close();
+    }
+}
@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 
 import static com.steto.jaurmon.monitor.TestUtility.createAuroraConfigFile;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
 
@@ -56,6 +57,7 @@ public class TestConfigurationFile {
         int baudRate=9600;
         float inverterQueryPeriodSec = (float) 30.5;
         boolean enableEnergyEstimation = false;
+        String[] extraDspMeasures = {"input1Voltage", "input1Current"};
 
         HwSettings hwSettings = new HwSettings();
         hwSettings.serialPort = serialPort;
@@ -76,6 +78,7 @@ public class TestConfigurationFile {
         auroraMonitorSave.setSerialPortName(serialPort);
         auroraMonitorSave.setInverterInterrogationPeriod(inverterQueryPeriodSec);
         auroraMonitorSave.setDailyCumulatedEnergyEstimationFeature(enableEnergyEstimation);
+        auroraMonitorSave.setExtraDspMeasures(extraDspMeasures);
 
         auroraMonitorSave.saveHwSettingsConfiguration();
         auroraMonitorSave.saveConfiguration();
@@ -89,6 +92,7 @@ public class TestConfigurationFile {
         assertEquals(baudRate,auroraMonitorLoad.getSerialPortBaudRate());
         assertEquals(inverterQueryPeriodSec,auroraMonitorLoad.getInverterInterrogationPeriod(), 0.0001);
         assertEquals(enableEnergyEstimation,auroraMonitorLoad.getDailyCumulatedEnergyEstimationFeature());
+        assertArrayEquals(extraDspMeasures, auroraMonitorLoad.getExtraDspMeasures());
 
 
     }
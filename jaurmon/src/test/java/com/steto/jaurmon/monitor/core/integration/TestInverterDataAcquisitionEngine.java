@@ -5,6 +5,7 @@ import com.google.common.eventbus.Subscribe;
 import com.steto.jaurlib.AuroraDriver;
 import com.steto.jaurlib.cmd.InverterCommandFactory;
 import com.steto.jaurlib.eventbus.EventBusInverterAdapter;
+import com.steto.jaurlib.metrics.MetricsRegistry;
 import com.steto.jaurlib.request.AuroraCumEnergyEnum;
 import com.steto.jaurlib.request.AuroraDspRequestEnum;
 import com.steto.jaurlib.response.AResp_CumulatedEnergy;
@@ -173,6 +174,7 @@ public class TestInverterDataAcquisitionEngine {
         assertEquals(gridVoltageAll, telemetriesReceiver.telemetries.gridVoltageAll, 0.0001);
         assertEquals(inverterTemperature, telemetriesReceiver.telemetries.inverterTemp, 0.0001);
         assertEquals(cumulatedEnergy, telemetriesReceiver.telemetries.cumulatedEnergy, 0.0001);
+        assertEquals(gridPowerAll, MetricsRegistry.getDefault().gauge(AuroraMonitor.MEASURE_GAUGE, "Latest acquired measure", "measure", "gridPowerAll").get(), 0.0001);
 
 
     }
@@ -476,4 +476,34 @@ public class TestInverterREST {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldExecuteInverterBatchCommand() throws Exception {
+
+        // Setup Command
+        int inverterAddress = 2;
+        String measures = "dspData:gridVoltageAll,cumEnergy:daily";
+
+        AResp_DspData expectedVoltage = new AResp_DspData();
+        expectedVoltage.setFloatParam(231.5f);
+        when(auroraDriver.acquireDspValue(eq(inverterAddress), eq(AuroraDspRequestEnum.GRID_VOLTAGE_ALL))).thenReturn(expectedVoltage);
+        AResp_CumulatedEnergy expectedEnergy = new AResp_CumulatedEnergy();
+        expectedEnergy.setLongParam(4000);
+        when(auroraDriver.acquireCumulatedEnergy(eq(inverterAddress), eq(AuroraCumEnergyEnum.DAILY))).thenReturn(expectedEnergy);
+
+        // Setup FakeClient
+        FakeAuroraWebClient fakeAuroraWebClient = new FakeAuroraWebClient("http://localhost:" + auroraServicePort);
+        Thread.sleep(500);
+
+        // exercise
+        String jsonResult = fakeAuroraWebClient.sendInverterBatchCommand(String.valueOf(inverterAddress), measures);
+
+        //verify
+        System.out.println(jsonResult);
+
+        Map dataMap = (Map) new Gson().fromJson(jsonResult, Map.class).get("data");
+        assertEquals(231.5f, Float.parseFloat((String) ((Map) dataMap.get("dspData:gridVoltageAll")).get("data")), 0.00001);
+        assertEquals(4000f, Float.parseFloat((String) ((Map) dataMap.get("cumEnergy:daily")).get("data")), 0.00001);
+
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.steto.jaurmon.monitor.core.integration;
+
+import com.google.common.eventbus.EventBus;
+import com.steto.jaurmon.monitor.MonitorMsgInverterStatus;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import com.steto.jaurmon.monitor.webserver.AuroraWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.steto.jaurmon.monitor.RandomObjectGenerator.getInt;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestLiveStream {
+
+    int port = 1024 + getInt(64000);
+    EventBus theEventBus = new EventBus();
+    AuroraWebServer auroraWebServer;
+    List<HttpURLConnection> connections = new ArrayList<>();
+
+    @Before
+    public void before() throws Exception {
+        auroraWebServer = new AuroraWebServer(port, "./html", theEventBus);
+        new Thread(auroraWebServer).start();
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void after() throws Exception {
+        auroraWebServer.stop();
+        for (HttpURLConnection connection : connections) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return the lines of the stream, read on a thread of their own
+     */
+    private LinkedBlockingQueue<String> connect() throws Exception {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/api/stream").openConnection();
+        connection.setReadTimeout(0);
+        connections.add(connection);
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/event-stream"));
+        final LinkedBlockingQueue<String> result = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        result.add(line);
+                    }
+                } catch (Exception e) {
+                    result.add("closed");
+                }
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+        return result;
+    }
+
+    private String nextData(LinkedBlockingQueue<String> lines, String event) throws InterruptedException {
+        String line;
+        while ((line = lines.poll(3, TimeUnit.SECONDS)) != null) {
+            if (line.equals("event: " + event)) {
+                return lines.poll(3, TimeUnit.SECONDS);
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void shouldPushTheTelemetriesAsTheyArePosted() throws Exception {
+        LinkedBlockingQueue<String> lines = connect();
+        PeriodicInverterTelemetries telemetries = new PeriodicInverterTelemetries();
+        telemetries.gridPowerAll = 1234.5f;
+
+        theEventBus.post(telemetries);
+        theEventBus.post(new MonitorMsgInverterStatus(false, 3));
+
+        String data = nextData(lines, "telemetries");
+        assertTrue(data, data.startsWith("data: ") && data.contains("\"gridPowerAll\":1234.5"));
+        data = nextData(lines, "status");
+        assertTrue(data, data.contains("\"isOnline\":false") && data.contains("\"inverterAddress\":3"));
+    }
+
+    @Test
+    public void shouldSendTheLatestEventsToANewClient() throws Exception {
+        PeriodicInverterTelemetries telemetries = new PeriodicInverterTelemetries();
+        for (int i = 1; i <= 5; i++) {
+            telemetries.gridPowerAll = i;
+            theEventBus.post(telemetries);
+        }
+
+        LinkedBlockingQueue<String> lines = connect();
+
+        String data = nextData(lines, "telemetries");
+        assertTrue(data, data.contains("\"gridPowerAll\":5.0"));
+    }
+
+    @Test
+    public void shouldServeManyClientsWithoutHoldingThreads() throws Exception {
+        int threadsBefore = Thread.activeCount();
+        List<LinkedBlockingQueue<String>> clients = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            clients.add(connect());
+        }
+        int serverThreads = Thread.activeCount() - threadsBefore - clients.size();
+        assertTrue("Threads added by the server: " + serverThreads, serverThreads < 15);
+
+        PeriodicInverterTelemetries telemetries = new PeriodicInverterTelemetries();
+        telemetries.gridPowerAll = 42;
+        theEventBus.post(telemetries);
+        for (LinkedBlockingQueue<String> lines : clients) {
+            String data = nextData(lines, "telemetries");
+            assertTrue(data, data.contains("\"gridPowerAll\":42.0"));
+        }
+    }
+}
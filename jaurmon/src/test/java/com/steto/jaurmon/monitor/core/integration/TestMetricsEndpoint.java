@@ -0,0 +1,97 @@
+package com.steto.jaurmon.monitor.core.integration;
+
+import com.google.common.eventbus.EventBus;
+import com.google.gson.Gson;
+import com.steto.jaurlib.AuroraDriver;
+import com.steto.jaurlib.metrics.BusMetrics;
+import com.steto.jaurlib.metrics.MetricsRegistry;
+import com.steto.jaurlib.request.AuroraDspRequestEnum;
+import com.steto.jaurlib.request.AuroraRequestFactory;
+import com.steto.jaurlib.response.AuroraResponse;
+import com.steto.jaurlib.response.AuroraResponseFactory;
+import com.steto.jaurlib.response.ResponseErrorEnum;
+import com.steto.jaurmon.monitor.AuroraMonitor;
+import com.steto.jaurmon.monitor.FakeAuroraWebClient;
+import com.steto.jaurmon.monitor.webserver.AuroraWebServer;
+import jssc.SerialPort;
+import jssc.SerialPortTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import static com.steto.jaurmon.monitor.RandomObjectGenerator.getInt;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestMetricsEndpoint {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    String configFile = new File("src/test/resources/aurora.cfg").getAbsolutePath();
+    int port = 1024 + getInt(64000);
+    EventBus theEventBus = new EventBus();
+    AuroraWebServer auroraWebServer;
+
+    @Before
+    public void before() throws Exception {
+        auroraWebServer = new AuroraWebServer(port, "./html", theEventBus);
+        new Thread(auroraWebServer).start();
+        Thread.sleep(500);
+    }
+
+    @After
+    public void after() throws Exception {
+        auroraWebServer.stop();
+    }
+
+    @Test
+    public void shouldExposeBusTransactions() throws Exception {
+        SerialPort serialPort = mock(SerialPort.class);
+        when(serialPort.readBytes(anyInt(), anyInt())).thenThrow(new SerialPortTimeoutException("test", "readBytes", 2000));
+        AuroraDriver auroraDriver = new AuroraDriver(serialPort, new AuroraRequestFactory(), new AuroraResponseFactory());
+
+        AuroraResponse response = auroraDriver.acquireState(2);
+        assertEquals(ResponseErrorEnum.TIMEOUT, response.getErrorCode());
+        long timeouts = MetricsRegistry.getDefault().counter(BusMetrics.TRANSACTIONS, "", "command", "GETSTATE", "outcome", "TIMEOUT").get();
+
+        String metrics = new FakeAuroraWebClient("http://localhost:" + port).sendMetricsRequest();
+
+        assertTrue(metrics.contains("# TYPE " + BusMetrics.TRANSACTIONS + " counter\n"));
+        assertTrue(metrics.contains(BusMetrics.TRANSACTIONS + "{command=\"GETSTATE\",outcome=\"TIMEOUT\"} " + timeouts + "\n"));
+        assertTrue(metrics.contains(BusMetrics.TRANSACTION_SECONDS + "_count{command=\"GETSTATE\"} "));
+    }
+
+    @Test
+    public void shouldReportBusStatistics() throws Exception {
+        SerialPort serialPort = mock(SerialPort.class);
+        when(serialPort.readBytes(anyInt(), anyInt())).thenThrow(new SerialPortTimeoutException("test", "readBytes", 2000));
+        AuroraDriver auroraDriver = new AuroraDriver(serialPort, new AuroraRequestFactory(), new AuroraResponseFactory());
+        new AuroraMonitor(theEventBus, auroraDriver, configFile, tempFolder.newFolder().getAbsolutePath());
+        auroraDriver.acquireDspValue(2, AuroraDspRequestEnum.GRID_POWER_ALL);
+        FakeAuroraWebClient client = new FakeAuroraWebClient("http://localhost:" + port);
+
+        Map response = new Gson().fromJson(client.sendBusStatsRequest(true), Map.class);
+
+        List data = (List) response.get("data");
+        assertEquals(1, data.size());
+        Map stats = (Map) data.get(0);
+        assertEquals("GETDSP", stats.get("command"));
+        assertEquals(2.0, stats.get("address"));
+        assertEquals((double) AuroraDspRequestEnum.GRID_POWER_ALL.get(), stats.get("subcode"));
+        assertEquals(1.0, stats.get("timeouts"));
+        assertTrue(stats.containsKey("p99Ms"));
+
+        response = new Gson().fromJson(client.sendBusStatsRequest(false), Map.class);
+        assertTrue(((List) response.get("data")).isEmpty());
+    }
+}
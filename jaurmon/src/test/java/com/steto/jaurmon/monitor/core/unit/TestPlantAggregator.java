@@ -0,0 +1,101 @@
+package com.steto.jaurmon.monitor.core.unit;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.steto.jaurmon.monitor.MonitorMsgInverterStatus;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import com.steto.jaurmon.monitor.PlantAggregator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestPlantAggregator {
+
+    EventBus eventBus;
+    PlantAggregator plantAggregator;
+    List<PeriodicInverterTelemetries> totals = new ArrayList<>();
+    List<Boolean> plantStatus = new ArrayList<>();
+
+    @Before
+    public void before() {
+        eventBus = new EventBus();
+        plantAggregator = new PlantAggregator(eventBus);
+        eventBus.register(new Object() {
+            @Subscribe
+            public void handle(PeriodicInverterTelemetries telemetries) {
+                if (telemetries.inverterAddress == PeriodicInverterTelemetries.PLANT) {
+                    totals.add(telemetries);
+                }
+            }
+
+            @Subscribe
+            public void handle(MonitorMsgInverterStatus msg) {
+                if (msg.inverterAddress == PeriodicInverterTelemetries.PLANT) {
+                    plantStatus.add(msg.isOnline);
+                }
+            }
+        });
+    }
+
+    private PeriodicInverterTelemetries telemetries(int address, float energy, float power, float voltage) {
+        PeriodicInverterTelemetries result = new PeriodicInverterTelemetries();
+        result.inverterAddress = address;
+        result.cumulatedEnergy = energy;
+        result.gridPowerAll = power;
+        result.gridVoltageAll = voltage;
+        result.inverterTemp = 30;
+        return result;
+    }
+
+    @Test
+    public void shouldPublishTotalsOnceEveryInverterReported() {
+        eventBus.post(new MonitorMsgInverterStatus(true, 2));
+        eventBus.post(new MonitorMsgInverterStatus(true, 3));
+
+        eventBus.post(telemetries(2, 1000, 1500, 230));
+        assertEquals(0, totals.size());
+        eventBus.post(telemetries(3, 500, 700, 232));
+
+        assertEquals(1, totals.size());
+        PeriodicInverterTelemetries plant = totals.get(0);
+        assertEquals(1500, plant.cumulatedEnergy, 0.001);
+        assertEquals(2200, plant.gridPowerAll, 0.001);
+        assertEquals(231, plant.gridVoltageAll, 0.001);
+        assertEquals(30, plant.inverterTemp, 0.001);
+        assertEquals(2200, plantAggregator.getTotals().gridPowerAll, 0.001);
+    }
+
+    @Test
+    public void shouldKeepTheEnergyOfInvertersGoneOffline() {
+        eventBus.post(new MonitorMsgInverterStatus(true, 2));
+        eventBus.post(new MonitorMsgInverterStatus(true, 3));
+        eventBus.post(telemetries(2, 1000, 1500, 230));
+        eventBus.post(telemetries(3, 500, 700, 232));
+
+        eventBus.post(new MonitorMsgInverterStatus(false, 3));
+        eventBus.post(telemetries(2, 1100, 1400, 229));
+
+        PeriodicInverterTelemetries plant = totals.get(totals.size() - 1);
+        assertEquals(1600, plant.cumulatedEnergy, 0.001);
+        assertEquals(1400, plant.gridPowerAll, 0.001);
+        assertEquals(229, plant.gridVoltageAll, 0.001);
+    }
+
+    @Test
+    public void shouldPublishThePlantStatusOnChange() {
+        eventBus.post(new MonitorMsgInverterStatus(true, 2));
+        eventBus.post(new MonitorMsgInverterStatus(false, 3));
+        eventBus.post(new MonitorMsgInverterStatus(true, 2));
+        eventBus.post(new MonitorMsgInverterStatus(false, 2));
+
+        assertEquals(2, plantStatus.size());
+        assertTrue(plantStatus.get(0));
+        assertFalse(plantStatus.get(1));
+    }
+}
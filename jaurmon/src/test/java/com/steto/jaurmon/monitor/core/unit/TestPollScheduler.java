@@ -0,0 +1,101 @@
+package com.steto.jaurmon.monitor.core.unit;
+
+import com.steto.jaurlib.response.ResponseErrorEnum;
+import com.steto.jaurmon.monitor.InverterState;
+import com.steto.jaurmon.monitor.PollScheduler;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestPollScheduler {
+
+    PollScheduler scheduler;
+    InverterState first;
+    InverterState second;
+    InverterState third;
+
+    @Before
+    public void before() {
+        scheduler = new PollScheduler();
+        first = new InverterState(2, 10, null);
+        second = new InverterState(3, 10, null);
+        third = new InverterState(5, 10, null);
+        scheduler.add(first);
+        scheduler.add(second);
+        scheduler.add(third);
+    }
+
+    @Test
+    public void shouldPollEachInverterDueInTurn() {
+        long now = System.nanoTime();
+
+        for (InverterState expected : new InverterState[]{first, second, third}) {
+            InverterState inverter = scheduler.next(now);
+            assertSame(expected, inverter);
+            scheduler.polled(inverter, now);
+        }
+
+        assertNull(scheduler.next(now));
+        long wait = scheduler.nanosToNext(now);
+        assertTrue(wait > TimeUnit.SECONDS.toNanos(9) && wait <= TimeUnit.SECONDS.toNanos(10));
+        assertSame(first, scheduler.next(now + TimeUnit.SECONDS.toNanos(11)));
+    }
+
+    @Test
+    public void shouldShareASaturatedBusFairly() {
+        first.periodSec = 0;
+        second.periodSec = 0;
+        third.periodSec = 0;
+        int[] polls = new int[3];
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 30; i++) {
+            InverterState inverter = scheduler.next(now);
+            polls[inverter == first ? 0 : inverter == second ? 1 : 2]++;
+            now += TimeUnit.MILLISECONDS.toNanos(300);
+            scheduler.polled(inverter, now);
+        }
+
+        assertEquals(10, polls[0]);
+        assertEquals(10, polls[1]);
+        assertEquals(10, polls[2]);
+    }
+
+    @Test
+    public void shouldPollOfflineInvertersLessOften() {
+        scheduler.offlinePeriodSec = 60;
+        first.update(ResponseErrorEnum.NONE);
+        long now = System.nanoTime();
+
+        scheduler.polled(first, now);
+        scheduler.polled(second, now);
+        scheduler.polled(third, now);
+
+        assertSame(first, scheduler.next(now + TimeUnit.SECONDS.toNanos(11)));
+        scheduler.polled(first, now + TimeUnit.SECONDS.toNanos(11));
+        assertNull(scheduler.next(now + TimeUnit.SECONDS.toNanos(19)));
+        scheduler.polled(first, now + TimeUnit.SECONDS.toNanos(59));
+        assertNull(scheduler.next(now + TimeUnit.SECONDS.toNanos(59)));
+        assertSame(second, scheduler.next(now + TimeUnit.SECONDS.toNanos(61)));
+        assertSame(third, scheduler.next(now + TimeUnit.SECONDS.toNanos(61)));
+    }
+
+    @Test
+    public void shouldWaitAPeriodFromTheEndOfThePoll() {
+        scheduler.clear();
+        scheduler.add(first);
+        long now = System.nanoTime();
+        assertSame(first, scheduler.next(now));
+
+        long end = now + TimeUnit.SECONDS.toNanos(25);
+        scheduler.polled(first, end);
+
+        assertEquals(TimeUnit.SECONDS.toNanos(10), scheduler.nanosToNext(end));
+    }
+}
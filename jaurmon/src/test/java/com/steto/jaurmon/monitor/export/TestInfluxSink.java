@@ -0,0 +1,143 @@
+package com.steto.jaurmon.monitor.export;
+
+import com.google.common.eventbus.EventBus;
+import com.steto.jaurmon.monitor.FakeHttpCollector;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+
+import static com.steto.jaurmon.monitor.RandomObjectGenerator.getInt;
+import static org.junit.Assert.*;
+
+public class TestInfluxSink {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    EventBus eventBus = new EventBus();
+    TelemetryExporter exporter = new TelemetryExporter(eventBus);
+    FakeHttpCollector collector;
+
+    @After
+    public void after() throws Exception {
+        exporter.stop();
+        if (collector != null) {
+            collector.stop();
+        }
+    }
+
+    private static PeriodicInverterTelemetries telemetries(long timestamp, float power) {
+        PeriodicInverterTelemetries result = new PeriodicInverterTelemetries();
+        result.timestamp = timestamp;
+        result.cumulatedEnergy = 1000;
+        result.gridPowerAll = power;
+        result.gridVoltageAll = 230;
+        result.inverterTemp = 40;
+        return result;
+    }
+
+    private int startCollector() throws InterruptedException {
+        int port = 1024 + getInt(64000);
+        collector = new FakeHttpCollector(port);
+        Executors.newSingleThreadExecutor().submit(collector);
+        Thread.sleep(1000);
+        return port;
+    }
+
+    @Test
+    public void shouldEncodeLineProtocol() throws Exception {
+        InfluxLineProtocolSink sink = new InfluxLineProtocolSink("http://localhost/write", "solar inverter", "site=home");
+        PeriodicInverterTelemetries first = telemetries(1000, 1500);
+        first.extraMeasures.put("input1Voltage", 310.5f);
+        first.extraMeasures.put("odd name", 1f);
+        PeriodicInverterTelemetries second = telemetries(2000, Float.NaN);
+
+        String lines = sink.encode(Arrays.asList(first, second));
+
+        assertEquals("solar\\ inverter,site=home cumulatedEnergy=1000.0,gridPowerAll=1500.0,gridVoltageAll=230.0,inverterTemp=40.0,input1Voltage=310.5,odd\\ name=1.0 1000\n" +
+                "solar\\ inverter,site=home cumulatedEnergy=1000.0,gridVoltageAll=230.0,inverterTemp=40.0 2000\n", lines);
+    }
+
+    @Test
+    public void shouldPostGzippedBatches() throws Exception {
+        int port = startCollector();
+        collector.setResponseStatus(204);
+        InfluxLineProtocolSink sink = new InfluxLineProtocolSink("http://localhost:" + port + "/write?db=solar&precision=ms", "inverter", "");
+        SinkPolicy policy = new SinkPolicy();
+        policy.batchSize = 3;
+        exporter.addSink(sink, policy);
+        exporter.start();
+
+        for (int i = 0; i < 3; i++) {
+            eventBus.post(telemetries(1000 + i, 100 + i));
+        }
+
+        String body = collector.waitForBody(3000);
+        assertNotNull(body);
+        assertEquals(3, body.split("\n").length);
+        assertTrue(body.startsWith("inverter cumulatedEnergy=1000.0,gridPowerAll=100.0,"));
+        assertEquals("db=solar&precision=ms", collector.pollQuery());
+    }
+
+    @Test
+    public void shouldAskForMsPrecision() throws Exception {
+        int port = startCollector();
+        collector.setResponseStatus(204);
+        SinkPolicy policy = new SinkPolicy();
+        policy.batchSize = 1;
+        exporter.addSink(new InfluxLineProtocolSink("http://localhost:" + port + "/write?db=solar", "inverter", ""), policy);
+        exporter.start();
+
+        eventBus.post(telemetries(1000, 100));
+
+        assertNotNull(collector.waitForBody(3000));
+        assertEquals("db=solar&precision=ms", collector.pollQuery());
+        assertEquals("http://host/write?precision=ms", InfluxLineProtocolSink.withMsPrecision("http://host/write"));
+        assertEquals("http://host/write?precision=ms", InfluxLineProtocolSink.withMsPrecision("http://host/write?"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseAnotherPrecision() {
+        new InfluxLineProtocolSink("http://localhost/write?db=solar&precision=s", "inverter", "");
+    }
+
+    @Test
+    public void shouldSpoolWhileInfluxIsDown() throws Exception {
+        int port = startCollector();
+        collector.setResponseStatus(503);
+        InfluxLineProtocolSink sink = new InfluxLineProtocolSink("http://localhost:" + port + "/write", "inverter", "");
+        SinkPolicy policy = new SinkPolicy();
+        policy.batchSize = 2;
+        policy.retryDelayMs = 100;
+        policy.maxRetryDelayMs = 200;
+        policy.outboxDirectory = tempFolder.newFolder("outbox").getAbsolutePath();
+        exporter.addSink(sink, policy);
+        exporter.start();
+
+        for (int i = 0; i < 4; i++) {
+            eventBus.post(telemetries(1000 + i, 100 + i));
+        }
+        Thread.sleep(1000);
+
+        assertEquals(0, collector.received());
+        assertTrue(exporter.status().get(0).outboxFiles > 0);
+
+        collector.setResponseStatus(204);
+        Thread.sleep(2000);
+
+        assertEquals(0, exporter.status().get(0).outboxFiles);
+        StringBuilder received = new StringBuilder();
+        String body;
+        while ((body = collector.pollBody()) != null) {
+            received.append(body);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertTrue(received.toString().contains(" " + (1000 + i) + "\n"));
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.steto.jaurmon.monitor.export;
+
+import com.google.common.eventbus.EventBus;
+import com.google.gson.Gson;
+import com.steto.jaurmon.monitor.FakeHttpCollector;
+import com.steto.jaurmon.monitor.FakePVOutputServer;
+import com.steto.jaurmon.monitor.MonitorMsgInverterStatus;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import com.steto.jaurmon.monitor.RandomObjectGenerator;
+import com.steto.jaurmon.monitor.pvoutput.PVOutputParams;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputNew;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputSink;
+import com.steto.jaurmon.utils.HttpUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.Executors;
+
+import static com.steto.jaurmon.monitor.RandomObjectGenerator.getInt;
+import static com.steto.jaurmon.monitor.TestUtility.createPvoutputConfigFile;
+import static org.junit.Assert.*;
+
+public class TestTelemetryExporter {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    EventBus eventBus = new EventBus();
+    TelemetryExporter exporter = new TelemetryExporter(eventBus);
+
+    static class RecordingSink implements TelemetrySink {
+        final List<List<PeriodicInverterTelemetries>> batches = Collections.synchronizedList(new ArrayList<List<PeriodicInverterTelemetries>>());
+        final String name;
+        long delayMs = 0;
+        int failures = 0;
+        volatile boolean closed = false;
+
+        RecordingSink(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public void send(List<PeriodicInverterTelemetries> batch) throws Exception {
+            Thread.sleep(delayMs);
+            if (failures > 0) {
+                failures--;
+                throw new Exception("sink down");
+            }
+            batches.add(new ArrayList<>(batch));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        List<PeriodicInverterTelemetries> received() {
+            List<PeriodicInverterTelemetries> result = new ArrayList<>();
+            synchronized (batches) {
+                for (List<PeriodicInverterTelemetries> batch : batches) {
+                    result.addAll(batch);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static SinkPolicy policy(int batchSize, long maxBatchAgeMs) {
+        SinkPolicy result = new SinkPolicy();
+        result.batchSize = batchSize;
+        result.maxBatchAgeMs = maxBatchAgeMs;
+        result.retryDelayMs = 100;
+        return result;
+    }
+
+    private List<PeriodicInverterTelemetries> post(int count) {
+        List<PeriodicInverterTelemetries> result = new ArrayList<>();
+        long timestamp = new Date().getTime();
+        for (int i = 0; i < count; i++) {
+            PeriodicInverterTelemetries telemetries = RandomObjectGenerator.getA_PeriodicInverterTelemetries();
+            telemetries.timestamp = timestamp + i;
+            result.add(telemetries);
+            eventBus.post(telemetries);
+        }
+        return result;
+    }
+
+    @After
+    public void after() {
+        exporter.stop();
+    }
+
+    @Test
+    public void shouldBatchBySizeAndAge() throws Exception {
+
+        //Setup
+        RecordingSink sink = new RecordingSink("recording");
+        exporter.addSink(sink, policy(3, 500));
+        exporter.start();
+
+        //Exercise
+        post(7);
+        Thread.sleep(200);
+        int batchesBeforeAge = sink.batches.size();
+        Thread.sleep(800);
+
+        //Verify
+        assertEquals(2, batchesBeforeAge);
+        assertEquals(3, sink.batches.size());
+        assertEquals(3, sink.batches.get(0).size());
+        assertEquals(3, sink.batches.get(1).size());
+        assertEquals(1, sink.batches.get(2).size());
+
+    }
+
+    @Test
+    public void shouldNotBeDelayedBySlowSink() throws Exception {
+
+        //Setup
+        RecordingSink slowSink = new RecordingSink("slow");
+        slowSink.delayMs = 3000;
+        RecordingSink fastSink = new RecordingSink("fast");
+        exporter.addSink(slowSink, policy(1, 100));
+        exporter.addSink(fastSink, policy(1, 100));
+        exporter.start();
+
+        //Exercise
+        long start = new Date().getTime();
+        List<PeriodicInverterTelemetries> posted = post(5);
+        long postTime = new Date().getTime() - start;
+        Thread.sleep(500);
+
+        //Verify
+        assertTrue(postTime < 200);
+        assertEquals(posted, fastSink.received());
+        assertTrue(slowSink.received().isEmpty());
+
+    }
+
+    @Test
+    public void shouldSpoolToOutboxAndReplayInOrder() throws Exception {
+
+        //Setup
+        RecordingSink sink = new RecordingSink("failing");
+        sink.failures = 3;
+        SinkPolicy policy = policy(2, 100);
+        policy.outboxDirectory = tempFolder.newFolder().getAbsolutePath();
+        exporter.addSink(sink, policy);
+        exporter.start();
+
+        //Exercise
+        List<PeriodicInverterTelemetries> posted = post(10);
+        Thread.sleep(3000);
+
+        //Verify
+        List<PeriodicInverterTelemetries> received = sink.received();
+        assertEquals(posted.size(), received.size());
+        for (int i = 0; i < posted.size(); i++) {
+            assertEquals(posted.get(i).timestamp, received.get(i).timestamp);
+            assertEquals(posted.get(i).gridPowerAll, received.get(i).gridPowerAll, 0.0001);
+        }
+        SinkStatus status = exporter.status().get(0);
+        assertEquals(3, status.failedBatches);
+        assertEquals(0, status.outboxFiles);
+        assertEquals(0, status.droppedTelemetries);
+
+    }
+
+    @Test
+    public void shouldRetryInMemoryWithoutOutbox() throws Exception {
+
+        //Setup
+        RecordingSink sink = new RecordingSink("failing");
+        sink.failures = 3;
+        exporter.addSink(sink, policy(2, 100));
+        exporter.start();
+
+        //Exercise
+        List<PeriodicInverterTelemetries> posted = post(10);
+        Thread.sleep(3000);
+
+        //Verify
+        List<PeriodicInverterTelemetries> received = sink.received();
+        assertEquals(posted.size(), received.size());
+        for (int i = 0; i < posted.size(); i++) {
+            assertEquals(posted.get(i).timestamp, received.get(i).timestamp);
+        }
+        SinkStatus status = exporter.status().get(0);
+        assertEquals(3, status.failedBatches);
+        assertEquals(0, status.droppedTelemetries);
+
+    }
+
+    @Test
+    public void shouldBoundTheTelemetriesRetainedInMemory() throws Exception {
+
+        //Setup
+        RecordingSink sink = new RecordingSink("down");
+        sink.failures = Integer.MAX_VALUE;
+        SinkPolicy policy = policy(2, 100);
+        policy.queueCapacity = 4;
+        policy.retryDelayMs = 10000;
+        exporter.addSink(sink, policy);
+        exporter.start();
+
+        //Exercise
+        for (int i = 0; i < 5; i++) {
+            post(2);
+            Thread.sleep(100);
+        }
+        Thread.sleep(300);
+        sink.failures = 0;
+        exporter.stop();
+
+        //Verify
+        List<PeriodicInverterTelemetries> received = sink.received();
+        assertEquals(4, received.size());
+        assertEquals(6, exporter.status().get(0).droppedTelemetries);
+        assertTrue(sink.closed);
+
+    }
+
+    @Test
+    public void shouldPostJsonBatches() throws Exception {
+
+        //Setup
+        int port = 1024 + getInt(64000);
+        FakeHttpCollector collector = new FakeHttpCollector(port);
+        Executors.newSingleThreadExecutor().submit(collector);
+        Thread.sleep(1000);
+        exporter.addSink(new HttpJsonSink("http://localhost:" + port + "/telemetries"), policy(4, 1000));
+        exporter.start();
+
+        //Exercise
+        List<PeriodicInverterTelemetries> posted = post(4);
+        String body = collector.waitForBody(3000);
+        collector.stop();
+
+        //Verify
+        assertNotNull(body);
+        PeriodicInverterTelemetries[] received = new Gson().fromJson(body, PeriodicInverterTelemetries[].class);
+        assertEquals(4, received.length);
+        assertEquals(posted.get(3).timestamp, received[3].timestamp);
+        assertEquals(posted.get(3).cumulatedEnergy, received[3].cumulatedEnergy, 0.0001);
+
+    }
+
+    @Test
+    public void shouldAppendToDailyFiles() throws Exception {
+
+        //Setup
+        File directory = tempFolder.newFolder();
+        exporter.addSink(new FileSink(directory.getAbsolutePath()), policy(2, 100));
+        exporter.start();
+
+        //Exercise
+        List<PeriodicInverterTelemetries> posted = post(3);
+        Thread.sleep(500);
+
+        //Verify
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        List<String> lines = Files.readAllLines(files[0].toPath(), Charset.defaultCharset());
+        assertEquals(3, lines.size());
+        assertEquals(Long.toString(posted.get(0).timestamp), lines.get(0).split(",")[0]);
+
+    }
+
+    @Test
+    public void shouldPublishPvOutputStatus() throws Exception {
+
+        //Setup
+        int port = 1024 + getInt(64000);
+        String pvOutServiceUrl = "/pvoutputservice";
+        PVOutputParams pvOutputParams = RandomObjectGenerator.getA_PvOutputParams();
+        pvOutputParams.url = "http://localhost:" + port + pvOutServiceUrl;
+        pvOutputParams.period = 0.5f;
+        pvOutputParams.timeWindowSec = 10;
+        String configFile = tempFolder.newFile().getAbsolutePath();
+        createPvoutputConfigFile(configFile, pvOutputParams);
+        FakePVOutputServer fakePVOutputServer = new FakePVOutputServer(port, pvOutputParams.apiKey, pvOutputParams.systemId, pvOutServiceUrl);
+        Executors.newSingleThreadExecutor().submit(fakePVOutputServer);
+        Thread.sleep(1000);
+
+        PvOutputNew pvOutput = new PvOutputNew(configFile, eventBus, false);
+        pvOutput.setBackupDirectory(tempFolder.newFolder().getAbsolutePath());
+        exporter.addSink(new PvOutputSink(pvOutput), PvOutputSink.policy(pvOutput.getParams()));
+        exporter.start();
+        pvOutput.start();
+        eventBus.post(new MonitorMsgInverterStatus(true));
+
+        //Exercise
+        List<PeriodicInverterTelemetries> posted = post(2);
+        String request = fakePVOutputServer.waitForRequest(3000);
+        pvOutput.close();
+        fakePVOutputServer.stop();
+
+        //Verify
+        assertNotNull(request);
+        Map<String, String> queryMap = HttpUtils.getQueryMap(request);
+        assertEquals(posted.get(1).cumulatedEnergy, Float.parseFloat(queryMap.get("v1")), 0.0001);
+        assertEquals((posted.get(0).gridPowerAll + posted.get(1).gridPowerAll) / 2, Float.parseFloat(queryMap.get("v2")), 0.01);
+
+    }
+}
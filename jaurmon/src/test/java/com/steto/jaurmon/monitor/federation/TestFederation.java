@@ -0,0 +1,222 @@
+package com.steto.jaurmon.monitor.federation;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.steto.jaurmon.monitor.MonitorMsgInverterStatus;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import com.steto.jaurmon.monitor.PlantAggregator;
+import com.steto.jaurmon.monitor.webserver.AuroraWebServer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static com.steto.jaurmon.monitor.RandomObjectGenerator.getInt;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestFederation {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    int port = 1024 + getInt(64000);
+    EventBus centralBus = new EventBus();
+    Collector collector = new Collector();
+    List<FederationClient> clients = new ArrayList<>();
+    AuroraWebServer auroraWebServer;
+    FederationReceiver receiver;
+
+    static class Collector {
+        final List<PeriodicInverterTelemetries> telemetries = Collections.synchronizedList(new ArrayList<PeriodicInverterTelemetries>());
+        final List<MonitorMsgInverterStatus> statuses = Collections.synchronizedList(new ArrayList<MonitorMsgInverterStatus>());
+
+        @Subscribe
+        public void handle(PeriodicInverterTelemetries msg) {
+            if (msg.inverterAddress != PeriodicInverterTelemetries.PLANT) {
+                telemetries.add(msg);
+            }
+        }
+
+        @Subscribe
+        public void handle(MonitorMsgInverterStatus msg) {
+            statuses.add(msg);
+        }
+
+        int waitFor(int count, long wait) throws InterruptedException {
+            long timestamp = new Date().getTime();
+            while (telemetries.size() < count && ((new Date().getTime() - timestamp) < wait)) {
+                Thread.sleep(50);
+            }
+            return telemetries.size();
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        for (FederationClient client : clients) {
+            client.stop();
+        }
+        if (auroraWebServer != null) {
+            auroraWebServer.stop();
+        }
+    }
+
+    private FederationParams centralParams() throws Exception {
+        FederationParams result = new FederationParams();
+        result.role = FederationParams.CENTRAL;
+        result.offsetsFile = tempFolder.getRoot().getAbsolutePath() + "/central/offsets.properties";
+        return result;
+    }
+
+    private void startCentral() throws Exception {
+        if (receiver == null) {
+            receiver = new FederationReceiver(centralParams(), centralBus);
+            centralBus.register(collector);
+        }
+        auroraWebServer = new AuroraWebServer(port, tempFolder.getRoot().getAbsolutePath(), centralBus);
+        auroraWebServer.setFederationReceiver(receiver);
+        new Thread(auroraWebServer).start();
+        Thread.sleep(500);
+    }
+
+    private FederationClient startEdge(EventBus edgeBus, String node, int addressOffset, String journalDirectory) throws Exception {
+        FederationParams params = new FederationParams();
+        params.role = FederationParams.EDGE;
+        params.node = node;
+        params.centralUrl = "http://localhost:" + port + "/federation";
+        params.journalDirectory = journalDirectory;
+        params.addressOffset = addressOffset;
+        params.fleet = true;
+        params.batchSize = 5;
+        params.maxBatchAgeMs = 100;
+        params.retryDelayMs = 100;
+        params.maxRetryDelayMs = 200;
+        FederationClient result = new FederationClient(params, edgeBus);
+        result.start();
+        clients.add(result);
+        return result;
+    }
+
+    private PeriodicInverterTelemetries telemetries(int address, float power) {
+        PeriodicInverterTelemetries result = new PeriodicInverterTelemetries();
+        result.inverterAddress = address;
+        result.gridPowerAll = power;
+        result.cumulatedEnergy = power / 10;
+        return result;
+    }
+
+    private FederationBatch batch(String node, String stream, long first, int count) {
+        List<FederationRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            FederationRecord record = FederationRecord.telemetries(2, telemetries(2, first + i));
+            record.sequence = first + i;
+            records.add(record);
+        }
+        return new FederationBatch(node, stream, records);
+    }
+
+    @Test
+    public void shouldApplyEveryRecordOnceAndInOrder() throws Exception {
+        receiver = new FederationReceiver(centralParams(), centralBus);
+        centralBus.register(collector);
+
+        assertEquals(0, receiver.offset("room1", "s1").offset);
+        assertEquals(3, receiver.receive(batch("room1", "s1", 1, 3)).offset);
+        assertEquals(5, receiver.receive(batch("room1", "s1", 2, 4)).offset);
+        assertEquals(5, collector.telemetries.size());
+        assertEquals(5f, collector.telemetries.get(4).gridPowerAll, 0);
+        assertEquals(8, receiver.receive(batch("room1", "s1", 8, 1)).offset);
+        assertEquals(2L, receiver.status().get(0).get("lost"));
+
+        FederationReceiver restarted = new FederationReceiver(centralParams(), centralBus);
+        assertEquals(8, restarted.offset("room1", "s1").offset);
+        assertEquals(0, restarted.offset("room1", "s2").offset);
+    }
+
+    @Test
+    public void shouldSetOfflineTheInvertersOfASilentNode() throws Exception {
+        FederationParams params = centralParams();
+        params.nodeTimeoutSec = 60;
+        receiver = new FederationReceiver(params, centralBus);
+        centralBus.register(collector);
+        receiver.receive(batch("room1", "s1", 1, 1));
+
+        receiver.checkTimeouts(new Date().getTime() + 30 * 1000);
+        assertTrue(collector.statuses.isEmpty());
+        receiver.checkTimeouts(new Date().getTime() + 61 * 1000);
+        assertEquals(1, collector.statuses.size());
+        assertFalse(collector.statuses.get(0).isOnline);
+        assertEquals(2, collector.statuses.get(0).inverterAddress);
+
+        receiver.receive(batch("room1", "s1", 2, 1));
+        assertEquals(2, collector.statuses.size());
+        assertTrue(collector.statuses.get(1).isOnline);
+    }
+
+    @Test
+    public void shouldMergeTheEdgeNodesIntoThePlant() throws Exception {
+        PlantAggregator plantAggregator = new PlantAggregator(centralBus);
+        startCentral();
+        EventBus room1 = new EventBus();
+        EventBus room2 = new EventBus();
+        startEdge(room1, "room1", 0, tempFolder.newFolder().getAbsolutePath());
+        startEdge(room2, "room2", 10, tempFolder.newFolder().getAbsolutePath());
+
+        room1.post(telemetries(2, 1000));
+        room1.post(telemetries(PeriodicInverterTelemetries.PLANT, 1000));
+        room2.post(telemetries(2, 500));
+        assertEquals(2, collector.waitFor(2, 5000));
+        room1.post(telemetries(2, 1000));
+        room2.post(telemetries(2, 500));
+
+        assertEquals(4, collector.waitFor(4, 5000));
+        Thread.sleep(200);
+        assertEquals(4, collector.telemetries.size());
+        PeriodicInverterTelemetries totals = plantAggregator.getTotals();
+        assertNotNull(totals);
+        assertEquals(1500f, totals.gridPowerAll, 0);
+        List<Map<String, Object>> nodes = receiver.status();
+        assertEquals(2, nodes.size());
+        assertTrue(((Map) nodes.get(1).get("inverters")).containsKey(12));
+    }
+
+    @Test
+    public void shouldResumeTheStreamAfterADisconnection() throws Exception {
+        EventBus room1 = new EventBus();
+        String journalDirectory = tempFolder.newFolder().getAbsolutePath();
+        FederationClient client = startEdge(room1, "room1", 0, journalDirectory);
+        for (int i = 0; i < 12; i++) {
+            room1.post(telemetries(2, i));
+        }
+        Thread.sleep(500);
+        assertEquals(12L, client.status().get("journaled"));
+
+        startCentral();
+        assertEquals(12, collector.waitFor(12, 5000));
+
+        auroraWebServer.stop();
+        for (int i = 12; i < 20; i++) {
+            room1.post(telemetries(2, i));
+        }
+        Thread.sleep(300);
+        client.stop();
+        startCentral();
+        startEdge(room1, "room1", 0, journalDirectory);
+
+        assertEquals(20, collector.waitFor(20, 5000));
+        Thread.sleep(300);
+        assertEquals(20, collector.telemetries.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, collector.telemetries.get(i).gridPowerAll, 0);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.steto.jaurmon.monitor.federation;
+
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class TestFederationJournal {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private List<FederationRecord> records(int count) {
+        List<FederationRecord> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            PeriodicInverterTelemetries telemetries = new PeriodicInverterTelemetries();
+            telemetries.gridPowerAll = i;
+            result.add(FederationRecord.telemetries(2, telemetries));
+        }
+        return result;
+    }
+
+    @Test
+    public void shouldKeepTheRecordsUntilAcknowledged() throws Exception {
+        FederationJournal journal = new FederationJournal(tempFolder.getRoot().getAbsolutePath(), 1000);
+        journal.append(records(3));
+        journal.append(records(4));
+
+        List<FederationRecord> pending = journal.pending(5);
+        assertEquals(5, pending.size());
+        assertEquals(1, pending.get(0).sequence);
+        assertEquals(5, pending.get(4).sequence);
+
+        journal.acknowledge(4);
+        pending = journal.pending(100);
+        assertEquals(3, journal.size());
+        assertEquals(5, pending.get(0).sequence);
+        assertEquals(7, pending.get(2).sequence);
+        assertEquals(1, tempFolder.getRoot().list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(FederationJournal.EXTENSION);
+            }
+        }).length);
+    }
+
+    @Test
+    public void shouldResumeTheStreamAfterARestart() throws Exception {
+        String directory = tempFolder.getRoot().getAbsolutePath();
+        FederationJournal journal = new FederationJournal(directory, 1000);
+        journal.append(records(3));
+        journal.acknowledge(3);
+        journal.append(records(2));
+
+        FederationJournal restarted = new FederationJournal(directory, 1000);
+        assertEquals(journal.getStream(), restarted.getStream());
+        assertEquals(3, restarted.getAcknowledged());
+        assertEquals(2, restarted.size());
+        assertEquals(4, restarted.pending(10).get(0).sequence);
+
+        restarted.acknowledge(5);
+        restarted = new FederationJournal(directory, 1000);
+        restarted.append(records(1));
+        assertEquals(6, restarted.pending(10).get(0).sequence);
+
+        FederationJournal other = new FederationJournal(tempFolder.newFolder().getAbsolutePath(), 1000);
+        assertNotEquals(journal.getStream(), other.getStream());
+    }
+
+    @Test
+    public void shouldDropTheRecordsBeyondCapacity() throws Exception {
+        FederationJournal journal = new FederationJournal(tempFolder.getRoot().getAbsolutePath(), 5);
+
+        assertEquals(0, journal.append(records(4)));
+        assertEquals(2, journal.append(records(3)));
+        assertEquals(5, journal.size());
+
+        journal.acknowledge(2);
+        assertEquals(0, journal.append(records(2)));
+        assertEquals(7, journal.pending(10).get(4).sequence);
+    }
+}
@@ -0,0 +1,234 @@
+package com.steto.jaurmon.monitor.mqtt;
+
+import com.google.common.eventbus.EventBus;
+import com.steto.jaurmon.monitor.FakeMqttBroker;
+import com.steto.jaurmon.monitor.MonitorMsgDailyMaxPower;
+import com.steto.jaurmon.monitor.MonitorMsgInverterStatus;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static com.steto.jaurmon.monitor.RandomObjectGenerator.getInt;
+import static org.junit.Assert.*;
+
+public class TestMqttPublisher {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    EventBus eventBus = new EventBus();
+    int port = 1024 + getInt(64000);
+    FakeMqttBroker broker;
+    MqttPublisher publisher;
+
+    @After
+    public void after() throws Exception {
+        if (publisher != null) {
+            publisher.stop();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    private MqttParams params() {
+        MqttParams result = new MqttParams();
+        result.brokerHost = "localhost";
+        result.brokerPort = port;
+        result.clientId = "jaurmon-test";
+        result.inverterAddress = 2;
+        result.keepAliveSec = 2;
+        result.reconnectDelayMs = 100;
+        result.maxReconnectDelayMs = 200;
+        return result;
+    }
+
+    private static PeriodicInverterTelemetries telemetries(long timestamp, float power) {
+        PeriodicInverterTelemetries result = new PeriodicInverterTelemetries();
+        result.timestamp = timestamp;
+        result.cumulatedEnergy = 1000;
+        result.gridPowerAll = power;
+        result.gridVoltageAll = 230;
+        result.inverterTemp = 40;
+        return result;
+    }
+
+    private FakeMqttBroker startBroker() throws Exception {
+        FakeMqttBroker result = new FakeMqttBroker(port);
+        result.start();
+        return result;
+    }
+
+    private static int count(List<MqttMessage> messages, String topic) {
+        int result = 0;
+        for (MqttMessage message : messages) {
+            if (message.topic.equals(topic)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void shouldEncodeRemainingLength() throws Exception {
+        int[] lengths = {0, 127, 128, 16383, 16384, 2097151, 2097152, MqttCodec.MAX_REMAINING_LENGTH};
+        for (int length : lengths) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MqttCodec.writeRemainingLength(out, length);
+            assertEquals(length, MqttCodec.readRemainingLength(new ByteArrayInputStream(out.toByteArray())));
+        }
+
+        MqttMessage message = new MqttMessage("aurora/2/gridPowerAll", "1500.0", true);
+        MqttCodec.Packet packet = MqttCodec.read(new ByteArrayInputStream(MqttCodec.publish(message, 300, true)));
+        assertEquals(MqttCodec.PUBLISH, packet.type);
+        assertEquals(1, packet.qos());
+        assertTrue(packet.dup());
+        assertEquals(300, packet.packetId());
+        assertEquals(message.topic, packet.message().topic);
+        assertEquals(message.payload, packet.message().payload);
+        assertTrue(packet.message().retain);
+    }
+
+    @Test
+    public void shouldPublishRetainedMeasures() throws Exception {
+        broker = startBroker();
+        publisher = new MqttPublisher(params(), eventBus);
+        publisher.start();
+
+        PeriodicInverterTelemetries telemetries = telemetries(1000, 1500);
+        telemetries.extraMeasures.put("input1Voltage", 310.5f);
+        eventBus.post(telemetries);
+        eventBus.post(new MonitorMsgInverterStatus(false));
+        eventBus.post(new MonitorMsgDailyMaxPower(2500, 2000));
+        Thread.sleep(1000);
+
+        assertEquals("jaurmon-test", broker.getClientId());
+        assertEquals("true", broker.retained("aurora/2/connected"));
+        assertEquals("1500.0", broker.retained("aurora/2/gridPowerAll"));
+        assertEquals("1000.0", broker.retained("aurora/2/cumulatedEnergy"));
+        assertEquals("310.5", broker.retained("aurora/2/input1Voltage"));
+        assertEquals("1000", broker.retained("aurora/2/timestamp"));
+        assertEquals("offline", broker.retained("aurora/2/inverterStatus"));
+        assertEquals("2500.0", broker.retained("aurora/2/dailyMaxPower"));
+        for (MqttCodec.Packet packet : broker.packets()) {
+            assertEquals(1, packet.qos());
+        }
+        assertEquals(0, publisher.inflight());
+        assertEquals(broker.packets().size(), publisher.published());
+    }
+
+    @Test
+    public void shouldKeepInflightWindow() throws Exception {
+        broker = startBroker();
+        broker.setAutoAck(false);
+        MqttParams params = params();
+        params.maxInflight = 4;
+        params.keepAliveSec = 10;
+        publisher = new MqttPublisher(params, eventBus);
+        publisher.start();
+
+        for (int i = 0; i < 3; i++) {
+            eventBus.post(telemetries(1000 + i, 100 + i));
+        }
+        Thread.sleep(1000);
+
+        assertEquals(4, broker.packets().size());
+        assertEquals(4, publisher.inflight());
+
+        broker.ackAll();
+        Thread.sleep(1000);
+
+        List<MqttMessage> messages = broker.messages();
+        assertEquals(16, messages.size());
+        assertEquals(3, count(messages, "aurora/2/gridPowerAll"));
+        assertEquals("102.0", broker.retained("aurora/2/gridPowerAll"));
+        assertEquals(0, publisher.inflight());
+    }
+
+    @Test
+    public void shouldSpoolWhileBrokerIsDown() throws Exception {
+        MqttParams params = params();
+        params.spoolDirectory = tempFolder.newFolder("spool").getAbsolutePath();
+        publisher = new MqttPublisher(params, eventBus);
+        publisher.start();
+
+        for (int i = 0; i < 3; i++) {
+            eventBus.post(telemetries(1000 + i, 100 + i));
+        }
+        Thread.sleep(1500);
+
+        assertFalse(publisher.isConnected());
+        assertEquals(15, publisher.spooled());
+
+        broker = startBroker();
+        Thread.sleep(1500);
+
+        assertTrue(publisher.isConnected());
+        assertEquals(0, publisher.spooled());
+        List<MqttMessage> messages = broker.messages();
+        assertEquals(16, messages.size());
+        assertEquals("aurora/2/connected", messages.get(0).topic);
+        assertEquals("aurora/2/timestamp", messages.get(15).topic);
+        assertEquals("1002", messages.get(15).payload);
+        assertEquals("102.0", broker.retained("aurora/2/gridPowerAll"));
+    }
+
+    @Test
+    public void shouldRepublishUnacknowledgedAfterReconnect() throws Exception {
+        broker = startBroker();
+        broker.setAutoAck(false);
+        MqttParams params = params();
+        params.maxInflight = 4;
+        params.keepAliveSec = 10;
+        publisher = new MqttPublisher(params, eventBus);
+        publisher.start();
+
+        eventBus.post(telemetries(1000, 100));
+        Thread.sleep(1000);
+        assertEquals(4, broker.packets().size());
+
+        broker.stop();
+        broker = startBroker();
+        Thread.sleep(2000);
+
+        List<MqttMessage> messages = broker.messages();
+        assertEquals(1, count(messages, "aurora/2/gridPowerAll"));
+        assertEquals(1, count(messages, "aurora/2/timestamp"));
+        assertEquals("100.0", broker.retained("aurora/2/gridPowerAll"));
+        assertEquals(0, publisher.inflight());
+    }
+
+    @Test
+    public void shouldNotRetryTheMessagesOfASegmentStillSpooled() throws Exception {
+        MqttParams params = params();
+        params.spoolDirectory = tempFolder.newFolder("spool").getAbsolutePath();
+        params.maxInflight = 4;
+        publisher = new MqttPublisher(params, eventBus);
+        publisher.start();
+        for (int i = 0; i < 3; i++) {
+            eventBus.post(telemetries(1000 + i, 100 + i));
+        }
+        Thread.sleep(1500);
+        assertEquals(15, publisher.spooled());
+
+        broker = startBroker();
+        broker.setAckLimit(3);
+        Thread.sleep(3500);
+        broker.stop();
+        broker = startBroker();
+        Thread.sleep(2500);
+
+        assertTrue(publisher.isConnected());
+        assertEquals(0, publisher.spooled());
+        List<MqttMessage> messages = broker.messages();
+        assertEquals(3, count(messages, "aurora/2/timestamp"));
+        assertEquals(3, count(messages, "aurora/2/gridPowerAll"));
+        assertEquals("102.0", broker.retained("aurora/2/gridPowerAll"));
+    }
+}
@@ -0,0 +1,128 @@
+package com.steto.jaurmon.monitor.pvoutput.integration;
+
+import com.google.common.eventbus.EventBus;
+import com.steto.jaurmon.monitor.FakePVOutputServer;
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import com.steto.jaurmon.monitor.RandomObjectGenerator;
+import com.steto.jaurmon.monitor.pvoutput.PVOutputParams;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputNew;
+import com.steto.jaurmon.utils.HttpUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.steto.jaurmon.monitor.RandomObjectGenerator.getInt;
+import static com.steto.jaurmon.monitor.TestUtility.createPvoutputConfigFile;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class TestAsyncPublication {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    FakePVOutputServer fakePVOutputServer;
+    PvOutputNew pvOutput;
+    String backupDirectory;
+    boolean serverStarted = false;
+
+    @Before
+    public void before() throws Exception {
+
+        Integer pvOutputPort = 1024 + getInt(64000);
+        String pvOutServiceUrl = "/pvoutputservice";
+
+        PVOutputParams pvOutputParams = RandomObjectGenerator.getA_PvOutputParams();
+        pvOutputParams.url = "http://localhost:" + pvOutputPort + pvOutServiceUrl;
+
+        String configFile = tempFolder.newFile().getAbsolutePath();
+        backupDirectory = tempFolder.newFolder().getAbsolutePath();
+        createPvoutputConfigFile(configFile, pvOutputParams);
+
+        fakePVOutputServer = new FakePVOutputServer(pvOutputPort, pvOutputParams.apiKey, pvOutputParams.systemId, pvOutServiceUrl);
+        pvOutput = new PvOutputNew(configFile, new EventBus());
+        pvOutput.setBackupDirectory(backupDirectory);
+    }
+
+    @After
+    public void after() throws Exception {
+        pvOutput.close();
+        if (serverStarted) {
+            fakePVOutputServer.stop();
+        }
+    }
+
+    private void startServer() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(fakePVOutputServer);
+        serverStarted = true;
+        Thread.sleep(1000);
+    }
+
+    @Test
+    public void shouldPublishWithoutBlockingCaller() throws Exception {
+
+        //Setup
+        startServer();
+        fakePVOutputServer.setResponseDelay(1000);
+        PeriodicInverterTelemetries telemetries = RandomObjectGenerator.getA_PeriodicInverterTelemetries();
+
+        //Exercise
+        long start = new Date().getTime();
+        Future<Boolean> first = pvOutput.publishAsync(telemetries);
+        Future<Boolean> second = pvOutput.publishAsync(telemetries);
+        long elapsed = new Date().getTime() - start;
+
+        //Verify
+        assertTrue(elapsed < 500);
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+        String request = fakePVOutputServer.pollLastRequest();
+        assertNotNull(request);
+        assertEquals(PvOutputNew.convertDate(new Date(telemetries.timestamp)), HttpUtils.getQueryMap(request).get("d"));
+        assertNotNull(fakePVOutputServer.pollLastRequest());
+        assertEquals(0, new File(backupDirectory).listFiles().length);
+
+    }
+
+    @Test
+    public void shouldSaveTelemetriesWhenServerUnreachable() throws Exception {
+
+        //Setup
+        PeriodicInverterTelemetries telemetries = RandomObjectGenerator.getA_PeriodicInverterTelemetries();
+
+        //Exercise
+        Future<Boolean> result = pvOutput.publishAsync(telemetries);
+
+        //Verify
+        assertFalse(result.get(5, TimeUnit.SECONDS));
+        assertEquals(1, new File(backupDirectory).listFiles().length);
+
+    }
+
+    @Test
+    public void shouldReportServerTestResult() throws Exception {
+
+        //Setup
+        startServer();
+
+        //Exercise
+        boolean reachable = pvOutput.testPvOutputServer();
+
+        //Verify
+        assertTrue(reachable);
+        assertTrue(fakePVOutputServer.pollLastRequest().contains("key="));
+
+    }
+}
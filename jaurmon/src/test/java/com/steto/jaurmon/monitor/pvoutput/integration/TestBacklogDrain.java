@@ -0,0 +1,289 @@
+package com.steto.jaurmon.monitor.pvoutput.integration;
+
+import com.google.common.eventbus.EventBus;
+import com.steto.jaurlib.eventbus.EBResponseOK;
+import com.steto.jaurmon.monitor.FakePVOutputServer;
+import com.steto.jaurmon.monitor.MonitorMsgInverterStatus;
+import com.steto.jaurmon.monitor.RandomObjectGenerator;
+import com.steto.jaurmon.monitor.pvoutput.BacklogStatus;
+import com.steto.jaurmon.monitor.pvoutput.EBPvOutputRequest;
+import com.steto.jaurmon.monitor.pvoutput.PVOutputParams;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputNew;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputRecord;
+import com.steto.jaurmon.utils.HttpUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.steto.jaurmon.monitor.RandomObjectGenerator.getInt;
+import static com.steto.jaurmon.monitor.TestUtility.createPvoutputConfigFile;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class TestBacklogDrain {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    FakePVOutputServer fakePVOutputServer;
+    PVOutputParams pvOutputParams;
+    String configFile;
+    String backupDirectory;
+
+    @Before
+    public void before() throws Exception {
+
+        Integer pvOutputPort = 1024 + getInt(64000);
+        String pvOutServiceUrl = "/pvoutputservice";
+
+        pvOutputParams = RandomObjectGenerator.getA_PvOutputParams();
+        pvOutputParams.url = "http://localhost:" + pvOutputPort + pvOutServiceUrl;
+        pvOutputParams.period = 60;
+        pvOutputParams.timeWindowSec = 60;
+        pvOutputParams.requestsPerHour = 300;
+
+        configFile = tempFolder.newFile().getAbsolutePath();
+        backupDirectory = tempFolder.newFolder().getAbsolutePath();
+        createPvoutputConfigFile(configFile, pvOutputParams);
+
+        fakePVOutputServer = new FakePVOutputServer(pvOutputPort, pvOutputParams.apiKey, pvOutputParams.systemId, pvOutServiceUrl);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(fakePVOutputServer);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void after() throws Exception {
+        fakePVOutputServer.stop();
+    }
+
+    @Test
+    public void shouldDrainBacklogOldestFirstWhileInverterOnline() throws Exception {
+
+        //Setup
+        EventBus eventBus = new EventBus();
+        PvOutputNew pvOutput = new PvOutputNew(configFile, eventBus);
+        pvOutput.setBackupDirectory(backupDirectory);
+
+        long now = new Date().getTime();
+        PvOutputRecord oldestRecord = RandomObjectGenerator.getPvOutputRecord();
+        oldestRecord.timestamp = now - 2 * 24 * 3600 * 1000;
+        PvOutputRecord newestRecord = RandomObjectGenerator.getPvOutputRecord();
+        newestRecord.timestamp = now - 24 * 3600 * 1000;
+        pvOutput.savePvOutputRecord(newestRecord);
+        pvOutput.savePvOutputRecord(oldestRecord);
+
+        //Exercise
+        eventBus.post(new MonitorMsgInverterStatus(true));
+        pvOutput.start();
+        Thread.sleep(3000);
+        pvOutput.stop();
+
+        //Verify
+        String firstRequest = fakePVOutputServer.pollLastRequest();
+        String secondRequest = fakePVOutputServer.pollLastRequest();
+        assertNotNull(firstRequest);
+        assertNotNull(secondRequest);
+        String firstDate = HttpUtils.getQueryMap(firstRequest).get("data").split(",")[0];
+        String secondDate = HttpUtils.getQueryMap(secondRequest).get("data").split(",")[0];
+        assertEquals(PvOutputNew.convertDate(oldestRecord.getDate()), firstDate);
+        assertEquals(PvOutputNew.convertDate(newestRecord.getDate()), secondDate);
+        assertEquals(0, new File(backupDirectory).listFiles().length);
+
+    }
+
+    @Test
+    public void shouldReportBacklogProgress() throws Exception {
+
+        //Setup
+        EventBus eventBus = new EventBus();
+        PvOutputNew pvOutput = new PvOutputNew(configFile, eventBus);
+        pvOutput.setBackupDirectory(backupDirectory);
+
+        PvOutputRecord record = RandomObjectGenerator.getPvOutputRecord();
+        pvOutput.savePvOutputRecord(record);
+        pvOutput.savePvOutputRecord(record);
+
+        Map<String, String> requestMap = new HashMap<>();
+        requestMap.put("opcode", "backlog");
+        EBPvOutputRequest backlogRequest = new EBPvOutputRequest(requestMap);
+
+        //Exercise
+        eventBus.post(backlogRequest);
+
+        //Verify
+        assertTrue(backlogRequest.response instanceof EBResponseOK);
+        BacklogStatus status = (BacklogStatus) ((EBResponseOK) backlogRequest.response).data;
+        assertEquals(1, status.pendingFiles);
+        assertEquals(2, status.pendingRecords);
+        assertEquals(record.timestamp.longValue(), status.oldestPendingTimestamp);
+        assertEquals(0, status.uploadedRecords);
+
+    }
+
+    @Test
+    public void shouldSetAsideExpiredBacklog() throws Exception {
+
+        //Setup
+        EventBus eventBus = new EventBus();
+        PvOutputNew pvOutput = new PvOutputNew(configFile, eventBus);
+        pvOutput.setBackupDirectory(backupDirectory);
+
+        PvOutputRecord expiredRecord = RandomObjectGenerator.getPvOutputRecord();
+        expiredRecord.timestamp = new Date().getTime() - (pvOutputParams.retentionDays + 1) * 24L * 3600 * 1000;
+        String fileName = pvOutput.savePvOutputRecord(expiredRecord);
+
+        //Exercise
+        pvOutput.start();
+        Thread.sleep(1500);
+        pvOutput.stop();
+
+        //Verify
+        assertEquals(null, fakePVOutputServer.getLastRequest());
+        assertTrue(new File(new File(backupDirectory, "expired"), new File(fileName).getName()).exists());
+
+    }
+
+    @Test
+    public void shouldUploadBacklogInBatchSizedChunks() throws Exception {
+
+        //Setup
+        pvOutputParams.batchSize = 30;
+        createPvoutputConfigFile(configFile, pvOutputParams);
+        EventBus eventBus = new EventBus();
+        PvOutputNew pvOutput = new PvOutputNew(configFile, eventBus);
+        pvOutput.setBackupDirectory(backupDirectory);
+
+        long timestamp = new Date().getTime() - 24 * 3600 * 1000;
+        for (int i = 0; i < 65; i++) {
+            PvOutputRecord record = RandomObjectGenerator.getPvOutputRecord();
+            record.timestamp = timestamp;
+            pvOutput.savePvOutputRecord(record);
+        }
+
+        //Exercise
+        pvOutput.start();
+        Thread.sleep(4500);
+        pvOutput.stop();
+
+        //Verify
+        assertEquals(30, HttpUtils.getQueryMap(fakePVOutputServer.pollLastRequest()).get("data").split(";").length);
+        assertEquals(30, HttpUtils.getQueryMap(fakePVOutputServer.pollLastRequest()).get("data").split(";").length);
+        assertEquals(5, HttpUtils.getQueryMap(fakePVOutputServer.pollLastRequest()).get("data").split(";").length);
+        assertEquals(null, fakePVOutputServer.pollLastRequest());
+        assertEquals(0, new File(backupDirectory).listFiles().length);
+
+    }
+
+    @Test
+    public void shouldStopBacklogWhenServerReportsNoRemainingRequests() throws Exception {
+
+        //Setup
+        pvOutputParams.batchSize = 1;
+        createPvoutputConfigFile(configFile, pvOutputParams);
+        EventBus eventBus = new EventBus();
+        PvOutputNew pvOutput = new PvOutputNew(configFile, eventBus);
+        pvOutput.setBackupDirectory(backupDirectory);
+        fakePVOutputServer.setRateLimit(60, 1);
+
+        long timestamp = new Date().getTime() - 24 * 3600 * 1000;
+        for (int i = 0; i < 3; i++) {
+            PvOutputRecord record = RandomObjectGenerator.getPvOutputRecord();
+            record.timestamp = timestamp;
+            pvOutput.savePvOutputRecord(record);
+        }
+
+        //Exercise
+        pvOutput.start();
+        Thread.sleep(3500);
+        pvOutput.stop();
+
+        //Verify
+        assertNotNull(fakePVOutputServer.pollLastRequest());
+        assertEquals(null, fakePVOutputServer.pollLastRequest());
+        assertEquals(0, pvOutput.getRequestBudget().available(new Date().getTime()));
+        BacklogStatus status = statusOf(eventBus);
+        assertEquals(2, status.pendingRecords);
+        assertEquals(2, status.pendingRequests);
+
+    }
+
+    @Test
+    public void shouldSetAsideRejectedChunks() throws Exception {
+
+        //Setup
+        pvOutputParams.apiKey = pvOutputParams.apiKey + "wrong";
+        createPvoutputConfigFile(configFile, pvOutputParams);
+        EventBus eventBus = new EventBus();
+        PvOutputNew pvOutput = new PvOutputNew(configFile, eventBus);
+        pvOutput.setBackupDirectory(backupDirectory);
+
+        PvOutputRecord record = RandomObjectGenerator.getPvOutputRecord();
+        record.timestamp = new Date().getTime() - 24 * 3600 * 1000;
+        String fileName = pvOutput.savePvOutputRecord(record);
+
+        //Exercise
+        pvOutput.start();
+        Thread.sleep(2500);
+        pvOutput.stop();
+
+        //Verify
+        assertNotNull(fakePVOutputServer.pollLastRequest());
+        assertEquals(null, fakePVOutputServer.pollLastRequest());
+        assertTrue(new File(new File(backupDirectory, "rejected"), new File(fileName).getName()).exists());
+        assertEquals(1, statusOf(eventBus).rejectedRecords);
+
+    }
+
+    @Test
+    public void shouldSaveLiveRecordsWhileUploadingTheBacklog() throws Exception {
+
+        //Setup
+        EventBus eventBus = new EventBus();
+        PvOutputNew pvOutput = new PvOutputNew(configFile, eventBus);
+        pvOutput.setBackupDirectory(backupDirectory);
+        fakePVOutputServer.setResponseDelay(2000);
+
+        long timestamp = new Date().getTime() - 24 * 3600 * 1000;
+        PvOutputRecord backlogRecord = RandomObjectGenerator.getPvOutputRecord();
+        backlogRecord.timestamp = timestamp;
+        pvOutput.savePvOutputRecord(backlogRecord);
+
+        //Exercise
+        pvOutput.start();
+        Thread.sleep(700);
+        PvOutputRecord liveRecord = RandomObjectGenerator.getPvOutputRecord();
+        liveRecord.timestamp = timestamp + 60 * 1000;
+        long start = new Date().getTime();
+        pvOutput.savePvOutputRecord(liveRecord);
+        long elapsed = new Date().getTime() - start;
+        Thread.sleep(5500);
+        pvOutput.stop();
+
+        //Verify
+        assertTrue("Record saved in " + elapsed + " ms", elapsed < 500);
+        assertNotNull(fakePVOutputServer.pollLastRequest());
+        assertNotNull(fakePVOutputServer.pollLastRequest());
+        assertEquals(0, new File(backupDirectory).listFiles().length);
+        assertEquals(2, statusOf(eventBus).uploadedRecords);
+
+    }
+
+    private BacklogStatus statusOf(EventBus eventBus) {
+        Map<String, String> requestMap = new HashMap<>();
+        requestMap.put("opcode", "backlog");
+        EBPvOutputRequest backlogRequest = new EBPvOutputRequest(requestMap);
+        eventBus.post(backlogRequest);
+        return (BacklogStatus) ((EBResponseOK) backlogRequest.response).data;
+    }
+}
@@ -37,6 +37,7 @@ public class TestEventBusInterface {
     public TemporaryFolder tempFolder = new TemporaryFolder();
 
     String tempPvOutputFile;
+    String tempBackupDirectory;
     FakePVOutputServer fakePVOutputServer;
     Future<?> fakeServerExecutorFuture;
     private PVOutputParams pvOutputParams;
@@ -46,6 +47,7 @@ public class TestEventBusInterface {
     public void setupFakeServerAndConfigFile() throws ConfigurationException, IOException, InterruptedException {
 
         tempPvOutputFile = tempFolder.newFile().getAbsolutePath();
+        tempBackupDirectory = tempFolder.newFolder().getAbsolutePath();
 
         Integer pvOutputPort = getInt(65532);
         String pvOutServiceUrl = "/pvoutputservice";
@@ -138,6 +140,7 @@ public class TestEventBusInterface {
         // Setup
         EventBus eventBus = new EventBus();
         PvOutputNew pvOutput = new PvOutputNew(tempPvOutputFile, eventBus);
+        pvOutput.setBackupDirectory(tempBackupDirectory);
 
         Map requestTest = new HashMap<>();
         requestTest.put("opcode", "test");
@@ -159,6 +162,7 @@ public class TestEventBusInterface {
 
         EventBus eventBus = new EventBus();
         PvOutputNew pvOutput = new PvOutputNew(tempPvOutputFile, eventBus);
+        pvOutput.setBackupDirectory(tempBackupDirectory);
 
         Map requestTest = new HashMap<>();
         requestTest.put("opcode", "start");
@@ -186,6 +190,7 @@ public class TestEventBusInterface {
 
         EventBus eventBus = new EventBus();
         PvOutputNew pvOutput = new PvOutputNew(tempPvOutputFile, eventBus);
+        pvOutput.setBackupDirectory(tempBackupDirectory);
 
         Map requestTest = new HashMap<>();
         requestTest.put("opcode", "stop");
@@ -214,6 +219,7 @@ public class TestEventBusInterface {
 
         EventBus eventBus = new EventBus();
         PvOutputNew pvOutput = new PvOutputNew(tempPvOutputFile, eventBus);
+        pvOutput.setBackupDirectory(tempBackupDirectory);
 
         Map requestStatus = new HashMap<>();
         requestStatus.put("opcode", "status");
@@ -236,6 +242,7 @@ public class TestEventBusInterface {
 
         EventBus eventBus = new EventBus();
         PvOutputNew pvOutput = new PvOutputNew(tempPvOutputFile, eventBus);
+        pvOutput.setBackupDirectory(tempBackupDirectory);
         pvOutput.start();
         Thread.sleep(300);
 
@@ -263,6 +270,7 @@ public class TestEventBusInterface {
 
         EventBus eventBus = new EventBus();
         PvOutputNew pvOutput = new PvOutputNew(tempPvOutputFile, eventBus);
+        pvOutput.setBackupDirectory(tempBackupDirectory);
 
 
         //Exercise
@@ -10,7 +10,9 @@ import com.steto.jaurmon.monitor.pvoutput.PvOutputNew;
 import com.steto.jaurmon.monitor.pvoutput.PvOutputRecord;
 import com.steto.jaurmon.utils.HttpUtils;
 import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
@@ -29,6 +31,8 @@ import static junit.framework.TestCase.assertEquals;
  */
 public class TestPublication {
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
 
 
     @Test
@@ -48,8 +52,10 @@ public class TestPublication {
 
         EventBus eventBus = new EventBus();
         File tempFile = File.createTempFile("aurora", "cfg");
+        String backupDirectory = tempFolder.newFolder().getAbsolutePath();
         createPvoutputConfigFile(tempFile.getAbsolutePath(), pvOutputParams);
         PvOutputNew pvOutput = new PvOutputNew(tempFile.getAbsolutePath(), eventBus);
+        pvOutput.setBackupDirectory(backupDirectory);
         pvOutput.start();
         Thread.sleep(300);
 
@@ -66,6 +72,7 @@ public class TestPublication {
         pvOutput.stop();
 
         PvOutputNew pvOutputSecondRun = new PvOutputNew(tempFile.getAbsolutePath(), eventBus);
+        pvOutputSecondRun.setBackupDirectory(backupDirectory);
         pvOutputSecondRun.start();
 
         ExecutorService executor = Executors.newSingleThreadExecutor();
@@ -6,6 +6,8 @@ import com.steto.jaurmon.monitor.TelemetriesQueue;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -181,5 +183,19 @@ public class TestDataStatistics {
 
     }
 
+    @Test
+    public void shouldAddAllKeepingTheNewest() {
+
+        TelemetriesQueue telemetriesQueueSize2 = new TelemetriesQueue(2);
+        telemetriesQueueSize2.add(inverterTelemetries2);
+
+        telemetriesQueueSize2.addAll(Arrays.asList(inverterTelemetries3, inverterTelemetries1));
+
+        assertEquals(2, telemetriesQueueSize2.length());
+        PeriodicInverterTelemetries average = telemetriesQueueSize2.average();
+        assertEquals(6, average.gridPowerAll, 0.00001);
+        assertEquals(inverterTelemetries3.timestamp, average.timestamp);
+    }
+
 
 }
@@ -0,0 +1,100 @@
+package com.steto.jaurmon.monitor.pvoutput.unit;
+
+import com.steto.jaurmon.monitor.PeriodicInverterTelemetries;
+import com.steto.jaurmon.monitor.RandomObjectGenerator;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputEncoder;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputRecord;
+import com.steto.jaurmon.utils.HttpUtils;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.steto.jaurmon.monitor.RandomObjectGenerator.getInt;
+import static org.junit.Assert.assertEquals;
+
+public class TestPvOutputEncoder {
+
+    static final int BACKLOG_SIZE = 10000;
+
+    private static String referenceBatchData(List<PvOutputRecord> dataList) {
+        StringBuilder data = new StringBuilder();
+        for (PvOutputRecord pvRecord : dataList) {
+            Date date = new Date(pvRecord.timestamp);
+            data.append(new SimpleDateFormat("yyyyMMdd").format(date)).append(",")
+                    .append(new SimpleDateFormat("HH:mm").format(date)).append(",")
+                    .append("" + pvRecord.dailyCumulatedEnergy).append(",")
+                    .append("" + pvRecord.totalPowerGenerated).append(",-1,-1,")
+                    .append("" + pvRecord.temperature).append(",")
+                    .append("" + pvRecord.totalGridVoltage).append(";");
+        }
+        return data.substring(0, data.length() - 1);
+    }
+
+    private static List<PvOutputRecord> backlog(int size) {
+        List<PvOutputRecord> result = new ArrayList<>();
+        long timestamp = new Date().getTime() - 14 * 24 * 3600 * 1000L;
+        for (int i = 0; i < size; i++) {
+            PvOutputRecord record = RandomObjectGenerator.getPvOutputRecord();
+            timestamp += getInt(300) * 1000;
+            record.timestamp = timestamp;
+            result.add(record);
+        }
+        return result;
+    }
+
+    @Test
+    public void shouldEncodeBatchDataAsBefore() {
+
+        List<PvOutputRecord> records = backlog(BACKLOG_SIZE);
+        PvOutputEncoder encoder = new PvOutputEncoder();
+
+        assertEquals(referenceBatchData(records), encoder.batchData(records));
+        assertEquals(referenceBatchData(records.subList(0, 30)), encoder.batchData(records.subList(0, 30)));
+
+    }
+
+    @Test
+    public void shouldEncodeBatchUrl() {
+
+        List<PvOutputRecord> records = backlog(BACKLOG_SIZE);
+        PvOutputEncoder encoder = new PvOutputEncoder();
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("key", "a key/1");
+        map.put("sid", 1234);
+        map.put("data", referenceBatchData(records));
+        String expected = "http://pvoutput/service/r2/addbatchstatus.jsp?" + HttpUtils.urlEncodeUTF8(map);
+
+        assertEquals(expected, encoder.batchUpdateUrl("http://pvoutput/service/r2", "a key/1", 1234, records));
+
+    }
+
+    @Test
+    public void shouldEncodeLiveUpdateUrl() {
+
+        PvOutputEncoder encoder = new PvOutputEncoder();
+
+        for (int i = 0; i < 100; i++) {
+            PeriodicInverterTelemetries tele = RandomObjectGenerator.getA_PeriodicInverterTelemetries();
+            tele.timestamp -= getInt(24 * 3600) * 1000L;
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("key", "key");
+            map.put("sid", 33);
+            map.put("d", new SimpleDateFormat("yyyyMMdd").format(new Date(tele.timestamp)));
+            map.put("t", new SimpleDateFormat("HH:mm").format(new Date(tele.timestamp)));
+            map.put("v1", tele.cumulatedEnergy);
+            map.put("v2", tele.gridPowerAll);
+            map.put("v5", tele.inverterTemp);
+            map.put("v6", tele.gridVoltageAll);
+            String expected = "http://url/addstatus.jsp?" + HttpUtils.urlEncodeUTF8(map);
+
+            assertEquals(expected, encoder.liveUpdateUrl("http://url", "key", 33, tele));
+        }
+
+    }
+}
@@ -0,0 +1,85 @@
+package com.steto.jaurmon.monitor.pvoutput.unit;
+
+import com.steto.jaurmon.monitor.pvoutput.PvOutputRequestBudget;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRequestBudget {
+
+    static final long HOUR_MS = 3600 * 1000;
+
+    @Test
+    public void shouldNotExceedHourlyLimit() {
+
+        long now = 0;
+        PvOutputRequestBudget budget = new PvOutputRequestBudget(60, now);
+
+        for (int i = 0; i < 60; i++) {
+            assertTrue(budget.tryAcquireLive(now));
+        }
+        assertFalse(budget.tryAcquireLive(now));
+
+        assertFalse(budget.tryAcquireLive(now + HOUR_MS / 60 - 1));
+        assertTrue(budget.tryAcquireLive(now + HOUR_MS / 60));
+
+    }
+
+    @Test
+    public void shouldKeepReserveForLiveUpdates() {
+
+        long now = 0;
+        PvOutputRequestBudget budget = new PvOutputRequestBudget(60, now);
+        float livePeriodSec = 300;
+        int reserve = budget.liveReserve(livePeriodSec);
+
+        int backlogRequests = 0;
+        while (budget.tryAcquireBacklog(livePeriodSec, now)) {
+            backlogRequests++;
+        }
+
+        assertEquals(2, reserve);
+        assertEquals(60 - reserve, backlogRequests);
+        for (int i = 0; i < reserve; i++) {
+            assertTrue(budget.tryAcquireLive(now));
+        }
+        assertFalse(budget.tryAcquireLive(now));
+
+    }
+
+    @Test
+    public void shouldAdaptToServerRateLimit() {
+
+        long now = 0;
+        PvOutputRequestBudget budget = new PvOutputRequestBudget(60, now);
+
+        budget.update(300, 10, now + HOUR_MS, now);
+        assertEquals(300, budget.getLimit());
+        assertEquals(10, budget.available(now));
+
+        budget.update(300, 0, now + HOUR_MS / 2, now);
+        assertEquals(0, budget.available(now));
+        assertFalse(budget.tryAcquireLive(now + HOUR_MS / 4));
+        assertEquals(HOUR_MS / 4, budget.msUntilBacklogToken(0, now + HOUR_MS / 4));
+        assertTrue(budget.tryAcquireLive(now + HOUR_MS / 2));
+
+    }
+
+    @Test
+    public void shouldEstimateBacklogDrainTime() {
+
+        long now = 0;
+        PvOutputRequestBudget budget = new PvOutputRequestBudget(60, now);
+
+        assertEquals(10 * 1000, budget.estimateBacklogMs(10, 0, 1000, now));
+
+        for (int i = 0; i < 60; i++) {
+            budget.tryAcquireLive(now);
+        }
+        assertEquals(30 * HOUR_MS / 48, budget.estimateBacklogMs(30, 300, 1000, now));
+        assertEquals(-1, new PvOutputRequestBudget(12, now).estimateBacklogMs(100, 300, 1000, now));
+
+    }
+}
@@ -0,0 +1,96 @@
+package com.steto.jaurmon.monitor.soak;
+
+import java.util.Arrays;
+
+/**
+ * Latency histogram with buckets growing by powers of two, each split in 8, from 1 microsecond to
+ * over two hours: percentiles are exact to 1/8 of their magnitude, memory does not grow with the samples.
+ */
+public class LatencyRecorder {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = 32 * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long errors = 0;
+    private long sumMicros = 0;
+    private long maxMicros = 0;
+
+    public synchronized void record(long nanos) {
+        long micros = Math.max(1, nanos / 1000);
+        counts[bucket(micros)]++;
+        count++;
+        sumMicros += micros;
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    public synchronized void error() {
+        errors++;
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    public synchronized long errors() {
+        return errors;
+    }
+
+    public synchronized double meanMs() {
+        return count == 0 ? 0 : sumMicros / 1000.0 / count;
+    }
+
+    public synchronized double maxMs() {
+        return maxMicros / 1000.0;
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the percentile, in milliseconds
+     */
+    public synchronized double percentileMs(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxMicros) / 1000.0;
+            }
+        }
+        return maxMs();
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        errors = 0;
+        sumMicros = 0;
+        maxMicros = 0;
+    }
+
+    public synchronized String summary() {
+        return String.format("n=%d err=%d mean=%.1f p50=%.1f p95=%.1f p99=%.1f max=%.1f ms",
+                count, errors, meanMs(), percentileMs(50), percentileMs(95), percentileMs(99), maxMs());
+    }
+
+    static int bucket(long micros) {
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent < 3) {
+            return (int) micros;
+        }
+        int sub = (int) (micros >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, (exponent - 2) * SUB_BUCKETS + sub);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 2;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+    }
+}
@@ -0,0 +1,505 @@
+package com.steto.jaurmon.monitor.soak;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.steto.jaurinv.*;
+import com.steto.jaurlib.AuroraDriver;
+import com.steto.jaurlib.cmd.InverterCommandFactory;
+import com.steto.jaurlib.eventbus.EventBusInverterAdapter;
+import com.steto.jaurlib.metrics.Histogram;
+import com.steto.jaurlib.metrics.MetricsRegistry;
+import com.steto.jaurlib.request.AuroraRequestFactory;
+import com.steto.jaurlib.response.*;
+import com.steto.jaurlib.transport.BusTransport;
+import com.steto.jaurmon.monitor.*;
+import com.steto.jaurmon.monitor.export.TelemetryExporter;
+import com.steto.jaurmon.monitor.pvoutput.PVOutputParams;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputNew;
+import com.steto.jaurmon.monitor.pvoutput.PvOutputSink;
+import com.steto.jaurmon.monitor.webserver.AuroraWebServer;
+import org.apache.commons.configuration.HierarchicalINIConfiguration;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Field;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.steto.jaurmon.monitor.TestUtility.createAuroraConfigFile;
+import static com.steto.jaurmon.monitor.TestUtility.createPvoutputConfigFile;
+
+/**
+ * Soak and load harness: AuroraMonitor, EventBusInverterAdapter, PvOutputNew and AuroraWebServer in one JVM,
+ * the driver on a {@link SimulatedBus} of simulated inverters, PVOutput on a {@link FakePVOutputServer},
+ * the web server under synthetic /cmd/inv load spread over all the inverters.
+ * Every report period it prints polls/sec, latency percentiles per layer, error rates, heap and GC.
+ * <p>
+ * Arguments are name=value pairs overriding the public fields, e.g.
+ * <pre>
+ * inverters=8 sampleSec=5 webClients=4 webRequestsPerSec=2 durationSec=14400 reportSec=60
+ * </pre>
+ * The monitor polls the inverter at the configured address, the others are only reached by the web load;
+ * with pollAll=true it polls all of them as a fleet. With buses=N the inverters are spread over N simulated
+ * lines, each polled by its own thread, e.g. to measure how the poll throughput scales:
+ * <pre>
+ * inverters=8 buses=4 sampleSec=0 webClients=0
+ * </pre>
+ * <p>
+ * With a curve, "clearsky" or a CSV file recorded by the monitor, the inverter measures follow a
+ * {@link ProductionPlayback} at speed times the real clock, and the bus injects the configured faults, e.g.
+ * <pre>
+ * curve=clearsky speed=60 cloudiness=0.5 dropRate=0.01 crcErrorRate=0.01 delayMs=20 stuckRate=0.001
+ * </pre>
+ */
+public class SoakHarness {
+
+    public int inverters = 4;
+    public int buses = 1;
+    public boolean pollAll = false;
+    public int firstAddress = 2;
+    public float sampleSec = 5;
+    public int baudRate = 19200;
+    public int webClients = 2;
+    public float webRequestsPerSec = 1;
+    public float pvOutputPeriodSec = 10;
+    public long durationSec = 60;
+    public long reportSec = 10;
+    public boolean verbose = true;
+    public String curve = "";
+    public double speed = 1;
+    public float peakPower = 3000;
+    public float cloudiness = 0.3f;
+    public double dropRate = 0;
+    public double crcErrorRate = 0;
+    public int delayMs = 0;
+    public double stuckRate = 0;
+    public long seed = 1;
+
+    private static final String[][] WEB_COMMANDS = {
+            {"dspData", "gridPowerAll"},
+            {"dspData", "gridVoltageAll"},
+            {"dspData", "inverterTemp"},
+            {"cumEnergy", "daily"},
+            {"cumEnergy", "total"},
+            {"serialNumber", ""},
+            {"actualTime", ""},
+    };
+
+    final Layer bus = new Layer("bus");
+    final Layer poll = new Layer("poll interval");
+    final Layer web = new Layer("web");
+    final AtomicLong polls = new AtomicLong();
+    private final AtomicLong pvOutputReceived = new AtomicLong();
+    private final List<Thread> clients = new ArrayList<>();
+    private volatile boolean running = false;
+    private long lastPollNanos = 0;
+
+    private final List<SimulatedBus> simulatedBuses = new ArrayList<>();
+    private ProductionPlayback playback;
+    private FaultInjector faults;
+    private AuroraDriver auroraDriver;
+    private AuroraMonitor auroraMonitor;
+    private PvOutputNew pvOutput;
+    private TelemetryExporter telemetryExporter;
+    private FakePVOutputServer fakePVOutputServer;
+    private AuroraWebServer auroraWebServer;
+    private int webPort;
+
+    /**
+     * Latencies of one layer, over the whole run and since the last report.
+     */
+    static class Layer {
+        final String name;
+        final LatencyRecorder total = new LatencyRecorder();
+        final LatencyRecorder window = new LatencyRecorder();
+
+        Layer(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos) {
+            total.record(nanos);
+            window.record(nanos);
+        }
+
+        void error() {
+            total.error();
+            window.error();
+        }
+    }
+
+    /**
+     * Times the driver transactions as seen on the bus: from the request written to the response read.
+     */
+    class TimedTransport implements BusTransport {
+        private final BusTransport target;
+        private long start;
+
+        TimedTransport(BusTransport target) {
+            this.target = target;
+        }
+
+        @Override
+        public void clearInput() throws Exception {
+            target.clearInput();
+        }
+
+        @Override
+        public void clearOutput() throws Exception {
+            target.clearOutput();
+        }
+
+        @Override
+        public void write(byte[] frame) throws Exception {
+            start = System.nanoTime();
+            target.write(frame);
+        }
+
+        @Override
+        public byte[] read(int length, int timeoutMs) throws Exception {
+            try {
+                byte[] result = target.read(length, timeoutMs);
+                bus.record(System.nanoTime() - start);
+                return result;
+            } catch (Exception e) {
+                bus.error();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws Exception {
+            target.close();
+        }
+    }
+
+    private boolean isFleet() {
+        return pollAll || buses > 1;
+    }
+
+    private String addressesOfBus(int b) {
+        StringBuilder result = new StringBuilder();
+        for (int i = b; i < inverters; i += buses) {
+            result.append(result.length() == 0 ? "" : ",").append(firstAddress + i);
+        }
+        return result.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        SoakHarness harness = new SoakHarness();
+        harness.configure(args);
+        harness.run();
+        System.exit(0);
+    }
+
+    public void configure(String[] args) throws Exception {
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected name=value, found: " + arg);
+            }
+            Field field = getClass().getField(pair[0]);
+            Class<?> type = field.getType();
+            if (type == int.class) {
+                field.setInt(this, Integer.parseInt(pair[1]));
+            } else if (type == long.class) {
+                field.setLong(this, Long.parseLong(pair[1]));
+            } else if (type == float.class) {
+                field.setFloat(this, Float.parseFloat(pair[1]));
+            } else if (type == double.class) {
+                field.setDouble(this, Double.parseDouble(pair[1]));
+            } else if (type == boolean.class) {
+                field.setBoolean(this, Boolean.parseBoolean(pair[1]));
+            } else if (type == String.class) {
+                field.set(this, pair[1]);
+            }
+        }
+    }
+
+    public void run() throws Exception {
+        start();
+        try {
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSec);
+            Snapshot previous = new Snapshot();
+            while (System.nanoTime() < end) {
+                Thread.sleep(Math.min(TimeUnit.SECONDS.toMillis(reportSec), Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()))));
+                Snapshot current = new Snapshot();
+                if (verbose) {
+                    System.out.println(report(previous, current));
+                }
+                previous = current;
+            }
+        } finally {
+            stop();
+        }
+        if (verbose) {
+            System.out.println(summary());
+        }
+    }
+
+    public void start() throws Exception {
+        File workDir = Files.createTempDirectory("soak").toFile();
+        String configFile = new File(workDir, "aurora.cfg").getAbsolutePath();
+        int pvOutputPort = freePort();
+        webPort = freePort();
+
+        HwSettings hwSettings = new HwSettings();
+        hwSettings.inverterAddress = firstAddress;
+        hwSettings.serialPortBaudRate = baudRate;
+        MonitorSettings monitorSettings = new MonitorSettings();
+        monitorSettings.inverterInterrogationPeriodSec = sampleSec;
+        monitorSettings.energyEstimationEnable = false;
+        createAuroraConfigFile(configFile, hwSettings, monitorSettings);
+        if (isFleet()) {
+            HierarchicalINIConfiguration iniConfObj = new HierarchicalINIConfiguration(new File(configFile));
+            for (int b = 0; b < buses; b++) {
+                String section = b == 0 ? "inverter" : "bus_" + b;
+                iniConfObj.setProperty(section + ".inverterAddresses", addressesOfBus(b));
+                iniConfObj.setProperty(section + ".serialPort", "soak" + b);
+            }
+            iniConfObj.save();
+        }
+
+        PVOutputParams pvOutputParams = new PVOutputParams();
+        pvOutputParams.url = "http://localhost:" + pvOutputPort + "/pvoutput";
+        pvOutputParams.systemId = 1234;
+        pvOutputParams.apiKey = "soak";
+        pvOutputParams.period = pvOutputPeriodSec;
+        pvOutputParams.timeWindowSec = 600;
+        pvOutputParams.requestsPerHour = Integer.MAX_VALUE;
+        createPvoutputConfigFile(configFile, pvOutputParams);
+
+        fakePVOutputServer = new FakePVOutputServer(pvOutputPort, pvOutputParams.apiKey, pvOutputParams.systemId, "/pvoutput");
+        new Thread(fakePVOutputServer).start();
+
+        AuroraVersionData versionData = new AuroraVersionData(AI_ModelsEnum.PVI_2000, AI_NationEnum.Italy_ENEL_DK_5950, AI_TransformerType.Transformer_Version, AI_Type.Photovoltaic_Version);
+        faults = new FaultInjector(seed);
+        faults.dropRate = dropRate;
+        faults.crcErrorRate = crcErrorRate;
+        faults.delayMs = delayMs;
+        faults.stuckRate = stuckRate;
+        for (int b = 0; b < buses; b++) {
+            SimulatedBus simulatedBus = new SimulatedBus(baudRate);
+            simulatedBus.getSimulator().setFaults(faults);
+            simulatedBuses.add(simulatedBus);
+        }
+        for (int i = 0; i < inverters; i++) {
+            simulatedBuses.get(i % buses).add(new AuroraInverter(firstAddress + i, "soak" + i, new AuroraResponseFactory(), new AuroraRequestFactory(), versionData));
+        }
+        if (!curve.isEmpty()) {
+            ProductionCurve productionCurve = curve.equals("clearsky") ? new ClearSkyCurve(peakPower, cloudiness, seed) : new CsvDayCurve(curve);
+            playback = new ProductionPlayback(productionCurve, System.currentTimeMillis(), speed);
+            playback.setFaults(faults);
+            for (int i = 0; i < inverters; i++) {
+                playback.add(simulatedBuses.get(i % buses).get(firstAddress + i), 1 - 0.1f * (i % 4));
+            }
+            playback.start(1000);
+        }
+
+        EventBus eventBus = new EventBus();
+        eventBus.register(this);
+        auroraDriver = new AuroraDriver(null, new AuroraRequestFactory(), new AuroraResponseFactory());
+        auroraDriver.setTransport(new TimedTransport(simulatedBuses.get(0)));
+        auroraMonitor = new AuroraMonitor(eventBus, auroraDriver, configFile, new File(workDir, "log").getAbsolutePath());
+        for (InverterBus inverterBus : auroraMonitor.getBuses()) {
+            if (inverterBus.driver != auroraDriver) {
+                inverterBus.driver.setTransport(new TimedTransport(simulatedBuses.get(Integer.parseInt(inverterBus.name))));
+            }
+        }
+        auroraMonitor.routeInverterRequests(new EventBusInverterAdapter(eventBus, auroraDriver, new InverterCommandFactory()));
+        pvOutput = new PvOutputNew(configFile, eventBus, false);
+        telemetryExporter = new TelemetryExporter(eventBus);
+        telemetryExporter.addSink(new PvOutputSink(pvOutput), PvOutputSink.policy(pvOutput.getParams()));
+        telemetryExporter.start();
+        pvOutput.start();
+        auroraWebServer = new AuroraWebServer(webPort, "./html", eventBus);
+        new Thread(auroraWebServer).start();
+        Thread.sleep(1000);
+
+        running = true;
+        auroraMonitor.start();
+        for (int i = 0; i < webClients && webRequestsPerSec > 0; i++) {
+            Thread client = new Thread(new WebClient(i), "soak-web-" + i);
+            client.setDaemon(true);
+            client.start();
+            clients.add(client);
+        }
+    }
+
+    public void stop() throws Exception {
+        running = false;
+        for (Thread client : clients) {
+            client.join(5000);
+        }
+        auroraWebServer.stop();
+        telemetryExporter.stop();
+        pvOutput.close();
+        fakePVOutputServer.stop();
+        auroraMonitor.stop();
+        if (playback != null) {
+            playback.stop();
+        }
+    }
+
+    @Subscribe
+    public void handle(PeriodicInverterTelemetries telemetries) {
+        if (isFleet() && telemetries.inverterAddress == PeriodicInverterTelemetries.PLANT) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (lastPollNanos > 0) {
+                poll.record(now - lastPollNanos);
+            }
+            lastPollNanos = now;
+        }
+        polls.incrementAndGet();
+    }
+
+    /**
+     * Issues /cmd/inv requests at a fixed rate, to a random inverter of the bus.
+     */
+    class WebClient implements Runnable {
+        private final Random random;
+
+        WebClient(int seed) {
+            random = new Random(seed);
+        }
+
+        @Override
+        public void run() {
+            long periodNanos = (long) (1e9 / webRequestsPerSec);
+            long next = System.nanoTime();
+            while (running) {
+                String[] command = WEB_COMMANDS[random.nextInt(WEB_COMMANDS.length)];
+                int address = firstAddress + random.nextInt(inverters);
+                long start = System.nanoTime();
+                try {
+                    String body = get("http://localhost:" + webPort + "/cmd/inv/?opcode=" + command[0] + "&subcode=" + command[1] + "&address=" + address);
+                    if (body.contains("\"error\"")) {
+                        web.error();
+                    } else {
+                        web.record(System.nanoTime() - start);
+                    }
+                } catch (Exception e) {
+                    web.error();
+                }
+                next += periodNanos;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                } else {
+                    next = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    private static String get(String url) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(30000);
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new Exception("Http status: " + connection.getResponseCode());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), Charset.forName("UTF-8"));
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Cumulated counters at a point in time, reports are the differences between two of them.
+     */
+    class Snapshot {
+        final long nanos = System.nanoTime();
+        final long polls = SoakHarness.this.polls.get();
+        final long pvOutputOk;
+        final long pvOutputFailed;
+        final double pvOutputSeconds;
+        final long gcCount;
+        final long gcMillis;
+
+        Snapshot() {
+            while (fakePVOutputServer != null && fakePVOutputServer.pollLastRequest() != null) {
+                pvOutputReceived.incrementAndGet();
+            }
+            Histogram ok = pvOutputHistogram("ok");
+            Histogram failed = pvOutputHistogram("error");
+            pvOutputOk = ok.count();
+            pvOutputFailed = failed.count();
+            pvOutputSeconds = ok.sum();
+            long count = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            gcCount = count;
+            gcMillis = millis;
+        }
+    }
+
+    private static Histogram pvOutputHistogram(String outcome) {
+        return MetricsRegistry.getDefault().histogram(PvOutputNew.REQUEST_SECONDS, "Duration of the PVOutput requests", Histogram.LATENCY_BUCKETS, "outcome", outcome);
+    }
+
+    private String report(Snapshot previous, Snapshot current) {
+        double seconds = (current.nanos - previous.nanos) / 1e9;
+        long pvOutputOk = current.pvOutputOk - previous.pvOutputOk;
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("polls=%.2f/s, pvoutput ok=%d failed=%d mean=%.1f ms received=%d, heap=%d/%d MB, gc=%d (%d ms), threads=%d%n",
+                (current.polls - previous.polls) / seconds,
+                pvOutputOk, current.pvOutputFailed - previous.pvOutputFailed,
+                pvOutputOk == 0 ? 0 : (current.pvOutputSeconds - previous.pvOutputSeconds) * 1000 / pvOutputOk,
+                pvOutputReceived.get(),
+                heap.getUsed() >> 20, heap.getMax() >> 20,
+                current.gcCount - previous.gcCount, current.gcMillis - previous.gcMillis,
+                Thread.activeCount()));
+        for (Layer layer : new Layer[]{bus, poll, web}) {
+            result.append(String.format("  %-14s %.2f/s %s%n", layer.name, layer.window.count() / seconds, layer.window.summary()));
+            layer.window.reset();
+        }
+        return result.toString().trim();
+    }
+
+    public String summary() {
+        long transactions = 0;
+        long timeouts = 0;
+        for (SimulatedBus simulatedBus : simulatedBuses) {
+            transactions += simulatedBus.getTransactions();
+            timeouts += simulatedBus.getTimeouts();
+        }
+        StringBuilder result = new StringBuilder("Soak summary: " + inverters + " inverters on " + buses + " buses, sampling " + sampleSec + " s, "
+                + webClients + " web clients at " + webRequestsPerSec + " req/s, " + durationSec + " s\n");
+        result.append(String.format("  polls %d, bus transactions %d, timeouts %d%n", polls.get(), transactions, timeouts));
+        result.append("  faults ").append(faults).append('\n');
+        for (Layer layer : new Layer[]{bus, poll, web}) {
+            result.append(String.format("  %-14s %s error rate %.4f%n", layer.name, layer.total.summary(),
+                    layer.total.count() + layer.total.errors() == 0 ? 0 : (double) layer.total.errors() / (layer.total.count() + layer.total.errors())));
+        }
+        result.append("  pvoutput requests received ").append(pvOutputReceived.get());
+        return result.toString();
+    }
+}
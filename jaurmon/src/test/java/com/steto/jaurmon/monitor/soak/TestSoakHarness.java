@@ -0,0 +1,60 @@
+package com.steto.jaurmon.monitor.soak;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSoakHarness {
+
+    @Test
+    public void shouldPollAndServeSimulatedInverters() throws Exception {
+        SoakHarness harness = new SoakHarness();
+        harness.configure(new String[]{"inverters=3", "sampleSec=1", "webClients=2", "webRequestsPerSec=2", "durationSec=6", "reportSec=3", "verbose=false"});
+
+        harness.run();
+
+        assertTrue(harness.polls.get() > 0);
+        assertTrue(harness.bus.total.count() > 0);
+        assertTrue(harness.web.total.count() > 0);
+        assertEquals(0, harness.bus.total.errors());
+        assertEquals(0, harness.web.total.errors());
+    }
+
+    @Test
+    public void shouldCountInjectedFaultsAsBusErrors() throws Exception {
+        SoakHarness harness = new SoakHarness();
+        harness.configure(new String[]{"inverters=2", "sampleSec=1", "webClients=0", "durationSec=3", "reportSec=3", "verbose=false",
+                "curve=clearsky", "speed=60", "dropRate=0.5", "crcErrorRate=0.2"});
+
+        harness.run();
+
+        assertTrue(harness.bus.total.errors() > 0);
+    }
+
+    @Test
+    public void shouldPollTheBusesInParallel() throws Exception {
+        SoakHarness oneBus = new SoakHarness();
+        oneBus.configure(new String[]{"inverters=4", "buses=1", "pollAll=true", "sampleSec=0", "webClients=0", "durationSec=4", "reportSec=4", "verbose=false"});
+        oneBus.run();
+        SoakHarness twoBuses = new SoakHarness();
+        twoBuses.configure(new String[]{"inverters=4", "buses=2", "sampleSec=0", "webClients=0", "durationSec=4", "reportSec=4", "verbose=false"});
+        twoBuses.run();
+
+        assertEquals(0, twoBuses.bus.total.errors());
+        assertTrue(oneBus.polls.get() + " polls on one bus, " + twoBuses.polls.get() + " on two", twoBuses.polls.get() > oneBus.polls.get() * 1.6);
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinABucket() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (int i = 1; i <= 1000; i++) {
+            recorder.record(i * 1000000L);
+        }
+
+        assertEquals(1000, recorder.count());
+        assertEquals(500, recorder.percentileMs(50), 500 / 8.0);
+        assertEquals(990, recorder.percentileMs(99), 990 / 8.0);
+        assertEquals(1000, recorder.maxMs(), 0);
+    }
+}